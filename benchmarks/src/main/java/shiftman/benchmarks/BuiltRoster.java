@@ -0,0 +1,46 @@
+package shiftman.benchmarks;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import shiftman.server.RenderCache;
+
+/**
+ * A roster built once for a whole trial, for benchmarks that only read it. Each call to nextDay(), nextWorker() and
+ * nextManager() moves on to another subject, so that a query is not asked about the same one every time.
+ */
+@State(Scope.Thread)
+public class BuiltRoster extends ScaledRoster {
+
+	private int _nextDay;
+
+	private int _nextWorker;
+
+	private int _nextManager;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		build();
+	}
+
+	String nextDay() {
+		_nextDay = (_nextDay + 1) % DAYS.length;
+		return DAYS[_nextDay];
+	}
+
+	String nextWorker() {
+		_nextWorker = (_nextWorker + 1) % _workerNames.length;
+		return _workerNames[_nextWorker];
+	}
+
+	String nextManager() {
+		_nextManager = (_nextManager + 1) % _managerNames.length;
+		return _managerNames[_nextManager];
+	}
+
+	RenderCache renderCache() {
+		return _scheduler.getRegistry().getRoster(SHOP).getRenderCache();
+	}
+}
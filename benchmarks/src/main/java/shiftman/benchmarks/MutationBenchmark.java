@@ -0,0 +1,120 @@
+package shiftman.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import shiftman.server.ShiftManServer;
+
+/**
+ * Measures the ShiftMan methods that change a roster, each as the average time of one call among a run of BATCH
+ * calls made to a freshly built roster.
+ *
+ * <p>A change cannot be made twice, and a roster cannot be put back as it was, so every invocation starts from a new
+ * roster and makes BATCH different changes to it. The roster is built before the invocation is timed.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(MutationBenchmark.BATCH)
+@Warmup(iterations = 10)
+@Measurement(iterations = 20)
+@Fork(1)
+public class MutationBenchmark {
+
+	static final int BATCH = 1000;
+
+	@State(Scope.Thread)
+	public static class FreshRoster extends ScaledRoster {
+
+		/**
+		 * The family names of the staff registered by registerStaff().
+		 */
+		String[] _newFamilyNames = new String[BATCH];
+
+		/**
+		 * The family names of the staff, registered with the roster but given no shifts, assigned by assignStaff().
+		 */
+		String[] _spareFamilyNames = new String[BATCH];
+
+		@Setup(Level.Trial)
+		public void setUpNames() {
+			for (int i = 0; i < BATCH; i++) {
+				_newFamilyNames[i] = String.format("New%06d", i);
+				_spareFamilyNames[i] = String.format("Spare%06d", i);
+			}
+		}
+
+		@Setup(Level.Invocation)
+		public void setUp() {
+			build();
+			for (String familyName : _spareFamilyNames) {
+				check(_scheduler.registerStaff(GIVEN_NAME, familyName));
+			}
+		}
+	}
+
+	/**
+	 * Sets working hours again on each day in turn, to the hours the day already has.
+	 */
+	@Benchmark
+	public ShiftManServer setWorkingHours(FreshRoster roster) {
+		ShiftManServer scheduler = roster._scheduler;
+		String start = ScaledRoster.TIMES[ScaledRoster.OPENING];
+		String end = ScaledRoster.TIMES[ScaledRoster.CLOSING];
+		for (int i = 0; i < BATCH; i++) {
+			ScaledRoster.check(scheduler.setWorkingHours(ScaledRoster.DAYS[i % ScaledRoster.DAYS.length], start, end));
+		}
+		return scheduler;
+	}
+
+	/**
+	 * Adds one-minute shifts in the free early morning of each day in turn, so that each is checked against the
+	 * day's existing shifts.
+	 */
+	@Benchmark
+	public ShiftManServer addShift(FreshRoster roster) {
+		ShiftManServer scheduler = roster._scheduler;
+		int days = ScaledRoster.DAYS.length;
+		for (int i = 0; i < BATCH; i++) {
+			int minute = ScaledRoster.OPENING + i / days;
+			ScaledRoster.check(scheduler.addShift(ScaledRoster.DAYS[i % days], ScaledRoster.TIMES[minute],
+					ScaledRoster.TIMES[minute + 1], "1"));
+		}
+		return scheduler;
+	}
+
+	@Benchmark
+	public ShiftManServer registerStaff(FreshRoster roster) {
+		ShiftManServer scheduler = roster._scheduler;
+		for (int i = 0; i < BATCH; i++) {
+			ScaledRoster.check(scheduler.registerStaff(ScaledRoster.GIVEN_NAME, roster._newFamilyNames[i]));
+		}
+		return scheduler;
+	}
+
+	/**
+	 * Assigns staff who have no shifts to the existing shifts in turn.
+	 */
+	@Benchmark
+	public ShiftManServer assignStaff(FreshRoster roster) {
+		ShiftManServer scheduler = roster._scheduler;
+		int days = ScaledRoster.DAYS.length;
+		for (int i = 0; i < BATCH; i++) {
+			int shift = i / days % roster.shiftsPerDay;
+			ScaledRoster.check(scheduler.assignStaff(ScaledRoster.DAYS[i % days], roster.shiftStart(shift),
+					roster.shiftEnd(shift), ScaledRoster.GIVEN_NAME, roster._spareFamilyNames[i], false));
+		}
+		return scheduler;
+	}
+}
@@ -0,0 +1,66 @@
+package shiftman.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures every ShiftMan query on a roster built to the size given by the parameters of ScaledRoster.
+ *
+ * <p>getRosterForDay(), getRosterForWorker() and getShiftsManagedBy() are answered from the roster's RenderCache when
+ * they can be, as they are in use. RenderBenchmark measures the rendering behind them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryBenchmark {
+
+	@Benchmark
+	public List<String> getRegisteredStaff(BuiltRoster roster) {
+		return roster._scheduler.getRegisteredStaff();
+	}
+
+	@Benchmark
+	public List<String> getUnassignedStaff(BuiltRoster roster) {
+		return roster._scheduler.getUnassignedStaff();
+	}
+
+	@Benchmark
+	public List<String> shiftsWithoutManagers(BuiltRoster roster) {
+		return roster._scheduler.shiftsWithoutManagers();
+	}
+
+	@Benchmark
+	public List<String> understaffedShifts(BuiltRoster roster) {
+		return roster._scheduler.understaffedShifts();
+	}
+
+	@Benchmark
+	public List<String> overstaffedShifts(BuiltRoster roster) {
+		return roster._scheduler.overstaffedShifts();
+	}
+
+	@Benchmark
+	public List<String> getRosterForDay(BuiltRoster roster) {
+		return roster._scheduler.getRosterForDay(roster.nextDay());
+	}
+
+	@Benchmark
+	public List<String> getRosterForWorker(BuiltRoster roster) {
+		return roster._scheduler.getRosterForWorker(roster.nextWorker());
+	}
+
+	@Benchmark
+	public List<String> getShiftsManagedBy(BuiltRoster roster) {
+		return roster._scheduler.getShiftsManagedBy(roster.nextManager());
+	}
+}
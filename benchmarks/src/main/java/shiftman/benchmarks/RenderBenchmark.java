@@ -0,0 +1,63 @@
+package shiftman.benchmarks;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures rendering a roster as text: the whole roster, its issues, and the lists for a day, a worker and a
+ * manager with the RenderCache emptied first, so that every call renders its list afresh.
+ * Run with the gc profiler, the allocation rate shows what each line of a roster costs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderBenchmark {
+
+	@Benchmark
+	public String displayRoster(BuiltRoster roster) {
+		return roster._scheduler.displayRoster();
+	}
+
+	/**
+	 * Writes the roster to a Writer that throws it away, as it would be sent to a client.
+	 */
+	@Benchmark
+	public void displayRosterStreamed(BuiltRoster roster) throws IOException {
+		roster._scheduler.displayRoster(Writer.nullWriter());
+	}
+
+	@Benchmark
+	public String reportRosterIssues(BuiltRoster roster) {
+		return roster._scheduler.reportRosterIssues();
+	}
+
+	@Benchmark
+	public List<String> getRosterForDay(BuiltRoster roster) {
+		roster.renderCache().clear();
+		return roster._scheduler.getRosterForDay(roster.nextDay());
+	}
+
+	@Benchmark
+	public List<String> getRosterForWorker(BuiltRoster roster) {
+		roster.renderCache().clear();
+		return roster._scheduler.getRosterForWorker(roster.nextWorker());
+	}
+
+	@Benchmark
+	public List<String> getShiftsManagedBy(BuiltRoster roster) {
+		roster.renderCache().clear();
+		return roster._scheduler.getShiftsManagedBy(roster.nextManager());
+	}
+}
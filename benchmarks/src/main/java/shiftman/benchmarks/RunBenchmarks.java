@@ -0,0 +1,36 @@
+package shiftman.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.ProfilerConfig;
+
+/**
+ * Runs the benchmarks named on the command line, or all of them, taking the same options as JMH itself.
+ * The gc profiler is always added, so that the allocation made by each call is reported beside its time.
+ */
+public class RunBenchmarks {
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		if (commandLine.shouldHelp() || commandLine.shouldList() || commandLine.shouldListWithParams()
+				|| commandLine.shouldListProfilers() || commandLine.shouldListResultFormats()) {
+			org.openjdk.jmh.Main.main(args);
+			return;
+		}
+
+		OptionsBuilder options = new OptionsBuilder();
+		options.parent(commandLine);
+		boolean profilingGc = false;
+		for (ProfilerConfig profiler : commandLine.getProfilers()) {
+			profilingGc |= profiler.getKlass().equals("gc") || profiler.getKlass().equals(GCProfiler.class.getName());
+		}
+		if (!profilingGc) {
+			options.addProfiler(GCProfiler.class);
+		}
+		Options built = options.build();
+		new Runner(built).run();
+	}
+}
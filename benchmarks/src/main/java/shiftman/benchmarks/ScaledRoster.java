@@ -0,0 +1,194 @@
+package shiftman.benchmarks;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import shiftman.server.RosterCommand;
+import shiftman.server.ShiftManServer;
+
+/**
+ * A roster for a single shop, built through the ShiftMan API to the size given by its parameters, which can be
+ * changed from the command line with -p, as in -p staff=20000.
+ *
+ * <p>Every day has working hours of 00:01 to 23:59, and shiftsPerDay back-to-back shifts between 06:00 and 22:00,
+ * leaving the early morning free for new shifts. Each shift has assignmentsPerShift workers (or every member of
+ * staff, if there are fewer), taken in turn from the staff list, and every other shift is managed by its first
+ * worker. A third of the shifts ask for one more worker than they have and a third for one fewer, so every query
+ * has something to find.
+ * Staff beyond those needed to fill the shifts are left unassigned.
+ */
+@State(Scope.Benchmark)
+public class ScaledRoster {
+
+	static final String SHOP = "Benchmark Hardware";
+	static final String[] DAYS = { "Monday", "Tuesday", "Wednesday", "Thursday", "Friday", "Saturday", "Sunday" };
+	static final String GIVEN_NAME = "Worker";
+
+	/**
+	 * Every time of day in the format hh:mm, indexed by minute.
+	 */
+	static final String[] TIMES = new String[24 * 60];
+
+	static {
+		for (int m = 0; m < TIMES.length; m++) {
+			TIMES[m] = String.format("%02d:%02d", m / 60, m % 60);
+		}
+	}
+
+	/**
+	 * The earliest time a day's working hours can start, as they cannot include midnight.
+	 */
+	static final int OPENING = 1;
+	static final int CLOSING = 24 * 60 - 1;
+
+	private static final int FIRST_SHIFT_START = 6 * 60;
+	private static final int LAST_SHIFT_END = 22 * 60;
+	private static final int BATCH_SIZE = 10000;
+
+	/**
+	 * The number of registered staff, from Driver1's handful up to a large chain store.
+	 */
+	@Param({ "5", "1000", "100000" })
+	public int staff;
+
+	@Param({ "2", "48" })
+	public int shiftsPerDay;
+
+	@Param({ "1", "5", "50" })
+	public int assignmentsPerShift;
+
+	ShiftManServer _scheduler;
+
+	/**
+	 * The whole name of every member of staff assigned to at least one shift.
+	 */
+	String[] _workerNames;
+
+	/**
+	 * The whole name of every member of staff managing at least one shift.
+	 */
+	String[] _managerNames;
+
+	/**
+	 * Builds a fresh roster in a new ShiftManServer.
+	 */
+	void build() {
+		if (shiftsPerDay < 1 || shiftsPerDay > LAST_SHIFT_END - FIRST_SHIFT_START) {
+			throw new IllegalArgumentException("shiftsPerDay must be between 1 and " + (LAST_SHIFT_END - FIRST_SHIFT_START));
+		}
+		_scheduler = new ShiftManServer();
+		check(_scheduler.newRoster(SHOP));
+
+		List<RosterCommand> commands = new ArrayList<>();
+		for (int d = 0; d < DAYS.length; d++) {
+			commands.add(RosterCommand.setWorkingHours(DAYS[d], TIMES[OPENING], TIMES[CLOSING]));
+			for (int i = 0; i < shiftsPerDay; i++) {
+				commands.add(RosterCommand.addShift(DAYS[d], shiftStart(i), shiftEnd(i), minimumWorkers(i)));
+			}
+		}
+		for (int s = 0; s < staff; s++) {
+			commands.add(RosterCommand.registerStaff(GIVEN_NAME, familyName(s)));
+			commands = flushIfFull(commands);
+		}
+
+		int perShift = assignedPerShift();
+		int assignments = DAYS.length * shiftsPerDay * perShift;
+		_workerNames = new String[Math.min(staff, assignments)];
+		for (int s = 0; s < _workerNames.length; s++) {
+			_workerNames[s] = wholeName(s);
+		}
+		Set<String> managers = new LinkedHashSet<>();
+		for (int d = 0; d < DAYS.length; d++) {
+			for (int i = 0; i < shiftsPerDay; i++) {
+				int first = (d * shiftsPerDay + i) * perShift;
+				for (int j = 0; j < perShift; j++) {
+					commands.add(RosterCommand.assignStaff(DAYS[d], shiftStart(i), shiftEnd(i), GIVEN_NAME,
+							familyName((first + j) % staff), false));
+					commands = flushIfFull(commands);
+				}
+				if (i % 2 == 0) {
+					int s = first % staff;
+					commands.add(RosterCommand.assignStaff(DAYS[d], shiftStart(i), shiftEnd(i), GIVEN_NAME, familyName(s),
+							true));
+					managers.add(wholeName(s));
+				}
+			}
+		}
+		apply(commands);
+		_managerNames = managers.toArray(new String[0]);
+	}
+
+	/**
+	 * The number of workers assigned to each shift, which can be no more than the number of staff.
+	 */
+	int assignedPerShift() {
+		return Math.min(assignmentsPerShift, staff);
+	}
+
+	String shiftStart(int shift) {
+		return TIMES[FIRST_SHIFT_START + shift * shiftLength()];
+	}
+
+	String shiftEnd(int shift) {
+		return TIMES[FIRST_SHIFT_START + (shift + 1) * shiftLength()];
+	}
+
+	static String familyName(int staff) {
+		return String.format("Staff%06d", staff);
+	}
+
+	static String wholeName(int staff) {
+		return GIVEN_NAME + " " + familyName(staff);
+	}
+
+	/**
+	 * Fails the benchmark if a change to the roster did not succeed, so that nothing is measured but the work asked for.
+	 */
+	static void check(String status) {
+		if (!status.isEmpty()) {
+			throw new IllegalStateException(status);
+		}
+	}
+
+	private int shiftLength() {
+		return (LAST_SHIFT_END - FIRST_SHIFT_START) / shiftsPerDay;
+	}
+
+	private String minimumWorkers(int shift) {
+		int wanted = assignedPerShift();
+		if (shift % 3 == 1) {
+			wanted++;
+		} else if (shift % 3 == 2) {
+			wanted = Math.max(1, wanted - 1);
+		}
+		return Integer.toString(wanted);
+	}
+
+	/**
+	 * Helper method for build().
+	 * Applies the commands as a batch once there are enough of them, so that a large roster is built in a few
+	 * copies rather than one for each change.
+	 */
+	private List<RosterCommand> flushIfFull(List<RosterCommand> commands) {
+		if (commands.size() < BATCH_SIZE) {
+			return commands;
+		}
+		apply(commands);
+		return new ArrayList<>();
+	}
+
+	/**
+	 * Helper method for build() and flushIfFull().
+	 */
+	private void apply(List<RosterCommand> commands) {
+		for (String status : _scheduler.applyBatch(commands)) {
+			check(status);
+		}
+	}
+}
@@ -0,0 +1,234 @@
+package shiftman.client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import shiftman.server.AutoFiller;
+import shiftman.server.Roster;
+import shiftman.server.RosterCommand;
+import shiftman.server.RosterSnapshot;
+import shiftman.server.Shift;
+import shiftman.server.ShiftSlot;
+import shiftman.server.StaffMember;
+
+/**
+ * Measures Roster.autoFill() on a roster of 5,000 staff and about 2,000 shifts, a third of them already partly
+ * staffed, and checks that it leaves no shift understaffed or without a manager, keeps every assignment that was
+ * already made, and spreads the work evenly.
+ *
+ * <p>A small roster with shifts of different lengths and uneven existing assignments is also filled, and there the
+ * search must spread the work more evenly than filling each gap in turn did.
+ *
+ * <p>Arguments are the number of staff, the number of shifts per day, and the time budget in milliseconds.
+ */
+public class AutoFillBenchmark {
+
+	private static final String[] DAYS = { "Monday", "Tuesday", "Wednesday", "Thursday", "Friday", "Saturday", "Sunday" };
+	private static final int ROUNDS = 5;
+
+	private static int failures = 0;
+
+	public static void main(String[] args) {
+		int staff = (args.length > 0) ? Integer.parseInt(args[0]) : 5000;
+		int shiftsPerDay = (args.length > 1) ? Integer.parseInt(args[1]) : 286;
+		long budget = (args.length > 2) ? Long.parseLong(args[2]) : 500;
+
+		System.out.printf("%d staff, %d shifts, %d ms budget, %d threads in the pool%n", staff,
+				shiftsPerDay * DAYS.length, budget, ForkJoinPool.commonPool().getParallelism() + 1);
+		for (int round = 1; round <= ROUNDS; round++) {
+			Roster roster = buildRoster(staff, shiftsPerDay, round);
+			RosterSnapshot before = roster.snapshot();
+
+			long start = System.nanoTime();
+			AutoFiller.Plan plan = new AutoFiller(ForkJoinPool.commonPool(), budget).plan(before);
+			long planned = System.nanoTime() - start;
+			List<String> statuses = roster.applyBatch(plan.getCommands());
+			long elapsed = System.nanoTime() - start;
+
+			System.out.printf("Round %d: %d assignments planned in %.1f ms, made in %.1f ms; load spread %.1f min "
+					+ "after filling, %.1f min after %d moves in %d rounds%n", round, plan.getCommands().size(),
+					planned / 1e6, (elapsed - planned) / 1e6, plan.getGreedyLoadSpread(), plan.getLoadSpread(),
+					plan.getSearchMoves(), plan.getSearchRounds());
+			for (String status : statuses) {
+				check("assignment status", status.isEmpty(), status);
+			}
+			checkFilled(before, roster.snapshot(), plan);
+			check("time", elapsed < 1_000_000_000L, (elapsed / 1_000_000) + " ms");
+		}
+
+		Roster uneven = buildUnevenRoster(20);
+		RosterSnapshot before = uneven.snapshot();
+		AutoFiller.Plan plan = new AutoFiller(ForkJoinPool.commonPool(), budget).plan(before);
+		System.out.printf("Uneven roster: load spread %.1f min after filling, %.1f min after %d moves in %d rounds%n",
+				plan.getGreedyLoadSpread(), plan.getLoadSpread(), plan.getSearchMoves(), plan.getSearchRounds());
+		for (String status : uneven.applyBatch(plan.getCommands())) {
+			check("assignment status", status.isEmpty(), status);
+		}
+		checkFilled(before, uneven.snapshot(), plan);
+		check("load spread after the search", plan.getLoadSpread() < plan.getGreedyLoadSpread(),
+				plan.getLoadSpread() + " against " + plan.getGreedyLoadSpread());
+
+		// With too few staff, everyone is put on the shift once and it is left short
+		Roster small = new Roster("Small Hardware");
+		small.setWorkingHours("Monday", "09:00", "17:00");
+		small.addShift("Monday", "09:00", "17:00", "5");
+		for (int s = 0; s < 3; s++) {
+			small.registerStaff("Worker", familyName(s));
+		}
+		List<String> statuses = small.autoFill(budget);
+		check("statuses for a small roster", statuses.size() == 3 && !statuses.stream().anyMatch(st -> !st.isEmpty()),
+				statuses.toString());
+		check("shift with more workers than staff", small.snapshot().getUnderstaffedShifts().size() == 1,
+				small.snapshot().getUnderstaffedShifts().toString());
+		check("shifts without a manager", small.snapshot().getUnmanagedShifts().isEmpty(),
+				small.snapshot().getUnmanagedShifts().toString());
+
+		if (failures == 0) {
+			System.out.println("PASS: every shift was filled, and every assignment already made was kept");
+		} else {
+			System.out.println("FAIL: " + failures + " checks failed");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Builds a roster of short shifts around the clock, each wanting from one to eight workers. A third of the shifts
+	 * are given a manager and some of their workers to begin with.
+	 */
+	private static Roster buildRoster(int staff, int shiftsPerDay, long seed) {
+		Random random = new Random(seed);
+		Roster roster = new Roster("Auto Fill Hardware");
+		int length = (23 * 60 + 58) / shiftsPerDay;
+		List<RosterCommand> commands = new ArrayList<>();
+		for (String day : DAYS) {
+			commands.add(RosterCommand.setWorkingHours(day, "00:01", "23:59"));
+			for (int i = 0; i < shiftsPerDay; i++) {
+				commands.add(RosterCommand.addShift(day, time(1 + i * length), time(1 + (i + 1) * length),
+						Integer.toString(1 + random.nextInt(8))));
+			}
+		}
+		for (int s = 0; s < staff; s++) {
+			commands.add(RosterCommand.registerStaff("Worker", familyName(s)));
+		}
+		for (String day : DAYS) {
+			for (int i = 0; i < shiftsPerDay; i++) {
+				if (random.nextInt(3) != 0) {
+					continue;
+				}
+				String start = time(1 + i * length);
+				String end = time(1 + (i + 1) * length);
+				commands.add(RosterCommand.assignStaff(day, start, end, "Worker", familyName(random.nextInt(staff)),
+						true));
+				int workers = Math.min(staff, random.nextInt(4));
+				int first = random.nextInt(staff);
+				for (int w = 0; w < workers; w++) {
+					commands.add(RosterCommand.assignStaff(day, start, end, "Worker", familyName((first + w) % staff),
+							false));
+				}
+			}
+		}
+		for (String status : roster.applyBatch(commands)) {
+			check("setting up", status.isEmpty(), status);
+		}
+		return roster;
+	}
+
+	/**
+	 * Builds a roster whose days are eight one-hour shifts and then one eight-hour shift, each wanting two workers.
+	 * The first of the staff already manage the long shifts, and so start out with far more work than the rest.
+	 * Filling the gaps in order hands the short shifts to the lightly loaded staff first, and then the long shifts
+	 * to whoever is lightest by then, which leaves them with far more work than those who only got short shifts.
+	 */
+	private static Roster buildUnevenRoster(int staff) {
+		Roster roster = new Roster("Uneven Hardware");
+		List<RosterCommand> commands = new ArrayList<>();
+		for (int s = 0; s < staff; s++) {
+			commands.add(RosterCommand.registerStaff("Worker", familyName(s)));
+		}
+		for (int d = 0; d < DAYS.length; d++) {
+			commands.add(RosterCommand.setWorkingHours(DAYS[d], "06:00", "22:00"));
+			for (int hour = 6; hour < 14; hour++) {
+				commands.add(RosterCommand.addShift(DAYS[d], time(hour * 60), time((hour + 1) * 60), "2"));
+			}
+			commands.add(RosterCommand.addShift(DAYS[d], "14:00", "22:00", "2"));
+			commands.add(RosterCommand.assignStaff(DAYS[d], "14:00", "22:00", "Worker", familyName(d % (staff / 4)),
+					true));
+		}
+		for (String status : roster.applyBatch(commands)) {
+			check("setting up", status.isEmpty(), status);
+		}
+		return roster;
+	}
+
+	/**
+	 * Helper method for main().
+	 * Checks that every shift is filled, that everyone who was on a shift still is, and that the loads the plan
+	 * reports are those of the roster.
+	 */
+	private static void checkFilled(RosterSnapshot before, RosterSnapshot after, AutoFiller.Plan plan) {
+		check("unfilled positions", plan.getUnfilledPositions() == 0, Integer.toString(plan.getUnfilledPositions()));
+		check("understaffed shifts", after.getUnderstaffedShifts().isEmpty(),
+				after.getUnderstaffedShifts().size() + " shifts");
+		check("shifts without a manager", after.getUnmanagedShifts().isEmpty(),
+				after.getUnmanagedShifts().size() + " shifts");
+
+		Map<StaffMember, Integer> load = new HashMap<>();
+		for (StaffMember s : after.getStaffList()) {
+			load.put(s, 0);
+		}
+		for (Roster.DaysOfWeek d : Roster.DaysOfWeek.values()) {
+			for (Shift shift : before.getDay(d).getShifts()) {
+				Shift now = after.getShift(shift.getSlot());
+				for (StaffMember s : shift.getAssignedStaff()) {
+					check("worker kept", now.getAssignedStaff().contains(s), s + " on " + shift.getSlot());
+				}
+				if (shift.getManager() != null) {
+					check("manager kept", shift.getManager().equals(now.getManager()), shift.getSlot().toString());
+				}
+			}
+			for (Shift shift : after.getDay(d).getShifts()) {
+				ShiftSlot slot = shift.getSlot();
+				int minutes = slot.getEndMinutes() - slot.getStartMinutes();
+				for (StaffMember s : shift.getAssignedStaff()) {
+					load.merge(s, minutes, Integer::sum);
+				}
+				if (shift.getManager() != null && !shift.getAssignedStaff().contains(shift.getManager())) {
+					load.merge(shift.getManager(), minutes, Integer::sum);
+				}
+			}
+		}
+
+		double sum = 0;
+		double sumOfSquares = 0;
+		for (int l : load.values()) {
+			sum += l;
+			sumOfSquares += (double) l * l;
+		}
+		double mean = sum / load.size();
+		double spread = Math.sqrt(sumOfSquares / load.size() - mean * mean);
+		check("load spread", Math.abs(spread - plan.getLoadSpread()) < 0.01, spread + " against "
+				+ plan.getLoadSpread());
+		check("load spread no worse than filling alone", plan.getLoadSpread() <= plan.getGreedyLoadSpread(),
+				plan.getLoadSpread() + " against " + plan.getGreedyLoadSpread());
+	}
+
+	private static void check(String what, boolean ok, String detail) {
+		if (!ok) {
+			if (failures++ < 10) {
+				System.err.println("Wrong " + what + ": " + detail);
+			}
+		}
+	}
+
+	private static String familyName(int staff) {
+		return String.format("Staff%06d", staff);
+	}
+
+	private static String time(int minutes) {
+		return String.format("%02d:%02d", minutes / 60, minutes % 60);
+	}
+}
@@ -0,0 +1,196 @@
+package shiftman.client;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import shiftman.server.CalendarRoster;
+import shiftman.server.SnapshotRosterStore;
+
+/**
+ * Fills a CalendarRoster with two years of shifts, keeping only a few weeks in memory and the rest in a
+ * SnapshotRosterStore, and checks the roster it gives for a worker over a week, a month and the whole two years
+ * against the assignments that were made. Checks that a query only loads the weeks in its range, and reports how long
+ * each query takes with every week out in the store.
+ *
+ * <p>Arguments are the number of staff, the number of weeks, and the most weeks to keep in memory.
+ */
+public class CalendarRosterBenchmark {
+
+	private static final LocalDate FIRST_DAY = LocalDate.parse("2026-01-05");
+	private static final String[] SHIFT_TIMES = { "07:00", "10:00", "13:00", "16:00", "19:00", "22:00" };
+
+	private static int failures = 0;
+
+	public static void main(String[] args) throws IOException {
+		int staff = (args.length > 0) ? Integer.parseInt(args[0]) : 300;
+		int weeks = (args.length > 1) ? Integer.parseInt(args[1]) : 104;
+		int maxResidentWeeks = (args.length > 2) ? Integer.parseInt(args[2]) : 8;
+
+		Path directory = Files.createTempDirectory("shiftman-calendar");
+		try {
+			run(directory, staff, weeks, maxResidentWeeks);
+		} finally {
+			try (Stream<Path> files = Files.walk(directory)) {
+				for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+					Files.delete(p);
+				}
+			}
+		}
+
+		if (failures == 0) {
+			System.out.println("PASS: every range gave the shifts assigned in it, loading only the weeks it covers");
+		} else {
+			System.out.println("FAIL: " + failures + " checks failed");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Helper method for main().
+	 */
+	private static void run(Path directory, int staff, int weeks, int maxResidentWeeks) throws IOException {
+		CalendarRoster calendar = new CalendarRoster("Calendar Hardware", new SnapshotRosterStore(directory),
+				maxResidentWeeks);
+		Random random = new Random(1);
+
+		// Half the staff are registered before the first week is created, and the rest a year in
+		Map<String, List<String>> worked = new HashMap<>();
+		for (int s = 0; s < staff / 2; s++) {
+			register(calendar, s, worked);
+		}
+		int unmanaged = 0;
+		long start = System.nanoTime();
+		LocalDate last = FIRST_DAY.plusDays(weeks * 7L - 1);
+		for (LocalDate date = FIRST_DAY; !date.isAfter(last); date = date.plusDays(1)) {
+			if (date.equals(FIRST_DAY.plusYears(1))) {
+				for (int s = staff / 2; s < staff; s++) {
+					register(calendar, s, worked);
+				}
+			}
+			int registered = worked.size();
+			check("working hours", calendar.setWorkingHours(date.toString(), "07:00", "23:00"), date.toString());
+			for (int i = 0; i < SHIFT_TIMES.length; i++) {
+				String end = (i + 1 < SHIFT_TIMES.length) ? SHIFT_TIMES[i + 1] : "23:00";
+				check("shift", calendar.addShift(date.toString(), SHIFT_TIMES[i], end, "2"), date + " " + i);
+				if (random.nextInt(10) == 0) {
+					unmanaged++;
+				} else {
+					int m = random.nextInt(registered);
+					check("manager", calendar.assignStaff(date.toString(), SHIFT_TIMES[i], end, "Worker",
+							familyName(m), true), date + " " + i);
+				}
+				int first = random.nextInt(registered);
+				for (int w = 0; w < 2; w++) {
+					int s = (first + w) % registered;
+					check("worker", calendar.assignStaff(date.toString(), SHIFT_TIMES[i], end, "Worker",
+							familyName(s), false), date + " " + i);
+					worked.get(familyName(s)).add(date + "[" + SHIFT_TIMES[i] + "-" + end + "]");
+				}
+			}
+		}
+		System.out.printf("%d weeks, %d staff: set up in %.1f ms, %d weeks in memory, %d in the store%n",
+				calendar.getWeekCount(), staff, (System.nanoTime() - start) / 1e6, calendar.getResidentWeekCount(),
+				calendar.getWeekCount() - calendar.getResidentWeekCount());
+		check("weeks in memory", calendar.getResidentWeekCount() <= maxResidentWeeks,
+				Integer.toString(calendar.getResidentWeekCount()));
+
+		// A worker registered in the second year, who only appears in its weeks
+		String late = familyName(staff - 1);
+		String lastDay = last.toString();
+		LocalDate monthStart = FIRST_DAY.plusYears(1).plusMonths(2).withDayOfMonth(1);
+		LocalDate weekStart = monthStart.plusDays(14);
+		for (String name : new String[] { familyName(0), late }) {
+			List<String> all = worked.get(name);
+			checkRange(calendar, name, weekStart, weekStart.plusDays(6), all, 1);
+			checkRange(calendar, name, monthStart, monthStart.plusMonths(1).minusDays(1), all, 6);
+			checkRange(calendar, name, FIRST_DAY, last, all, weeks);
+		}
+
+		calendar.evictIdle(0);
+		List<String> unmanagedShifts = calendar.listUnmanagedShifts(FIRST_DAY.toString(), lastDay);
+		check("unmanaged shifts", unmanagedShifts.size() == unmanaged, unmanagedShifts.size() + " against " + unmanaged);
+		check("understaffed shifts", calendar.listOverOrUnderstaffedShifts(-1, FIRST_DAY.toString(), lastDay).isEmpty(),
+				"some were");
+
+		calendar.evictIdle(0);
+		List<String> day = calendar.getRosterForDay(weekStart.toString());
+		check("day roster", day.size() == SHIFT_TIMES.length + 2 && day.get(0).equals("Calendar Hardware")
+				&& day.get(1).equals(weekStart + " 07:00-23:00") && day.get(2).startsWith(weekStart + "[07:00-10:00] "),
+				day.toString());
+		check("weeks loaded for a day", calendar.getResidentWeekCount() == 1,
+				Integer.toString(calendar.getResidentWeekCount()));
+
+		expect("date", String.join("", calendar.getRosterForDay("2026-02-30")), "ERROR: Date given is invalid");
+		expect("range", String.join("", calendar.getRosterForWorker("Worker", late, lastDay, FIRST_DAY.toString())),
+				"ERROR: End date is before start date");
+		expect("staff", calendar.assignStaff(lastDay, "07:00", "10:00", "No", "One", false),
+				"ERROR: Staff member is not registered");
+		expect("day without hours", calendar.addShift(last.plusDays(7).toString(), "07:00", "10:00", "1"),
+				"ERROR: Working hours have not been set for this day");
+		check("days outside the calendar", calendar.getRosterForDay(last.plusDays(1).toString()).isEmpty(),
+				"a day was listed");
+	}
+
+	/**
+	 * Helper method for run().
+	 * With every week out in the store, checks the worker's roster over the range, and that no more weeks than the
+	 * range covers were loaded to give it.
+	 */
+	private static void checkRange(CalendarRoster calendar, String name, LocalDate from, LocalDate to,
+			List<String> all, int weeksCovered) {
+		List<String> expected = new ArrayList<>();
+		for (String shift : all) {
+			LocalDate date = LocalDate.parse(shift.substring(0, 10));
+			if (!date.isBefore(from) && !date.isAfter(to)) {
+				expected.add(shift);
+			}
+		}
+		if (!expected.isEmpty()) {
+			expected.add(0, name + ", Worker");
+		}
+
+		calendar.evictIdle(0);
+		long start = System.nanoTime();
+		List<String> roster = calendar.getRosterForWorker("Worker", name, from.toString(), to.toString());
+		long elapsed = System.nanoTime() - start;
+		System.out.printf("%s from %s to %s: %d shifts in %.2f ms, %d weeks loaded%n", name, from, to,
+				Math.max(0, roster.size() - 1), elapsed / 1e6, calendar.getResidentWeekCount());
+		check("worker roster", roster.equals(expected), roster.size() + " lines against " + expected.size());
+		check("weeks loaded", calendar.getResidentWeekCount() <= weeksCovered,
+				calendar.getResidentWeekCount() + " for a range of " + weeksCovered);
+	}
+
+	private static void register(CalendarRoster calendar, int s, Map<String, List<String>> worked) {
+		check("registering", calendar.registerStaff("Worker", familyName(s)), familyName(s));
+		worked.put(familyName(s), new ArrayList<>());
+	}
+
+	private static void check(String what, String status, String detail) {
+		check(what, status.isEmpty(), detail + ": " + status);
+	}
+
+	private static void expect(String what, String status, String expected) {
+		check(what, status.equals(expected), status);
+	}
+
+	private static void check(String what, boolean ok, String detail) {
+		if (!ok) {
+			if (failures++ < 10) {
+				System.err.println("Wrong " + what + ": " + detail);
+			}
+		}
+	}
+
+	private static String familyName(int staff) {
+		return String.format("Staff%06d", staff);
+	}
+}
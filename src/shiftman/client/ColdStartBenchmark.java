@@ -0,0 +1,215 @@
+package shiftman.client;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import shiftman.server.InMemoryRosterStore;
+import shiftman.server.RosterCheckpointer;
+import shiftman.server.RosterCommand;
+import shiftman.server.RosterLog;
+import shiftman.server.RosterRegistry;
+import shiftman.server.ShiftMan;
+import shiftman.server.ShiftManServer;
+import shiftman.server.SnapshotRosterStore;
+
+/**
+ * Measures how long the server takes to start with many shops, comparing a RosterLog replayed from the start with
+ * the same rosters checkpointed by a RosterCheckpointer, where only the changes made since the checkpoint are replayed.
+ * Each start is timed until every shop has answered a query about one day, and every shop must then answer every
+ * query the same way as before the restart.
+ *
+ * <p>Arguments are the number of shops and the number of staff in each.
+ */
+public class ColdStartBenchmark {
+
+	private static final String[] DAYS = { "Monday", "Tuesday", "Wednesday", "Thursday", "Friday", "Saturday", "Sunday" };
+	private static final int SHIFTS_PER_DAY = 16;
+
+	private static int failures = 0;
+
+	public static void main(String[] args) throws Exception {
+		int shops = (args.length > 0) ? Integer.parseInt(args[0]) : 100;
+		int staffPerShop = (args.length > 1) ? Integer.parseInt(args[1]) : 200;
+
+		Path work = Files.createTempDirectory("shiftman-cold-start");
+		try {
+			System.out.printf("%d shops, %d staff each%n", shops, staffPerShop);
+
+			// The same history is written twice: once to a log alone, and once to a log that is checkpointed part way
+			Path logOnly = work.resolve("log-only");
+			RosterLog log = RosterLog.open(logOnly);
+			ShiftManServer scheduler = new ShiftManServer(new RosterRegistry(new InMemoryRosterStore(), Integer.MAX_VALUE, log));
+			buildShops(scheduler, shops, staffPerShop);
+			changeShops(scheduler, shops, staffPerShop);
+			List<String> expected = describeShops(scheduler, shops);
+			log.close();
+
+			Path checkpointed = work.resolve("checkpointed");
+			SnapshotRosterStore store = new SnapshotRosterStore(checkpointed.resolve("snapshots"));
+			log = RosterLog.open(checkpointed.resolve("log"), RosterLog.DEFAULT_SEGMENT_BYTES, store);
+			RosterRegistry registry = new RosterRegistry(store, Integer.MAX_VALUE, log);
+			RosterCheckpointer checkpointer = new RosterCheckpointer(registry, Long.MAX_VALUE / 2);
+			scheduler = new ShiftManServer(registry);
+			buildShops(scheduler, shops, staffPerShop);
+			checkpointer.checkpoint();
+			changeShops(scheduler, shops, staffPerShop);
+			check("checkpointed roster before restart", describeShops(scheduler, shops), expected);
+			log.close();
+			System.out.printf("Log alone: %d KB; checkpointed: %d KB of snapshots and %d KB of log%n",
+					directorySize(logOnly) / 1024, directorySize(store.getDirectory()) / 1024,
+					directorySize(log.getDirectory()) / 1024);
+
+			for (int round = 1; round <= 3; round++) {
+				long start = System.nanoTime();
+				log = RosterLog.open(logOnly);
+				scheduler = new ShiftManServer(new RosterRegistry(new InMemoryRosterStore(), Integer.MAX_VALUE, log));
+				queryOneDay(scheduler, shops);
+				long replayed = System.nanoTime() - start;
+				check("replayed log", describeShops(scheduler, shops), expected);
+				log.close();
+
+				start = System.nanoTime();
+				store = new SnapshotRosterStore(checkpointed.resolve("snapshots"));
+				log = RosterLog.open(checkpointed.resolve("log"), RosterLog.DEFAULT_SEGMENT_BYTES, store);
+				scheduler = new ShiftManServer(new RosterRegistry(store, Integer.MAX_VALUE, log));
+				queryOneDay(scheduler, shops);
+				long restored = System.nanoTime() - start;
+				check("checkpoint and log", describeShops(scheduler, shops), expected);
+				log.close();
+
+				System.out.printf("Round %d: log alone %6.1f ms, checkpoint and log %6.1f ms%n", round, replayed / 1e6, restored / 1e6);
+			}
+		} finally {
+			deleteAll(work);
+		}
+
+		if (failures == 0) {
+			System.out.println("PASS: every restart gave back the same rosters");
+		} else {
+			System.out.println("FAIL: " + failures + " restarts gave back different rosters");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Sets up each shop's week and staff in a few batches, as a shop importing its roster would.
+	 */
+	private static void buildShops(ShiftManServer scheduler, int shops, int staffPerShop) {
+		for (int s = 0; s < shops; s++) {
+			scheduler.newRoster(shopName(s));
+			List<RosterCommand> week = new ArrayList<>();
+			for (String day : DAYS) {
+				week.add(RosterCommand.setWorkingHours(day, "06:00", "22:00"));
+				for (int i = 0; i < SHIFTS_PER_DAY; i++) {
+					week.add(RosterCommand.addShift(day, shiftStart(i), shiftStart(i + 1), "2"));
+				}
+			}
+			scheduler.applyBatch(week);
+
+			List<RosterCommand> staff = new ArrayList<>();
+			for (int w = 0; w < staffPerShop; w++) {
+				staff.add(RosterCommand.registerStaff("Worker", familyName(w)));
+				for (int d = 0; d < DAYS.length; d += 2) {
+					int shift = (w + d) % SHIFTS_PER_DAY;
+					staff.add(RosterCommand.assignStaff(DAYS[d], shiftStart(shift), shiftStart(shift + 1),
+							"Worker", familyName(w), w % SHIFTS_PER_DAY == 0));
+				}
+			}
+			scheduler.applyBatch(staff);
+		}
+	}
+
+	/**
+	 * Makes a few changes one at a time to every other shop, which is what is left in the log after a checkpoint.
+	 */
+	private static void changeShops(ShiftManServer scheduler, int shops, int staffPerShop) {
+		for (int s = 0; s < shops; s += 2) {
+			scheduler.selectRoster(shopName(s));
+			scheduler.registerStaff("Late", "Starter");
+			scheduler.assignStaff("Tuesday", "06:00", "07:00", "Late", "Starter", true);
+			scheduler.assignStaff("Tuesday", "07:00", "08:00", "Worker", familyName(s % staffPerShop), false);
+		}
+	}
+
+	private static void queryOneDay(ShiftManServer scheduler, int shops) {
+		for (int s = 0; s < shops; s++) {
+			scheduler.selectRoster(shopName(s));
+			scheduler.getRosterForDay("Monday");
+		}
+	}
+
+	/**
+	 * Everything each shop can be asked, as one string per shop.
+	 */
+	private static List<String> describeShops(ShiftManServer scheduler, int shops) {
+		List<String> descriptions = new ArrayList<>();
+		for (int s = 0; s < shops; s++) {
+			scheduler.selectRoster(shopName(s));
+			descriptions.add(describe(scheduler));
+		}
+		return descriptions;
+	}
+
+	private static String describe(ShiftMan scheduler) {
+		List<Object> answers = new ArrayList<>();
+		answers.add(scheduler.getRegisteredStaff());
+		answers.add(scheduler.getUnassignedStaff());
+		answers.add(scheduler.shiftsWithoutManagers());
+		answers.add(scheduler.understaffedShifts());
+		answers.add(scheduler.overstaffedShifts());
+		for (String day : DAYS) {
+			answers.add(scheduler.getRosterForDay(day));
+		}
+		answers.add(scheduler.getRosterForWorker("Worker " + familyName(0)));
+		answers.add(scheduler.getShiftsManagedBy("Worker " + familyName(0)));
+		return answers.toString();
+	}
+
+	private static void check(String what, List<String> actual, List<String> expected) {
+		if (!actual.equals(expected)) {
+			failures++;
+			System.err.println("Wrong rosters: " + what);
+		}
+	}
+
+	private static String shopName(int shop) {
+		return String.format("Branch %03d", shop);
+	}
+
+	private static String familyName(int staff) {
+		return String.format("Staff%05d", staff);
+	}
+
+	private static String shiftStart(int shift) {
+		int minutes = 6 * 60 + shift * 60;
+		return String.format("%02d:%02d", minutes / 60, minutes % 60);
+	}
+
+	private static long directorySize(Path directory) throws IOException {
+		long size = 0;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+			for (Path p : files) {
+				size += Files.size(p);
+			}
+		}
+		return size;
+	}
+
+	private static void deleteAll(Path path) throws IOException {
+		if (!Files.exists(path)) {
+			return;
+		}
+		if (Files.isDirectory(path)) {
+			try (DirectoryStream<Path> files = Files.newDirectoryStream(path)) {
+				for (Path p : files) {
+					deleteAll(p);
+				}
+			}
+		}
+		Files.delete(path);
+	}
+}
@@ -0,0 +1,206 @@
+package shiftman.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import shiftman.server.ShiftMan;
+import shiftman.server.ShiftManServer;
+import shiftman.server.SingleWriterShiftMan;
+
+/**
+ * Hammers a single ShiftManServer (or SingleWriterShiftMan) from many threads at once, and checks that every answer it gives
+ * could have come from the requests being applied one at a time.
+ *
+ * <p>Each writer thread assigns its own staff members, in order, to a shift on every day from Monday
+ * to Sunday. While that happens, readers check that:
+ * <ul>
+ * <li>a worker's roster is always a run of consecutive days starting on Monday, never Monday and Wednesday
+ * without Tuesday, even though changes to different days are made at the same time;</li>
+ * <li>the staff each writer has assigned always form a prefix of that writer's staff in the unassigned list,
+ * so a later assignment is never visible without an earlier one.</li>
+ * </ul>
+ * All writers also race to register the same names and to manage the same shifts, and exactly one must win
+ * each race. Finally the whole roster is compared with what applying the requests in sequence would give.
+ */
+public class ConcurrencyStressDriver {
+
+	private static final String[] DAYS = { "Monday", "Tuesday", "Wednesday", "Thursday", "Friday", "Saturday", "Sunday" };
+	private static final int WRITERS = 8;
+	private static final int READERS = 4;
+	private static final int STAFF = 400;
+	private static final int SHIFTS_PER_DAY = 48;
+
+	private static final AtomicInteger failures = new AtomicInteger();
+
+	public static void main(String[] args) throws InterruptedException {
+		// Given "single-writer", the same checks are made of a SingleWriterShiftMan
+		boolean singleWriter = args.length > 0 && args[0].equals("single-writer");
+		ShiftMan scheduler = singleWriter ? new SingleWriterShiftMan(new ShiftManServer()) : new ShiftManServer();
+		scheduler.newRoster("Stress Test Hardware");
+		for (String day : DAYS) {
+			scheduler.setWorkingHours(day, "08:00", "20:00");
+			for (int i = 0; i < SHIFTS_PER_DAY; i++) {
+				scheduler.addShift(day, shiftStart(i), shiftEnd(i), "1");
+			}
+		}
+
+		AtomicBoolean writing = new AtomicBoolean(true);
+		AtomicInteger registrations = new AtomicInteger();
+		AtomicInteger managersAssigned = new AtomicInteger();
+		List<Thread> writers = new ArrayList<>();
+		for (int w = 0; w < WRITERS; w++) {
+			final int writer = w;
+			writers.add(new Thread(() -> {
+				// Every writer tries to register every name, in a different case, and only one may succeed
+				for (int s = 0; s < STAFF; s++) {
+					String given = (writer % 2 == 0) ? givenName(s) : givenName(s).toUpperCase();
+					if (scheduler.registerStaff(given, familyName(s)).equals("")) {
+						registrations.incrementAndGet();
+					}
+				}
+				for (int s = writer; s < STAFF; s += WRITERS) {
+					for (String day : DAYS) {
+						int shift = s % SHIFTS_PER_DAY;
+						check("assign worker", scheduler.assignStaff(day, shiftStart(shift), shiftEnd(shift), givenName(s), familyName(s), false).equals(""));
+					}
+				}
+				// Every writer tries to manage every shift, and only one may succeed for each shift
+				for (String day : DAYS) {
+					for (int i = 0; i < SHIFTS_PER_DAY; i++) {
+						if (scheduler.assignStaff(day, shiftStart(i), shiftEnd(i), givenName(writer), familyName(writer), true).equals("")) {
+							managersAssigned.incrementAndGet();
+						}
+					}
+				}
+			}));
+		}
+
+		List<Thread> readers = new ArrayList<>();
+		for (int r = 0; r < READERS; r++) {
+			readers.add(new Thread(() -> {
+				while (writing.get()) {
+					int s = ThreadLocalRandom.current().nextInt(STAFF);
+					checkWorkerRoster(scheduler.getRosterForWorker(givenName(s) + " " + familyName(s)));
+					checkUnassignedStaff(scheduler.getUnassignedStaff());
+				}
+			}));
+		}
+
+		long start = System.nanoTime();
+		readers.forEach(Thread::start);
+		writers.forEach(Thread::start);
+		for (Thread t : writers) {
+			t.join();
+		}
+		writing.set(false);
+		for (Thread t : readers) {
+			t.join();
+		}
+		long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+		check("each name registered exactly once", registrations.get() == STAFF);
+		check("each shift managed exactly once", managersAssigned.get() == DAYS.length * SHIFTS_PER_DAY);
+		check("registered staff", scheduler.getRegisteredStaff().size() == STAFF);
+		check("unassigned staff", scheduler.getUnassignedStaff().isEmpty());
+		check("shifts without managers", scheduler.shiftsWithoutManagers().isEmpty());
+		List<String> expectedUnderstaffed = new ArrayList<>();
+		for (String day : DAYS) {
+			for (int i = 0; i < SHIFTS_PER_DAY; i++) {
+				// Staff are spread over the shifts by number, so later shifts may be left without a worker
+				if (i >= STAFF) {
+					expectedUnderstaffed.add(day + "[" + shiftStart(i) + "-" + shiftEnd(i) + "]");
+				}
+			}
+		}
+		check("understaffed shifts", scheduler.understaffedShifts().equals(expectedUnderstaffed));
+		for (int s = 0; s < STAFF; s++) {
+			check("final worker roster", scheduler.getRosterForWorker(givenName(s) + " " + familyName(s)).size() == DAYS.length + 1);
+		}
+
+		System.out.println("Stress run took " + elapsedMillis + "ms");
+		if (failures.get() == 0) {
+			System.out.println("PASS: every result was consistent with some sequential order of the requests");
+		} else {
+			System.out.println("FAIL: " + failures.get() + " inconsistent results");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Helper method for the readers.
+	 * A worker is assigned Monday first and Sunday last, so their roster must list a run of days from Monday.
+	 */
+	private static void checkWorkerRoster(List<String> roster) {
+		if (roster.size() == 1 && roster.get(0).startsWith("ERROR")) {
+			// Not registered yet
+			return;
+		}
+		for (int i = 1; i < roster.size(); i++) {
+			check("worker roster is a prefix of the week", roster.get(i).startsWith(DAYS[i - 1] + "["));
+		}
+	}
+
+	/**
+	 * Helper method for the readers.
+	 * Each writer assigns its staff in order, so the ones still unassigned must be the last ones it has.
+	 */
+	private static void checkUnassignedStaff(List<String> unassigned) {
+		boolean[] isUnassigned = new boolean[STAFF];
+		for (String name : unassigned) {
+			isUnassigned[Integer.parseInt(name.substring(name.length() - 4))] = true;
+		}
+		for (int writer = 0; writer < WRITERS; writer++) {
+			boolean seenUnassigned = false;
+			for (int s = writer; s < STAFF; s += WRITERS) {
+				if (isUnassigned[s]) {
+					seenUnassigned = true;
+				} else if (seenUnassigned) {
+					// Only a problem if this staff member is registered, otherwise they are simply not listed yet
+					check("unassigned staff is a suffix of each writer's staff", !isRegisteredBefore(unassigned, s));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Helper method for checkUnassignedStaff().
+	 * Every name is registered by the first writer to reach it, so a staff member missing from the unassigned list
+	 * may simply not be registered yet. As the names are registered in order by every writer, any staff member
+	 * numbered below one that is listed has certainly been registered.
+	 */
+	private static boolean isRegisteredBefore(List<String> unassigned, int staff) {
+		for (String name : unassigned) {
+			if (Integer.parseInt(name.substring(name.length() - 4)) > staff) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static void check(String what, boolean ok) {
+		if (!ok) {
+			failures.incrementAndGet();
+			System.out.println("Inconsistent result: " + what);
+		}
+	}
+
+	private static String givenName(int staff) {
+		return "Worker";
+	}
+
+	private static String familyName(int staff) {
+		return String.format("Staff%04d", staff);
+	}
+
+	private static String shiftStart(int shift) {
+		int minutes = 8 * 60 + shift * 15;
+		return String.format("%02d:%02d", minutes / 60, minutes % 60);
+	}
+
+	private static String shiftEnd(int shift) {
+		return shiftStart(shift + 1);
+	}
+}
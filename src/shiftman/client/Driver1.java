@@ -1,7 +1,9 @@
 package shiftman.client;
 
+import java.io.IOException;
 import java.util.List;
 
+import shiftman.server.RemoteShiftMan;
 import shiftman.server.ShiftMan;
 import shiftman.server.ShiftManServer;
 
@@ -39,8 +41,18 @@ public class Driver1 {
 			{ "17:00", "21:00", "" }
 	};
 
-	public static void main(String[] args) {
-		ShiftMan scheduler = new ShiftManServer();
+	public static void main(String[] args) throws IOException {
+		// Given the host:port of a ShiftManRpcServer, the same roster is built on that server instead
+		if (args.length > 0) {
+			try (RemoteShiftMan remote = RemoteShiftMan.connect(args[0])) {
+				run(remote);
+			}
+		} else {
+			run(new ShiftManServer());
+		}
+	}
+
+	private static void run(ShiftMan scheduler) {
 		scheduler.newRoster("eScooters R Us");
 		
 		// Set up the roster
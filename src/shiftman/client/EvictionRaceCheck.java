@@ -0,0 +1,125 @@
+package shiftman.client;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import shiftman.server.InMemoryRosterStore;
+import shiftman.server.Roster;
+import shiftman.server.RosterRegistry;
+import shiftman.server.RosterStore;
+import shiftman.server.SnapshotRosterStore;
+
+/**
+ * Checks that no change is lost when a RosterRegistry evicts a shop while it is being changed.
+ *
+ * <p>Writer threads register staff in two shops while another thread evicts every shop over and over, and the
+ * registry only has room for one shop besides. Half the writers look their shop up for every change, and half keep
+ * the Roster they were first given and go on changing it long after it has been evicted. Once they are done, every
+ * staff member registered must be in the roster loaded back from the store, for both an InMemoryRosterStore and a
+ * SnapshotRosterStore.
+ *
+ * <p>The argument is the number of staff each writer registers.
+ */
+public class EvictionRaceCheck {
+
+	private static final String[] SHOPS = { "Eviction Hardware", "Eviction Garden" };
+	private static final int WRITERS = 8;
+
+	private static int failures = 0;
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int staffPerWriter = (args.length > 0) ? Integer.parseInt(args[0]) : 2000;
+
+		run("InMemoryRosterStore", new InMemoryRosterStore(), staffPerWriter);
+		Path directory = Files.createTempDirectory("shiftman-eviction");
+		try {
+			run("SnapshotRosterStore", new SnapshotRosterStore(directory), staffPerWriter);
+		} finally {
+			try (Stream<Path> files = Files.walk(directory)) {
+				for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+					Files.delete(p);
+				}
+			}
+		}
+
+		if (failures == 0) {
+			System.out.println("PASS: every change made during an eviction reached the store");
+		} else {
+			System.out.println("FAIL: " + failures + " checks failed");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Helper method for main().
+	 */
+	private static void run(String storeName, RosterStore store, int staffPerWriter) throws InterruptedException {
+		RosterRegistry registry = new RosterRegistry(store, 1);
+		AtomicBoolean writing = new AtomicBoolean(true);
+		int[] evictions = new int[1];
+		Thread evictor = new Thread(() -> {
+			while (writing.get()) {
+				evictions[0] += registry.evictIdle(0);
+			}
+		});
+		evictor.start();
+
+		List<Thread> writers = new ArrayList<>();
+		long start = System.nanoTime();
+		for (int w = 0; w < WRITERS; w++) {
+			int writer = w;
+			String shop = SHOPS[w % SHOPS.length];
+			boolean keepsReference = (w / SHOPS.length) % 2 == 0;
+			Thread t = new Thread(() -> {
+				Roster kept = registry.getRoster(shop);
+				for (int s = 0; s < staffPerWriter; s++) {
+					Roster roster = keepsReference ? kept : registry.getRoster(shop);
+					String status = roster.registerStaff("Worker", familyName(writer, s));
+					check("registering", status.isEmpty(), shop + ": " + status);
+				}
+			});
+			writers.add(t);
+			t.start();
+		}
+		for (Thread t : writers) {
+			t.join();
+		}
+		writing.set(false);
+		evictor.join();
+		long elapsed = System.nanoTime() - start;
+
+		registry.evictIdle(0);
+		for (int i = 0; i < SHOPS.length; i++) {
+			List<String> registered = registry.getRoster(SHOPS[i]).listRegisteredStaff();
+			int expected = WRITERS / SHOPS.length * staffPerWriter;
+			check("staff in " + SHOPS[i], registered.size() == expected,
+					storeName + ": " + registered.size() + " against " + expected);
+			for (int w = i; w < WRITERS; w += SHOPS.length) {
+				for (int s = 0; s < staffPerWriter; s += staffPerWriter / 10) {
+					String name = "Worker " + familyName(w, s);
+					check("staff member", registered.contains(name), storeName + ": " + name + " is missing");
+				}
+			}
+		}
+		System.out.printf("%s: %d changes in %.1f ms with %d evictions%n", storeName, WRITERS * staffPerWriter,
+				elapsed / 1e6, evictions[0]);
+	}
+
+	private static synchronized void check(String what, boolean ok, String detail) {
+		if (!ok) {
+			if (failures++ < 10) {
+				System.err.println("Wrong " + what + ": " + detail);
+			}
+		}
+	}
+
+	private static String familyName(int writer, int staff) {
+		return String.format("Staff%02d%06d", writer, staff);
+	}
+}
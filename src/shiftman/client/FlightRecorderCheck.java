@@ -0,0 +1,132 @@
+package shiftman.client;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import shiftman.server.ShiftMan;
+import shiftman.server.ShiftManServer;
+
+/**
+ * Records a bulk load of a roster with Java Flight Recorder, with every ShiftMan event switched on, and checks that
+ * each call and phase gave the events it should, with their fields filled in. It then times the same load with no
+ * recording running, and with one.
+ *
+ * <p>The argument is the number of staff.
+ */
+public class FlightRecorderCheck {
+
+	private static final String[] DAYS = { "Monday", "Tuesday", "Wednesday", "Thursday", "Friday", "Saturday", "Sunday" };
+	private static final int SHIFTS_PER_DAY = 16;
+
+	private static int failures = 0;
+
+	public static void main(String[] args) throws Exception {
+		int staff = (args.length > 0) ? Integer.parseInt(args[0]) : 2000;
+
+		Path file = Files.createTempFile("shiftman", ".jfr");
+		try (Recording recording = new Recording()) {
+			for (String event : new String[] { "Operation", "DayLookup", "StaffLookup", "ClashCheck", "Sort", "Render",
+					"Created" }) {
+				recording.enable("shiftman." + event).withoutThreshold();
+			}
+			recording.start();
+			load(new ShiftManServer(), staff, "Recorded Hardware");
+			recording.stop();
+			recording.dump(file);
+		}
+
+		Map<String, Integer> counts = new HashMap<>();
+		for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+			String name = event.getEventType().getName();
+			counts.merge(name, 1, Integer::sum);
+			if (name.equals("shiftman.Operation") && !"Recorded Hardware".equals(event.getString("shop"))) {
+				fail("Operation event without its shop: " + event);
+			}
+		}
+		Files.delete(file);
+		System.out.println("Events recorded: " + counts);
+
+		int shifts = DAYS.length * SHIFTS_PER_DAY;
+		int calls = DAYS.length + shifts + staff + staff * 2 + 1 + 1;
+		check(counts, "shiftman.Operation", calls);
+		check(counts, "shiftman.Created", 1 + DAYS.length + shifts + staff);
+		check(counts, "shiftman.ClashCheck", shifts);
+		check(counts, "shiftman.StaffLookup", staff * 2 + 1);
+		check(counts, "shiftman.DayLookup", DAYS.length + shifts + staff * 2 + 1);
+		check(counts, "shiftman.Render", 2);
+
+		for (int round = 1; round <= 3; round++) {
+			long start = System.nanoTime();
+			load(new ShiftManServer(), staff, "Unrecorded Hardware");
+			long unrecorded = System.nanoTime() - start;
+			try (Recording recording = new Recording()) {
+				recording.enable("shiftman.Operation");
+				recording.start();
+				start = System.nanoTime();
+				load(new ShiftManServer(), staff, "Recorded Hardware");
+				long recorded = System.nanoTime() - start;
+				recording.stop();
+				System.out.printf("Round %d: load with no recording %6.1f ms, recording operations %6.1f ms%n", round,
+						unrecorded / 1e6, recorded / 1e6);
+			}
+		}
+
+		if (failures == 0) {
+			System.out.println("PASS: every call and phase was recorded");
+		} else {
+			System.out.println("FAIL: " + failures + " kinds of event were wrong");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Sets up the week, registers the staff and assigns each of them twice, then asks for one day and one worker.
+	 */
+	private static void load(ShiftMan scheduler, int staff, String shop) {
+		scheduler.newRoster(shop);
+		for (String day : DAYS) {
+			scheduler.setWorkingHours(day, "08:00", "16:00");
+			for (int i = 0; i < SHIFTS_PER_DAY; i++) {
+				scheduler.addShift(day, shiftStart(i), shiftStart(i + 1), "2");
+			}
+		}
+		for (int s = 0; s < staff; s++) {
+			scheduler.registerStaff("Worker", familyName(s));
+			int shift = s % SHIFTS_PER_DAY;
+			scheduler.assignStaff(DAYS[s % DAYS.length], shiftStart(shift), shiftStart(shift + 1), "Worker",
+					familyName(s), false);
+			scheduler.assignStaff(DAYS[(s + 1) % DAYS.length], shiftStart(shift), shiftStart(shift + 1), "Worker",
+					familyName(s), s % 50 == 0);
+		}
+		scheduler.getRosterForDay("Monday");
+		scheduler.getRosterForWorker("Worker " + familyName(0));
+	}
+
+	private static void check(Map<String, Integer> counts, String event, int expected) {
+		int actual = counts.getOrDefault(event, 0);
+		if (actual != expected) {
+			fail(event + ": " + actual + " events rather than " + expected);
+		}
+	}
+
+	private static void fail(String message) {
+		if (failures++ < 10) {
+			System.err.println(message);
+		}
+	}
+
+	private static String familyName(int staff) {
+		return String.format("Staff%06d", staff);
+	}
+
+	private static String shiftStart(int shift) {
+		int minutes = 8 * 60 + shift * 30;
+		return String.format("%02d:%02d", minutes / 60, minutes % 60);
+	}
+}
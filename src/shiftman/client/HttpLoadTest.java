@@ -0,0 +1,403 @@
+package shiftman.client;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import shiftman.server.BatchShiftMan;
+import shiftman.server.RosterCommand;
+import shiftman.server.RosterRegistry;
+import shiftman.server.ShiftMan;
+import shiftman.server.ShiftManHttpServer;
+import shiftman.server.ShiftManServer;
+
+/**
+ * Puts a ShiftManHttpServer under load from many kept-alive connections at once, each sending read requests as fast
+ * as it can, and reports the requests per second and the latency of the requests at the 50th, 99th and 99.9th
+ * percentiles.
+ *
+ * <p>A shop is set up over HTTP first, and its answers checked against the same changes made in-process, including
+ * a day whose roster is large enough to be streamed. Arguments are the number of connections, the number of seconds
+ * to run for, and optionally the host:port of a server already running, in place of one started here.
+ *
+ * <p>Unless told otherwise on the command line, a server started here has sun.net.httpserver.nodelay set, as
+ * ShiftManHttpServer recommends.
+ */
+public class HttpLoadTest {
+
+	private static final String SHOP = "Load Test Hardware";
+	private static final String[] DAYS = { "Monday", "Tuesday", "Wednesday", "Thursday", "Friday", "Saturday", "Sunday" };
+	private static final int SHIFTS_PER_DAY = 12;
+	private static final int STAFF = 1000;
+
+	private static int failures = 0;
+
+	public static void main(String[] args) throws Exception {
+		int connections = (args.length > 0) ? Integer.parseInt(args[0]) : 16;
+		int seconds = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+		if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+
+		ShiftManHttpServer server = null;
+		String host = "localhost";
+		int port;
+		try {
+			if (args.length > 2) {
+				host = args[2].substring(0, args[2].lastIndexOf(':'));
+				port = Integer.parseInt(args[2].substring(args[2].lastIndexOf(':') + 1));
+			} else {
+				server = new ShiftManHttpServer(new RosterRegistry(), 0);
+				port = server.getPort();
+			}
+
+			BatchShiftMan expected = new ShiftManServer();
+			try (HttpConnection connection = new HttpConnection(host, port)) {
+				setUpShop(connection, expected);
+				checkAnswers(connection, expected);
+			}
+			System.out.println("Checked the shop's answers over HTTP");
+			checkRequestLimit();
+
+			List<String> paths = readPaths();
+			List<long[]> latencies = Collections.synchronizedList(new ArrayList<>());
+			List<Thread> threads = new ArrayList<>();
+			long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+			for (int c = 0; c < connections; c++) {
+				final int first = c;
+				final String h = host;
+				final int p = port;
+				threads.add(new Thread(() -> latencies.add(runConnection(h, p, paths, first, deadline))));
+			}
+			long start = System.nanoTime();
+			threads.forEach(Thread::start);
+			for (Thread t : threads) {
+				t.join();
+			}
+			long elapsed = System.nanoTime() - start;
+
+			long[] all = merge(latencies);
+			Arrays.sort(all);
+			System.out.printf("%d connections, %d requests in %.1f s: %.0f requests/s%n", connections, all.length,
+					elapsed / 1e9, all.length * 1e9 / elapsed);
+			System.out.printf("Latency p50 %.3f ms, p99 %.3f ms, p99.9 %.3f ms, max %.3f ms%n", percentile(all, 50),
+					percentile(all, 99), percentile(all, 99.9), all[all.length - 1] / 1e6);
+		} finally {
+			if (server != null) {
+				server.close();
+			}
+		}
+
+		if (failures == 0) {
+			System.out.println("PASS: every answer over HTTP matched the in-process roster");
+		} else {
+			System.out.println("FAIL: " + failures + " answers over HTTP were wrong");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Creates the shop over HTTP, using single changes for the week and a batch for the staff, and makes the same
+	 * changes in-process for comparison.
+	 */
+	private static void setUpShop(HttpConnection connection, BatchShiftMan expected) throws IOException {
+		check("newRoster", connection.post(shopPath("newRoster"), ""), "{\"result\":\"\"}");
+		expected.newRoster(SHOP);
+		for (String day : DAYS) {
+			connection.post(shopPath("setWorkingHours"), String.format(
+					"{\"dayOfWeek\":\"%s\",\"startTime\":\"08:00\",\"endTime\":\"20:00\"}", day));
+			expected.setWorkingHours(day, "08:00", "20:00");
+			for (int i = 0; i < SHIFTS_PER_DAY; i++) {
+				connection.post(shopPath("addShift"), String.format(
+						"{\"dayOfWeek\":\"%s\",\"startTime\":\"%s\",\"endTime\":\"%s\",\"minimumWorkers\":3}",
+						day, shiftStart(i), shiftStart(i + 1)));
+				expected.addShift(day, shiftStart(i), shiftStart(i + 1), "3");
+			}
+		}
+
+		StringBuilder batch = new StringBuilder("[");
+		List<RosterCommand> commands = new ArrayList<>();
+		for (int s = 0; s < STAFF; s++) {
+			batch.append(String.format("{\"method\":\"registerStaff\",\"givenName\":\"Worker\",\"familyName\":\"%s\"},",
+					familyName(s)));
+			commands.add(RosterCommand.registerStaff("Worker", familyName(s)));
+			for (int d = 0; d < DAYS.length; d++) {
+				// Everyone works Monday, so that its roster is long enough to be streamed
+				int shift = (d == 0) ? s % SHIFTS_PER_DAY : (s + d) % (SHIFTS_PER_DAY * 2);
+				if (shift < SHIFTS_PER_DAY) {
+					boolean isManager = s < SHIFTS_PER_DAY;
+					batch.append(String.format("{\"method\":\"assignStaff\",\"dayOfWeek\":\"%s\",\"startTime\":\"%s\","
+							+ "\"endTime\":\"%s\",\"givenName\":\"Worker\",\"familyName\":\"%s\",\"isManager\":%b},",
+							DAYS[d], shiftStart(shift), shiftStart(shift + 1), familyName(s), isManager));
+					commands.add(RosterCommand.assignStaff(DAYS[d], shiftStart(shift), shiftStart(shift + 1), "Worker",
+							familyName(s), isManager));
+				}
+			}
+		}
+		batch.setCharAt(batch.length() - 1, ']');
+		check("applyBatch", connection.post(shopPath("applyBatch"), batch.toString()), toJson(expected.applyBatch(commands)));
+	}
+
+	/**
+	 * Asks every query over HTTP and compares the answers with the in-process roster, along with some bad requests.
+	 */
+	private static void checkAnswers(HttpConnection connection, ShiftMan expected) throws IOException {
+		check("getRegisteredStaff", connection.get(shopPath("getRegisteredStaff")), toJson(expected.getRegisteredStaff()));
+		check("getUnassignedStaff", connection.get(shopPath("getUnassignedStaff")), toJson(expected.getUnassignedStaff()));
+		check("shiftsWithoutManagers", connection.get(shopPath("shiftsWithoutManagers")),
+				toJson(expected.shiftsWithoutManagers()));
+		check("understaffedShifts", connection.get(shopPath("understaffedShifts")), toJson(expected.understaffedShifts()));
+		check("overstaffedShifts", connection.get(shopPath("overstaffedShifts")), toJson(expected.overstaffedShifts()));
+		for (String day : DAYS) {
+			check("getRosterForDay " + day, connection.get(shopPath("getRosterForDay") + "?dayOfWeek=" + day),
+					toJson(expected.getRosterForDay(day)));
+			if (day.equals("Monday")) {
+				check("streamed response", connection.wasChunked() ? "yes" : "no", "yes");
+			}
+		}
+		String worker = "Worker " + familyName(1);
+		check("getRosterForWorker", connection.get(shopPath("getRosterForWorker") + "?workerName=" + encode(worker)),
+				toJson(expected.getRosterForWorker(worker)));
+		check("getShiftsManagedBy", connection.get(shopPath("getShiftsManagedBy") + "?managerName=" + encode(worker)),
+				toJson(expected.getShiftsManagedBy(worker)));
+		check("error status", connection.post(shopPath("assignStaff"), "{\"dayOfWeek\":\"Funday\",\"startTime\":\"08:00\","
+				+ "\"endTime\":\"09:00\",\"givenName\":\"Worker\",\"familyName\":\"Nobody\"}"),
+				"{\"result\":" + toJson(expected.assignStaff("Funday", "08:00", "09:00", "Worker", "Nobody", false)) + "}");
+		connection.get(shopPath("noSuchMethod"));
+		check("unknown method", Integer.toString(connection.getStatus()), "404");
+		connection.post(shopPath("addShift"), "{\"dayOfWeek\":");
+		check("bad JSON", Integer.toString(connection.getStatus()), "400");
+		connection.post(shopPath("addShift"), "[".repeat(200_000));
+		check("deeply nested JSON", Integer.toString(connection.getStatus()), "400");
+		connection.post(shopPath("getRegisteredStaff"), "");
+		check("wrong HTTP method", Integer.toString(connection.getStatus()), "405");
+		connection.get(shopPath("getRosterForWorker") + "?workerName=Hari");
+		check("name without a family name", Integer.toString(connection.getStatus()), "400");
+		connection.get(shopPath("getShiftsManagedBy") + "?managerName=");
+		check("empty name", Integer.toString(connection.getStatus()), "400");
+		check("after a bad name", connection.get(shopPath("getRegisteredStaff")), toJson(expected.getRegisteredStaff()));
+	}
+
+	/**
+	 * Checks that a server turns away a body larger than it takes, and still answers on the same connection.
+	 */
+	private static void checkRequestLimit() throws IOException {
+		try (ShiftManHttpServer small = new ShiftManHttpServer(new RosterRegistry(), 0, 1024);
+				HttpConnection connection = new HttpConnection("localhost", small.getPort())) {
+			connection.post(shopPath("newRoster"), "");
+			StringBuilder name = new StringBuilder();
+			while (name.length() < 2048) {
+				name.append("Worker");
+			}
+			connection.post(shopPath("registerStaff"), "{\"givenName\":\"" + name + "\",\"familyName\":\"Large\"}");
+			check("body too large", Integer.toString(connection.getStatus()), "413");
+			check("after a body too large", connection.post(shopPath("registerStaff"),
+					"{\"givenName\":\"Worker\",\"familyName\":\"Small\"}"), "{\"result\":\"\"}");
+		}
+		System.out.println("Checked that a body too large is turned away");
+	}
+
+	/**
+	 * The read requests the load is made of: each day's roster, the staff lists, and some workers' rosters.
+	 */
+	private static List<String> readPaths() {
+		List<String> paths = new ArrayList<>();
+		for (String day : DAYS) {
+			paths.add(shopPath("getRosterForDay") + "?dayOfWeek=" + day);
+		}
+		paths.add(shopPath("getUnassignedStaff"));
+		paths.add(shopPath("shiftsWithoutManagers"));
+		paths.add(shopPath("understaffedShifts"));
+		for (int s = 0; s < 8; s++) {
+			paths.add(shopPath("getRosterForWorker") + "?workerName=" + encode("Worker " + familyName(s * 37)));
+		}
+		return paths;
+	}
+
+	/**
+	 * Sends requests on one connection until the deadline, one at a time, and gives the latency of each in nanoseconds.
+	 */
+	private static long[] runConnection(String host, int port, List<String> paths, int first, long deadline) {
+		long[] latencies = new long[1024];
+		int count = 0;
+		try (HttpConnection connection = new HttpConnection(host, port)) {
+			for (int i = first; System.nanoTime() < deadline; i++) {
+				long start = System.nanoTime();
+				connection.get(paths.get(i % paths.size()));
+				long latency = System.nanoTime() - start;
+				if (connection.getStatus() != 200) {
+					throw new IOException("Status " + connection.getStatus());
+				}
+				if (count == latencies.length) {
+					latencies = Arrays.copyOf(latencies, count * 2);
+				}
+				latencies[count++] = latency;
+			}
+		} catch (IOException e) {
+			synchronized (HttpLoadTest.class) {
+				failures++;
+			}
+			System.err.println("Connection failed: " + e);
+		}
+		return Arrays.copyOf(latencies, count);
+	}
+
+	private static long[] merge(List<long[]> latencies) {
+		int total = 0;
+		for (long[] l : latencies) {
+			total += l.length;
+		}
+		long[] all = new long[total];
+		int position = 0;
+		for (long[] l : latencies) {
+			System.arraycopy(l, 0, all, position, l.length);
+			position += l.length;
+		}
+		return all;
+	}
+
+	/**
+	 * @return The latency at the given percentile, in milliseconds.
+	 */
+	private static double percentile(long[] sorted, double percentile) {
+		int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+	}
+
+	private static String toJson(List<String> list) {
+		StringBuilder json = new StringBuilder("[");
+		for (String s : list) {
+			if (json.length() > 1) {
+				json.append(',');
+			}
+			json.append(toJson(s));
+		}
+		return json.append(']').toString();
+	}
+
+	private static String toJson(String s) {
+		return '"' + s.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + '"';
+	}
+
+	private static void check(String what, String actual, String expected) {
+		if (!actual.equals(expected)) {
+			failures++;
+			System.err.println("Wrong answer over HTTP: " + what);
+		}
+	}
+
+	private static String shopPath(String method) {
+		return "/shops/" + encode(SHOP).replace("+", "%20") + "/" + method;
+	}
+
+	private static String encode(String s) {
+		return URLEncoder.encode(s, StandardCharsets.UTF_8);
+	}
+
+	private static String familyName(int staff) {
+		return String.format("Staff%05d", staff);
+	}
+
+	private static String shiftStart(int shift) {
+		int minutes = 8 * 60 + shift * 60;
+		return String.format("%02d:%02d", minutes / 60, minutes % 60);
+	}
+
+	/**
+	 * A single kept-alive HTTP/1.1 connection, sending one request at a time. It is written directly on a socket,
+	 * so that the client does as little work as possible and the server is what is measured.
+	 */
+	private static class HttpConnection implements AutoCloseable {
+
+		private final Socket _socket;
+		private final InputStream _in;
+		private final OutputStream _out;
+		private final String _host;
+		private int _status;
+		private boolean _chunked;
+
+		HttpConnection(String host, int port) throws IOException {
+			_socket = new Socket(host, port);
+			_socket.setTcpNoDelay(true);
+			_in = new BufferedInputStream(_socket.getInputStream());
+			_out = _socket.getOutputStream();
+			_host = host + ":" + port;
+		}
+
+		String get(String path) throws IOException {
+			_out.write(("GET " + path + " HTTP/1.1\r\nHost: " + _host + "\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+			return readResponse();
+		}
+
+		String post(String path, String body) throws IOException {
+			byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+			_out.write(("POST " + path + " HTTP/1.1\r\nHost: " + _host + "\r\nContent-Type: application/json\r\n"
+					+ "Content-Length: " + bytes.length + "\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+			_out.write(bytes);
+			return readResponse();
+		}
+
+		int getStatus() {
+			return _status;
+		}
+
+		/**
+		 * Whether the last response was streamed in chunks rather than sent with its length.
+		 */
+		boolean wasChunked() {
+			return _chunked;
+		}
+
+		public void close() throws IOException {
+			_socket.close();
+		}
+
+		private String readResponse() throws IOException {
+			String statusLine = readLine();
+			_status = Integer.parseInt(statusLine.split(" ")[1]);
+			int length = -1;
+			_chunked = false;
+			for (String header = readLine(); !header.isEmpty(); header = readLine()) {
+				String lower = header.toLowerCase();
+				if (lower.startsWith("content-length:")) {
+					length = Integer.parseInt(header.substring("content-length:".length()).trim());
+				} else if (lower.startsWith("transfer-encoding:") && lower.contains("chunked")) {
+					_chunked = true;
+				}
+			}
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			if (_chunked) {
+				for (int size = Integer.parseInt(readLine().trim(), 16); size > 0; size = Integer.parseInt(readLine().trim(), 16)) {
+					body.write(_in.readNBytes(size));
+					readLine();
+				}
+				readLine();
+			} else if (length > 0) {
+				body.write(_in.readNBytes(length));
+			}
+			return body.toString(StandardCharsets.UTF_8);
+		}
+
+		private String readLine() throws IOException {
+			StringBuilder line = new StringBuilder();
+			for (int c = _in.read(); c != '\n'; c = _in.read()) {
+				if (c < 0) {
+					throw new IOException("Connection closed by the server");
+				}
+				if (c != '\r') {
+					line.append((char) c);
+				}
+			}
+			return line.toString();
+		}
+	}
+}
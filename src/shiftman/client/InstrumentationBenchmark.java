@@ -0,0 +1,165 @@
+package shiftman.client;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import shiftman.server.InstrumentedShiftMan;
+import shiftman.server.LatencyHistogram;
+import shiftman.server.OperationStats;
+import shiftman.server.ShiftMan;
+import shiftman.server.ShiftManServer;
+
+/**
+ * Measures what an InstrumentedShiftMan adds to each call, by making the same calls with and without it, and checks
+ * what it counts. Its call and error counts must match what the calls returned, its percentiles must be within a
+ * bucket of the true ones, and its counts must be readable over JMX.
+ *
+ * <p>Arguments are the number of staff and the number of rounds.
+ */
+public class InstrumentationBenchmark {
+
+	private static final String[] DAYS = { "Monday", "Tuesday", "Wednesday", "Thursday", "Friday", "Saturday", "Sunday" };
+	private static final int SHIFTS_PER_DAY = 48;
+
+	private static int failures = 0;
+
+	public static void main(String[] args) throws Exception {
+		int staff = (args.length > 0) ? Integer.parseInt(args[0]) : 5000;
+		int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+
+		checkHistogram();
+
+		InstrumentedShiftMan instrumented = null;
+		System.out.printf("%d staff, %d calls per measurement%n", staff, staff * (DAYS.length + 3));
+		for (int round = 1; round <= rounds; round++) {
+			long plain = run(new ShiftManServer(), staff, round);
+			instrumented = new InstrumentedShiftMan(new ShiftManServer());
+			long start = System.nanoTime();
+			int errors = runCounting(instrumented, staff, round);
+			long counted = System.nanoTime() - start;
+			System.out.printf("Round %d: plain %7.1f ns/call, instrumented %7.1f ns/call%n", round,
+					(double) plain / calls(staff), (double) counted / calls(staff));
+			checkCounts(instrumented, staff, errors);
+		}
+		checkJmx(instrumented);
+		System.out.print(instrumented.report());
+
+		if (failures == 0) {
+			System.out.println("PASS: every count matched the calls made");
+		} else {
+			System.out.println("FAIL: " + failures + " counts were wrong");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Records a spread of values and compares the histogram's percentiles with the true ones.
+	 */
+	private static void checkHistogram() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		long[] values = new long[100000];
+		Random random = new Random(42);
+		for (int i = 0; i < values.length; i++) {
+			values[i] = (long) Math.exp(random.nextDouble() * 20);
+			histogram.record(values[i]);
+		}
+		Arrays.sort(values);
+		LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+		check("histogram count", snapshot.getCount(), values.length);
+		check("histogram max", snapshot.getMax(), values[values.length - 1]);
+		for (double p : new double[] { 1, 50, 90, 99, 99.9, 100 }) {
+			long expected = values[(int) Math.ceil(p / 100 * values.length) - 1];
+			long actual = snapshot.getValueAtPercentile(p);
+			if (actual < expected || actual > expected + expected / 16 + 1) {
+				failures++;
+				System.err.println("Percentile " + p + " was " + actual + " rather than " + expected);
+			}
+		}
+	}
+
+	private static long run(ShiftMan scheduler, int staff, int round) {
+		long start = System.nanoTime();
+		runCounting(scheduler, staff, round);
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * Registers staff and assigns them, with some assignments made twice so that they fail, and queries their rosters.
+	 * @return The number of calls that gave an error.
+	 */
+	private static int runCounting(ShiftMan scheduler, int staff, int round) {
+		int errors = 0;
+		scheduler.newRoster("Benchmark Hardware");
+		for (String day : DAYS) {
+			scheduler.setWorkingHours(day, "08:00", "20:00");
+			for (int i = 0; i < SHIFTS_PER_DAY; i++) {
+				scheduler.addShift(day, shiftStart(i), shiftStart(i + 1), "1");
+			}
+		}
+		Random random = new Random(round);
+		for (int s = 0; s < staff; s++) {
+			scheduler.registerStaff("Worker", familyName(s));
+			for (int d = 0; d < DAYS.length; d++) {
+				int shift = random.nextInt(SHIFTS_PER_DAY);
+				if (scheduler.assignStaff(DAYS[d], shiftStart(shift), shiftStart(shift + 1), "Worker", familyName(s),
+						random.nextInt(4) == 0).startsWith("ERROR")) {
+					errors++;
+				}
+			}
+			scheduler.getRosterForWorker("Worker " + familyName(random.nextInt(s + 1)));
+			if (scheduler.getShiftsManagedBy("Nobody Registered").get(0).startsWith("ERROR")) {
+				errors++;
+			}
+		}
+		return errors;
+	}
+
+	private static void checkCounts(InstrumentedShiftMan instrumented, int staff, int errors) {
+		long calls = 0;
+		long counted = 0;
+		for (OperationStats.Snapshot s : instrumented.snapshot()) {
+			calls += s.getCalls();
+			counted += s.getErrors();
+		}
+		check("calls", calls, calls(staff));
+		check("errors", counted, errors);
+	}
+
+	private static void checkJmx(InstrumentedShiftMan instrumented) throws Exception {
+		instrumented.registerMBeans("benchmark");
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName("shiftman:type=InstrumentedShiftMan,name=\"benchmark\",operation=assignStaff");
+			long calls = (Long) server.getAttribute(name, "Calls");
+			double p99 = (Double) server.getAttribute(name, "P99Micros");
+			System.out.printf("Over JMX: assignStaff called %d times, p99 %.2f us%n", calls, p99);
+			check("JMX calls", calls, instrumented.snapshot().get(4).getCalls());
+		} finally {
+			instrumented.unregisterMBeans();
+		}
+	}
+
+	private static long calls(int staff) {
+		return 1 + DAYS.length * (SHIFTS_PER_DAY + 1) + (long) staff * (DAYS.length + 3);
+	}
+
+	private static void check(String what, long actual, long expected) {
+		if (actual != expected) {
+			failures++;
+			System.err.println("Wrong " + what + ": " + actual + " rather than " + expected);
+		}
+	}
+
+	private static String familyName(int staff) {
+		return String.format("Staff%06d", staff);
+	}
+
+	private static String shiftStart(int shift) {
+		int minutes = 8 * 60 + shift * 15;
+		return String.format("%02d:%02d", minutes / 60, minutes % 60);
+	}
+}
@@ -0,0 +1,314 @@
+package shiftman.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.LockSupport;
+
+import shiftman.server.LatencyHistogram;
+import shiftman.server.RemoteShiftMan;
+import shiftman.server.RosterRegistry;
+import shiftman.server.ShiftMan;
+import shiftman.server.ShiftManRpcServer;
+import shiftman.server.ShiftManServer;
+import shiftman.server.SingleWriterShiftMan;
+
+/**
+ * Records streams of calls made up by a WorkloadGenerator to a file, and replays them against a ShiftMan, either as
+ * fast as it will take them or at a steady rate, reporting the calls per second and the latency of each method.
+ *
+ * <p>Usage:
+ * <pre>
+ *   LoadDriver record FILE [SHOPS [STAFF_PER_SHOP [SEED]]]
+ *   LoadDriver replay FILE [CALLS_PER_SECOND [TARGET]]
+ *   LoadDriver check FILE [TARGET]
+ * </pre>
+ * A rate of 0 replays as fast as the target will go. At a fixed rate each call is due at its place in the schedule,
+ * and its latency is measured from then rather than from when it was made, so a target that falls behind is charged
+ * for the calls kept waiting. The target is server for a ShiftManServer (the default), single-writer for a
+ * SingleWriterShiftMan, rpc for a ShiftManRpcServer started here, or the host:port of a ShiftManRpcServer already
+ * running. check replays the file against the target and against a ShiftManServer, and compares every result.
+ *
+ * <p>With no arguments, a small workload is recorded to a temporary file, read back, checked against each kind of
+ * target and replayed both ways.
+ */
+public class LoadDriver {
+
+	private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+
+	public static void main(String[] args) throws Exception {
+		if (args.length == 0) {
+			selfTest();
+			return;
+		}
+		String mode = args[0];
+		if (args.length < 2) {
+			usage();
+		}
+		Path file = Paths.get(args[1]);
+		if (mode.equals("record")) {
+			int shops = (args.length > 2) ? Integer.parseInt(args[2]) : 5;
+			int staffPerShop = (args.length > 3) ? Integer.parseInt(args[3]) : 2000;
+			long seed = (args.length > 4) ? Long.parseLong(args[4]) : 1;
+			List<RecordedCall> calls = new WorkloadGenerator(seed, staffPerShop, 0.2, 0.01).generate(shops);
+			RecordedCall.writeAll(file, calls);
+			System.out.printf("Recorded %d calls for %d shops of %d staff to %s%n", calls.size(), shops, staffPerShop,
+					file);
+		} else if (mode.equals("replay")) {
+			List<RecordedCall> calls = RecordedCall.readAll(file);
+			double rate = (args.length > 2) ? Double.parseDouble(args[2]) : 0;
+			try (Target target = Target.open((args.length > 3) ? args[3] : "server")) {
+				System.out.print(replay(calls, target.scheduler(), rate).report(target.toString(), rate));
+			}
+		} else if (mode.equals("check")) {
+			List<RecordedCall> calls = RecordedCall.readAll(file);
+			try (Target target = Target.open((args.length > 2) ? args[2] : "server")) {
+				int wrong = check(calls, target.scheduler());
+				if (wrong > 0) {
+					System.out.println("FAIL: " + wrong + " results from " + target + " were wrong");
+					System.exit(1);
+				}
+				System.out.println("PASS: every result from " + target + " matched a ShiftManServer");
+			}
+		} else {
+			usage();
+		}
+	}
+
+	/**
+	 * The result of replaying a stream of calls: how long it took, and the latency of each method.
+	 */
+	static class Replay {
+
+		private final Map<String, LatencyHistogram> _latencies = new TreeMap<>();
+
+		private final LatencyHistogram _all = new LatencyHistogram();
+
+		private long _errors;
+
+		private long _elapsed;
+
+		void record(String method, long latency, boolean isError) {
+			_latencies.computeIfAbsent(method, m -> new LatencyHistogram()).record(latency);
+			_all.record(latency);
+			if (isError) {
+				_errors++;
+			}
+		}
+
+		long getCount() {
+			return _all.snapshot().getCount();
+		}
+
+		long getErrors() {
+			return _errors;
+		}
+
+		double getCallsPerSecond() {
+			return getCount() * 1e9 / _elapsed;
+		}
+
+		/**
+		 * A table of the calls per second, and the count and latency percentiles of each method.
+		 */
+		String report(String target, double rate) {
+			StringBuilder report = new StringBuilder();
+			report.append(String.format("%s, %s: %d calls in %.2f s, %.0f calls/s, %d errors%n", target,
+					(rate > 0) ? String.format("%.0f calls/s wanted", rate) : "flat out", getCount(), _elapsed / 1e9,
+					getCallsPerSecond(), _errors));
+			report.append(String.format("%-22s %9s %9s %9s %9s %9s %9s%n", "method (us)", "calls", "p50", "p90", "p99",
+					"p99.9", "max"));
+			appendRow(report, "all", _all.snapshot());
+			for (Map.Entry<String, LatencyHistogram> e : _latencies.entrySet()) {
+				appendRow(report, e.getKey(), e.getValue().snapshot());
+			}
+			return report.toString();
+		}
+
+		private static void appendRow(StringBuilder report, String name, LatencyHistogram.Snapshot latency) {
+			report.append(String.format("%-22s %9d", name, latency.getCount()));
+			for (double p : PERCENTILES) {
+				report.append(String.format(" %9.1f", latency.getValueAtPercentile(p) / 1e3));
+			}
+			report.append(String.format(" %9.1f%n", latency.getMax() / 1e3));
+		}
+	}
+
+	/**
+	 * Makes every call on the given ShiftMan in order, one at a time.
+	 * @param rate The calls per second to make, or 0 to make each as soon as the one before has returned.
+	 */
+	static Replay replay(List<RecordedCall> calls, ShiftMan scheduler, double rate) {
+		Replay replay = new Replay();
+		double interval = (rate > 0) ? 1e9 / rate : 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < calls.size(); i++) {
+			RecordedCall call = calls.get(i);
+			long due = start + (long) (i * interval);
+			if (rate > 0) {
+				waitUntil(due);
+			} else {
+				due = System.nanoTime();
+			}
+			Object result = call.invokeOn(scheduler);
+			replay.record(call.getMethod(), System.nanoTime() - due, RecordedCall.isError(result));
+		}
+		replay._elapsed = System.nanoTime() - start;
+		return replay;
+	}
+
+	/**
+	 * Makes every call on the given ShiftMan and on a new ShiftManServer, and compares their results.
+	 * @return The number of results that differed.
+	 */
+	static int check(List<RecordedCall> calls, ShiftMan scheduler) {
+		ShiftMan expected = new ShiftManServer();
+		int wrong = 0;
+		for (RecordedCall call : calls) {
+			Object result = call.invokeOn(scheduler);
+			Object expectedResult = call.invokeOn(expected);
+			if (!result.equals(expectedResult)) {
+				if (wrong++ < 10) {
+					System.err.println("Wrong result for " + call + ": " + result + " instead of " + expectedResult);
+				}
+			}
+		}
+		return wrong;
+	}
+
+	/**
+	 * Helper method for replay().
+	 * Sleeps until shortly before the time, and spins the rest of the way, as sleeping is not precise enough for
+	 * calls microseconds apart.
+	 */
+	private static void waitUntil(long due) {
+		long remaining;
+		while ((remaining = due - System.nanoTime()) > 0) {
+			if (remaining > 100_000) {
+				LockSupport.parkNanos(remaining - 50_000);
+			} else {
+				Thread.onSpinWait();
+			}
+		}
+	}
+
+	/**
+	 * A ShiftMan to replay calls against, along with anything that has to be shut down after it.
+	 */
+	private static class Target implements AutoCloseable {
+
+		private final String _name;
+
+		private final ShiftMan _scheduler;
+
+		private final Closeable[] _resources;
+
+		private Target(String name, ShiftMan scheduler, Closeable... resources) {
+			_name = name;
+			_scheduler = scheduler;
+			_resources = resources;
+		}
+
+		static Target open(String name) throws Exception {
+			if (name.equals("server")) {
+				return new Target("ShiftManServer", new ShiftManServer());
+			} else if (name.equals("single-writer")) {
+				SingleWriterShiftMan scheduler = new SingleWriterShiftMan(new ShiftManServer());
+				return new Target("SingleWriterShiftMan", scheduler, scheduler::close);
+			} else if (name.equals("rpc")) {
+				ShiftManRpcServer server = new ShiftManRpcServer(new RosterRegistry(), 0);
+				RemoteShiftMan remote = RemoteShiftMan.connect("localhost", server.getPort());
+				return new Target("RemoteShiftMan", remote, remote::close, server::close);
+			} else if (name.contains(":")) {
+				RemoteShiftMan remote = RemoteShiftMan.connect(name);
+				return new Target("RemoteShiftMan at " + name, remote, remote::close);
+			}
+			throw new IllegalArgumentException("Unknown target " + name);
+		}
+
+		ShiftMan scheduler() {
+			return _scheduler;
+		}
+
+		public void close() throws IOException {
+			for (Closeable r : _resources) {
+				r.close();
+			}
+		}
+
+		@Override
+		public String toString() {
+			return _name;
+		}
+	}
+
+	/**
+	 * Helper method for main().
+	 */
+	private static void selfTest() throws Exception {
+		List<RecordedCall> calls = new WorkloadGenerator(42, 2000, 0.2, 0.01).generate(2);
+		Path file = Files.createTempFile("shiftman-calls", ".tsv");
+		int failures = 0;
+		try {
+			RecordedCall.writeAll(file, calls);
+			List<RecordedCall> read = RecordedCall.readAll(file);
+			if (!read.equals(calls)) {
+				System.err.println("The calls read back from the file were not the ones written");
+				failures++;
+			}
+			System.out.printf("Recorded %d calls, %d KB%n", calls.size(), Files.size(file) / 1024);
+		} finally {
+			Files.delete(file);
+		}
+		if (!new WorkloadGenerator(42, 2000, 0.2, 0.01).generate(2).equals(calls)) {
+			System.err.println("The same seed made a different workload");
+			failures++;
+		}
+
+		for (String name : new String[] { "server", "single-writer", "rpc" }) {
+			try (Target target = Target.open(name)) {
+				int wrong = check(calls, target.scheduler());
+				if (wrong > 0) {
+					System.err.println(wrong + " results from " + target + " were wrong");
+					failures++;
+				}
+			}
+		}
+
+		Replay flatOut = replay(calls, new ShiftManServer(), 0);
+		System.out.print(flatOut.report("ShiftManServer", 0));
+		long changes = calls.stream().filter(RecordedCall::isChange).count();
+		if (flatOut.getErrors() == 0 || flatOut.getErrors() > changes / 20) {
+			System.err.println("Expected a few errors, not " + flatOut.getErrors());
+			failures++;
+		}
+		double rate = Math.min(50_000, flatOut.getCallsPerSecond() / 2);
+		List<RecordedCall> paced = new ArrayList<>(calls.subList(0, Math.min(calls.size(), (int) rate * 2)));
+		Replay steady = replay(paced, new ShiftManServer(), rate);
+		System.out.print(steady.report("ShiftManServer", rate));
+		if (steady.getCallsPerSecond() > rate * 1.05) {
+			System.err.println("Replayed faster than the rate asked for");
+			failures++;
+		}
+
+		if (failures == 0) {
+			System.out.println("PASS: the workload was recorded, read back and replayed the same against every target");
+		} else {
+			System.out.println("FAIL: " + failures + " checks failed");
+			System.exit(1);
+		}
+	}
+
+	private static void usage() {
+		System.err.println("Usage: LoadDriver record FILE [SHOPS [STAFF_PER_SHOP [SEED]]]");
+		System.err.println("       LoadDriver replay FILE [CALLS_PER_SECOND [server|single-writer|rpc|HOST:PORT]]");
+		System.err.println("       LoadDriver check FILE [server|single-writer|rpc|HOST:PORT]");
+		System.exit(2);
+	}
+}
@@ -0,0 +1,252 @@
+package shiftman.client;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import shiftman.server.BatchShiftMan;
+import shiftman.server.InMemoryRosterStore;
+import shiftman.server.RosterCommand;
+import shiftman.server.RosterLog;
+import shiftman.server.RosterRegistry;
+import shiftman.server.ShiftMan;
+import shiftman.server.ShiftManServer;
+
+/**
+ * Checks that a roster can be rebuilt from its RosterLog after the server stops at any moment.
+ *
+ * <p>A roster is built up while its log is written, and the state of the roster is noted each time the log grows.
+ * The log is then cut short at every record boundary and at points inside each record, as if the server had
+ * stopped part way through writing it, and must replay to exactly the state noted at the last whole record.
+ * A record with a damaged byte must end the replay in the same way, and after recovery the log must take new
+ * changes that survive another restart. Finally a log split over many small segments must replay in full.
+ */
+public class LogRecoveryCheck {
+
+	private static final String SHOP = "Recovery Hardware";
+	private static final String[] DAYS = { "Monday", "Tuesday", "Wednesday", "Thursday", "Friday", "Saturday", "Sunday" };
+
+	private static int failures = 0;
+
+	public static void main(String[] args) throws Exception {
+		Path work = Files.createTempDirectory("shiftman-log-check");
+		try {
+			// Build the roster, noting its state each time the log grows
+			Path original = work.resolve("original");
+			Map<Long, String> stateAtSize = new TreeMap<>();
+			RosterLog log = RosterLog.open(original);
+			BatchShiftMan scheduler = new ShiftManServer(new RosterRegistry(new InMemoryRosterStore(), Integer.MAX_VALUE, log));
+			Path segment = onlySegment(original);
+			stateAtSize.put(Files.size(segment), describe(null));
+			scheduler.newRoster(SHOP);
+			log.sync();
+			stateAtSize.put(Files.size(segment), describe(null));
+			for (RosterCommand c : commands()) {
+				c.applyTo(scheduler);
+				log.sync();
+				stateAtSize.put(Files.size(segment), describe(scheduler));
+			}
+			scheduler.applyBatch(Arrays.asList(
+					RosterCommand.registerStaff("Late", "Batch"),
+					RosterCommand.assignStaff("Sunday", "10:00", "12:00", "Late", "Batch", false),
+					RosterCommand.assignStaff("Funday", "10:00", "12:00", "Late", "Batch", false)));
+			log.sync();
+			stateAtSize.put(Files.size(segment), describe(scheduler));
+			log.close();
+			long fullSize = Files.size(segment);
+			System.out.printf("Log of %d bytes holds %d records%n", fullSize, stateAtSize.size() - 1);
+
+			// Cut the log at and around every record boundary, and in the middle of every record
+			Long[] boundaries = stateAtSize.keySet().toArray(new Long[0]);
+			int cuts = 0;
+			for (int i = 0; i < boundaries.length; i++) {
+				long next = (i + 1 < boundaries.length) ? boundaries[i + 1] : fullSize + 1;
+				for (long cut : new long[] { boundaries[i], boundaries[i] + 1, boundaries[i] + 4, boundaries[i] + 9, (boundaries[i] + next) / 2, next - 1 }) {
+					if (cut <= fullSize && cut >= boundaries[0] - 1) {
+						checkRecovery(work, segment, cut, boundaries[i], stateAtSize.get(boundaries[i]), "cut at byte " + cut);
+						cuts++;
+					}
+				}
+			}
+			System.out.printf("Recovered from %d cuts%n", cuts);
+
+			// Damage one byte in the middle of a record, which must end the replay before that record
+			int middle = boundaries.length / 2;
+			Path damaged = copy(segment, work.resolve("damaged"));
+			byte[] bytes = Files.readAllBytes(damaged);
+			int position = (int) ((boundaries[middle] + boundaries[middle + 1]) / 2);
+			bytes[position] ^= 0x5A;
+			Files.write(damaged, bytes);
+			check("damaged record", recover(damaged.getParent()), stateAtSize.get(boundaries[middle]));
+			System.out.println("Recovered from a damaged record");
+
+			// Names too long for DataOutputStream.writeUTF() must be recorded and replayed like any other
+			Path longNames = work.resolve("long");
+			log = RosterLog.open(longNames);
+			scheduler = new ShiftManServer(new RosterRegistry(new InMemoryRosterStore(), Integer.MAX_VALUE, log));
+			scheduler.newRoster(SHOP);
+			String longName = "Trantor".repeat(10_000);
+			check("long name", scheduler.registerStaff(longName, "Seldon"), "");
+			String expectedLong = describe(scheduler);
+			log.close();
+			check("long name", recover(longNames), expectedLong);
+			System.out.println("Recovered a name of " + longName.length() + " characters");
+
+			// A log split over many segments must replay in full
+			Path rolled = work.resolve("rolled");
+			log = RosterLog.open(rolled, 256);
+			scheduler = new ShiftManServer(new RosterRegistry(new InMemoryRosterStore(), Integer.MAX_VALUE, log));
+			scheduler.newRoster(SHOP);
+			for (RosterCommand c : commands()) {
+				c.applyTo(scheduler);
+			}
+			String expected = describe(scheduler);
+			log.close();
+			int segments = countSegments(rolled);
+			check("segments rolled", segments > 1 ? "yes" : "no", "yes");
+			check("rolled log", recover(rolled), expected);
+			System.out.printf("Replayed %d segments%n", segments);
+		} finally {
+			deleteAll(work);
+		}
+
+		if (failures == 0) {
+			System.out.println("PASS: every cut and damaged log recovered to its last whole record");
+		} else {
+			System.out.println("FAIL: " + failures + " recoveries were wrong");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Copies the log, cuts it at the given byte and checks what it recovers to. Then checks that a change made after
+	 * recovery follows the recovered records, and survives another restart.
+	 */
+	private static void checkRecovery(Path work, Path segment, long cut, long lastWholeRecord, String expected, String what)
+			throws Exception {
+		Path copy = copy(segment, work.resolve("cut"));
+		try (FileChannel channel = FileChannel.open(copy, StandardOpenOption.WRITE)) {
+			channel.truncate(cut);
+		}
+		RosterLog log = RosterLog.open(copy.getParent());
+		if (cut >= 8) {
+			check(what + ", truncated to last whole record", Long.toString(Files.size(copy)), Long.toString(lastWholeRecord));
+		}
+		ShiftManServer scheduler = new ShiftManServer(new RosterRegistry(new InMemoryRosterStore(), Integer.MAX_VALUE, log));
+		scheduler.selectRoster(SHOP);
+		check(what, describe(scheduler), expected);
+		scheduler.registerStaff("After", "Restart");
+		String afterChange = describe(scheduler);
+		log.close();
+		check(what + ", change after recovery", recover(copy.getParent()), afterChange);
+	}
+
+	/**
+	 * Opens the log in the given directory and describes the roster it recovers.
+	 */
+	private static String recover(Path directory) throws Exception {
+		RosterLog log = RosterLog.open(directory);
+		ShiftManServer scheduler = new ShiftManServer(new RosterRegistry(new InMemoryRosterStore(), Integer.MAX_VALUE, log));
+		scheduler.selectRoster(SHOP);
+		String state = describe(scheduler);
+		log.close();
+		return state;
+	}
+
+	/**
+	 * Everything the roster can be asked, as one string. A missing scheduler describes an empty roster.
+	 */
+	private static String describe(ShiftMan scheduler) {
+		if (scheduler == null) {
+			scheduler = new ShiftManServer();
+			scheduler.newRoster(SHOP);
+		}
+		List<Object> answers = new ArrayList<>();
+		answers.add(scheduler.getRegisteredStaff());
+		answers.add(scheduler.getUnassignedStaff());
+		answers.add(scheduler.shiftsWithoutManagers());
+		answers.add(scheduler.understaffedShifts());
+		answers.add(scheduler.overstaffedShifts());
+		for (String day : DAYS) {
+			answers.add(scheduler.getRosterForDay(day));
+		}
+		return answers.toString();
+	}
+
+	/**
+	 * A week's worth of changes, including some that fail and so are not logged.
+	 */
+	private static List<RosterCommand> commands() {
+		List<RosterCommand> commands = new ArrayList<>();
+		String[][] staff = { { "Bayta", "Darell" }, { "Hari", "Seldon" }, { "Ebling", "Mis" }, { "Dors", "Venabili" } };
+		for (String[] s : staff) {
+			commands.add(RosterCommand.registerStaff(s[0], s[1]));
+		}
+		commands.add(RosterCommand.registerStaff("bayta", "DARELL"));
+		for (String day : DAYS) {
+			commands.add(RosterCommand.setWorkingHours(day, "09:00", "17:00"));
+			commands.add(RosterCommand.addShift(day, "09:00", "12:00", "1"));
+			commands.add(RosterCommand.addShift(day, "12:00", "17:00", "2"));
+			commands.add(RosterCommand.addShift(day, "11:00", "13:00", "1"));
+			commands.add(RosterCommand.assignStaff(day, "09:00", "12:00", staff[0][0], staff[0][1], true));
+			commands.add(RosterCommand.assignStaff(day, "09:00", "12:00", staff[1][0], staff[1][1], false));
+			commands.add(RosterCommand.assignStaff(day, "12:00", "17:00", staff[2][0], staff[2][1], true));
+			commands.add(RosterCommand.assignStaff(day, "12:00", "17:00", "Nobody", "Here", false));
+		}
+		return commands;
+	}
+
+	private static void check(String what, String actual, String expected) {
+		if (!actual.equals(expected)) {
+			failures++;
+			System.err.println("Wrong recovery: " + what);
+		}
+	}
+
+	private static Path onlySegment(Path directory) throws IOException {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "segment-*.log")) {
+			return files.iterator().next();
+		}
+	}
+
+	private static int countSegments(Path directory) throws IOException {
+		int count = 0;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "segment-*.log")) {
+			for (Path p : files) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Copies a segment into a fresh directory of its own, keeping its file name.
+	 */
+	private static Path copy(Path segment, Path directory) throws IOException {
+		deleteAll(directory);
+		Files.createDirectories(directory);
+		return Files.copy(segment, directory.resolve(segment.getFileName()));
+	}
+
+	private static void deleteAll(Path path) throws IOException {
+		if (!Files.exists(path)) {
+			return;
+		}
+		if (Files.isDirectory(path)) {
+			try (DirectoryStream<Path> files = Files.newDirectoryStream(path)) {
+				for (Path p : files) {
+					deleteAll(p);
+				}
+			}
+		}
+		Files.delete(path);
+	}
+}
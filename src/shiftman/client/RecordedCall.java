@@ -0,0 +1,256 @@
+package shiftman.client;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import shiftman.server.ShiftMan;
+
+/**
+ * One call to a ShiftMan method, with its arguments, held so that a stream of calls can be written to a file and
+ * made again later against any ShiftMan.
+ *
+ * <p>In a file each call is a line holding the method name followed by its arguments, separated by tabs. A tab,
+ * newline or backslash in an argument is written as \t, \n or \\. The isManager argument of assignStaff() is written
+ * as true or false. Lines starting with # are comments.
+ */
+public final class RecordedCall {
+
+	private static final String HEADER = "# ShiftMan call stream";
+
+	/**
+	 * The number of arguments each ShiftMan method takes.
+	 */
+	private static final Map<String, Integer> ARGUMENT_COUNTS = new HashMap<>();
+
+	static {
+		ARGUMENT_COUNTS.put("newRoster", 1);
+		ARGUMENT_COUNTS.put("setWorkingHours", 3);
+		ARGUMENT_COUNTS.put("addShift", 4);
+		ARGUMENT_COUNTS.put("registerStaff", 2);
+		ARGUMENT_COUNTS.put("assignStaff", 6);
+		ARGUMENT_COUNTS.put("getRegisteredStaff", 0);
+		ARGUMENT_COUNTS.put("getUnassignedStaff", 0);
+		ARGUMENT_COUNTS.put("shiftsWithoutManagers", 0);
+		ARGUMENT_COUNTS.put("understaffedShifts", 0);
+		ARGUMENT_COUNTS.put("overstaffedShifts", 0);
+		ARGUMENT_COUNTS.put("getRosterForDay", 1);
+		ARGUMENT_COUNTS.put("getRosterForWorker", 1);
+		ARGUMENT_COUNTS.put("getShiftsManagedBy", 1);
+		ARGUMENT_COUNTS.put("reportRosterIssues", 0);
+		ARGUMENT_COUNTS.put("displayRoster", 0);
+	}
+
+	private final String _method;
+
+	private final String[] _arguments;
+
+	private RecordedCall(String method, String[] arguments) {
+		_method = method;
+		_arguments = arguments;
+	}
+
+	/**
+	 * @throws IllegalArgumentException If there is no such ShiftMan method, or it takes a different number of
+	 * arguments.
+	 */
+	public static RecordedCall of(String method, String... arguments) {
+		Integer count = ARGUMENT_COUNTS.get(method);
+		if (count == null) {
+			throw new IllegalArgumentException("No ShiftMan method named " + method);
+		} else if (count != arguments.length) {
+			throw new IllegalArgumentException(method + " takes " + count + " arguments, not " + arguments.length);
+		}
+		return new RecordedCall(method, arguments.clone());
+	}
+
+	public String getMethod() {
+		return _method;
+	}
+
+	public String getArgument(int index) {
+		return _arguments[index];
+	}
+
+	/**
+	 * Whether the call changes the roster, or starts a new one, rather than asking about it.
+	 */
+	public boolean isChange() {
+		return _method.equals("newRoster") || _method.equals("setWorkingHours") || _method.equals("addShift")
+				|| _method.equals("registerStaff") || _method.equals("assignStaff");
+	}
+
+	/**
+	 * Makes the call on the given ShiftMan.
+	 * @return The String or List of Strings the method returned.
+	 */
+	public Object invokeOn(ShiftMan scheduler) {
+		String[] a = _arguments;
+		switch (_method) {
+			case "newRoster":
+				return scheduler.newRoster(a[0]);
+			case "setWorkingHours":
+				return scheduler.setWorkingHours(a[0], a[1], a[2]);
+			case "addShift":
+				return scheduler.addShift(a[0], a[1], a[2], a[3]);
+			case "registerStaff":
+				return scheduler.registerStaff(a[0], a[1]);
+			case "assignStaff":
+				return scheduler.assignStaff(a[0], a[1], a[2], a[3], a[4], Boolean.parseBoolean(a[5]));
+			case "getRegisteredStaff":
+				return scheduler.getRegisteredStaff();
+			case "getUnassignedStaff":
+				return scheduler.getUnassignedStaff();
+			case "shiftsWithoutManagers":
+				return scheduler.shiftsWithoutManagers();
+			case "understaffedShifts":
+				return scheduler.understaffedShifts();
+			case "overstaffedShifts":
+				return scheduler.overstaffedShifts();
+			case "getRosterForDay":
+				return scheduler.getRosterForDay(a[0]);
+			case "getRosterForWorker":
+				return scheduler.getRosterForWorker(a[0]);
+			case "getShiftsManagedBy":
+				return scheduler.getShiftsManagedBy(a[0]);
+			case "reportRosterIssues":
+				return scheduler.reportRosterIssues();
+			default:
+				return scheduler.displayRoster();
+		}
+	}
+
+	/**
+	 * Whether the given result of a call reports an error: a status starting with ERROR, or a list holding nothing
+	 * but such a status.
+	 */
+	public static boolean isError(Object result) {
+		if (result instanceof String) {
+			return ((String) result).startsWith("ERROR");
+		}
+		List<?> list = (List<?>) result;
+		return list.size() == 1 && isError(list.get(0));
+	}
+
+	/**
+	 * The call as a line of a file, without the line separator.
+	 */
+	public String toLine() {
+		StringBuilder line = new StringBuilder(_method);
+		for (String a : _arguments) {
+			line.append('\t');
+			for (int i = 0; i < a.length(); i++) {
+				char c = a.charAt(i);
+				if (c == '\t') {
+					line.append("\\t");
+				} else if (c == '\n') {
+					line.append("\\n");
+				} else if (c == '\\') {
+					line.append("\\\\");
+				} else {
+					line.append(c);
+				}
+			}
+		}
+		return line.toString();
+	}
+
+	/**
+	 * Reads a call back from a line written by toLine().
+	 * @throws IllegalArgumentException If the line is not a call.
+	 */
+	public static RecordedCall parse(String line) {
+		List<String> fields = new ArrayList<>();
+		StringBuilder field = new StringBuilder();
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (c == '\t') {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else if (c == '\\') {
+				if (++i == line.length()) {
+					throw new IllegalArgumentException("Line ends in the middle of an escape: " + line);
+				}
+				char escaped = line.charAt(i);
+				if (escaped == 't') {
+					field.append('\t');
+				} else if (escaped == 'n') {
+					field.append('\n');
+				} else if (escaped == '\\') {
+					field.append('\\');
+				} else {
+					throw new IllegalArgumentException("Unknown escape \\" + escaped + ": " + line);
+				}
+			} else {
+				field.append(c);
+			}
+		}
+		fields.add(field.toString());
+		return of(fields.get(0), fields.subList(1, fields.size()).toArray(new String[0]));
+	}
+
+	/**
+	 * Writes the calls to the given file, one to a line, replacing anything already there.
+	 */
+	public static void writeAll(Path file, List<RecordedCall> calls) throws IOException {
+		try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			out.write(HEADER);
+			out.newLine();
+			for (RecordedCall c : calls) {
+				out.write(c.toLine());
+				out.newLine();
+			}
+		}
+	}
+
+	/**
+	 * Reads every call from a file written by writeAll(), skipping blank lines and comments.
+	 * @throws IllegalArgumentException If a line is not a call, giving its line number.
+	 */
+	public static List<RecordedCall> readAll(Path file) throws IOException {
+		List<RecordedCall> calls = new ArrayList<>();
+		try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+			int lineNumber = 0;
+			while ((line = in.readLine()) != null) {
+				lineNumber++;
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				try {
+					calls.add(parse(line));
+				} catch (IllegalArgumentException e) {
+					throw new IllegalArgumentException(file + " line " + lineNumber + ": " + e.getMessage(), e);
+				}
+			}
+		}
+		return calls;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof RecordedCall)) {
+			return false;
+		}
+		RecordedCall call = (RecordedCall) other;
+		return _method.equals(call._method) && Arrays.equals(_arguments, call._arguments);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * _method.hashCode() + Arrays.hashCode(_arguments);
+	}
+
+	@Override
+	public String toString() {
+		return _method + Arrays.toString(_arguments);
+	}
+}
@@ -0,0 +1,122 @@
+package shiftman.client;
+
+import java.util.List;
+import java.util.Random;
+
+import shiftman.server.RenderCache;
+import shiftman.server.Roster;
+import shiftman.server.RosterSnapshot;
+
+/**
+ * Measures a read-mostly mix of day, worker and manager roster queries on a Roster, whose RenderCache keeps the
+ * lists it has rendered, against rendering every list from the roster's snapshot each time. One call in every
+ * hundred changes the roster, and every list the roster gives must be the same as one rendered fresh.
+ *
+ * <p>Arguments are the number of staff and the number of calls in each round.
+ */
+public class RenderCacheBenchmark {
+
+	private static final String[] DAYS = { "Monday", "Tuesday", "Wednesday", "Thursday", "Friday", "Saturday", "Sunday" };
+	private static final int SHIFTS_PER_DAY = 48;
+	private static final int ROUNDS = 5;
+
+	private static int failures = 0;
+
+	public static void main(String[] args) {
+		int staff = (args.length > 0) ? Integer.parseInt(args[0]) : 2000;
+		int calls = (args.length > 1) ? Integer.parseInt(args[1]) : 20000;
+
+		Roster roster = buildRoster(staff);
+		System.out.printf("%d staff, %d calls per round%n", staff, calls);
+		for (int round = 1; round <= ROUNDS; round++) {
+			long cached = run(roster, staff, calls, round, true);
+			long fresh = run(roster, staff, calls, round, false);
+			System.out.printf("Round %d: cached %8.2f ms, rendered every time %8.2f ms%n", round, cached / 1e6,
+					fresh / 1e6);
+		}
+		RenderCache cache = roster.getRenderCache();
+		System.out.printf("%d hits, %d misses, %d of at most %d lists held%n", cache.getHits(), cache.getMisses(),
+				cache.size(), cache.getMaxEntries());
+
+		if (failures == 0) {
+			System.out.println("PASS: every cached list was the same as one rendered fresh");
+		} else {
+			System.out.println("FAIL: " + failures + " cached lists were out of date");
+			System.exit(1);
+		}
+	}
+
+	private static Roster buildRoster(int staff) {
+		Roster roster = new Roster("Benchmark Hardware");
+		for (String day : DAYS) {
+			roster.setWorkingHours(day, "08:00", "20:00");
+			for (int i = 0; i < SHIFTS_PER_DAY; i++) {
+				roster.addShift(day, shiftStart(i), shiftStart(i + 1), "2");
+			}
+		}
+		for (int s = 0; s < staff; s++) {
+			roster.registerStaff("Worker", familyName(s));
+			int shift = s % SHIFTS_PER_DAY;
+			roster.assignStaff(DAYS[s % DAYS.length], shiftStart(shift), shiftStart(shift + 1), "Worker",
+					familyName(s), false);
+		}
+		return roster;
+	}
+
+	/**
+	 * Makes the same sequence of calls for a round either way, checking the cached lists against fresh ones.
+	 * The changes are only made in the cached run, so both runs read the same roster.
+	 * @return The time the queries took, in nanoseconds.
+	 */
+	private static long run(Roster roster, int staff, int calls, int round, boolean cached) {
+		Random random = new Random(round);
+		long elapsed = 0;
+		for (int i = 0; i < calls; i++) {
+			int pick = random.nextInt(100);
+			int s = random.nextInt(Math.min(staff, 200));
+			String day = DAYS[random.nextInt(DAYS.length)];
+			if (pick == 0) {
+				if (cached) {
+					int shift = random.nextInt(SHIFTS_PER_DAY);
+					roster.assignStaff(day, shiftStart(shift), shiftStart(shift + 1), "Worker", familyName(s),
+							random.nextBoolean());
+				}
+				continue;
+			}
+
+			long start = System.nanoTime();
+			List<String> lines;
+			if (cached) {
+				lines = (pick < 50) ? roster.getRosterForDay(day)
+						: (pick < 80) ? roster.getRosterForWorker("Worker", familyName(s))
+						: roster.getRosterForManager("Worker", familyName(s));
+			} else {
+				RosterSnapshot snapshot = roster.snapshot();
+				lines = (pick < 50) ? snapshot.getRosterForDay(day)
+						: (pick < 80) ? snapshot.getRosterForWorker("Worker", familyName(s))
+						: snapshot.getRosterForManager("Worker", familyName(s));
+			}
+			elapsed += System.nanoTime() - start;
+
+			if (cached) {
+				RosterSnapshot snapshot = roster.snapshot();
+				List<String> expected = (pick < 50) ? snapshot.getRosterForDay(day)
+						: (pick < 80) ? snapshot.getRosterForWorker("Worker", familyName(s))
+						: snapshot.getRosterForManager("Worker", familyName(s));
+				if (!lines.equals(expected) && failures++ < 10) {
+					System.err.println("Out of date list at call " + i + " of round " + round);
+				}
+			}
+		}
+		return elapsed;
+	}
+
+	private static String familyName(int staff) {
+		return String.format("Staff%06d", staff);
+	}
+
+	private static String shiftStart(int shift) {
+		int minutes = 8 * 60 + shift * 15;
+		return String.format("%02d:%02d", minutes / 60, minutes % 60);
+	}
+}
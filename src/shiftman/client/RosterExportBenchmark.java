@@ -0,0 +1,162 @@
+package shiftman.client;
+
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import shiftman.server.RosterPrinter;
+import shiftman.server.RosterSnapshot;
+import shiftman.server.ShiftManServer;
+
+/**
+ * Measures exporting a roster of about 2,000 shifts many times over, as displayRoster() Strings written to a stream
+ * and as text a RosterPrinter writes straight to a channel, along with the memory each allocates per roster.
+ * Both must give exactly the same bytes, and so must reportRosterIssues().
+ *
+ * <p>The argument is the number of times the roster is exported in each round.
+ */
+public class RosterExportBenchmark {
+
+	private static final String[] DAYS = { "Monday", "Tuesday", "Wednesday", "Thursday", "Friday", "Saturday", "Sunday" };
+	private static final int SHIFTS_PER_DAY = 286;
+	private static final int STAFF = 500;
+	private static final int ROUNDS = 5;
+
+	private static int failures = 0;
+
+	public static void main(String[] args) throws Exception {
+		int exports = (args.length > 0) ? Integer.parseInt(args[0]) : 200;
+
+		ShiftManServer scheduler = new ShiftManServer();
+		buildRoster(scheduler);
+		RosterSnapshot snapshot = scheduler.getRegistry().getRoster("Benchmark Hardware").snapshot();
+		RosterPrinter printer = new RosterPrinter();
+
+		DigestChannel fromString = new DigestChannel();
+		DigestChannel streamed = new DigestChannel();
+		OutputStream stringOut = Channels.newOutputStream(fromString);
+		stringOut.write(scheduler.displayRoster().getBytes(StandardCharsets.UTF_8));
+		printer.displayRoster(snapshot, streamed);
+		check("displayRoster", streamed, fromString);
+		stringOut.write(scheduler.reportRosterIssues().getBytes(StandardCharsets.UTF_8));
+		printer.reportRosterIssues(snapshot, streamed);
+		check("reportRosterIssues", streamed, fromString);
+		System.out.printf("%d shifts, %d bytes per export%n", DAYS.length * SHIFTS_PER_DAY, fromString._bytes / 2);
+
+		for (int round = 1; round <= ROUNDS; round++) {
+			long allocatedBefore = allocatedBytes();
+			long start = System.nanoTime();
+			for (int i = 0; i < exports; i++) {
+				stringOut.write(scheduler.displayRoster().getBytes(StandardCharsets.UTF_8));
+			}
+			long stringNanos = System.nanoTime() - start;
+			long stringAllocated = allocatedBytes() - allocatedBefore;
+
+			allocatedBefore = allocatedBytes();
+			start = System.nanoTime();
+			for (int i = 0; i < exports; i++) {
+				printer.displayRoster(snapshot, streamed);
+			}
+			long streamNanos = System.nanoTime() - start;
+			long streamAllocated = allocatedBytes() - allocatedBefore;
+
+			check("round " + round, streamed, fromString);
+			System.out.printf("Round %d: String %7.2f ms %9d bytes allocated, streamed %7.2f ms %9d bytes allocated%n",
+					round, stringNanos / 1e6 / exports, stringAllocated / exports, streamNanos / 1e6 / exports,
+					streamAllocated / exports);
+		}
+
+		if (failures == 0) {
+			System.out.println("PASS: the streamed text was the same as the Strings");
+		} else {
+			System.out.println("FAIL: " + failures + " exports were different");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * A channel that keeps only a digest of what is written to it, so that exports can be compared without holding
+	 * them in memory.
+	 */
+	private static class DigestChannel implements WritableByteChannel {
+
+		private final MessageDigest _digest;
+
+		private long _bytes;
+
+		DigestChannel() throws Exception {
+			_digest = MessageDigest.getInstance("SHA-256");
+		}
+
+		public int write(ByteBuffer source) {
+			int n = source.remaining();
+			_digest.update(source);
+			_bytes += n;
+			return n;
+		}
+
+		public boolean isOpen() {
+			return true;
+		}
+
+		public void close() {
+		}
+	}
+
+	private static void buildRoster(ShiftManServer scheduler) {
+		scheduler.newRoster("Benchmark Hardware");
+		for (int s = 0; s < STAFF; s++) {
+			scheduler.registerStaff("Worker", familyName(s));
+		}
+		int next = 0;
+		for (String day : DAYS) {
+			scheduler.setWorkingHours(day, "00:05", "23:55");
+			for (int i = 0; i < SHIFTS_PER_DAY; i++) {
+				scheduler.addShift(day, shiftStart(i), shiftStart(i + 1), Integer.toString(i % 4));
+				for (int w = 0; w < 2; w++) {
+					scheduler.assignStaff(day, shiftStart(i), shiftStart(i + 1), "Worker", familyName(next++ % STAFF),
+							false);
+				}
+				if (i % 3 != 0) {
+					scheduler.assignStaff(day, shiftStart(i), shiftStart(i + 1), "Worker", familyName(next++ % STAFF),
+							true);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Compares and restarts the digests of the two channels.
+	 */
+	private static void check(String what, DigestChannel actual, DigestChannel expected) {
+		if (!MessageDigest.isEqual(actual._digest.digest(), expected._digest.digest())
+				|| actual._bytes != expected._bytes) {
+			failures++;
+			System.err.println("Different text for " + what);
+		}
+	}
+
+	/**
+	 * The bytes this thread has allocated so far, where the JVM counts them.
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+
+	private static String familyName(int staff) {
+		return String.format("Staff%06d", staff);
+	}
+
+	private static String shiftStart(int shift) {
+		int minutes = 5 + shift * 5;
+		return String.format("%02d:%02d", minutes / 60, minutes % 60);
+	}
+}
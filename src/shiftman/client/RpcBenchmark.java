@@ -0,0 +1,163 @@
+package shiftman.client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import shiftman.server.RemoteShiftMan;
+import shiftman.server.RosterCommand;
+import shiftman.server.RosterRegistry;
+import shiftman.server.ShiftMan;
+import shiftman.server.ShiftManRpcServer;
+import shiftman.server.ShiftManServer;
+
+/**
+ * Measures how many calls per second a ShiftManRpcServer takes from a RemoteShiftMan on the same machine, waiting for
+ * each call and pipelining them, against the same calls made in-process on a ShiftManServer.
+ *
+ * <p>First Driver1 is run both in-process and against the server, and must print the same thing both times.
+ * Each measurement then registers staff and assigns each of them to one shift on every day.
+ * Arguments are the number of staff and the number of rounds.
+ */
+public class RpcBenchmark {
+
+	private static final String[] DAYS = { "Monday", "Tuesday", "Wednesday", "Thursday", "Friday", "Saturday", "Sunday" };
+	private static final int SHIFTS_PER_DAY = 48;
+
+	private static int failures = 0;
+
+	public static void main(String[] args) throws Exception {
+		int staff = (args.length > 0) ? Integer.parseInt(args[0]) : 20000;
+		int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+
+		ShiftManRpcServer server = new ShiftManRpcServer(new RosterRegistry(), 0);
+		String address = "localhost:" + server.getPort();
+		try {
+			check("Driver1 output", runDriver1(address), runDriver1(null));
+			System.out.println("Driver1 printed the same roster in-process and remotely");
+			checkSurvivesFailedCall(address);
+
+			System.out.printf("%d staff, %d calls per measurement%n", staff, staff * (DAYS.length + 1));
+			for (int round = 1; round <= rounds; round++) {
+				System.out.printf("Round %d%n", round);
+				ShiftManServer local = new ShiftManServer();
+				report("in-process ShiftManServer", local, staff, false);
+				try (RemoteShiftMan remote = RemoteShiftMan.connect(address)) {
+					report("RemoteShiftMan, waiting", remote, staff, false);
+					report("RemoteShiftMan, pipelined", remote, staff, true);
+				}
+			}
+		} finally {
+			server.close();
+		}
+
+		if (failures == 0) {
+			System.out.println("PASS: every remote call gave the same result as in-process");
+		} else {
+			System.out.println("FAIL: " + failures + " remote results were wrong");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Runs Driver1, in-process if no address is given, and gives back what it printed.
+	 */
+	private static String runDriver1(String address) throws Exception {
+		PrintStream console = System.out;
+		ByteArrayOutputStream printed = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(printed, true, "UTF-8"));
+		try {
+			Driver1.main((address == null) ? new String[0] : new String[] { address });
+		} finally {
+			System.setOut(console);
+		}
+		return printed.toString("UTF-8");
+	}
+
+	/**
+	 * Makes a call that fails inside the server, and checks that it only fails that call: the same connection and a
+	 * new one are both still answered. Also checks that a null argument is answered as it is in-process, and leaves
+	 * the connection working.
+	 */
+	private static void checkSurvivesFailedCall(String address) throws Exception {
+		try (RemoteShiftMan first = RemoteShiftMan.connect(address)) {
+			first.newRoster("Probe Hardware");
+			try {
+				first.getRosterForWorker("Hari");
+				check("one-word name", "answered", "failed");
+			} catch (IllegalStateException e) {
+				// The call failed, as it should, without taking the server down
+			}
+			check("same connection after a failed call", first.registerStaff("Hari", "Ngata"), "");
+			ShiftManServer local = new ShiftManServer();
+			local.newRoster("Probe Hardware");
+			check("null argument", first.registerStaff(null, "Ngata"), local.registerStaff(null, "Ngata"));
+			check("same connection after a null argument", first.registerStaff("Aroha", "Ngata"), "");
+			try (RemoteShiftMan second = RemoteShiftMan.connect(address)) {
+				check("new connection after a failed call", second.newRoster("Probe Hardware 2"), "");
+			}
+		}
+		System.out.println("A call failing in the server only failed that call");
+	}
+
+	private static void report(String name, ShiftMan scheduler, int staff, boolean pipelined) {
+		scheduler.newRoster("Benchmark Hardware " + name);
+		for (String day : DAYS) {
+			scheduler.setWorkingHours(day, "08:00", "20:00");
+			for (int i = 0; i < SHIFTS_PER_DAY; i++) {
+				scheduler.addShift(day, shiftStart(i), shiftStart(i + 1), "1");
+			}
+		}
+
+		long start = System.nanoTime();
+		if (pipelined) {
+			List<CompletableFuture<String>> statuses = new ArrayList<>();
+			RemoteShiftMan remote = (RemoteShiftMan) scheduler;
+			for (int s = 0; s < staff; s++) {
+				statuses.add(remote.submit(RosterCommand.registerStaff("Worker", familyName(s))));
+				int shift = s % SHIFTS_PER_DAY;
+				for (String day : DAYS) {
+					statuses.add(remote.submit(RosterCommand.assignStaff(day, shiftStart(shift), shiftStart(shift + 1),
+							"Worker", familyName(s), false)));
+				}
+			}
+			for (CompletableFuture<String> status : statuses) {
+				check(name, status.join(), "");
+			}
+		} else {
+			for (int s = 0; s < staff; s++) {
+				check(name, scheduler.registerStaff("Worker", familyName(s)), "");
+				int shift = s % SHIFTS_PER_DAY;
+				for (String day : DAYS) {
+					check(name, scheduler.assignStaff(day, shiftStart(shift), shiftStart(shift + 1), "Worker",
+							familyName(s), false), "");
+				}
+			}
+		}
+		long elapsed = System.nanoTime() - start;
+
+		check(name + " staff", Integer.toString(scheduler.getRegisteredStaff().size()), Integer.toString(staff));
+		check(name + " unassigned", Integer.toString(scheduler.getUnassignedStaff().size()), "0");
+		long calls = (long) staff * (DAYS.length + 1);
+		System.out.printf("  %-28s %10.0f calls/s%n", name, calls * 1e9 / elapsed);
+	}
+
+	private static void check(String what, String actual, String expected) {
+		if (!actual.equals(expected)) {
+			if (failures++ < 10) {
+				System.err.println("Wrong result: " + what + ": " + actual);
+			}
+		}
+	}
+
+	private static String familyName(int staff) {
+		return String.format("Staff%06d", staff);
+	}
+
+	private static String shiftStart(int shift) {
+		int minutes = 8 * 60 + shift * 15;
+		return String.format("%02d:%02d", minutes / 60, minutes % 60);
+	}
+}
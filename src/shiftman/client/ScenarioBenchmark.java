@@ -0,0 +1,168 @@
+package shiftman.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import shiftman.server.Roster;
+import shiftman.server.RosterCommand;
+import shiftman.server.RosterSnapshot;
+import shiftman.server.ScenarioEvaluator;
+import shiftman.server.ShiftSlot;
+
+/**
+ * Forks a roster of 1,000 staff into hundreds of scenarios, each staffing the roster's open shifts differently, and
+ * scores them all in parallel. Checks that a fork costs next to nothing however large the roster, that changes to a
+ * fork never reach the roster it was forked from, and that the parallel scores and the best scenario are the ones
+ * found by scoring each scenario in turn. Reports how long forking takes against building the roster again.
+ *
+ * <p>Arguments are the number of staff, the number of shifts per day, and the number of scenarios.
+ */
+public class ScenarioBenchmark {
+
+	private static final String[] DAYS = { "Monday", "Tuesday", "Wednesday", "Thursday", "Friday", "Saturday", "Sunday" };
+	private static final int FORKS = 100_000;
+
+	private static int failures = 0;
+
+	public static void main(String[] args) {
+		int staff = (args.length > 0) ? Integer.parseInt(args[0]) : 1000;
+		int shiftsPerDay = (args.length > 1) ? Integer.parseInt(args[1]) : 48;
+		int scenarioCount = (args.length > 2) ? Integer.parseInt(args[2]) : 300;
+
+		List<RosterCommand> setUp = setUpCommands(staff, shiftsPerDay);
+		long start = System.nanoTime();
+		Roster base = new Roster("Scenario Hardware");
+		for (String status : base.applyBatch(setUp)) {
+			check("setting up", status.isEmpty(), status);
+		}
+		long built = System.nanoTime() - start;
+		RosterSnapshot original = base.snapshot();
+		ScenarioEvaluator.Score originalScore = ScenarioEvaluator.score(original);
+
+		start = System.nanoTime();
+		for (int i = 0; i < FORKS; i++) {
+			check("fork shares the snapshot", base.fork().snapshot() == original, "a copy was made");
+		}
+		long forked = (System.nanoTime() - start) / FORKS;
+		System.out.printf("%d staff, %d shifts, %d commands: built in %.1f ms, forked in %d ns%n", staff,
+				shiftsPerDay * DAYS.length, setUp.size(), built / 1e6, forked);
+		check("fork time", forked * 1000 < built, forked + " ns against " + built + " ns to build");
+
+		List<Roster> scenarios = new ArrayList<>();
+		start = System.nanoTime();
+		for (int i = 0; i < scenarioCount; i++) {
+			Roster scenario = base.fork();
+			for (String status : scenario.applyBatch(staffing(original, staff, i))) {
+				check("staffing a scenario", status.isEmpty(), status);
+			}
+			scenarios.add(scenario);
+		}
+		System.out.printf("%d scenarios forked and staffed in %.1f ms%n", scenarioCount,
+				(System.nanoTime() - start) / 1e6);
+		check("roster forked from", base.snapshot() == original, "it was changed by its forks");
+		check("score of the roster forked from", ScenarioEvaluator.score(base.snapshot()).compareTo(originalScore) == 0,
+				ScenarioEvaluator.score(base.snapshot()) + " against " + originalScore);
+
+		start = System.nanoTime();
+		List<ScenarioEvaluator.Score> sequential = new ArrayList<>();
+		int sequentialBest = -1;
+		for (int i = 0; i < scenarios.size(); i++) {
+			sequential.add(ScenarioEvaluator.score(scenarios.get(i).snapshot()));
+			if (sequentialBest < 0 || sequential.get(i).compareTo(sequential.get(sequentialBest)) < 0) {
+				sequentialBest = i;
+			}
+		}
+		long oneAtATime = System.nanoTime() - start;
+
+		ScenarioEvaluator evaluator = new ScenarioEvaluator(ForkJoinPool.commonPool());
+		start = System.nanoTime();
+		List<ScenarioEvaluator.Score> parallel = evaluator.scoreAll(scenarios);
+		long inParallel = System.nanoTime() - start;
+		int best = evaluator.best(scenarios);
+
+		System.out.printf("Scored one at a time in %.1f ms, in parallel on %d threads in %.1f ms%n", oneAtATime / 1e6,
+				ForkJoinPool.commonPool().getParallelism(), inParallel / 1e6);
+		System.out.printf("Before: %s%nBest: scenario %d, %s%n", originalScore, best, parallel.get(best));
+		for (int i = 0; i < scenarios.size(); i++) {
+			check("parallel score", parallel.get(i).compareTo(sequential.get(i)) == 0,
+					"scenario " + i + ": " + parallel.get(i) + " against " + sequential.get(i));
+		}
+		check("best scenario", best == sequentialBest, best + " against " + sequentialBest);
+		check("best scenario better than none", parallel.get(best).compareTo(originalScore) < 0,
+				parallel.get(best) + " against " + originalScore);
+
+		if (failures == 0) {
+			System.out.println("PASS: every fork was free, left its parent alone, and scored the same in parallel");
+		} else {
+			System.out.println("FAIL: " + failures + " checks failed");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Helper method for main().
+	 * Opens every day around the clock with back-to-back shifts and registers the staff, but assigns no one.
+	 */
+	private static List<RosterCommand> setUpCommands(int staff, int shiftsPerDay) {
+		Random random = new Random(1);
+		int length = (23 * 60 + 58) / shiftsPerDay;
+		List<RosterCommand> commands = new ArrayList<>();
+		for (String day : DAYS) {
+			commands.add(RosterCommand.setWorkingHours(day, "00:01", "23:59"));
+			for (int i = 0; i < shiftsPerDay; i++) {
+				commands.add(RosterCommand.addShift(day, time(1 + i * length), time(1 + (i + 1) * length),
+						Integer.toString(1 + random.nextInt(4))));
+			}
+		}
+		for (int s = 0; s < staff; s++) {
+			commands.add(RosterCommand.registerStaff("Worker", familyName(s)));
+		}
+		return commands;
+	}
+
+	/**
+	 * Helper method for main().
+	 * Staffs the shifts that need it in a way of its own for each scenario: a different share of them, from a
+	 * different part of the staff list.
+	 */
+	private static List<RosterCommand> staffing(RosterSnapshot snapshot, int staff, int scenario) {
+		Random random = new Random(scenario);
+		double share = 0.5 + 0.5 * random.nextDouble();
+		int pool = Math.max(1, staff * (1 + scenario % 4) / 4);
+		List<RosterCommand> commands = new ArrayList<>();
+		for (ShiftSlot slot : snapshot.getUnderstaffedShifts()) {
+			if (random.nextDouble() >= share) {
+				continue;
+			}
+			String day = slot.getDay().toString();
+			String start = slot.getStartTime().toString();
+			String end = slot.getEndTime().toString();
+			commands.add(RosterCommand.assignStaff(day, start, end, "Worker", familyName(random.nextInt(pool)), true));
+			int workers = snapshot.getShift(slot).getMinimumWorkers();
+			int first = random.nextInt(pool);
+			for (int w = 0; w < workers && w < pool; w++) {
+				commands.add(RosterCommand.assignStaff(day, start, end, "Worker", familyName((first + w) % pool),
+						false));
+			}
+		}
+		return commands;
+	}
+
+	private static void check(String what, boolean ok, String detail) {
+		if (!ok) {
+			if (failures++ < 10) {
+				System.err.println("Wrong " + what + ": " + detail);
+			}
+		}
+	}
+
+	private static String familyName(int staff) {
+		return String.format("Staff%06d", staff);
+	}
+
+	private static String time(int minutes) {
+		return String.format("%02d:%02d", minutes / 60, minutes % 60);
+	}
+}
@@ -0,0 +1,184 @@
+package shiftman.client;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import shiftman.server.RosterSnapshot;
+import shiftman.server.Shift;
+import shiftman.server.ShiftManServer;
+import shiftman.server.ShiftSlot;
+import shiftman.server.StaffMember;
+
+/**
+ * Measures an analytics pass over a large roster made through the typed queries on a RosterSnapshot, against the
+ * same pass made by parsing the strings the ShiftMan queries return. The pass works out how many minutes each staff
+ * member is rostered for, as a worker or as the manager, and how many workers short the understaffed shifts are.
+ * Both ways must give the same answers.
+ *
+ * <p>Arguments are the number of staff and the number of rounds.
+ */
+public class TypedQueryBenchmark {
+
+	private static final String[] DAYS = { "Monday", "Tuesday", "Wednesday", "Thursday", "Friday", "Saturday", "Sunday" };
+	private static final int SHIFTS_PER_DAY = 48;
+	private static final String SHOP = "Benchmark Hardware";
+
+	private static int failures = 0;
+
+	public static void main(String[] args) {
+		int staff = (args.length > 0) ? Integer.parseInt(args[0]) : 5000;
+		int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+
+		ShiftManServer scheduler = new ShiftManServer();
+		buildRoster(scheduler, staff);
+		System.out.printf("%d staff, %d shifts%n", staff, DAYS.length * SHIFTS_PER_DAY);
+
+		for (int round = 1; round <= rounds; round++) {
+			long start = System.nanoTime();
+			Analytics parsed = analyseStrings(scheduler);
+			long parsedNanos = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			Analytics typed = analyseSnapshot(scheduler.getRegistry().getRoster(SHOP).snapshot());
+			long typedNanos = System.nanoTime() - start;
+
+			check("minutes rostered", typed._minutesRostered, parsed._minutesRostered);
+			check("workers short", typed._workersShort, parsed._workersShort);
+			System.out.printf("Round %d: parsing strings %8.2f ms, typed queries %8.2f ms%n", round, parsedNanos / 1e6,
+					typedNanos / 1e6);
+		}
+
+		if (failures == 0) {
+			System.out.println("PASS: the typed queries gave the same answers as the strings");
+		} else {
+			System.out.println("FAIL: " + failures + " answers were different");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * The answers the pass works out.
+	 */
+	private static class Analytics {
+		private final Map<String, Integer> _minutesRostered = new HashMap<>();
+		private int _workersShort;
+	}
+
+	/**
+	 * Staff are rostered to one shift a day as a worker, with every tenth of them also managing another, and some
+	 * shifts ask for more workers than they get.
+	 */
+	private static void buildRoster(ShiftManServer scheduler, int staff) {
+		scheduler.newRoster(SHOP);
+		for (String day : DAYS) {
+			scheduler.setWorkingHours(day, "08:00", "20:00");
+			for (int i = 0; i < SHIFTS_PER_DAY; i++) {
+				scheduler.addShift(day, shiftStart(i), shiftStart(i + 1), Integer.toString(i % 5 == 0 ? 1000 : 1));
+			}
+		}
+		for (int s = 0; s < staff; s++) {
+			scheduler.registerStaff("Worker", familyName(s));
+			for (int d = 0; d < DAYS.length; d++) {
+				int shift = (s + d) % SHIFTS_PER_DAY;
+				scheduler.assignStaff(DAYS[d], shiftStart(shift), shiftStart(shift + 1), "Worker", familyName(s), false);
+				if (s % 10 == 0) {
+					int managed = (shift + 7) % SHIFTS_PER_DAY;
+					scheduler.assignStaff(DAYS[d], shiftStart(managed), shiftStart(managed + 1), "Worker",
+							familyName(s), true);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Works the answers out from the ShiftMan queries, the only way a client of the string API can.
+	 */
+	private static Analytics analyseStrings(ShiftManServer scheduler) {
+		Analytics result = new Analytics();
+		for (String name : scheduler.getRegisteredStaff()) {
+			int minutes = 0;
+			minutes += minutesOf(scheduler.getRosterForWorker(name));
+			minutes += minutesOf(scheduler.getShiftsManagedBy(name));
+			result._minutesRostered.put(name, minutes);
+		}
+
+		// Minimum workers are not in any string, so the shortfall is worked out from what was asked for when the
+		// shifts were added, and the number of names listed against each understaffed shift
+		Map<String, Integer> assigned = new HashMap<>();
+		for (String day : DAYS) {
+			for (String line : scheduler.getRosterForDay(day)) {
+				int open = line.lastIndexOf(" [");
+				if (open < 0 || !line.startsWith(day + "[")) {
+					continue;
+				}
+				String workers = line.substring(open + 2, line.length() - 1);
+				int count = workers.equals("No workers assigned") ? 0 : workers.split(", ").length;
+				assigned.put(line.substring(0, line.indexOf(']') + 1), count);
+			}
+		}
+		for (String description : scheduler.understaffedShifts()) {
+			int start = parseMinutes(description.substring(description.indexOf('[') + 1));
+			int minimum = ((start - 8 * 60) / 15 % 5 == 0) ? 1000 : 1;
+			result._workersShort += minimum - assigned.getOrDefault(description, 0);
+		}
+		return result;
+	}
+
+	/**
+	 * Works the same answers out from the snapshot's own objects.
+	 */
+	private static Analytics analyseSnapshot(RosterSnapshot snapshot) {
+		Analytics result = new Analytics();
+		for (StaffMember s : snapshot.getStaffList()) {
+			int minutes = 0;
+			for (ShiftSlot slot : snapshot.getShiftsWorkedBy(s)) {
+				minutes += slot.getEndMinutes() - slot.getStartMinutes();
+			}
+			for (ShiftSlot slot : snapshot.getShiftsManagedBy(s)) {
+				minutes += slot.getEndMinutes() - slot.getStartMinutes();
+			}
+			result._minutesRostered.put(s.toString(), minutes);
+		}
+		for (ShiftSlot slot : snapshot.getUnderstaffedShifts()) {
+			Shift shift = snapshot.getShift(slot);
+			result._workersShort += shift.getMinimumWorkers() - shift.getAssignedStaff().size();
+		}
+		return result;
+	}
+
+	/**
+	 * Helper method for analyseStrings().
+	 * Adds up the lengths of the shifts listed in a worker's or manager's roster, after the name at the top.
+	 */
+	private static int minutesOf(List<String> roster) {
+		int minutes = 0;
+		for (int i = 1; i < roster.size(); i++) {
+			String shift = roster.get(i);
+			int open = shift.indexOf('[');
+			minutes += parseMinutes(shift.substring(open + 7)) - parseMinutes(shift.substring(open + 1));
+		}
+		return minutes;
+	}
+
+	private static int parseMinutes(String time) {
+		return Integer.parseInt(time.substring(0, 2)) * 60 + Integer.parseInt(time.substring(3, 5));
+	}
+
+	private static void check(String what, Object actual, Object expected) {
+		if (!actual.equals(expected)) {
+			if (failures++ < 10) {
+				System.err.println("Different answer for " + what + ": " + actual + " instead of " + expected);
+			}
+		}
+	}
+
+	private static String familyName(int staff) {
+		return String.format("Staff%06d", staff);
+	}
+
+	private static String shiftStart(int shift) {
+		int minutes = 8 * 60 + shift * 15;
+		return String.format("%02d:%02d", minutes / 60, minutes % 60);
+	}
+}
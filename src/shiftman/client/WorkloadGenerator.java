@@ -0,0 +1,296 @@
+package shiftman.client;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Makes up streams of ShiftMan calls that look like shops being set up and used, far larger than Driver1's.
+ * The same seed always gives the same stream.
+ *
+ * <p>Each shop is created with a new roster, and given opening hours that vary from day to day, with the odd day
+ * closed. Each open day is filled from opening to closing with back-to-back shifts of between half an hour and four
+ * hours. The staff are registered, and each shift is given a few more or a few less workers than it asks for, and
+ * most shifts a manager, so that every query has something to report. Queries are made between the changes as a shop
+ * in use would make them, and now and then a mistake is made, such as assigning unknown staff, adding a clashing
+ * shift or giving a time that does not exist, which the server should turn away.
+ */
+public class WorkloadGenerator {
+
+	static final String[] DAYS = { "Monday", "Tuesday", "Wednesday", "Thursday", "Friday", "Saturday", "Sunday" };
+
+	private static final String[] GIVEN_NAMES = { "Aroha", "Ben", "Chen", "Dmitri", "Eilidh", "Farah", "Grace",
+			"Hemi", "Isla", "Jae", "Kiri", "Liam", "Mei", "Noah", "Olivia", "Priya", "Quinn", "Rangi", "Sofia", "Tama" };
+
+	private static final String[] FAMILY_NAMES = { "Anderson", "Brown", "Chandra", "Davies", "Evans", "Fong",
+			"Gupta", "Harris", "Ivanova", "Jones", "Kaur", "Lee", "Martin", "Ngata", "Otieno", "Patel", "Reid", "Singh",
+			"Tan", "Walker", "Wang", "Wilson", "Young", "Zhang", "Zhou" };
+
+	private static final String[] SHOP_KINDS = { "Hardware", "Books", "Groceries", "Pharmacy", "Garden Centre",
+			"Electronics", "Bakery", "Outdoor" };
+
+	/**
+	 * The number of shifts a week each member of staff works, on average.
+	 */
+	private static final int SHIFTS_PER_STAFF_MEMBER = 5;
+
+	private final Random _random;
+
+	private final int _staffPerShop;
+
+	private final double _queryRate;
+
+	private final double _errorRate;
+
+	private List<RecordedCall> _calls;
+
+	private List<GeneratedShift> _shifts;
+
+	private List<String[]> _staff;
+
+	/**
+	 * A shift that has been added to the shop's roster.
+	 */
+	private static class GeneratedShift {
+
+		private final String _day;
+		private final String _start;
+		private final String _end;
+		private final int _minimumWorkers;
+
+		GeneratedShift(String day, String start, String end, int minimumWorkers) {
+			_day = day;
+			_start = start;
+			_end = end;
+			_minimumWorkers = minimumWorkers;
+		}
+	}
+
+	/**
+	 * @param queryRate The chance of a query being made after each change.
+	 * @param errorRate The chance of a mistake being made after each change.
+	 */
+	public WorkloadGenerator(long seed, int staffPerShop, double queryRate, double errorRate) {
+		_random = new Random(seed);
+		_staffPerShop = staffPerShop;
+		_queryRate = queryRate;
+		_errorRate = errorRate;
+	}
+
+	/**
+	 * Makes up the calls that set up and use the given number of shops, one after another.
+	 */
+	public List<RecordedCall> generate(int shops) {
+		_calls = new ArrayList<>();
+		for (int s = 0; s < shops; s++) {
+			generateShop(s);
+		}
+		return _calls;
+	}
+
+	/**
+	 * Helper method for generate().
+	 */
+	private void generateShop(int shop) {
+		_shifts = new ArrayList<>();
+		_staff = new ArrayList<>();
+		_calls.add(RecordedCall.of("newRoster",
+				String.format("Shop %03d %s", shop + 1, SHOP_KINDS[_random.nextInt(SHOP_KINDS.length)])));
+
+		int[][] hours = openingHours();
+		for (int d = 0; d < DAYS.length; d++) {
+			if (hours[d] != null) {
+				change(RecordedCall.of("setWorkingHours", DAYS[d], time(hours[d][0]), time(hours[d][1])));
+			}
+		}
+
+		int shiftCount = 0;
+		for (int[] h : hours) {
+			if (h != null) {
+				shiftCount += (h[1] - h[0]) / 120 + 1;
+			}
+		}
+		double workersPerShift = Math.max(1.0, (double) _staffPerShop * SHIFTS_PER_STAFF_MEMBER / shiftCount);
+		for (int d = 0; d < DAYS.length; d++) {
+			if (hours[d] != null) {
+				addShifts(DAYS[d], hours[d][0], hours[d][1], workersPerShift);
+			}
+		}
+
+		for (int i = 0; i < _staffPerShop; i++) {
+			String[] name = staffName(i);
+			_staff.add(name);
+			change(RecordedCall.of("registerStaff", name[0], name[1]));
+		}
+
+		for (GeneratedShift shift : _shifts) {
+			assignStaff(shift);
+		}
+
+		_calls.add(RecordedCall.of("reportRosterIssues"));
+		_calls.add(RecordedCall.of("displayRoster"));
+	}
+
+	/**
+	 * Helper method for generateShop().
+	 * @return The opening and closing time of each day, in minutes, or null for a day the shop is closed.
+	 */
+	private int[][] openingHours() {
+		int[][] hours = new int[DAYS.length][];
+		int usualOpening = 7 * 60 + 30 * _random.nextInt(6);
+		int usualClosing = 17 * 60 + 30 * _random.nextInt(8);
+		for (int d = 0; d < DAYS.length; d++) {
+			boolean weekend = d >= 5;
+			if (_random.nextInt(weekend ? 4 : 20) == 0) {
+				continue;
+			}
+			int opening = usualOpening + (weekend ? 60 : 0);
+			int closing = usualClosing - (weekend ? 120 : 0);
+			if (_random.nextInt(5) == 0) {
+				// Late night shopping
+				closing = Math.min(closing + 180, 23 * 60);
+			}
+			hours[d] = new int[] { opening, closing };
+		}
+		return hours;
+	}
+
+	/**
+	 * Helper method for generateShop().
+	 * Fills the day with shifts from opening to closing.
+	 */
+	private void addShifts(String day, int opening, int closing, double workersPerShift) {
+		int start = opening;
+		while (start < closing) {
+			int end = Math.min(start + 30 * (1 + _random.nextInt(8)), closing);
+			int minimumWorkers = Math.max(1, (int) Math.round(workersPerShift * (0.7 + 0.6 * _random.nextDouble())));
+			GeneratedShift shift = new GeneratedShift(day, time(start), time(end), minimumWorkers);
+			change(RecordedCall.of("addShift", day, shift._start, shift._end, Integer.toString(minimumWorkers)));
+			_shifts.add(shift);
+			start = end;
+		}
+	}
+
+	/**
+	 * Helper method for generateShop().
+	 * Gives the shift somewhere near as many workers as it asks for, and usually a manager.
+	 */
+	private void assignStaff(GeneratedShift shift) {
+		if (_random.nextInt(8) != 0) {
+			String[] manager = _staff.get(_random.nextInt(_staff.size()));
+			change(RecordedCall.of("assignStaff", shift._day, shift._start, shift._end, manager[0], manager[1], "true"));
+		}
+		int workers = Math.min(_staff.size(), Math.max(0, shift._minimumWorkers + _random.nextInt(3) - 1));
+		Set<Integer> chosen = new HashSet<>();
+		while (chosen.size() < workers) {
+			int s = _random.nextInt(_staff.size());
+			if (chosen.add(s)) {
+				String[] worker = _staff.get(s);
+				change(RecordedCall.of("assignStaff", shift._day, shift._start, shift._end, worker[0], worker[1],
+						"false"));
+			}
+		}
+	}
+
+	/**
+	 * Helper method for every method making a change.
+	 * Adds the change, now and then with a mistake after it, and maybe a query.
+	 */
+	private void change(RecordedCall call) {
+		_calls.add(call);
+		if (_random.nextDouble() < _errorRate) {
+			_calls.add(mistake());
+		}
+		if (_random.nextDouble() < _queryRate) {
+			_calls.add(query());
+		}
+	}
+
+	/**
+	 * Helper method for change().
+	 * Makes up a call the server should turn away.
+	 */
+	private RecordedCall mistake() {
+		String day = DAYS[_random.nextInt(DAYS.length)];
+		int kind = _random.nextInt(8);
+		if (kind >= 4 && _shifts.isEmpty()) {
+			kind = _random.nextInt(4);
+		}
+		switch (kind) {
+			case 0:
+				return RecordedCall.of("setWorkingHours", "Funday", "09:00", "17:00");
+			case 1:
+				return RecordedCall.of("setWorkingHours", day, "9am", "5pm");
+			case 2:
+				return RecordedCall.of("addShift", day, "17:00", "09:00", "1");
+			case 3:
+				return RecordedCall.of("registerStaff", "", "Nobody");
+			case 4: {
+				GeneratedShift shift = _shifts.get(_random.nextInt(_shifts.size()));
+				return RecordedCall.of("addShift", shift._day, shift._start, shift._end, "1");
+			}
+			case 5: {
+				GeneratedShift shift = _shifts.get(_random.nextInt(_shifts.size()));
+				return RecordedCall.of("addShift", shift._day, shift._start, shift._end, "none");
+			}
+			case 6: {
+				GeneratedShift shift = _shifts.get(_random.nextInt(_shifts.size()));
+				return RecordedCall.of("assignStaff", shift._day, shift._start, shift._end, "Unknown", "Stranger",
+						"false");
+			}
+			default: {
+				GeneratedShift shift = _shifts.get(_random.nextInt(_shifts.size()));
+				return RecordedCall.of("assignStaff", shift._day, "00:30", "00:45", "Unknown", "Stranger", "false");
+			}
+		}
+	}
+
+	/**
+	 * Helper method for change().
+	 * Makes up a query, mostly for the lists of a day or a member of staff, as a shop would most often want.
+	 */
+	private RecordedCall query() {
+		int kind = _random.nextInt(20);
+		if (kind < 6) {
+			return RecordedCall.of("getRosterForDay", DAYS[_random.nextInt(DAYS.length)]);
+		} else if (kind < 11 && !_staff.isEmpty()) {
+			String[] name = _staff.get(_random.nextInt(_staff.size()));
+			return RecordedCall.of("getRosterForWorker", name[0] + " " + name[1]);
+		} else if (kind < 14 && !_staff.isEmpty()) {
+			String[] name = _staff.get(_random.nextInt(_staff.size()));
+			return RecordedCall.of("getShiftsManagedBy", name[0] + " " + name[1]);
+		} else if (kind == 14) {
+			return RecordedCall.of("getRegisteredStaff");
+		} else if (kind == 15) {
+			return RecordedCall.of("getUnassignedStaff");
+		} else if (kind == 16) {
+			return RecordedCall.of("shiftsWithoutManagers");
+		} else if (kind == 17) {
+			return RecordedCall.of("understaffedShifts");
+		} else if (kind == 18) {
+			return RecordedCall.of("overstaffedShifts");
+		} else {
+			return RecordedCall.of("reportRosterIssues");
+		}
+	}
+
+	/**
+	 * Helper method for generateShop().
+	 * Gives each member of staff in a shop a different name, numbering the family names once every pair of names
+	 * has been used.
+	 */
+	private static String[] staffName(int staff) {
+		int pairs = GIVEN_NAMES.length * FAMILY_NAMES.length;
+		String familyName = FAMILY_NAMES[staff / GIVEN_NAMES.length % FAMILY_NAMES.length];
+		if (staff >= pairs) {
+			familyName += staff / pairs + 1;
+		}
+		return new String[] { GIVEN_NAMES[staff % GIVEN_NAMES.length], familyName };
+	}
+
+	private static String time(int minutes) {
+		return String.format("%02d:%02d", minutes / 60, minutes % 60);
+	}
+}
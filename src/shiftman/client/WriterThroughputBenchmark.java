@@ -0,0 +1,190 @@
+package shiftman.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import shiftman.server.RosterCommand;
+import shiftman.server.ShiftMan;
+import shiftman.server.ShiftManServer;
+import shiftman.server.SingleWriterShiftMan;
+
+/**
+ * Measures how many changes per second a roster can take when many terminals make them at once, comparing
+ * a ShiftManServer behind a single lock, a ShiftManServer on its own, and a SingleWriterShiftMan both with
+ * callers waiting for each change and with callers queuing their changes and collecting the results later.
+ *
+ * <p>Each terminal registers its own staff and assigns each of them as a worker to one shift on every day.
+ * Arguments are the number of terminals and the number of staff per terminal.
+ */
+public class WriterThroughputBenchmark {
+
+	private static final String[] DAYS = { "Monday", "Tuesday", "Wednesday", "Thursday", "Friday", "Saturday", "Sunday" };
+	private static final int SHIFTS_PER_DAY = 48;
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args) throws Exception {
+		int terminals = (args.length > 0) ? Integer.parseInt(args[0]) : 8;
+		int staffPerTerminal = (args.length > 1) ? Integer.parseInt(args[1]) : 2000;
+
+		System.out.printf("%d terminals, %d staff each, %d changes per round%n", terminals, staffPerTerminal,
+				terminals * staffPerTerminal * (DAYS.length + 1));
+		for (int round = 1; round <= ROUNDS; round++) {
+			System.out.printf("Round %d%n", round);
+			report("synchronized ShiftManServer", terminals, staffPerTerminal,
+					() -> new SynchronizedShiftMan(new ShiftManServer()), false);
+			report("ShiftManServer", terminals, staffPerTerminal, ShiftManServer::new, false);
+			report("SingleWriterShiftMan, waiting", terminals, staffPerTerminal,
+					() -> new SingleWriterShiftMan(new ShiftManServer()), false);
+			report("SingleWriterShiftMan, queued", terminals, staffPerTerminal,
+					() -> new SingleWriterShiftMan(new ShiftManServer()), true);
+		}
+	}
+
+	private static void report(String name, int terminals, int staffPerTerminal, Supplier<ShiftMan> engine,
+			boolean queued) throws Exception {
+		ShiftMan scheduler = engine.get();
+		scheduler.newRoster("Benchmark Hardware");
+		for (String day : DAYS) {
+			scheduler.setWorkingHours(day, "08:00", "20:00");
+			for (int i = 0; i < SHIFTS_PER_DAY; i++) {
+				scheduler.addShift(day, shiftStart(i), shiftStart(i + 1), "1");
+			}
+		}
+
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < terminals; t++) {
+			final int terminal = t;
+			threads.add(new Thread(() -> {
+				if (queued) {
+					runQueued((SingleWriterShiftMan) scheduler, terminal, staffPerTerminal);
+				} else {
+					runWaiting(scheduler, terminal, staffPerTerminal);
+				}
+			}));
+		}
+		long start = System.nanoTime();
+		threads.forEach(Thread::start);
+		for (Thread t : threads) {
+			t.join();
+		}
+		long elapsed = System.nanoTime() - start;
+
+		if (scheduler instanceof SingleWriterShiftMan) {
+			((SingleWriterShiftMan) scheduler).close();
+		}
+		int expectedStaff = terminals * staffPerTerminal;
+		String check = (scheduler.getRegisteredStaff().size() == expectedStaff && scheduler.getUnassignedStaff().isEmpty())
+				? "" : "  (INCORRECT RESULT)";
+		long changes = (long) expectedStaff * (DAYS.length + 1);
+		System.out.printf("  %-32s %10.0f changes/s%s%n", name, changes * 1e9 / elapsed, check);
+	}
+
+	private static void runWaiting(ShiftMan scheduler, int terminal, int staffPerTerminal) {
+		for (int s = 0; s < staffPerTerminal; s++) {
+			String family = familyName(terminal, s);
+			scheduler.registerStaff("Worker", family);
+			int shift = s % SHIFTS_PER_DAY;
+			for (String day : DAYS) {
+				scheduler.assignStaff(day, shiftStart(shift), shiftStart(shift + 1), "Worker", family, false);
+			}
+		}
+	}
+
+	private static void runQueued(SingleWriterShiftMan scheduler, int terminal, int staffPerTerminal) {
+		List<CompletableFuture<String>> statuses = new ArrayList<>();
+		for (int s = 0; s < staffPerTerminal; s++) {
+			String family = familyName(terminal, s);
+			statuses.add(scheduler.submit(RosterCommand.registerStaff("Worker", family)));
+			int shift = s % SHIFTS_PER_DAY;
+			for (String day : DAYS) {
+				statuses.add(scheduler.submit(RosterCommand.assignStaff(day, shiftStart(shift), shiftStart(shift + 1),
+						"Worker", family, false)));
+			}
+		}
+		statuses.forEach(CompletableFuture::join);
+	}
+
+	private static String familyName(int terminal, int staff) {
+		return String.format("Staff%02d%05d", terminal, staff);
+	}
+
+	private static String shiftStart(int shift) {
+		int minutes = 8 * 60 + shift * 15;
+		return String.format("%02d:%02d", minutes / 60, minutes % 60);
+	}
+
+	/**
+	 * A ShiftMan that lets only one caller at a time into the ShiftMan it wraps, for comparison.
+	 */
+	private static class SynchronizedShiftMan implements ShiftMan {
+
+		private final ShiftMan _delegate;
+
+		SynchronizedShiftMan(ShiftMan delegate) {
+			_delegate = delegate;
+		}
+
+		public synchronized String newRoster(String shopName) {
+			return _delegate.newRoster(shopName);
+		}
+
+		public synchronized String setWorkingHours(String dayOfWeek, String startTime, String endTime) {
+			return _delegate.setWorkingHours(dayOfWeek, startTime, endTime);
+		}
+
+		public synchronized String addShift(String dayOfWeek, String startTime, String endTime, String minimumWorkers) {
+			return _delegate.addShift(dayOfWeek, startTime, endTime, minimumWorkers);
+		}
+
+		public synchronized String registerStaff(String givenname, String familyName) {
+			return _delegate.registerStaff(givenname, familyName);
+		}
+
+		public synchronized String assignStaff(String dayOfWeek, String startTime, String endTime, String givenName,
+				String familyName, boolean isManager) {
+			return _delegate.assignStaff(dayOfWeek, startTime, endTime, givenName, familyName, isManager);
+		}
+
+		public synchronized List<String> getRegisteredStaff() {
+			return _delegate.getRegisteredStaff();
+		}
+
+		public synchronized List<String> getUnassignedStaff() {
+			return _delegate.getUnassignedStaff();
+		}
+
+		public synchronized List<String> shiftsWithoutManagers() {
+			return _delegate.shiftsWithoutManagers();
+		}
+
+		public synchronized List<String> understaffedShifts() {
+			return _delegate.understaffedShifts();
+		}
+
+		public synchronized List<String> overstaffedShifts() {
+			return _delegate.overstaffedShifts();
+		}
+
+		public synchronized List<String> getRosterForDay(String dayOfWeek) {
+			return _delegate.getRosterForDay(dayOfWeek);
+		}
+
+		public synchronized List<String> getRosterForWorker(String workerName) {
+			return _delegate.getRosterForWorker(workerName);
+		}
+
+		public synchronized List<String> getShiftsManagedBy(String managerName) {
+			return _delegate.getShiftsManagedBy(managerName);
+		}
+
+		public synchronized String reportRosterIssues() {
+			return _delegate.reportRosterIssues();
+		}
+
+		public synchronized String displayRoster() {
+			return _delegate.displayRoster();
+		}
+	}
+}
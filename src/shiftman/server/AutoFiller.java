@@ -0,0 +1,476 @@
+package shiftman.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Plans the assignments that would give every shift in a roster its minimum number of workers and a manager,
+ * spreading the work as evenly as it can across the registered staff. The roster's existing assignments are kept
+ * as they are, and counted towards each staff member's load, which is the number of minutes of shifts they work
+ * or manage in the week.
+ *
+ * <p>The plan is made in two steps. First each gap is filled in turn, in order of day and start time, with whoever
+ * has the lightest load and is not already on the shift. Then, for as long as the time budget allows, the assignments
+ * just made are moved from heavily loaded staff to lightly loaded ones wherever that makes the loads more even,
+ * measured by the sum of their squares. Each day is searched by a task of its own on a fork/join pool, in rounds. In
+ * any one round, each day's task may only move assignments to its own share of the staff, so that two days never
+ * pile work onto the same person at once. Two days can still take work off the same person at once, so once the
+ * round is over each day's moves are kept only if they make the loads more even on top of the days kept before it,
+ * and are undone otherwise. The search ends when no day has kept a move for a whole turn of the shares.
+ *
+ * <p>The first step always runs to the end, however long it takes, so a plan fills every gap it can. A shift can
+ * only be left short if it already has every member of staff on it.
+ */
+public final class AutoFiller {
+
+    private final ForkJoinPool _pool;
+
+    private final long _timeBudgetNanos;
+
+    /**
+     * What an AutoFiller plans for a roster.
+     */
+    public static final class Plan {
+
+        private final List<RosterCommand> _commands;
+
+        private final int _unfilled;
+
+        private final double _greedySpread;
+
+        private final double _spread;
+
+        private final int _rounds;
+
+        private final int _moves;
+
+        private Plan(List<RosterCommand> commands, int unfilled, double greedySpread, double spread, int rounds,
+                     int moves) {
+            _commands = commands;
+            _unfilled = unfilled;
+            _greedySpread = greedySpread;
+            _spread = spread;
+            _rounds = rounds;
+            _moves = moves;
+        }
+
+        /**
+         * The assignments to make, managers first within each shift, in order of day and start time.
+         */
+        public List<RosterCommand> getCommands() {
+            return _commands;
+        }
+
+        /**
+         * The number of workers and managers still missing once every command has been made.
+         */
+        public int getUnfilledPositions() {
+            return _unfilled;
+        }
+
+        /**
+         * The standard deviation of the staff's loads, in minutes, after the first step of the plan.
+         */
+        public double getGreedyLoadSpread() {
+            return _greedySpread;
+        }
+
+        /**
+         * The standard deviation of the staff's loads, in minutes, once every command has been made.
+         */
+        public double getLoadSpread() {
+            return _spread;
+        }
+
+        /**
+         * The number of rounds the search ran.
+         */
+        public int getSearchRounds() {
+            return _rounds;
+        }
+
+        /**
+         * The number of assignments the search moved from one staff member to another.
+         */
+        public int getSearchMoves() {
+            return _moves;
+        }
+    }
+
+    /**
+     * @param pool The pool that the days are searched on.
+     * @param timeBudgetMillis How long the plan may take, after which the search stops with the best plan so far.
+     */
+    public AutoFiller(ForkJoinPool pool, long timeBudgetMillis) {
+        _pool = pool;
+        _timeBudgetNanos = timeBudgetMillis * 1_000_000L;
+    }
+
+    /**
+     * Plans the assignments for the roster as it stands in the given snapshot.
+     */
+    public Plan plan(RosterSnapshot snapshot) {
+        long deadline = System.nanoTime() + _timeBudgetNanos;
+        Staffing staffing = new Staffing(snapshot);
+        if (staffing._staff.length == 0) {
+            return new Plan(new ArrayList<>(), staffing.countGaps(), 0, 0, 0, 0);
+        }
+
+        int unfilled = staffing.fillGaps();
+        double greedySpread = staffing.loadSpread();
+
+        int rounds = 0;
+        int moves = 0;
+        int idleRounds = 0;
+        List<List<Gap>> days = staffing.daysWithGaps();
+        while (idleRounds < days.size() && System.nanoTime() - deadline < 0) {
+            int made = staffing.searchRound(days, rounds, deadline, _pool);
+            rounds++;
+            moves += made;
+            idleRounds = (made == 0) ? idleRounds + 1 : 0;
+        }
+
+        return new Plan(staffing.commands(), unfilled, greedySpread, staffing.loadSpread(), rounds, moves);
+    }
+
+    /**
+     * A place on a shift that the plan fills: its manager, or one of the workers it is short of.
+     */
+    private static final class Gap {
+
+        private final ShiftNeeds _shift;
+
+        private final boolean _isManager;
+
+        /**
+         * The staff member filling the gap, by their position in Staffing._staff, or -1 if it could not be filled.
+         */
+        private int _staff = -1;
+
+        Gap(ShiftNeeds shift, boolean isManager) {
+            _shift = shift;
+            _isManager = isManager;
+        }
+    }
+
+    /**
+     * A shift with gaps, and the staff on it.
+     */
+    private static final class ShiftNeeds {
+
+        private final ShiftSlot _slot;
+
+        private final int _minutes;
+
+        /**
+         * Everyone working or managing the shift, whether before the plan or by it, by position in Staffing._staff.
+         */
+        private final Set<Integer> _onShift = new HashSet<>();
+
+        private final List<Gap> _gaps = new ArrayList<>();
+
+        ShiftNeeds(ShiftSlot slot) {
+            _slot = slot;
+            _minutes = slot.getEndMinutes() - slot.getStartMinutes();
+        }
+    }
+
+    /**
+     * A move of a gap from one staff member to another, kept so that a round can be undone.
+     */
+    private static final class Move {
+
+        private final Gap _gap;
+
+        private final int _from;
+
+        private final int _to;
+
+        Move(Gap gap, int from, int to) {
+            _gap = gap;
+            _from = from;
+            _to = to;
+        }
+    }
+
+    /**
+     * The staff, their loads and the shifts with gaps, as the plan is being made.
+     */
+    private static final class Staffing {
+
+        private final StaffMember[] _staff;
+
+        private final int[] _load;
+
+        private final List<ShiftNeeds> _shifts = new ArrayList<>();
+
+        Staffing(RosterSnapshot snapshot) {
+            _staff = new StaffMember[snapshot.getStaffList().size()];
+            Map<StaffMember, Integer> positions = new HashMap<>();
+            int i = 0;
+            for (StaffMember s : snapshot.getStaffList()) {
+                _staff[i] = s;
+                positions.put(s, i++);
+            }
+            _load = new int[_staff.length];
+
+            for (Roster.DaysOfWeek d : Roster.DaysOfWeek.values()) {
+                for (Shift shift : snapshot.getDay(d).getShifts()) {
+                    ShiftNeeds needs = new ShiftNeeds(shift.getSlot());
+                    if (shift.getManager() != null) {
+                        needs._onShift.add(positions.get(shift.getManager()));
+                    } else {
+                        needs._gaps.add(new Gap(needs, true));
+                    }
+                    for (StaffMember s : shift.getAssignedStaff()) {
+                        needs._onShift.add(positions.get(s));
+                    }
+                    for (int w = shift.getAssignedStaff().size(); w < shift.getMinimumWorkers(); w++) {
+                        needs._gaps.add(new Gap(needs, false));
+                    }
+                    // Someone both working and managing a shift is only there for its length once
+                    for (int s : needs._onShift) {
+                        _load[s] += needs._minutes;
+                    }
+                    if (!needs._gaps.isEmpty()) {
+                        _shifts.add(needs);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Fills each gap with the least loaded staff member not already on its shift.
+         * @return The number of gaps that could not be filled.
+         */
+        int fillGaps() {
+            TreeSet<Integer> byLoad = new TreeSet<>(byLoad(_load));
+            for (int i = 0; i < _staff.length; i++) {
+                byLoad.add(i);
+            }
+            int unfilled = 0;
+            for (ShiftNeeds shift : _shifts) {
+                for (Gap gap : shift._gaps) {
+                    Integer chosen = leastLoaded(byLoad, shift);
+                    if (chosen == null) {
+                        unfilled++;
+                        continue;
+                    }
+                    byLoad.remove(chosen);
+                    _load[chosen] += shift._minutes;
+                    byLoad.add(chosen);
+                    shift._onShift.add(chosen);
+                    gap._staff = chosen;
+                }
+            }
+            return unfilled;
+        }
+
+        int countGaps() {
+            int gaps = 0;
+            for (ShiftNeeds shift : _shifts) {
+                gaps += shift._gaps.size();
+            }
+            return gaps;
+        }
+
+        /**
+         * The gaps that were filled, grouped by day.
+         */
+        List<List<Gap>> daysWithGaps() {
+            List<List<Gap>> days = new ArrayList<>();
+            Roster.DaysOfWeek day = null;
+            for (ShiftNeeds shift : _shifts) {
+                if (shift._slot.getDay() != day) {
+                    day = shift._slot.getDay();
+                    days.add(new ArrayList<>());
+                }
+                for (Gap gap : shift._gaps) {
+                    if (gap._staff >= 0) {
+                        days.get(days.size() - 1).add(gap);
+                    }
+                }
+            }
+            return days;
+        }
+
+        /**
+         * Searches every day at once, each moving gaps only to staff in its own share for this round, and keeps the
+         * moves of each day that make the loads more even.
+         * @return The number of moves kept.
+         */
+        int searchRound(List<List<Gap>> days, int round, long deadline, ForkJoinPool pool) {
+            List<DaySearch> searches = new ArrayList<>();
+            for (int d = 0; d < days.size(); d++) {
+                searches.add(new DaySearch(this, days.get(d), (d + round) % days.size(), days.size(), deadline));
+            }
+            for (DaySearch search : searches) {
+                pool.execute(search);
+            }
+            int kept = 0;
+            for (DaySearch search : searches) {
+                List<Move> moves = search.join();
+                long costBefore = cost();
+                for (Move m : moves) {
+                    int minutes = m._gap._shift._minutes;
+                    _load[m._from] -= minutes;
+                    _load[m._to] += minutes;
+                }
+                if (cost() < costBefore) {
+                    kept += moves.size();
+                    continue;
+                }
+                // Each day's shifts are its own, so its moves can be undone without touching the other days
+                Collections.reverse(moves);
+                for (Move m : moves) {
+                    int minutes = m._gap._shift._minutes;
+                    _load[m._from] += minutes;
+                    _load[m._to] -= minutes;
+                    m._gap._shift._onShift.remove(m._to);
+                    m._gap._shift._onShift.add(m._from);
+                    m._gap._staff = m._from;
+                }
+            }
+            return kept;
+        }
+
+        /**
+         * The assignments that fill the gaps.
+         */
+        List<RosterCommand> commands() {
+            List<RosterCommand> commands = new ArrayList<>();
+            for (ShiftNeeds shift : _shifts) {
+                String day = shift._slot.getDay().toString();
+                String start = shift._slot.getStartTime().toString();
+                String end = shift._slot.getEndTime().toString();
+                for (Gap gap : shift._gaps) {
+                    if (gap._staff >= 0) {
+                        StaffMember s = _staff[gap._staff];
+                        commands.add(RosterCommand.assignStaff(day, start, end, s.getGivenName(), s.getFamilyName(),
+                                gap._isManager));
+                    }
+                }
+            }
+            return commands;
+        }
+
+        /**
+         * The sum of the squares of the loads, which is smaller the more evenly the same work is spread.
+         */
+        long cost() {
+            long cost = 0;
+            for (int load : _load) {
+                cost += (long) load * load;
+            }
+            return cost;
+        }
+
+        double loadSpread() {
+            double mean = 0;
+            for (int load : _load) {
+                mean += load;
+            }
+            mean /= _load.length;
+            double variance = (double) cost() / _load.length - mean * mean;
+            return Math.sqrt(Math.max(0, variance));
+        }
+    }
+
+    /**
+     * Searches one day's gaps for moves that make the loads more even, as seen from the loads at the start of the
+     * round and the day's own moves. The day's shifts are its own, so the task changes them as it goes; the loads
+     * are only changed once every day has finished.
+     */
+    private static final class DaySearch extends RecursiveTask<List<Move>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<Gap> _gaps;
+
+        /**
+         * The loads at the start of the round, copied when the task is made, on the thread that later changes the
+         * loads as it keeps or undoes each day's moves.
+         */
+        private final int[] _load;
+
+        private final int _share;
+
+        private final int _shares;
+
+        private final long _deadline;
+
+        DaySearch(Staffing staffing, List<Gap> gaps, int share, int shares, long deadline) {
+            _gaps = gaps;
+            _load = staffing._load.clone();
+            _share = share;
+            _shares = shares;
+            _deadline = deadline;
+        }
+
+        @Override
+        protected List<Move> compute() {
+            int[] load = _load;
+            TreeSet<Integer> receivers = new TreeSet<>(byLoad(load));
+            for (int i = _share; i < load.length; i += _shares) {
+                receivers.add(i);
+            }
+            List<Move> moves = new ArrayList<>();
+            boolean moved = true;
+            while (moved && System.nanoTime() - _deadline < 0) {
+                moved = false;
+                for (Gap gap : _gaps) {
+                    ShiftNeeds shift = gap._shift;
+                    Integer to = leastLoaded(receivers, shift);
+                    int from = gap._staff;
+                    if (to == null || load[from] - load[to] <= shift._minutes) {
+                        continue;
+                    }
+                    // Only staff in this day's share are in receivers, and their order depends on their load
+                    boolean fromReceives = receivers.remove(from);
+                    receivers.remove(to);
+                    load[from] -= shift._minutes;
+                    load[to] += shift._minutes;
+                    if (fromReceives) {
+                        receivers.add(from);
+                    }
+                    receivers.add(to);
+                    shift._onShift.remove(from);
+                    shift._onShift.add(to);
+                    gap._staff = to;
+                    moves.add(new Move(gap, from, to));
+                    moved = true;
+                }
+            }
+            return moves;
+        }
+    }
+
+    /**
+     * Orders staff by the given loads, lightest first, and then by their position.
+     */
+    private static Comparator<Integer> byLoad(int[] load) {
+        return (a, b) -> (load[a] != load[b]) ? Integer.compare(load[a], load[b]) : Integer.compare(a, b);
+    }
+
+    /**
+     * Helper method for Staffing.fillGaps() and DaySearch.compute().
+     * @return The first of the staff who is not on the shift, or null if they all are.
+     */
+    private static Integer leastLoaded(TreeSet<Integer> staff, ShiftNeeds shift) {
+        for (Integer s : staff) {
+            if (!shift._onShift.contains(s)) {
+                return s;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,47 @@
+package shiftman.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A ShiftMan that can also be given a whole list of changes to make at once. The ShiftMan API itself is left as it
+ * is, so clients written against it are unaffected; the servers in this package, and the proxies and wrappers around
+ * them, implement this as well.
+ */
+public interface BatchShiftMan extends ShiftMan {
+
+    /**
+     * Request that all of the given changes be made to the current roster, in order.
+     * Each change has the same effect, and gives the same status, as the matching call to one of the ShiftMan
+     * methods, made straight after the changes before it.
+     * Implementations may make the whole batch visible at once, and may be much faster than making the calls one at
+     * a time. By default the calls are simply made one at a time.
+     * @param commands The changes to make, in order.
+     * @return The status of each change as described in the notes, in the same order as the changes.
+     */
+    default List<String> applyBatch(List<RosterCommand> commands) {
+        return applyEach(this, commands);
+    }
+
+    /**
+     * Makes the changes on any ShiftMan: as a batch when it is a BatchShiftMan, and one call at a time otherwise.
+     * @return The status of each change, in the same order as the changes.
+     */
+    static List<String> applyBatchTo(ShiftMan scheduler, List<RosterCommand> commands) {
+        if (scheduler instanceof BatchShiftMan) {
+            return ((BatchShiftMan) scheduler).applyBatch(commands);
+        }
+        return applyEach(scheduler, commands);
+    }
+
+    /**
+     * Helper method for applyBatch() and applyBatchTo().
+     */
+    private static List<String> applyEach(ShiftMan scheduler, List<RosterCommand> commands) {
+        List<String> statuses = new ArrayList<>(commands.size());
+        for (RosterCommand c : commands) {
+            statuses.add(c.applyTo(scheduler));
+        }
+        return statuses;
+    }
+}
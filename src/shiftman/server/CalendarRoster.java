@@ -0,0 +1,364 @@
+package shiftman.server;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * A roster for a shop over any run of dates, rather than a single week. Days are given as dates in the format
+ * yyyy-mm-dd, and each date can have its own working hours and shifts.
+ *
+ * <p>The calendar is kept in buckets of one week each, from Monday to Sunday. Each week is a Roster of its own, held
+ * in a RosterRegistry under the shop name and the date of its Monday, so weeks that have not been used for a while
+ * are evicted to the registry's RosterStore and loaded back the next time they are needed. A week is only created
+ * once working hours are set for one of its dates, and queries over a range of dates only load the weeks in that
+ * range that have been created, so their cost depends on the range asked about, not on how long the calendar is.
+ *
+ * <p>Staff are registered once for the whole calendar. A week only registers a staff member when they are first
+ * assigned to one of its shifts, so a week holds no more staff than it has to.
+ */
+public class CalendarRoster {
+
+    private final String _shopName;
+
+    /**
+     * The registered staff, for the whole calendar. None of its days are used.
+     */
+    private final Roster _staff;
+
+    private final RosterRegistry _weeks;
+
+    /**
+     * The date of the Monday of each week that has been created, whether it is in memory or in the store.
+     */
+    private final NavigableSet<LocalDate> _weekStarts = new ConcurrentSkipListSet<>();
+
+    /**
+     * Creates a calendar that keeps every week in memory.
+     */
+    public CalendarRoster(String shopName) {
+        this(shopName, new InMemoryRosterStore(), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a calendar that evicts weeks to the given store.
+     * @param maxResidentWeeks When more weeks than this are in memory, the least recently used is evicted.
+     */
+    public CalendarRoster(String shopName, RosterStore store, int maxResidentWeeks) {
+        _shopName = shopName;
+        _staff = new Roster(shopName);
+        _weeks = new RosterRegistry(store, maxResidentWeeks);
+    }
+
+    public String setWorkingHours(String date, String startTime, String endTime) {
+        try {
+            LocalDate day = parseDate(date);
+            return createWeek(day).setWorkingHours(dayName(day), startTime, endTime);
+        } catch (ShiftManUserException e) {
+            return e.getMessage();
+        }
+    }
+
+    public String addShift(String date, String startTime, String endTime, String minimumWorkers) {
+        try {
+            LocalDate day = parseDate(date);
+            Roster week = findWeek(day);
+            if (week == null) {
+                return "ERROR: Working hours have not been set for this day";
+            }
+            return week.addShift(dayName(day), startTime, endTime, minimumWorkers);
+        } catch (ShiftManUserException e) {
+            return e.getMessage();
+        }
+    }
+
+    public String registerStaff(String givenName, String familyName) {
+        return _staff.registerStaff(givenName, familyName);
+    }
+
+    /**
+     * Assigns a registered staff member to a shift on the given date, first registering them in the shift's week
+     * if this is their first shift that week.
+     */
+    public String assignStaff(String date, String startTime, String endTime, String givenName, String familyName,
+                              boolean isManager) {
+        try {
+            LocalDate day = parseDate(date);
+            StaffMember staff = _staff.snapshot().findStaff(givenName, familyName);
+            if (staff == null) {
+                return "ERROR: Staff member is not registered";
+            }
+            Roster week = findWeek(day);
+            if (week == null) {
+                return "ERROR: Shift does not exist in day";
+            }
+
+            List<RosterCommand> commands = new ArrayList<>(2);
+            if (week.snapshot().findStaff(givenName, familyName) == null) {
+                // Another thread may register them first, which only makes this registration fail
+                commands.add(RosterCommand.registerStaff(staff.getGivenName(), staff.getFamilyName()));
+            }
+            commands.add(RosterCommand.assignStaff(dayName(day), startTime, endTime, staff.getGivenName(),
+                    staff.getFamilyName(), isManager));
+            List<String> statuses = week.applyBatch(commands);
+            return statuses.get(statuses.size() - 1);
+        } catch (ShiftManUserException e) {
+            return e.getMessage();
+        }
+    }
+
+    public List<String> listRegisteredStaff() {
+        return _staff.listRegisteredStaff();
+    }
+
+    /**
+     * The shifts on the given date in the same format as Roster.getRosterForDay(), with the date in place of the
+     * name of the day.
+     */
+    public List<String> getRosterForDay(String date) {
+        List<String> dayRoster = new ArrayList<>();
+        LocalDate day;
+        try {
+            day = parseDate(date);
+        } catch (ShiftManUserException e) {
+            dayRoster.add(e.getMessage());
+            return dayRoster;
+        }
+
+        Roster week = findWeek(day);
+        if (week == null) {
+            return dayRoster;
+        }
+        // Every line of the week's roster for the day starts with the name of the day, which is replaced by the date
+        List<String> weekRoster = week.getRosterForDay(dayName(day));
+        int nameLength = dayName(day).length();
+        if (!weekRoster.isEmpty()) {
+            dayRoster.add(_shopName);
+            for (String line : weekRoster.subList(1, weekRoster.size())) {
+                dayRoster.add(day + line.substring(nameLength));
+            }
+        }
+        return dayRoster;
+    }
+
+    /**
+     * The shifts the staff member works between the two dates, inclusive, in the format yyyy-mm-dd[hh:mm-hh:mm],
+     * after their name.
+     */
+    public List<String> getRosterForWorker(String givenName, String familyName, String fromDate, String toDate) {
+        return getRosterForStaff(givenName, familyName, fromDate, toDate, false);
+    }
+
+    /**
+     * The shifts the staff member manages between the two dates, inclusive, in the format yyyy-mm-dd[hh:mm-hh:mm],
+     * after their name.
+     */
+    public List<String> getRosterForManager(String givenName, String familyName, String fromDate, String toDate) {
+        return getRosterForStaff(givenName, familyName, fromDate, toDate, true);
+    }
+
+    /**
+     * The shifts without a manager between the two dates, inclusive, in the format yyyy-mm-dd[hh:mm-hh:mm].
+     */
+    public List<String> listUnmanagedShifts(String fromDate, String toDate) {
+        return listShifts(fromDate, toDate, 0);
+    }
+
+    /**
+     * The shifts between the two dates, inclusive, that are understaffed if the status is -1, or overstaffed if it is
+     * 1, in the format yyyy-mm-dd[hh:mm-hh:mm].
+     */
+    public List<String> listOverOrUnderstaffedShifts(int status, String fromDate, String toDate) {
+        return listShifts(fromDate, toDate, (status < 0) ? -1 : 1);
+    }
+
+    /**
+     * The number of weeks that have been created, whether they are in memory or in the store.
+     */
+    public int getWeekCount() {
+        return _weekStarts.size();
+    }
+
+    /**
+     * The number of weeks currently held in memory.
+     */
+    public int getResidentWeekCount() {
+        return _weeks.residentShops().size();
+    }
+
+    /**
+     * Moves every week that has not been used for at least the given time out to the store.
+     * @return The number of weeks evicted.
+     */
+    public int evictIdle(long idleMillis) {
+        return _weeks.evictIdle(idleMillis);
+    }
+
+    public String getShopName() {
+        return _shopName;
+    }
+
+
+
+    /**
+     * Helper method for getRosterForWorker() and getRosterForManager().
+     */
+    private List<String> getRosterForStaff(String givenName, String familyName, String fromDate, String toDate,
+                                           boolean managed) {
+        List<String> roster = new ArrayList<>();
+        LocalDate from;
+        LocalDate to;
+        StaffMember staff;
+        try {
+            from = parseDate(fromDate);
+            to = parseDate(toDate);
+            checkRange(from, to);
+            staff = _staff.snapshot().findStaff(givenName, familyName);
+            if (staff == null) {
+                throw new ShiftManUserException("ERROR: Staff member is not registered");
+            }
+        } catch (ShiftManUserException e) {
+            roster.add(e.getMessage());
+            return roster;
+        }
+
+        for (LocalDate weekStart : weekStartsBetween(from, to)) {
+            RosterSnapshot week = _weeks.getRoster(weekName(weekStart)).snapshot();
+            StaffMember inWeek = week.findStaff(givenName, familyName);
+            if (inWeek == null) {
+                continue;
+            }
+            for (ShiftSlot slot : managed ? week.getShiftsManagedBy(inWeek) : week.getShiftsWorkedBy(inWeek)) {
+                addIfBetween(roster, weekStart, slot, from, to);
+            }
+        }
+
+        // If there are no shifts, return an empty list, as Roster does
+        if (!roster.isEmpty()) {
+            roster.add(0, staff.getReversedName());
+        }
+        return roster;
+    }
+
+    /**
+     * Helper method for listUnmanagedShifts() and listOverOrUnderstaffedShifts().
+     * @param kind 0 for unmanaged shifts, -1 for understaffed shifts, or 1 for overstaffed shifts.
+     */
+    private List<String> listShifts(String fromDate, String toDate, int kind) {
+        List<String> shifts = new ArrayList<>();
+        LocalDate from;
+        LocalDate to;
+        try {
+            from = parseDate(fromDate);
+            to = parseDate(toDate);
+            checkRange(from, to);
+        } catch (ShiftManUserException e) {
+            shifts.add(e.getMessage());
+            return shifts;
+        }
+
+        for (LocalDate weekStart : weekStartsBetween(from, to)) {
+            RosterSnapshot week = _weeks.getRoster(weekName(weekStart)).snapshot();
+            PersistentSortedSet<ShiftSlot> slots = (kind == 0) ? week.getUnmanagedShifts()
+                    : (kind < 0) ? week.getUnderstaffedShifts() : week.getOverstaffedShifts();
+            for (ShiftSlot slot : slots) {
+                addIfBetween(shifts, weekStart, slot, from, to);
+            }
+        }
+        return shifts;
+    }
+
+    /**
+     * Helper method for getRosterForStaff() and listShifts().
+     * Lists the shift in the format yyyy-mm-dd[hh:mm-hh:mm] if its date is between the two dates, inclusive.
+     */
+    private static void addIfBetween(List<String> list, LocalDate weekStart, ShiftSlot slot, LocalDate from,
+                                     LocalDate to) {
+        LocalDate date = weekStart.plusDays(slot.getDay().ordinal());
+        if (!date.isBefore(from) && !date.isAfter(to)) {
+            list.add(date + slot.toString());
+        }
+    }
+
+    /**
+     * Helper method for every range query.
+     * The Mondays of the weeks that have been created and hold at least one of the dates, in order.
+     */
+    private NavigableSet<LocalDate> weekStartsBetween(LocalDate from, LocalDate to) {
+        return _weekStarts.subSet(weekStart(from), true, weekStart(to), true);
+    }
+
+    /**
+     * Helper method for setWorkingHours().
+     * Finds the week holding the date, creating it if necessary.
+     */
+    private Roster createWeek(LocalDate date) {
+        LocalDate weekStart = weekStart(date);
+        Roster week = _weeks.getRoster(weekName(weekStart));
+        _weekStarts.add(weekStart);
+        return week;
+    }
+
+    /**
+     * Helper method for every method given a date, apart from setWorkingHours().
+     * Finds the week holding the date, loading it from the store if necessary.
+     * @return The week, or null if it has not been created.
+     */
+    private Roster findWeek(LocalDate date) {
+        LocalDate weekStart = weekStart(date);
+        if (!_weekStarts.contains(weekStart)) {
+            return null;
+        }
+        return _weeks.getRoster(weekName(weekStart));
+    }
+
+    /**
+     * Helper method for every method that finds a week.
+     * The name the week is kept under in the registry and its store.
+     */
+    private String weekName(LocalDate weekStart) {
+        return _shopName + " week of " + weekStart;
+    }
+
+    private static LocalDate weekStart(LocalDate date) {
+        return date.minusDays(date.getDayOfWeek().getValue() - 1);
+    }
+
+    /**
+     * The name of the day of the week the date falls on, as Roster knows it.
+     */
+    private static String dayName(LocalDate date) {
+        return Roster.DaysOfWeek.values()[date.getDayOfWeek().getValue() - 1].toString();
+    }
+
+    /**
+     * Helper method for every method given a date.
+     */
+    private static LocalDate parseDate(String date) throws ShiftManUserException {
+        try {
+            return LocalDate.parse(date);
+        } catch (DateTimeParseException | NullPointerException e) {
+            throw new ShiftManUserException("ERROR: Date given is invalid");
+        }
+    }
+
+    /**
+     * Helper method for every range query.
+     */
+    private static void checkRange(LocalDate from, LocalDate to) throws ShiftManUserException {
+        if (to.isBefore(from)) {
+            throw new ShiftManUserException("ERROR: End date is before start date");
+        }
+    }
+
+    /**
+     * The most useful string representation of this object is the name of the shop the roster is for.
+     */
+    @Override
+    public String toString() {
+        return _shopName;
+    }
+}
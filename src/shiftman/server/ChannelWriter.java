@@ -0,0 +1,145 @@
+package shiftman.server;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A Writer that encodes what is written as UTF-8 and writes it to a channel. Characters are gathered in one buffer of
+ * a fixed size and encoded into another, and the bytes are written to the channel each time the buffers fill, so
+ * however much is written, the writer uses no more memory than its two buffers.
+ *
+ * <p>Closing the writer flushes it, but leaves the channel open, so that more can be written to it.
+ */
+public final class ChannelWriter extends Writer {
+
+    private static final int DEFAULT_BUFFER_CHARS = 8 * 1024;
+
+    private final WritableByteChannel _channel;
+
+    private final CharsetEncoder _encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    private final CharBuffer _chars;
+
+    private final ByteBuffer _bytes;
+
+    public ChannelWriter(WritableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_CHARS);
+    }
+
+    public ChannelWriter(WritableByteChannel channel, int bufferChars) {
+        _channel = channel;
+        _chars = CharBuffer.allocate(bufferChars);
+        _bytes = ByteBuffer.allocate((int) Math.ceil(bufferChars * (double) _encoder.maxBytesPerChar()));
+    }
+
+
+
+    @Override
+    public void write(int c) throws IOException {
+        if (!_chars.hasRemaining()) {
+            encode(false);
+        }
+        _chars.put((char) c);
+    }
+
+    @Override
+    public void write(char[] buffer, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (!_chars.hasRemaining()) {
+                encode(false);
+            }
+            int n = Math.min(length, _chars.remaining());
+            _chars.put(buffer, offset, n);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Copies the string straight into the buffer, rather than into a char array first as Writer would.
+     */
+    @Override
+    public void write(String s, int offset, int length) throws IOException {
+        append(s, offset, offset + length);
+    }
+
+    @Override
+    public Writer append(CharSequence s) throws IOException {
+        CharSequence chars = (s == null) ? "null" : s;
+        return append(chars, 0, chars.length());
+    }
+
+    @Override
+    public Writer append(CharSequence s, int start, int end) throws IOException {
+        CharSequence chars = (s == null) ? "null" : s;
+        while (start < end) {
+            if (!_chars.hasRemaining()) {
+                encode(false);
+            }
+            int n = Math.min(end - start, _chars.remaining());
+            if (chars instanceof String) {
+                _chars.put((String) chars, start, start + n);
+            } else {
+                for (int i = start; i < start + n; i++) {
+                    _chars.put(chars.charAt(i));
+                }
+            }
+            start += n;
+        }
+        return this;
+    }
+
+    /**
+     * Writes everything written so far to the channel. A character split across two writes, half of a surrogate
+     * pair, is kept back until its other half is written.
+     */
+    @Override
+    public void flush() throws IOException {
+        encode(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        encode(true);
+        _encoder.reset();
+    }
+
+
+
+    /**
+     * Helper method for every method that writes, and for flush() and close().
+     * Encodes the characters gathered so far and writes the bytes to the channel, until every whole character has
+     * been written.
+     */
+    private void encode(boolean endOfInput) throws IOException {
+        _chars.flip();
+        while (_encoder.encode(_chars, _bytes, endOfInput).isOverflow()) {
+            drain();
+        }
+        if (endOfInput) {
+            while (_encoder.flush(_bytes).isOverflow()) {
+                drain();
+            }
+        }
+        drain();
+        _chars.compact();
+    }
+
+    /**
+     * Helper method for encode().
+     */
+    private void drain() throws IOException {
+        _bytes.flip();
+        while (_bytes.hasRemaining()) {
+            _channel.write(_bytes);
+        }
+        _bytes.clear();
+    }
+}
@@ -1,228 +1,245 @@
 package shiftman.server;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Represents a Day. Within each day, we have a name (what day of the week it is), the starting and ending hours
- * of work, and a list of shifts that take place in between these hours.
+ * of work, and the shifts that take place in between these hours.
+ * Shifts are kept in a map ordered by start time. As shifts on the same day never overlap, this is enough to
+ * find clashes, look up a shift and list the shifts in order without sorting or scanning.
+ * A Day never changes once created: setting the working hours or adding or changing a shift gives a new
+ * version of the day, which shares all of its other shifts with the old one.
+ * Each version of a day carries the version of the roster snapshot it was made for, so anything worked out from
+ * a day can tell whether the day has changed since simply by comparing versions.
  */
-public class Day {
+public final class Day {
 
-    private String _dayName;
+    private final Roster.DaysOfWeek _dayOfWeek;
 
-    private String _startOfDay;
+    private final TimeOfDay _startOfDay;
 
-    private String _endOfDay;
+    private final TimeOfDay _endOfDay;
 
-    private List<Shift> _shifts;
+    private final PersistentSortedMap<TimeOfDay, Shift> _shifts;
 
-    public Day (String dayOfWeek) {
-        _dayName = dayOfWeek;
-        _shifts = new ArrayList<>();
-        System.out.println("@Day object created with name " + _dayName);
+    private final long _version;
+
+    public Day (Roster.DaysOfWeek dayOfWeek) {
+        this(dayOfWeek, null, null, PersistentSortedMap.empty(), 0);
+        RosterEvents.created("Day", _dayOfWeek);
     }
 
+    /**
+     * Used to create the next version of a day, and by RosterSnapshotFile to give back a saved day.
+     */
+    Day(Roster.DaysOfWeek dayOfWeek, TimeOfDay startOfDay, TimeOfDay endOfDay,
+                PersistentSortedMap<TimeOfDay, Shift> shifts, long version) {
+        _dayOfWeek = dayOfWeek;
+        _startOfDay = startOfDay;
+        _endOfDay = endOfDay;
+        _shifts = shifts;
+        _version = version;
+    }
 
 
-    public void setWorkingHours(String startTime, String endTime) throws ShiftManUserException {
-        if (validateTimeFormat(startTime, endTime)) {
-            throw new ShiftManUserException("ERROR: Time does not match format hh:mm");
-        } else if (checkValidTimes(startTime, endTime)) {
-            throw new ShiftManUserException("ERROR: Start and/or end time invalid");
-        } else {
-            _startOfDay = startTime;
-            _endOfDay = endTime;
-        }
-    }
 
-    public void addShift(String startTime, String endTime, String minimumWorkers) throws ShiftManUserException {
-        if (validateTimeFormat(startTime, endTime)) {
-            throw new ShiftManUserException("ERROR: Time does not match format hh:mm");
-        } else if (checkValidTimes(startTime, endTime)) {
+    /**
+     * @param version The version of the snapshot the new version of the day is for.
+     */
+    public Day withWorkingHours(String start, String end, long version) throws ShiftManUserException {
+        TimeOfDay startTime = TimeOfDay.parse(start);
+        TimeOfDay endTime = TimeOfDay.parse(end);
+
+        if (checkValidTimes(startTime, endTime)) {
             throw new ShiftManUserException("ERROR: Start and/or end time invalid");
-        } else if (checkWithinWorkingHours(startTime, endTime)) {
-            throw new ShiftManUserException("ERROR: Start and/or end time outside of working hours");
-        } else if (checkAgainstOtherShifts(startTime, endTime)) {
-            throw new ShiftManUserException("ERROR: Start and/or end time clashes with existing shifts");
         } else {
-            Shift newShift = new Shift(startTime, endTime, minimumWorkers);
-            _shifts.add(newShift);
-            // This is so that upon recalling the shifts for the day, they are already sorted by start time
-            Collections.sort(_shifts);
+            return new Day(_dayOfWeek, startTime, endTime, _shifts, version);
         }
     }
 
-    public void assignStaff(Shift shift, StaffMember staff, boolean isManager) throws ShiftManUserException {
-        if (isManager) {
-            shift.assignManager(staff);
-        } else {
-            shift.assignStaff(staff);
-        }
-    }
+    /**
+     * Checks that a shift with the given times can be added to this day, and creates it.
+     * The shift is not part of the day until it is given to withShift().
+     */
+    public Shift createShift(String start, String end, String minimumWorkers) throws ShiftManUserException {
+        TimeOfDay startTime = TimeOfDay.parse(start);
+        TimeOfDay endTime = TimeOfDay.parse(end);
 
-    public List<StaffMember> listAllStaffWorkingToday() {
-        List<StaffMember> allStaff = new ArrayList<>();
-        for (Shift s : _shifts) {
-            allStaff.addAll(s.getAssignedStaff());
+        if (checkValidTimes(startTime, endTime)) {
+            throw new ShiftManUserException("ERROR: Start and/or end time invalid");
+        } else if (_startOfDay == null) {
+            throw new ShiftManUserException("ERROR: Working hours have not been set for this day");
         }
-        return allStaff;
-    }
 
-    public List<String> listShiftsWithoutManagers() {
-        List<String> unmanagedShifts = new ArrayList<>();
-        for (Shift s: _shifts) {
-            if (!s.isManagerAssigned()) {
-                unmanagedShifts.add(assembleShiftString(s));
-            }
+        RosterEvents.ClashCheck event = new RosterEvents.ClashCheck();
+        event.begin();
+        boolean outsideHours = checkWithinWorkingHours(startTime, endTime);
+        boolean clashes = !outsideHours && checkAgainstOtherShifts(startTime, endTime);
+        if (event.shouldCommit()) {
+            event.day = _dayOfWeek.toString();
+            event.shiftCount = _shifts.size();
+            event.clashed = outsideHours || clashes;
+            event.commit();
         }
 
-        return unmanagedShifts;
-    }
-
-    public List<String> listOverOrUnderstaffedShifts(int status) {
-        // Recall that status: -1 = understaffed, 1 = overstaffed
-        List<String> xStaffedShifts = new ArrayList<>();
-        for (Shift s : _shifts) {
-            // Check if the shift is over/understaffed (whichever one we are looking for) before adding it to the list
-            if (s.overOrUnderstaffed() == status) {
-                xStaffedShifts.add(assembleShiftString(s));
-            }
+        if (outsideHours) {
+            throw new ShiftManUserException("ERROR: Start and/or end time outside of working hours");
+        } else if (clashes) {
+            throw new ShiftManUserException("ERROR: Start and/or end time clashes with existing shifts");
+        } else {
+            return new Shift(new ShiftSlot(_dayOfWeek, startTime, endTime), parseMinimumWorkers(minimumWorkers));
         }
+    }
 
-        return xStaffedShifts;
+    /**
+     * Gives a version of this day with the given shift added, or replacing the version of it already in the day.
+     * @param version The version of the snapshot the new version of the day is for.
+     */
+    public Day withShift(Shift shift, long version) {
+        return new Day(_dayOfWeek, _startOfDay, _endOfDay, _shifts.plus(shift.getStartTime(), shift), version);
     }
 
     public List<String> getDayRoster() {
-        List<String> dayRoster = new ArrayList<>();
-        for (Shift s: _shifts) {
-            dayRoster.add(_dayName + s.shiftInfoForRoster());
+        RosterEvents.Render event = new RosterEvents.Render();
+        event.begin();
+        List<String> dayRoster = new ArrayList<>(_shifts.size());
+        StringBuilder line = new StringBuilder();
+        for (Shift s: _shifts.values()) {
+            line.setLength(0);
+            line.append(_dayOfWeek);
+            s.appendShiftInfo(line);
+            dayRoster.add(line.toString());
+        }
+        if (event.shouldCommit()) {
+            event.what = _dayOfWeek + " roster";
+            event.lineCount = dayRoster.size();
+            event.commit();
         }
 
         return dayRoster;
     }
 
-    public List<String> listShiftsWithStaffMember(StaffMember staff) {
-        List<String> workerRoster = new ArrayList<>();
-        for (Shift s : _shifts) {
-            if (s.isStaffMemberAssigned(staff)) {
-                workerRoster.add(assembleShiftString(s));
-            }
-        }
-
-        return workerRoster;
+    /**
+     * The shifts of this day, in order of start time.
+     */
+    public Iterable<Shift> getShifts() {
+        return _shifts.values();
     }
 
-    public List<String> listShiftsWithManager(StaffMember manager) {
-        List<String> managerRoster = new ArrayList<>();
-        for (Shift s : _shifts) {
-            if (s.isSpecificManagerAssigned(manager)) {
-                managerRoster.add(assembleShiftString(s));
-            }
-        }
+    /**
+     * The shift starting at the given time, or null if there is none.
+     */
+    public Shift getShift(TimeOfDay startTime) {
+        return _shifts.get(startTime);
+    }
 
-        return managerRoster;
+    public int getShiftCount() {
+        return _shifts.size();
     }
 
 
 
     /**
-     * Helper method for Roster.assignStaff().
+     * Helper method for RosterSnapshot.withAssignment().
      * Attempts to find a shift during this day, based on its start and end times.
      */
-    public Shift findShift(String startTime, String endTime) throws ShiftManUserException {
-        if (validateTimeFormat(startTime, endTime)) {
-            throw new ShiftManUserException("ERROR: Time does not match format hh:mm");
-        }
+    public Shift findShift(String start, String end) throws ShiftManUserException {
+        TimeOfDay startTime = TimeOfDay.parse(start);
+        TimeOfDay endTime = TimeOfDay.parse(end);
 
-        for (Shift s : _shifts) {
-            if (s.compareShiftTimes(startTime, endTime)) {
-                return s;
-            }
+        Shift shift = _shifts.get(startTime);
+        if (shift == null || !shift.compareShiftTimes(startTime, endTime)) {
+            throw new ShiftManUserException("ERROR: Shift does not exist in day");
         }
-
-        throw new ShiftManUserException("ERROR: Shift does not exist in day");
-    }
-
-    /**
-     * Helper method for setWorkingHours(), addShift(), and findShift().
-     * Checks that the input start and end times match a given regex pattern - dd:dd
-     * This allows us to alphabetically compare times in other helper methods.
-     */
-    private boolean validateTimeFormat(String startTime, String endTime) {
-        String pattern = "\\d\\d:\\d\\d";
-        // Returns true if the format is NOT matched
-        return !(startTime.matches(pattern) && endTime.matches(pattern));
+        return shift;
     }
 
     /**
-     * Helper method for setWorkingHours() and addShift().
+     * Helper method for withWorkingHours() and createShift().
      * Compares the start and end times to the limits of the day - as specified, they cannot include midnight.
      * Also checks that the end time is after the start time.
      */
-    private boolean checkValidTimes(String startTime, String endTime) {
-        final String MIN_START_TIME = "00:01";
-        final String MAX_END_TIME = "23:59";
-
-        int startAfter12 = startTime.compareTo(MIN_START_TIME); // >= 0
-        int endAfter12 = endTime.compareTo(MIN_START_TIME);     // >= 0
-        int endBefore12 = endTime.compareTo(MAX_END_TIME);      // <= 0
-        int startBeforeEnd = startTime.compareTo(endTime);      // <  0
-
+    private boolean checkValidTimes(TimeOfDay startTime, TimeOfDay endTime) {
         // Returns true if the times are NOT valid
-        return !(startAfter12 >= 0 && endAfter12 >= 0 && endBefore12 <= 0 && startBeforeEnd < 0);
+        return startTime.isBefore(TimeOfDay.EARLIEST) || !startTime.isBefore(endTime);
     }
 
     /**
-     * Helper method for addShift().
+     * Helper method for createShift().
      * Compares the start and end times of the shift to the previously set working hours,
      * which they must fall within.
      */
-    private boolean checkWithinWorkingHours(String startTime, String endTime) {
-        int withinWorkingStart = startTime.compareTo(_startOfDay);
-        int withinWorkingEnd = endTime.compareTo(_endOfDay);
-
+    private boolean checkWithinWorkingHours(TimeOfDay startTime, TimeOfDay endTime) {
         // Returns true if the times are NOT within working hours
-        return !(withinWorkingStart >= 0 && withinWorkingEnd <= 0);
+        return startTime.isBefore(_startOfDay) || endTime.isAfter(_endOfDay);
     }
 
     /**
-     * Helper method for addShift().
-     * Checks the start and end times against the times of every shift currently registered
-     * this day to ensure there is no overlap.
-     * The logic is a bit confusing, but can be summed down to:
+     * Helper method for createShift().
+     * Checks the start and end times against the shifts already registered this day to ensure there is
+     * no overlap. A shift may start at the same time another one ends.
+     * As the existing shifts never overlap each other, only two of them can clash with the new one:
+     * the last one starting at or before the new start, and the first one starting after it.
      * |----new----|            or           |----new----|
-     *        |----old----|           |----old----|
+     *        |----next----|          |----prev----|
      */
-    private boolean checkAgainstOtherShifts(String startTime, String endTime) {
-        for (Shift s : _shifts) {
-            String otherStart = s.toString().substring(1,6);            // it's returning [09:00-12:00]
-            String otherEnd = s.toString().substring(7,12);             // and we want    >     =     <
-
-            int startsTooSoon = startTime.compareTo(otherEnd);          // is newStart <= otherEnd?
-            int validStartComp = startTime.compareTo(otherStart);       // is newStart >= otherStart?
+    private boolean checkAgainstOtherShifts(TimeOfDay startTime, TimeOfDay endTime) {
+        Map.Entry<TimeOfDay, Shift> previous = _shifts.floorEntry(startTime);
+        if (previous != null && startTime.isBefore(previous.getValue().getEndTime())) {
+            return true;
+        }
 
-            int endsTooLate = endTime.compareTo(otherStart);            // is newEnd >= otherStart?
-            int validEndComp = endTime.compareTo(otherEnd);             // is newEnd <= otherEnd?
+        // Returns true if the times CLASH with other shifts
+        Map.Entry<TimeOfDay, Shift> next = _shifts.higherEntry(startTime);
+        return next != null && next.getKey().isBefore(endTime);
+    }
 
-            // Returns true if the times CLASH with other shifts
-            if ((startsTooSoon <= 0 && validStartComp >= 0) ||(endsTooLate >= 0 && validEndComp <= 0)) {
-                return true;
+    /**
+     * Helper method for createShift().
+     * The minimum number of workers is given as a string, and must be a whole number that is not negative.
+     */
+    private int parseMinimumWorkers(String minimumWorkers) throws ShiftManUserException {
+        try {
+            int minimum = Integer.parseInt(minimumWorkers);
+            if (minimum >= 0) {
+                return minimum;
             }
+        } catch (NumberFormatException e) {
+            // Reported below, in the same way as a negative number
         }
+        throw new ShiftManUserException("ERROR: Minimum number of workers is invalid");
+    }
+
+    /**
+     * The start of the working hours, or null if they have not been set.
+     */
+    TimeOfDay getStartOfDay() {
+        return _startOfDay;
+    }
+
+    TimeOfDay getEndOfDay() {
+        return _endOfDay;
+    }
+
+    /**
+     * The version of the snapshot this version of the day was made for. Two versions of the same day in a roster
+     * have the same contents if they have the same version.
+     */
+    public long getVersion() {
+        return _version;
+    }
 
-        return false;
+    public Roster.DaysOfWeek getDayOfWeek() {
+        return _dayOfWeek;
     }
 
     /**
-     * Helper method for listShiftsWithoutManagers(), listOverOrUnderstaffedShifts(),
-     * listShiftsWithStaffMember(), and listShiftWithManager().
-     * Concatenates the day name with the string representation of the given shift,
-     * giving the format day[hh:mm-hh:mm], as specified.
+     * The position of this day in the week, starting from 0 for Monday. Used to order shifts across days.
      */
-    private String assembleShiftString(Shift shift) {
-        return _dayName + shift.toString();
+    public int getPosition() {
+        return _dayOfWeek.ordinal();
     }
 
     /**
@@ -237,6 +254,6 @@ public class Day {
      */
     @Override
     public String toString() {
-        return _dayName;
+        return _dayOfWeek.toString();
     }
 }
@@ -0,0 +1,26 @@
+package shiftman.server;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The default RosterStore, which simply keeps evicted rosters on the heap.
+ * This does not reduce memory use by itself, but lets a registry run with eviction switched on
+ * until a store that writes rosters somewhere else is plugged in.
+ */
+public class InMemoryRosterStore implements RosterStore {
+
+    private Map<String, Roster> _rosters = new ConcurrentHashMap<>();
+
+    public void save(Roster roster) {
+        _rosters.put(roster.toString(), roster);
+    }
+
+    public Roster load(String shopName) {
+        return _rosters.remove(shopName);
+    }
+
+    public void remove(String shopName) {
+        _rosters.remove(shopName);
+    }
+}
@@ -0,0 +1,325 @@
+package shiftman.server;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * A ShiftMan that passes every call on to another, and counts for each method how many calls were made, how many gave
+ * an error, and how long they took. A call gives an error if its status, or the only string in its list, starts with
+ * "ERROR", or if any status in a batch does, or if it throws.
+ *
+ * <p>Counting a call costs two reads of the clock and a few atomic additions, with no lock and nothing allocated, so
+ * the counts can be left on permanently. They can be read as a snapshot, as a printable report, or over JMX once
+ * registerMBeans() has been called, where each method is an OperationStatsMXBean.
+ */
+public class InstrumentedShiftMan implements BatchShiftMan {
+
+    private final ShiftMan _delegate;
+
+    private final OperationStats _newRoster = new OperationStats("newRoster");
+
+    private final OperationStats _setWorkingHours = new OperationStats("setWorkingHours");
+
+    private final OperationStats _addShift = new OperationStats("addShift");
+
+    private final OperationStats _registerStaff = new OperationStats("registerStaff");
+
+    private final OperationStats _assignStaff = new OperationStats("assignStaff");
+
+    private final OperationStats _applyBatch = new OperationStats("applyBatch");
+
+    private final OperationStats _getRegisteredStaff = new OperationStats("getRegisteredStaff");
+
+    private final OperationStats _getUnassignedStaff = new OperationStats("getUnassignedStaff");
+
+    private final OperationStats _shiftsWithoutManagers = new OperationStats("shiftsWithoutManagers");
+
+    private final OperationStats _understaffedShifts = new OperationStats("understaffedShifts");
+
+    private final OperationStats _overstaffedShifts = new OperationStats("overstaffedShifts");
+
+    private final OperationStats _getRosterForDay = new OperationStats("getRosterForDay");
+
+    private final OperationStats _getRosterForWorker = new OperationStats("getRosterForWorker");
+
+    private final OperationStats _getShiftsManagedBy = new OperationStats("getShiftsManagedBy");
+
+    private final OperationStats _reportRosterIssues = new OperationStats("reportRosterIssues");
+
+    private final OperationStats _displayRoster = new OperationStats("displayRoster");
+
+    /**
+     * Every method's counts, in the order of the ShiftMan API.
+     */
+    private final List<OperationStats> _operations = Collections.unmodifiableList(Arrays.asList(
+            _newRoster, _setWorkingHours, _addShift, _registerStaff, _assignStaff, _applyBatch, _getRegisteredStaff,
+            _getUnassignedStaff, _shiftsWithoutManagers, _understaffedShifts, _overstaffedShifts, _getRosterForDay,
+            _getRosterForWorker, _getShiftsManagedBy, _reportRosterIssues, _displayRoster));
+
+    private final List<ObjectName> _registered = new ArrayList<>();
+
+    public InstrumentedShiftMan(ShiftMan delegate) {
+        _delegate = delegate;
+    }
+
+
+
+    public String newRoster(String shopName) {
+        long start = System.nanoTime();
+        String status = null;
+        try {
+            return status = _delegate.newRoster(shopName);
+        } finally {
+            _newRoster.record(System.nanoTime() - start, isError(status));
+        }
+    }
+
+    public String setWorkingHours(String dayOfWeek, String startTime, String endTime) {
+        long start = System.nanoTime();
+        String status = null;
+        try {
+            return status = _delegate.setWorkingHours(dayOfWeek, startTime, endTime);
+        } finally {
+            _setWorkingHours.record(System.nanoTime() - start, isError(status));
+        }
+    }
+
+    public String addShift(String dayOfWeek, String startTime, String endTime, String minimumWorkers) {
+        long start = System.nanoTime();
+        String status = null;
+        try {
+            return status = _delegate.addShift(dayOfWeek, startTime, endTime, minimumWorkers);
+        } finally {
+            _addShift.record(System.nanoTime() - start, isError(status));
+        }
+    }
+
+    public String registerStaff(String givenname, String familyName) {
+        long start = System.nanoTime();
+        String status = null;
+        try {
+            return status = _delegate.registerStaff(givenname, familyName);
+        } finally {
+            _registerStaff.record(System.nanoTime() - start, isError(status));
+        }
+    }
+
+    public String assignStaff(String dayOfWeek, String startTime, String endTime, String givenName,
+                              String familyName, boolean isManager) {
+        long start = System.nanoTime();
+        String status = null;
+        try {
+            return status = _delegate.assignStaff(dayOfWeek, startTime, endTime, givenName, familyName, isManager);
+        } finally {
+            _assignStaff.record(System.nanoTime() - start, isError(status));
+        }
+    }
+
+    @Override
+    public List<String> applyBatch(List<RosterCommand> commands) {
+        long start = System.nanoTime();
+        List<String> result = null;
+        try {
+            return result = BatchShiftMan.applyBatchTo(_delegate, commands);
+        } finally {
+            _applyBatch.record(System.nanoTime() - start, isBatchError(result));
+        }
+    }
+
+    public List<String> getRegisteredStaff() {
+        long start = System.nanoTime();
+        List<String> result = null;
+        try {
+            return result = _delegate.getRegisteredStaff();
+        } finally {
+            _getRegisteredStaff.record(System.nanoTime() - start, isError(result));
+        }
+    }
+
+    public List<String> getUnassignedStaff() {
+        long start = System.nanoTime();
+        List<String> result = null;
+        try {
+            return result = _delegate.getUnassignedStaff();
+        } finally {
+            _getUnassignedStaff.record(System.nanoTime() - start, isError(result));
+        }
+    }
+
+    public List<String> shiftsWithoutManagers() {
+        long start = System.nanoTime();
+        List<String> result = null;
+        try {
+            return result = _delegate.shiftsWithoutManagers();
+        } finally {
+            _shiftsWithoutManagers.record(System.nanoTime() - start, isError(result));
+        }
+    }
+
+    public List<String> understaffedShifts() {
+        long start = System.nanoTime();
+        List<String> result = null;
+        try {
+            return result = _delegate.understaffedShifts();
+        } finally {
+            _understaffedShifts.record(System.nanoTime() - start, isError(result));
+        }
+    }
+
+    public List<String> overstaffedShifts() {
+        long start = System.nanoTime();
+        List<String> result = null;
+        try {
+            return result = _delegate.overstaffedShifts();
+        } finally {
+            _overstaffedShifts.record(System.nanoTime() - start, isError(result));
+        }
+    }
+
+    public List<String> getRosterForDay(String dayOfWeek) {
+        long start = System.nanoTime();
+        List<String> result = null;
+        try {
+            return result = _delegate.getRosterForDay(dayOfWeek);
+        } finally {
+            _getRosterForDay.record(System.nanoTime() - start, isError(result));
+        }
+    }
+
+    public List<String> getRosterForWorker(String workerName) {
+        long start = System.nanoTime();
+        List<String> result = null;
+        try {
+            return result = _delegate.getRosterForWorker(workerName);
+        } finally {
+            _getRosterForWorker.record(System.nanoTime() - start, isError(result));
+        }
+    }
+
+    public List<String> getShiftsManagedBy(String managerName) {
+        long start = System.nanoTime();
+        List<String> result = null;
+        try {
+            return result = _delegate.getShiftsManagedBy(managerName);
+        } finally {
+            _getShiftsManagedBy.record(System.nanoTime() - start, isError(result));
+        }
+    }
+
+    public String reportRosterIssues() {
+        long start = System.nanoTime();
+        String status = null;
+        try {
+            return status = _delegate.reportRosterIssues();
+        } finally {
+            _reportRosterIssues.record(System.nanoTime() - start, isError(status));
+        }
+    }
+
+    public String displayRoster() {
+        long start = System.nanoTime();
+        String status = null;
+        try {
+            return status = _delegate.displayRoster();
+        } finally {
+            _displayRoster.record(System.nanoTime() - start, isError(status));
+        }
+    }
+
+    /**
+     * The counts for every method, in the order of the ShiftMan API.
+     */
+    public List<OperationStats.Snapshot> snapshot() {
+        List<OperationStats.Snapshot> snapshots = new ArrayList<>(_operations.size());
+        for (OperationStats o : _operations) {
+            snapshots.add(o.snapshot());
+        }
+        return snapshots;
+    }
+
+    /**
+     * Gives a table of every method that has been called, with its counts and latencies in microseconds.
+     */
+    public String report() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%-22s %10s %8s %10s %10s %10s %10s %10s%n", "operation", "calls", "errors", "mean us",
+                "p50 us", "p99 us", "p99.9 us", "max us"));
+        for (OperationStats.Snapshot s : snapshot()) {
+            if (s.getCalls() == 0) {
+                continue;
+            }
+            LatencyHistogram.Snapshot latencies = s.getLatencies();
+            out.append(String.format("%-22s %10d %8d %10.2f %10.2f %10.2f %10.2f %10.2f%n", s.getOperation(),
+                    s.getCalls(), s.getErrors(), latencies.getMean() / 1000,
+                    latencies.getValueAtPercentile(50) / 1000.0, latencies.getValueAtPercentile(99) / 1000.0,
+                    latencies.getValueAtPercentile(99.9) / 1000.0, latencies.getMax() / 1000.0));
+        }
+        return out.toString();
+    }
+
+    /**
+     * Registers each method's counts with the platform MBean server, as
+     * shiftman:type=InstrumentedShiftMan,name=(name),operation=(method).
+     * @param name Tells this ShiftMan apart from any others registered in the same JVM.
+     */
+    public synchronized void registerMBeans(String name) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (OperationStats o : _operations) {
+            ObjectName objectName = new ObjectName("shiftman:type=InstrumentedShiftMan,name=" + ObjectName.quote(name)
+                    + ",operation=" + o.getOperation());
+            server.registerMBean(o, objectName);
+            _registered.add(objectName);
+        }
+    }
+
+    /**
+     * Removes everything registerMBeans() registered.
+     */
+    public synchronized void unregisterMBeans() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName objectName : _registered) {
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        }
+        _registered.clear();
+    }
+
+
+
+    /**
+     * Helper method for every method returning a status. A null status means the call threw.
+     */
+    private static boolean isError(String status) {
+        return status == null || status.startsWith("ERROR");
+    }
+
+    /**
+     * Helper method for every query returning a list, which reports an error as a list holding only the error.
+     */
+    private static boolean isError(List<String> result) {
+        return result == null || (result.size() == 1 && result.get(0).startsWith("ERROR"));
+    }
+
+    /**
+     * Helper method for applyBatch(), which has a status for each command.
+     */
+    private static boolean isBatchError(List<String> statuses) {
+        if (statuses == null) {
+            return true;
+        }
+        for (String s : statuses) {
+            if (isError(s)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,304 @@
+package shiftman.server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Just enough JSON for ShiftManHttpServer. Parsing gives a Map for an object, a List for an array, a String for a
+ * string, a Boolean for true or false, and null for null. Numbers are given as the String they were written as,
+ * since the ShiftMan API takes even the minimum number of workers as a string.
+ */
+final class Json {
+
+    /**
+     * The deepest arrays and objects may be nested. No request needs more than a few levels, and each level takes a
+     * frame of the parser's stack, so deeper text is refused rather than left to overflow the stack.
+     */
+    static final int MAX_DEPTH = 64;
+
+    private final String _text;
+
+    private int _position;
+
+    /**
+     * The number of arrays and objects the parser is inside.
+     */
+    private int _depth;
+
+    private Json(String text) {
+        _text = text;
+    }
+
+
+
+    /**
+     * @throws IllegalArgumentException If the text is not a single JSON value, or nests arrays and objects more than
+     * MAX_DEPTH deep.
+     */
+    static Object parse(String text) {
+        Json parser = new Json(text);
+        Object value = parser.readValue();
+        parser.skipWhitespace();
+        if (parser._position != text.length()) {
+            throw parser.error("Unexpected text after the JSON value");
+        }
+        return value;
+    }
+
+    /**
+     * Writes the string as a JSON string, in quotes and with any characters JSON does not allow escaped.
+     */
+    static void writeString(Appendable out, String s) throws IOException {
+        out.append('"');
+        writeEscaped(out, s, 0, s.length());
+        out.append('"');
+    }
+
+    /**
+     * Gives an Appendable that escapes whatever is appended to it as the inside of a JSON string, and passes it on.
+     * The quotes around the string are left to the caller, so that a string can be written a piece at a time.
+     */
+    static Appendable escaping(Appendable out) {
+        return new Appendable() {
+            public Appendable append(CharSequence s) throws IOException {
+                CharSequence chars = (s == null) ? "null" : s;
+                writeEscaped(out, chars, 0, chars.length());
+                return this;
+            }
+
+            public Appendable append(CharSequence s, int start, int end) throws IOException {
+                writeEscaped(out, (s == null) ? "null" : s, start, end);
+                return this;
+            }
+
+            public Appendable append(char c) throws IOException {
+                writeEscaped(out, String.valueOf(c), 0, 1);
+                return this;
+            }
+        };
+    }
+
+
+
+    /**
+     * Helper method for writeString() and escaping().
+     */
+    private static void writeEscaped(Appendable out, CharSequence s, int from, int to) throws IOException {
+        int start = from;
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\' || c < 0x20) {
+                out.append(s, start, i);
+                switch (c) {
+                    case '"':
+                        out.append("\\\"");
+                        break;
+                    case '\\':
+                        out.append("\\\\");
+                        break;
+                    case '\n':
+                        out.append("\\n");
+                        break;
+                    case '\r':
+                        out.append("\\r");
+                        break;
+                    case '\t':
+                        out.append("\\t");
+                        break;
+                    default:
+                        out.append(String.format("\\u%04x", (int) c));
+                }
+                start = i + 1;
+            }
+        }
+        out.append(s, start, to);
+    }
+
+    /**
+     * Helper method for parse() and the methods reading arrays and objects.
+     */
+    private Object readValue() {
+        skipWhitespace();
+        if (_position >= _text.length()) {
+            throw error("Expected a JSON value");
+        }
+        char c = _text.charAt(_position);
+        switch (c) {
+            case '{':
+            case '[':
+                if (++_depth > MAX_DEPTH) {
+                    throw error("Arrays and objects nested more than " + MAX_DEPTH + " deep");
+                }
+                Object nested = (c == '{') ? readObject() : readArray();
+                _depth--;
+                return nested;
+            case '"':
+                return readString();
+            case 't':
+                return readLiteral("true", Boolean.TRUE);
+            case 'f':
+                return readLiteral("false", Boolean.FALSE);
+            case 'n':
+                return readLiteral("null", null);
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return readNumber();
+                }
+                throw error("Unexpected character '" + c + "'");
+        }
+    }
+
+    /**
+     * Helper method for readValue().
+     */
+    private Map<String, Object> readObject() {
+        Map<String, Object> object = new LinkedHashMap<>();
+        _position++;
+        skipWhitespace();
+        if (peek() == '}') {
+            _position++;
+            return object;
+        }
+        while (true) {
+            skipWhitespace();
+            if (peek() != '"') {
+                throw error("Expected the name of a field");
+            }
+            String name = readString();
+            skipWhitespace();
+            expect(':');
+            object.put(name, readValue());
+            skipWhitespace();
+            if (peek() == ',') {
+                _position++;
+            } else {
+                expect('}');
+                return object;
+            }
+        }
+    }
+
+    /**
+     * Helper method for readValue().
+     */
+    private List<Object> readArray() {
+        List<Object> array = new ArrayList<>();
+        _position++;
+        skipWhitespace();
+        if (peek() == ']') {
+            _position++;
+            return array;
+        }
+        while (true) {
+            array.add(readValue());
+            skipWhitespace();
+            if (peek() == ',') {
+                _position++;
+            } else {
+                expect(']');
+                return array;
+            }
+        }
+    }
+
+    /**
+     * Helper method for readValue() and readObject().
+     */
+    private String readString() {
+        _position++;
+        StringBuilder s = new StringBuilder();
+        while (true) {
+            if (_position >= _text.length()) {
+                throw error("Unterminated string");
+            }
+            char c = _text.charAt(_position++);
+            if (c == '"') {
+                return s.toString();
+            }
+            if (c != '\\') {
+                s.append(c);
+                continue;
+            }
+            if (_position >= _text.length()) {
+                throw error("Unterminated string");
+            }
+            char escaped = _text.charAt(_position++);
+            switch (escaped) {
+                case 'n':
+                    s.append('\n');
+                    break;
+                case 'r':
+                    s.append('\r');
+                    break;
+                case 't':
+                    s.append('\t');
+                    break;
+                case 'b':
+                    s.append('\b');
+                    break;
+                case 'f':
+                    s.append('\f');
+                    break;
+                case 'u':
+                    if (_position + 4 > _text.length()) {
+                        throw error("Unterminated escape");
+                    }
+                    try {
+                        s.append((char) Integer.parseInt(_text.substring(_position, _position + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw error("Bad escape");
+                    }
+                    _position += 4;
+                    break;
+                default:
+                    s.append(escaped);
+            }
+        }
+    }
+
+    /**
+     * Helper method for readValue().
+     */
+    private String readNumber() {
+        int start = _position;
+        while (_position < _text.length() && "+-0123456789.eE".indexOf(_text.charAt(_position)) >= 0) {
+            _position++;
+        }
+        return _text.substring(start, _position);
+    }
+
+    /**
+     * Helper method for readValue().
+     */
+    private Object readLiteral(String literal, Object value) {
+        if (!_text.startsWith(literal, _position)) {
+            throw error("Unexpected character '" + _text.charAt(_position) + "'");
+        }
+        _position += literal.length();
+        return value;
+    }
+
+    private void skipWhitespace() {
+        while (_position < _text.length() && Character.isWhitespace(_text.charAt(_position))) {
+            _position++;
+        }
+    }
+
+    private char peek() {
+        return (_position < _text.length()) ? _text.charAt(_position) : 0;
+    }
+
+    private void expect(char c) {
+        if (peek() != c) {
+            throw error("Expected '" + c + "'");
+        }
+        _position++;
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at character " + _position);
+    }
+}
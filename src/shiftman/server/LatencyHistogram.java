@@ -0,0 +1,142 @@
+package shiftman.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts latencies, in nanoseconds, in buckets whose width grows with the values they hold, as HdrHistogram does.
+ * Values below 32 each have a bucket of their own. Above that, each power of two is split into 16 buckets of equal
+ * width, so any value is known to within about 6% however large it is, and every value a long can hold fits in
+ * fewer than a thousand buckets.
+ *
+ * <p>Recording a value finds its bucket with a few shifts and adds to it atomically, so any number of threads can
+ * record at once without a lock, and nothing is allocated. A Snapshot copies the counts, so percentiles can be worked
+ * out while values are still being recorded. The mean and maximum of a snapshot taken while values are being
+ * recorded may include a value or two that its buckets do not yet.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private static final int BUCKETS = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray _counts = new AtomicLongArray(BUCKETS);
+
+    private final LongAdder _sum = new LongAdder();
+
+    private final AtomicLong _max = new AtomicLong();
+
+    /**
+     * The counts of a histogram at one moment, which never change.
+     */
+    public static final class Snapshot {
+
+        private final long[] _counts;
+
+        private final long _total;
+
+        private final long _sum;
+
+        private final long _max;
+
+        private Snapshot(long[] counts, long total, long sum, long max) {
+            _counts = counts;
+            _total = total;
+            _sum = sum;
+            _max = max;
+        }
+
+        public long getCount() {
+            return _total;
+        }
+
+        public long getMax() {
+            return _max;
+        }
+
+        /**
+         * The mean of the values recorded, or 0 if there are none.
+         */
+        public double getMean() {
+            return (_total == 0) ? 0 : (double) _sum / _total;
+        }
+
+        /**
+         * The value that the given percentage of the values recorded are at or below, to within the width of its
+         * bucket. The highest value its bucket could hold is given, but never more than the largest value recorded.
+         * @param percentile From 0 to 100.
+         * @return The value, or 0 if there are none.
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (_total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * _total));
+            long seen = 0;
+            for (int i = 0; i < _counts.length; i++) {
+                seen += _counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestInBucket(i), _max);
+                }
+            }
+            return _max;
+        }
+    }
+
+
+
+    /**
+     * Counts one value. A negative value, which a clock stepping backwards could give, is counted as 0.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        _counts.incrementAndGet(bucketOf(value));
+        _sum.add(value);
+        long max = _max.get();
+        while (value > max && !_max.compareAndSet(max, value)) {
+            max = _max.get();
+        }
+    }
+
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = _counts.get(i);
+            total += counts[i];
+        }
+        return new Snapshot(counts, total, _sum.sum(), _max.get());
+    }
+
+
+
+    /**
+     * Helper method for record().
+     * The bucket is the value's highest set bit together with the SUB_BUCKET_BITS bits below it, so that values with
+     * the same leading bits share a bucket. Values small enough to have no more bits than that are their own bucket.
+     */
+    static int bucketOf(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int highestBit = 63 - Long.numberOfLeadingZeros(value);
+        int shift = highestBit - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * Helper method for Snapshot.getValueAtPercentile().
+     * The largest value that bucketOf() puts in the given bucket.
+     */
+    static long highestInBucket(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,120 @@
+package shiftman.server;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The calls made to one ShiftMan method through an InstrumentedShiftMan: how many there were, how many gave an
+ * error, and a histogram of how long they took. Any number of threads can count calls at once without a lock.
+ */
+public final class OperationStats implements OperationStatsMXBean {
+
+    private final String _operation;
+
+    private final LongAdder _calls = new LongAdder();
+
+    private final LongAdder _errors = new LongAdder();
+
+    private final LatencyHistogram _latencies = new LatencyHistogram();
+
+    /**
+     * The counts for one method at one moment, which never change.
+     */
+    public static final class Snapshot {
+
+        private final String _operation;
+
+        private final long _calls;
+
+        private final long _errors;
+
+        private final LatencyHistogram.Snapshot _latencies;
+
+        private Snapshot(String operation, long calls, long errors, LatencyHistogram.Snapshot latencies) {
+            _operation = operation;
+            _calls = calls;
+            _errors = errors;
+            _latencies = latencies;
+        }
+
+        public String getOperation() {
+            return _operation;
+        }
+
+        public long getCalls() {
+            return _calls;
+        }
+
+        public long getErrors() {
+            return _errors;
+        }
+
+        /**
+         * The times the calls took, in nanoseconds.
+         */
+        public LatencyHistogram.Snapshot getLatencies() {
+            return _latencies;
+        }
+    }
+
+    OperationStats(String operation) {
+        _operation = operation;
+    }
+
+
+
+    /**
+     * Counts a call that took the given time, and whether it gave an error.
+     */
+    void record(long nanos, boolean isError) {
+        _calls.increment();
+        if (isError) {
+            _errors.increment();
+        }
+        _latencies.record(nanos);
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(_operation, _calls.sum(), _errors.sum(), _latencies.snapshot());
+    }
+
+    public String getOperation() {
+        return _operation;
+    }
+
+    public long getCalls() {
+        return _calls.sum();
+    }
+
+    public long getErrors() {
+        return _errors.sum();
+    }
+
+    public double getMeanMicros() {
+        return _latencies.snapshot().getMean() / 1000;
+    }
+
+    public double getP50Micros() {
+        return percentileMicros(50);
+    }
+
+    public double getP99Micros() {
+        return percentileMicros(99);
+    }
+
+    public double getP999Micros() {
+        return percentileMicros(99.9);
+    }
+
+    public double getMaxMicros() {
+        return _latencies.snapshot().getMax() / 1000.0;
+    }
+
+
+
+    /**
+     * Helper method for the percentile getters, which JMX calls one at a time.
+     */
+    private double percentileMicros(double percentile) {
+        return _latencies.snapshot().getValueAtPercentile(percentile) / 1000.0;
+    }
+}
@@ -0,0 +1,23 @@
+package shiftman.server;
+
+/**
+ * How one ShiftMan method of an InstrumentedShiftMan is doing, as seen over JMX. Latencies are in microseconds.
+ */
+public interface OperationStatsMXBean {
+
+    String getOperation();
+
+    long getCalls();
+
+    long getErrors();
+
+    double getMeanMicros();
+
+    double getP50Micros();
+
+    double getP99Micros();
+
+    double getP999Micros();
+
+    double getMaxMicros();
+}
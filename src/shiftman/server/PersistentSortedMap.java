@@ -0,0 +1,403 @@
+package shiftman.server;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable sorted map, used to build roster snapshots that share structure with each other.
+ * It is a balanced (AVL) binary tree: adding or removing a key copies only the O(log n) nodes on the path
+ * to that key, and the new map shares every other node with the old one. Both maps stay valid, so a
+ * map can be read by any number of threads while new versions of it are being built.
+ */
+public final class PersistentSortedMap<K extends Comparable<? super K>, V> implements Iterable<Map.Entry<K, V>> {
+
+    @SuppressWarnings("rawtypes")
+    private static final PersistentSortedMap EMPTY = new PersistentSortedMap<>(null);
+
+    private final Node<K, V> _root;
+
+    /**
+     * A node of the tree. Nodes are never changed once created, so they double as the map's entries.
+     */
+    private static final class Node<K, V> implements Map.Entry<K, V> {
+
+        private final K _key;
+
+        private final V _value;
+
+        private final Node<K, V> _left;
+
+        private final Node<K, V> _right;
+
+        private final int _height;
+
+        private final int _size;
+
+        Node(K key, V value, Node<K, V> left, Node<K, V> right) {
+            _key = key;
+            _value = value;
+            _left = left;
+            _right = right;
+            _height = Math.max(height(left), height(right)) + 1;
+            _size = size(left) + size(right) + 1;
+        }
+
+        public K getKey() {
+            return _key;
+        }
+
+        public V getValue() {
+            return _value;
+        }
+
+        public V setValue(V value) {
+            throw new UnsupportedOperationException("Persistent map entries cannot be changed");
+        }
+
+        @Override
+        public String toString() {
+            return _key + "=" + _value;
+        }
+    }
+
+    private PersistentSortedMap(Node<K, V> root) {
+        _root = root;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K extends Comparable<? super K>, V> PersistentSortedMap<K, V> empty() {
+        return (PersistentSortedMap<K, V>) EMPTY;
+    }
+
+    /**
+     * Builds a map from entries that are already sorted by key, with no duplicates, in O(n).
+     * This is used when loading a large amount of data at once, rather than adding the keys one at a time.
+     */
+    public static <K extends Comparable<? super K>, V> PersistentSortedMap<K, V> fromSorted(
+            List<? extends Map.Entry<K, V>> entries) {
+        for (int i = 1; i < entries.size(); i++) {
+            if (entries.get(i - 1).getKey().compareTo(entries.get(i).getKey()) >= 0) {
+                throw new IllegalArgumentException("Entries are not sorted by key without duplicates");
+            }
+        }
+        return new PersistentSortedMap<>(buildBalanced(entries, 0, entries.size()));
+    }
+
+
+
+    public int size() {
+        return size(_root);
+    }
+
+    public boolean isEmpty() {
+        return _root == null;
+    }
+
+    public V get(K key) {
+        Node<K, V> n = _root;
+        while (n != null) {
+            int c = key.compareTo(n._key);
+            if (c == 0) {
+                return n._value;
+            }
+            n = (c < 0) ? n._left : n._right;
+        }
+        return null;
+    }
+
+    public boolean containsKey(K key) {
+        Node<K, V> n = _root;
+        while (n != null) {
+            int c = key.compareTo(n._key);
+            if (c == 0) {
+                return true;
+            }
+            n = (c < 0) ? n._left : n._right;
+        }
+        return false;
+    }
+
+    /**
+     * Gives a map with the key set to the value. This map is left unchanged.
+     */
+    public PersistentSortedMap<K, V> plus(K key, V value) {
+        Node<K, V> root = insert(_root, key, value);
+        return (root == _root) ? this : new PersistentSortedMap<>(root);
+    }
+
+    /**
+     * Gives a map with all of the given entries added, which must be sorted by key with no duplicates.
+     * A given entry replaces any entry with the same key. This map is left unchanged.
+     * A few entries are added one at a time, but once adding them would cost more than rebuilding the whole
+     * tree, they are merged with this map's entries in a single pass and the tree is rebuilt in O(n + m).
+     */
+    public PersistentSortedMap<K, V> plusAll(List<? extends Map.Entry<K, V>> entries) {
+        int size = size();
+        int depth = 32 - Integer.numberOfLeadingZeros(size + 1);
+        if ((long) entries.size() * depth < size + entries.size()) {
+            PersistentSortedMap<K, V> result = this;
+            for (Map.Entry<K, V> e : entries) {
+                result = result.plus(e.getKey(), e.getValue());
+            }
+            return result;
+        }
+
+        List<Map.Entry<K, V>> merged = new ArrayList<>(size + entries.size());
+        Iterator<Map.Entry<K, V>> existing = iterator();
+        Map.Entry<K, V> next = existing.hasNext() ? existing.next() : null;
+        for (Map.Entry<K, V> e : entries) {
+            while (next != null && next.getKey().compareTo(e.getKey()) < 0) {
+                merged.add(next);
+                next = existing.hasNext() ? existing.next() : null;
+            }
+            if (next != null && next.getKey().compareTo(e.getKey()) == 0) {
+                next = existing.hasNext() ? existing.next() : null;
+            }
+            merged.add(e);
+        }
+        while (next != null) {
+            merged.add(next);
+            next = existing.hasNext() ? existing.next() : null;
+        }
+        return fromSorted(merged);
+    }
+
+    /**
+     * Gives a map without the key. This map is left unchanged.
+     */
+    public PersistentSortedMap<K, V> minus(K key) {
+        Node<K, V> root = remove(_root, key);
+        return (root == _root) ? this : new PersistentSortedMap<>(root);
+    }
+
+    /**
+     * Finds the entry with the greatest key less than or equal to the given key, or null if there is none.
+     */
+    public Map.Entry<K, V> floorEntry(K key) {
+        Node<K, V> n = _root;
+        Node<K, V> best = null;
+        while (n != null) {
+            int c = key.compareTo(n._key);
+            if (c == 0) {
+                return n;
+            } else if (c < 0) {
+                n = n._left;
+            } else {
+                best = n;
+                n = n._right;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Finds the entry with the least key strictly greater than the given key, or null if there is none.
+     */
+    public Map.Entry<K, V> higherEntry(K key) {
+        Node<K, V> n = _root;
+        Node<K, V> best = null;
+        while (n != null) {
+            if (key.compareTo(n._key) < 0) {
+                best = n;
+                n = n._left;
+            } else {
+                n = n._right;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Iterates over the entries in key order.
+     */
+    public Iterator<Map.Entry<K, V>> iterator() {
+        return new EntryIterator<>(_root, null);
+    }
+
+    /**
+     * Iterates over the entries in key order, starting from the first key greater than or equal to the given key.
+     */
+    public Iterator<Map.Entry<K, V>> iteratorFrom(K fromKey) {
+        return new EntryIterator<>(_root, fromKey);
+    }
+
+    /**
+     * The values of the map, in key order.
+     */
+    public Iterable<V> values() {
+        return () -> new Iterator<V>() {
+            private final Iterator<Map.Entry<K, V>> _entries = iterator();
+
+            public boolean hasNext() {
+                return _entries.hasNext();
+            }
+
+            public V next() {
+                return _entries.next().getValue();
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("{");
+        for (Map.Entry<K, V> e : this) {
+            if (builder.length() > 1) {
+                builder.append(", ");
+            }
+            builder.append(e);
+        }
+        return builder.append('}').toString();
+    }
+
+
+
+    /**
+     * Iterates over the tree in order, keeping the path of nodes still to be visited on a stack.
+     */
+    private static final class EntryIterator<K extends Comparable<? super K>, V> implements Iterator<Map.Entry<K, V>> {
+
+        private final Deque<Node<K, V>> _path = new ArrayDeque<>();
+
+        EntryIterator(Node<K, V> root, K fromKey) {
+            Node<K, V> n = root;
+            while (n != null) {
+                if (fromKey == null || fromKey.compareTo(n._key) <= 0) {
+                    _path.push(n);
+                    n = n._left;
+                } else {
+                    n = n._right;
+                }
+            }
+        }
+
+        public boolean hasNext() {
+            return !_path.isEmpty();
+        }
+
+        public Map.Entry<K, V> next() {
+            if (_path.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            Node<K, V> n = _path.pop();
+            for (Node<K, V> m = n._right; m != null; m = m._left) {
+                _path.push(m);
+            }
+            return n;
+        }
+    }
+
+    private static int height(Node<?, ?> n) {
+        return (n == null) ? 0 : n._height;
+    }
+
+    private static int size(Node<?, ?> n) {
+        return (n == null) ? 0 : n._size;
+    }
+
+    /**
+     * Helper method for plus().
+     * Returns the same node if nothing changed, so that unchanged maps are not copied.
+     */
+    private static <K extends Comparable<? super K>, V> Node<K, V> insert(Node<K, V> n, K key, V value) {
+        if (n == null) {
+            return new Node<>(key, value, null, null);
+        }
+        int c = key.compareTo(n._key);
+        if (c < 0) {
+            Node<K, V> left = insert(n._left, key, value);
+            return (left == n._left) ? n : balance(n._key, n._value, left, n._right);
+        } else if (c > 0) {
+            Node<K, V> right = insert(n._right, key, value);
+            return (right == n._right) ? n : balance(n._key, n._value, n._left, right);
+        } else if (value == n._value) {
+            return n;
+        } else {
+            return new Node<>(n._key, value, n._left, n._right);
+        }
+    }
+
+    /**
+     * Helper method for minus().
+     */
+    private static <K extends Comparable<? super K>, V> Node<K, V> remove(Node<K, V> n, K key) {
+        if (n == null) {
+            return null;
+        }
+        int c = key.compareTo(n._key);
+        if (c < 0) {
+            Node<K, V> left = remove(n._left, key);
+            return (left == n._left) ? n : balance(n._key, n._value, left, n._right);
+        } else if (c > 0) {
+            Node<K, V> right = remove(n._right, key);
+            return (right == n._right) ? n : balance(n._key, n._value, n._left, right);
+        } else if (n._left == null) {
+            return n._right;
+        } else if (n._right == null) {
+            return n._left;
+        } else {
+            // Replace the removed node with the smallest node of its right subtree
+            Node<K, V> successor = n._right;
+            while (successor._left != null) {
+                successor = successor._left;
+            }
+            return balance(successor._key, successor._value, n._left, removeFirst(n._right));
+        }
+    }
+
+    /**
+     * Helper method for remove().
+     */
+    private static <K, V> Node<K, V> removeFirst(Node<K, V> n) {
+        if (n._left == null) {
+            return n._right;
+        }
+        return balance(n._key, n._value, removeFirst(n._left), n._right);
+    }
+
+    /**
+     * Creates a node from the given parts, rotating if one side has become more than one level taller than
+     * the other, which is what keeps the tree's height logarithmic.
+     */
+    private static <K, V> Node<K, V> balance(K key, V value, Node<K, V> left, Node<K, V> right) {
+        int leftHeight = height(left);
+        int rightHeight = height(right);
+        if (leftHeight > rightHeight + 1) {
+            if (height(left._left) >= height(left._right)) {
+                return new Node<>(left._key, left._value, left._left, new Node<>(key, value, left._right, right));
+            }
+            Node<K, V> middle = left._right;
+            return new Node<>(middle._key, middle._value,
+                    new Node<>(left._key, left._value, left._left, middle._left),
+                    new Node<>(key, value, middle._right, right));
+        } else if (rightHeight > leftHeight + 1) {
+            if (height(right._right) >= height(right._left)) {
+                return new Node<>(right._key, right._value, new Node<>(key, value, left, right._left), right._right);
+            }
+            Node<K, V> middle = right._left;
+            return new Node<>(middle._key, middle._value,
+                    new Node<>(key, value, left, middle._left),
+                    new Node<>(right._key, right._value, middle._right, right._right));
+        }
+        return new Node<>(key, value, left, right);
+    }
+
+    /**
+     * Helper method for fromSorted().
+     * Builds a perfectly balanced tree from the entries between from (inclusive) and to (exclusive).
+     */
+    private static <K, V> Node<K, V> buildBalanced(List<? extends Map.Entry<K, V>> entries, int from, int to) {
+        if (from >= to) {
+            return null;
+        }
+        int middle = (from + to) >>> 1;
+        Map.Entry<K, V> e = entries.get(middle);
+        return new Node<>(e.getKey(), e.getValue(),
+                buildBalanced(entries, from, middle), buildBalanced(entries, middle + 1, to));
+    }
+}
@@ -0,0 +1,101 @@
+package shiftman.server;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable sorted set, which shares structure with the sets it was made from.
+ * It is a PersistentSortedMap from each element to itself, so adding or removing an element is O(log n).
+ */
+public final class PersistentSortedSet<E extends Comparable<? super E>> implements Iterable<E> {
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static final PersistentSortedSet EMPTY = new PersistentSortedSet(PersistentSortedMap.empty());
+
+    private final PersistentSortedMap<E, E> _elements;
+
+    private PersistentSortedSet(PersistentSortedMap<E, E> elements) {
+        _elements = elements;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <E extends Comparable<? super E>> PersistentSortedSet<E> empty() {
+        return (PersistentSortedSet<E>) EMPTY;
+    }
+
+    /**
+     * Builds a set from elements that are already sorted, with no duplicates, in O(n).
+     */
+    public static <E extends Comparable<? super E>> PersistentSortedSet<E> fromSorted(List<E> elements) {
+        List<Map.Entry<E, E>> entries = new ArrayList<>(elements.size());
+        for (E e : elements) {
+            entries.add(new AbstractMap.SimpleImmutableEntry<>(e, e));
+        }
+        return new PersistentSortedSet<>(PersistentSortedMap.fromSorted(entries));
+    }
+
+
+
+    public int size() {
+        return _elements.size();
+    }
+
+    public boolean isEmpty() {
+        return _elements.isEmpty();
+    }
+
+    public boolean contains(E element) {
+        return _elements.containsKey(element);
+    }
+
+    /**
+     * Gives a set that also contains the element. This set is left unchanged.
+     */
+    public PersistentSortedSet<E> plus(E element) {
+        PersistentSortedMap<E, E> elements = _elements.plus(element, element);
+        return (elements == _elements) ? this : new PersistentSortedSet<>(elements);
+    }
+
+    /**
+     * Gives a set that also contains all of the given elements, which must be sorted with no duplicates.
+     * Many elements are merged in a single pass, rather than being added one at a time. This set is left unchanged.
+     */
+    public PersistentSortedSet<E> plusAll(List<E> elements) {
+        List<Map.Entry<E, E>> entries = new ArrayList<>(elements.size());
+        for (E e : elements) {
+            entries.add(new AbstractMap.SimpleImmutableEntry<>(e, e));
+        }
+        PersistentSortedMap<E, E> merged = _elements.plusAll(entries);
+        return (merged == _elements) ? this : new PersistentSortedSet<>(merged);
+    }
+
+    /**
+     * Gives a set without the element. This set is left unchanged.
+     */
+    public PersistentSortedSet<E> minus(E element) {
+        PersistentSortedMap<E, E> elements = _elements.minus(element);
+        return (elements == _elements) ? this : new PersistentSortedSet<>(elements);
+    }
+
+    /**
+     * Iterates over the elements in order.
+     */
+    public Iterator<E> iterator() {
+        return _elements.values().iterator();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("[");
+        for (E e : this) {
+            if (builder.length() > 1) {
+                builder.append(", ");
+            }
+            builder.append(e);
+        }
+        return builder.append(']').toString();
+    }
+}
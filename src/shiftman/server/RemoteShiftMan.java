@@ -0,0 +1,357 @@
+package shiftman.server;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A ShiftMan whose rosters are held by a ShiftManRpcServer, reached over a single connection. It behaves as a
+ * ShiftManServer would, working on whichever roster it last created or selected, so code written against ShiftMan
+ * runs unchanged against a remote server.
+ *
+ * <p>The ShiftMan methods send their request and wait for its response. submit() returns as soon as the
+ * request is sent, with a future for the status, so a caller can have many requests on their way at once instead of
+ * waiting a round trip for each. Responses are read by a thread of the proxy's own, and matched to their requests by
+ * correlation id. Any number of threads may share the proxy, though they share its current roster too.
+ *
+ * <p>If the connection is lost, the ShiftMan methods report it as an error, as they would any other.
+ */
+public class RemoteShiftMan implements BatchShiftMan, AutoCloseable {
+
+    private final String LOST_CONNECTION_ERROR = "ERROR: the connection to the roster server was lost";
+
+    private final SocketChannel _channel;
+
+    private final RpcProtocol.FrameWriter _requests = new RpcProtocol.FrameWriter(8 * 1024);
+
+    private final Map<Long, CompletableFuture<Object>> _pending = new ConcurrentHashMap<>();
+
+    private final AtomicLong _nextCorrelationId = new AtomicLong();
+
+    private final Thread _reader;
+
+    private volatile IOException _failure;
+
+    private RemoteShiftMan(SocketChannel channel) {
+        _channel = channel;
+        _reader = new Thread(this::readResponses, "shiftman-rpc-client");
+        _reader.setDaemon(true);
+        _reader.start();
+    }
+
+    public static RemoteShiftMan connect(String host, int port) throws IOException {
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port));
+        channel.socket().setTcpNoDelay(true);
+        return new RemoteShiftMan(channel);
+    }
+
+    /**
+     * @param address The server's host and port, as "host:port".
+     */
+    public static RemoteShiftMan connect(String address) throws IOException {
+        int colon = address.lastIndexOf(':');
+        return connect(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+    }
+
+
+
+    public String newRoster(String shopName) {
+        return awaitStatus(call(RpcProtocol.NEW_ROSTER, false, shopName));
+    }
+
+    /**
+     * Switches to the roster for the given shop, as ShiftManServer.selectRoster() does.
+     */
+    public String selectRoster(String shopName) {
+        return awaitStatus(call(RpcProtocol.SELECT_ROSTER, false, shopName));
+    }
+
+    public String setWorkingHours(String dayOfWeek, String startTime, String endTime) {
+        return awaitStatus(submit(RosterCommand.setWorkingHours(dayOfWeek, startTime, endTime)));
+    }
+
+    public String addShift(String dayOfWeek, String startTime, String endTime, String minimumWorkers) {
+        return awaitStatus(submit(RosterCommand.addShift(dayOfWeek, startTime, endTime, minimumWorkers)));
+    }
+
+    public String registerStaff(String givenname, String familyName) {
+        return awaitStatus(submit(RosterCommand.registerStaff(givenname, familyName)));
+    }
+
+    public String assignStaff(String dayOfWeek, String startTime, String endTime, String givenName,
+                              String familyName, boolean isManager) {
+        return awaitStatus(submit(RosterCommand.assignStaff(dayOfWeek, startTime, endTime, givenName, familyName,
+                isManager)));
+    }
+
+    /**
+     * Sends the whole batch as one request, which the server applies as a single change.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<String> applyBatch(List<RosterCommand> commands) {
+        CompletableFuture<Object> response = send(out -> {
+            out.putByte(RpcProtocol.APPLY_BATCH).putByte(0).putInt(commands.size());
+            for (RosterCommand c : commands) {
+                out.putCommand(c);
+            }
+        });
+        Object statuses = await(response);
+        if (statuses == null) {
+            return new ArrayList<>(Collections.nCopies(commands.size(), LOST_CONNECTION_ERROR));
+        }
+        return (List<String>) statuses;
+    }
+
+    public List<String> getRegisteredStaff() {
+        return awaitList(call(RpcProtocol.GET_REGISTERED_STAFF, false));
+    }
+
+    public List<String> getUnassignedStaff() {
+        return awaitList(call(RpcProtocol.GET_UNASSIGNED_STAFF, false));
+    }
+
+    public List<String> shiftsWithoutManagers() {
+        return awaitList(call(RpcProtocol.SHIFTS_WITHOUT_MANAGERS, false));
+    }
+
+    public List<String> understaffedShifts() {
+        return awaitList(call(RpcProtocol.UNDERSTAFFED_SHIFTS, false));
+    }
+
+    public List<String> overstaffedShifts() {
+        return awaitList(call(RpcProtocol.OVERSTAFFED_SHIFTS, false));
+    }
+
+    public List<String> getRosterForDay(String dayOfWeek) {
+        return awaitList(call(RpcProtocol.GET_ROSTER_FOR_DAY, false, dayOfWeek));
+    }
+
+    public List<String> getRosterForWorker(String workerName) {
+        return awaitList(call(RpcProtocol.GET_ROSTER_FOR_WORKER, false, workerName));
+    }
+
+    public List<String> getShiftsManagedBy(String managerName) {
+        return awaitList(call(RpcProtocol.GET_SHIFTS_MANAGED_BY, false, managerName));
+    }
+
+    public String reportRosterIssues() {
+        return awaitStatus(call(RpcProtocol.REPORT_ROSTER_ISSUES, false));
+    }
+
+    public String displayRoster() {
+        return awaitStatus(call(RpcProtocol.DISPLAY_ROSTER, false));
+    }
+
+    /**
+     * Sends the command without waiting for it to be made.
+     * @return A future that completes with the status of the command once the server has made it, or with
+     * an UncheckedIOException if the connection is lost first.
+     */
+    public CompletableFuture<String> submit(RosterCommand command) {
+        return send(out -> out.putCommand(command)).thenApply(String.class::cast);
+    }
+
+    /**
+     * Closes the connection. Requests still waiting for a response complete with an error.
+     * If the caller is interrupted, it still waits for the reader to stop, and its interrupt status is set again
+     * before this returns.
+     */
+    public void close() throws IOException {
+        _channel.close();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                _reader.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+
+    /**
+     * Writes the body of a request.
+     */
+    private interface RequestBody {
+        void writeTo(RpcProtocol.FrameWriter out);
+    }
+
+    /**
+     * Helper method for every query, and for newRoster() and selectRoster().
+     */
+    private CompletableFuture<Object> call(byte opcode, boolean isManager, String... arguments) {
+        return send(out -> out.putRequest(opcode, isManager, arguments));
+    }
+
+    /**
+     * Helper method for every method that makes a request.
+     * Sends the request with the next correlation id, registering the future for its response first so that
+     * the reader thread can never find a response with no one waiting for it.
+     */
+    private CompletableFuture<Object> send(RequestBody body) {
+        CompletableFuture<Object> response = new CompletableFuture<>();
+        if (_failure != null) {
+            response.completeExceptionally(new UncheckedIOException(_failure));
+            return response;
+        }
+        synchronized (_requests) {
+            long correlationId = _nextCorrelationId.incrementAndGet();
+            _pending.put(correlationId, response);
+            try {
+                body.writeTo(_requests.begin(correlationId));
+            } catch (RuntimeException e) {
+                // Nothing of the request has been sent, so dropping it leaves the connection as it was
+                _requests.abandon();
+                _pending.remove(correlationId);
+                throw e;
+            }
+            _requests.end();
+            try {
+                ByteBuffer bytes = _requests.flip();
+                while (bytes.hasRemaining()) {
+                    _channel.write(bytes);
+                }
+                _requests.compact();
+            } catch (IOException e) {
+                // Nothing more will be written, so whatever is left of the request is dropped
+                _requests.clear();
+                _pending.remove(correlationId);
+                fail(e);
+                response.completeExceptionally(new UncheckedIOException(e));
+            }
+        }
+        return response;
+    }
+
+    /**
+     * The body of the reader thread. Reads responses and completes the futures of the requests they answer,
+     * until the connection is closed.
+     */
+    private void readResponses() {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        try {
+            while (_channel.read(buffer) >= 0) {
+                buffer.flip();
+                ByteBuffer frame;
+                while ((frame = RpcProtocol.nextFrame(buffer)) != null) {
+                    complete(frame);
+                }
+                buffer.compact();
+                if (!buffer.hasRemaining()) {
+                    ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() * 2);
+                    buffer.flip();
+                    bigger.put(buffer);
+                    buffer = bigger;
+                }
+            }
+            fail(new IOException("The roster server closed the connection"));
+        } catch (IOException e) {
+            fail(e);
+        } catch (IllegalArgumentException e) {
+            fail(new IOException("The roster server sent a damaged response", e));
+        }
+    }
+
+    /**
+     * Helper method for readResponses().
+     */
+    private void complete(ByteBuffer frame) {
+        CompletableFuture<Object> response = _pending.remove(frame.getLong());
+        if (response == null) {
+            return;
+        }
+        byte kind = frame.get();
+        if (kind == RpcProtocol.STRING_RESPONSE) {
+            response.complete(RpcProtocol.getString(frame));
+        } else if (kind == RpcProtocol.LIST_RESPONSE) {
+            response.complete(RpcProtocol.getStrings(frame));
+        } else {
+            response.completeExceptionally(new IllegalStateException(RpcProtocol.getString(frame)));
+        }
+    }
+
+    /**
+     * Helper method for send() and readResponses().
+     * Marks the connection as lost and fails every request still waiting for a response.
+     */
+    private void fail(IOException e) {
+        if (_failure == null) {
+            _failure = e;
+        }
+        try {
+            _channel.close();
+        } catch (IOException ignored) {
+            // Already lost
+        }
+        for (Long id : _pending.keySet()) {
+            CompletableFuture<Object> response = _pending.remove(id);
+            if (response != null) {
+                response.completeExceptionally(new UncheckedIOException(e));
+            }
+        }
+    }
+
+    /**
+     * Helper method for every method returning a status.
+     */
+    private String awaitStatus(CompletableFuture<?> response) {
+        Object result = await(response);
+        return (result == null) ? LOST_CONNECTION_ERROR : (String) result;
+    }
+
+    /**
+     * Helper method for every method returning a list.
+     */
+    @SuppressWarnings("unchecked")
+    private List<String> awaitList(CompletableFuture<?> response) {
+        Object result = await(response);
+        if (result == null) {
+            List<String> errorMessage = new ArrayList<>();
+            errorMessage.add(LOST_CONNECTION_ERROR);
+            return errorMessage;
+        }
+        return (List<String>) result;
+    }
+
+    /**
+     * Helper method for awaitStatus() and awaitList().
+     * @return The result of the request, or null if the connection was lost.
+     */
+    private static Object await(CompletableFuture<?> response) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return response.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof UncheckedIOException) {
+                        return null;
+                    }
+                    throw (RuntimeException) e.getCause();
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package shiftman.server;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the lists a roster has rendered for its day, worker and manager queries, so that asking for the same list
+ * again costs a copy of it rather than formatting every shift again.
+ *
+ * <p>Each list is kept with the version of the day or staff member it was rendered from, and is only used while that
+ * version is still current. A change to one day therefore only makes that day's list, and the lists of the staff it
+ * assigned, out of date; every other list stays valid. Out of date lists are not removed straight away, but are
+ * replaced the next time they are asked for, or fall out of the cache as it fills up.
+ *
+ * <p>The cache holds at most a fixed number of lists, and when it is full the one used least recently is dropped.
+ * It counts how often a list is found up to date, and how often one has to be rendered.
+ */
+public final class RenderCache {
+
+    /**
+     * Enough for every day and a good number of staff, in each roster.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+
+    private final int _maxEntries;
+
+    private final Map<Key, Entry> _entries;
+
+    private final LongAdder _hits = new LongAdder();
+
+    private final LongAdder _misses = new LongAdder();
+
+    /**
+     * What a list is rendered for.
+     */
+    enum Kind {
+        DAY, WORKER, MANAGER
+    }
+
+    /**
+     * Identifies a list by its kind and the day position or staff name key it is for.
+     */
+    private static final class Key {
+
+        private final Kind _kind;
+
+        private final Object _subject;
+
+        Key(Kind kind, Object subject) {
+            _kind = kind;
+            _subject = subject;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return _kind == key._kind && _subject.equals(key._subject);
+        }
+
+        @Override
+        public int hashCode() {
+            return _kind.hashCode() * 31 + _subject.hashCode();
+        }
+    }
+
+    /**
+     * A rendered list, and the version it was rendered from.
+     */
+    private static final class Entry {
+
+        private final long _version;
+
+        private final List<String> _lines;
+
+        Entry(long version, List<String> lines) {
+            _version = version;
+            _lines = lines;
+        }
+    }
+
+    RenderCache(int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("A render cache must be able to hold at least one list");
+        }
+        _maxEntries = maxEntries;
+        // Kept in order of use, so the least recently used list is always the first
+        _entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > _maxEntries;
+            }
+        };
+    }
+
+
+
+    /**
+     * The number of times a list was asked for and found up to date.
+     */
+    public long getHits() {
+        return _hits.sum();
+    }
+
+    /**
+     * The number of times a list was asked for and had to be rendered.
+     */
+    public long getMisses() {
+        return _misses.sum();
+    }
+
+    /**
+     * The number of lists held, some of which may be out of date.
+     */
+    public synchronized int size() {
+        return _entries.size();
+    }
+
+    public int getMaxEntries() {
+        return _maxEntries;
+    }
+
+    /**
+     * Drops every list. The counts are kept.
+     */
+    public synchronized void clear() {
+        _entries.clear();
+    }
+
+    /**
+     * Gives the list of the given kind for the given day position or staff name key, rendering it only if the list
+     * held is missing or was rendered from a different version.
+     * @return A copy of the list, which the caller may change.
+     */
+    List<String> get(Kind kind, Object subject, long version, Supplier<List<String>> render) {
+        Key key = new Key(kind, subject);
+        synchronized (this) {
+            Entry entry = _entries.get(key);
+            if (entry != null && entry._version == version) {
+                _hits.increment();
+                return new ArrayList<>(entry._lines);
+            }
+        }
+
+        // Rendered outside the lock, so a slow render holds up no one else
+        _misses.increment();
+        List<String> lines = render.get();
+        synchronized (this) {
+            // Versions only go up, so a list rendered from an older snapshot never replaces a newer one
+            Entry entry = _entries.get(key);
+            if (entry == null || entry._version < version) {
+                _entries.put(key, new Entry(version, new ArrayList<>(lines)));
+            }
+        }
+        return lines;
+    }
+
+    @Override
+    public String toString() {
+        return "RenderCache[hits=" + getHits() + ", misses=" + getMisses() + ", size=" + size() + "]";
+    }
+}
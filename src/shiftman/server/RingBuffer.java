@@ -0,0 +1,166 @@
+package shiftman.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded queue with any number of producers and a single consumer, held in a fixed array that is reused
+ * as a ring. Producers claim a slot with a compare-and-set on the tail and never take a lock. Each slot has
+ * a sequence number, which tells a producer whether the consumer has finished with the slot, and tells the
+ * consumer whether the producer has finished filling it.
+ *
+ * <p>When the ring is full, producers wait for the consumer to catch up, which is what slows callers down
+ * when requests arrive faster than they can be handled. When the ring is empty, the consumer parks until a
+ * producer wakes it.
+ */
+final class RingBuffer<E> {
+
+    /**
+     * How many times to spin before parking, when waiting for the other side of the ring.
+     */
+    private static final int SPINS = 100;
+
+    private final AtomicReferenceArray<E> _slots;
+
+    private final AtomicLongArray _sequences;
+
+    private final int _mask;
+
+    private final AtomicLong _tail = new AtomicLong();
+
+    /**
+     * Only the consumer reads or writes the head, so it needs no synchronisation.
+     */
+    private long _head;
+
+    private volatile Thread _parkedConsumer;
+
+    /**
+     * @param capacity The most elements the ring can hold, rounded up to a power of two.
+     */
+    RingBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Ring buffer capacity must be positive");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        _slots = new AtomicReferenceArray<>(size);
+        _sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            _sequences.set(i, i);
+        }
+        _mask = size - 1;
+    }
+
+    int capacity() {
+        return _mask + 1;
+    }
+
+    /**
+     * Adds an element, waiting for space if the ring is full. Safe to call from any number of threads.
+     * @return The element's position, counting every element ever put from 0. Elements are taken in order of position.
+     */
+    long put(E element) {
+        int spins = 0;
+        while (true) {
+            long position = _tail.get();
+            int index = (int) position & _mask;
+            long difference = _sequences.get(index) - position;
+            if (difference == 0) {
+                if (_tail.compareAndSet(position, position + 1)) {
+                    _slots.set(index, element);
+                    // Publishes the element to the consumer
+                    _sequences.set(index, position + 1);
+                    Thread consumer = _parkedConsumer;
+                    if (consumer != null) {
+                        LockSupport.unpark(consumer);
+                    }
+                    return position;
+                }
+            } else if (difference < 0) {
+                // The ring is full, so wait for the consumer to free the slot
+                spins = backOff(spins);
+            }
+        }
+    }
+
+    /**
+     * The number of positions given out by put(), including those whose elements are still being put.
+     */
+    long getPutCount() {
+        return _tail.get();
+    }
+
+    /**
+     * The number of elements taken so far, which is the position of the next to be taken. Only the consumer thread
+     * may call this.
+     */
+    long getTakenCount() {
+        return _head;
+    }
+
+    /**
+     * Takes the oldest element, or returns null if there is none. Only the consumer thread may call this.
+     */
+    E poll() {
+        int index = (int) _head & _mask;
+        if (_sequences.get(index) != _head + 1) {
+            return null;
+        }
+        E element = _slots.get(index);
+        _slots.set(index, null);
+        // Hands the slot back to the producers, for use on the next trip around the ring
+        _sequences.set(index, _head + _mask + 1);
+        _head++;
+        return element;
+    }
+
+    /**
+     * Takes the oldest element, waiting for one if the ring is empty. Only the consumer thread may call this.
+     * @return The element, or null if the waiting thread was interrupted.
+     */
+    E take() {
+        int spins = 0;
+        while (true) {
+            E element = poll();
+            if (element != null) {
+                return element;
+            }
+            if (spins < SPINS) {
+                spins++;
+                Thread.onSpinWait();
+                continue;
+            }
+            _parkedConsumer = Thread.currentThread();
+            // Check again, as a producer may have added an element before seeing that the consumer was parking
+            element = poll();
+            if (element == null && !Thread.currentThread().isInterrupted()) {
+                LockSupport.park(this);
+            }
+            _parkedConsumer = null;
+            if (element != null) {
+                return element;
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Helper method for put().
+     * Spins for a while, then starts yielding the processor, so that a full ring does not waste it.
+     */
+    private static int backOff(int spins) {
+        if (spins < SPINS) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(1_000);
+        }
+        return spins + 1;
+    }
+}
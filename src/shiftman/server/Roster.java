@@ -1,20 +1,66 @@
 package shiftman.server;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
 /**
  * Represents a Roster. A roster is associated with a shop and thus stores its name.
- * It also has a list of staff members, and a list of days (effectively a single week).
+ * It also has a directory of staff members, and a list of days (effectively a single week).
+ *
+ * <p>The roster's contents are held in an immutable RosterSnapshot, published through a single atomic reference.
+ * Queries read the current snapshot and never take a lock, so they always see a consistent week however many
+ * changes are being made. A change builds a new snapshot from the current one, sharing everything it does not
+ * touch, and publishes it with a compare-and-set. If another change was published first, the change is made again
+ * from the start on top of it. No thread ever blocks, but every change contends on that one reference, even changes
+ * to different days: they are prepared in parallel, yet only one of them can publish at a time, and each change that
+ * loses the race repeats all of its work. Under many concurrent writers, changes are retried more and more often.
+ *
+ * <p>A roster created with a RosterLog records each change it publishes in the log. The log must list a roster's
+ * changes in the order they were published, so such a roster publishes and appends each change under its lock,
+ * which is only held for the compare and the hand-over to the log. Changes are still prepared in parallel.
+ *
+ * <p>A roster evicted by a RosterRegistry is retired: its last snapshot is swapped for a marker with the same
+ * compare-and-set, so a change that was being prepared as it was evicted fails to publish, like any other change
+ * that loses a race. That change, and every later change made through the retired roster, is passed on to the roster
+ * the registry holds for the shop by then, so no change made through an old reference is lost.
+ *
+ * <p>The lists given for a day, worker or manager are kept in a RenderCache, since rosters are read far more often
+ * than they change. A list is only rendered again once the day or staff member it is for has changed.
+ *
+ * <p>Each call emits a RosterEvents.Operation event to Java Flight Recorder, which costs nothing unless a recording
+ * is running.
  */
 public class Roster {
 
-    private String _shopName;
+    /**
+     * Published in place of the snapshot when the roster is retired. It is never read as a roster.
+     */
+    private static final RosterSnapshot RETIRED = RosterSnapshot.marker();
 
-    private List<StaffMember> _staffList;
+    private final AtomicReference<RosterSnapshot> _snapshot;
 
-    private List<Day> _weekdays;
+    /**
+     * The snapshot the roster had when it was retired, which queries go on reading.
+     */
+    private volatile RosterSnapshot _retiredSnapshot;
+
+    /**
+     * Finds the roster that changes made after this one was retired are passed on to.
+     */
+    private volatile Supplier<Roster> _successor;
+
+    private final RosterLog _log;
+
+    /**
+     * The number that this roster's changes are recorded against in the log.
+     */
+    private final long _logId;
+
+    private final RenderCache _renderCache = new RenderCache(RenderCache.DEFAULT_MAX_ENTRIES);
 
     /**
      * An enum containing the days of the week.
@@ -34,236 +80,289 @@ public class Roster {
         public String toString() {
             return _stringRep;
         }
+
+        /**
+         * The day with the given name, or null if there is no such day.
+         */
+        static DaysOfWeek named(String name) {
+            for (DaysOfWeek d : values()) {
+                if (d._stringRep.equals(name)) {
+                    return d;
+                }
+            }
+            return null;
+        }
     }
 
     public Roster (String name) {
-        _shopName = name;
-        _staffList = new ArrayList<>();
-        _weekdays = new ArrayList<>();
-        for (DaysOfWeek d : DaysOfWeek.values()) {
-            String dayName = d.toString();
-            Day day = new Day(dayName);
-            _weekdays.add(day);
-        }
-        System.out.println("@Roster object created with name " + _shopName);
+        this(name, null);
+    }
+
+    /**
+     * Creates a new roster which records its changes in the given log, or in no log if it is null.
+     */
+    public Roster (String name, RosterLog log) {
+        _snapshot = new AtomicReference<>(new RosterSnapshot(name));
+        _log = log;
+        _logId = (log == null) ? 0 : log.recordNewRoster(name);
+        RosterEvents.created("Roster", name);
     }
 
+    /**
+     * Used by RosterLog, to give back a roster it has replayed, and by fork() and retire().
+     */
+    Roster(RosterSnapshot snapshot, RosterLog log, long logId) {
+        _snapshot = new AtomicReference<>(snapshot);
+        _log = log;
+        _logId = logId;
+    }
 
 
-    public String setWorkingHours(String dayOfWeek, String startTime, String endTime) {
-        try {
-            Day day = findDayInWeek(dayOfWeek);
-            day.setWorkingHours(startTime, endTime);
-            return "";
-        } catch (ShiftManUserException e) {
-            return e.getMessage();
-        }
 
+    public String setWorkingHours(String dayOfWeek, String startTime, String endTime) {
+        return update(RosterCommand.setWorkingHours(dayOfWeek, startTime, endTime));
     }
 
     public String addShift(String dayOfWeek, String startTime, String endTime, String minimumWorkers) {
-        try {
-            Day day = findDayInWeek(dayOfWeek);
-            day.addShift(startTime, endTime, minimumWorkers);
-            return "";
-        } catch (ShiftManUserException e) {
-            return e.getMessage();
-        }
-
+        return update(RosterCommand.addShift(dayOfWeek, startTime, endTime, minimumWorkers));
     }
 
     public String registerStaff(String givenName, String familyName) {
-        if (givenName == null || familyName == null) {
-            return "ERROR: Employee name given is empty";
-        }
-
-        StaffMember newStaff = new StaffMember(givenName, familyName);
-
-        if (_staffList.contains(newStaff)) {
-            return "ERROR: Employee has already been registered";
-        } else {
-            _staffList.add(newStaff);
-            // This is so that upon recalling the registered staff, they are already sorted by last name
-            Collections.sort(_staffList);
-            return "";
-        }
+        return update(RosterCommand.registerStaff(givenName, familyName));
     }
 
     public String assignStaff(String dayOfWeek, String startTime, String endTime, String givenName,
                               String familyName, boolean isManager) {
-        try {
-            Day day = findDayInWeek(dayOfWeek);
-            StaffMember staff = findRegisteredStaffMember(givenName, familyName);
-            Shift shift = day.findShift(startTime, endTime);
-            day.assignStaff(shift, staff, isManager);
-            return "";
-        } catch (ShiftManUserException e) {
-            return e.getMessage();
-        }
+        return update(RosterCommand.assignStaff(dayOfWeek, startTime, endTime, givenName, familyName, isManager));
     }
 
-    public List<String> listRegisteredStaff() {
-        List<String> registered = new ArrayList<>();
-        for (StaffMember s : _staffList) {
-            registered.add(s.toString());
+    /**
+     * Makes all of the commands as a single change, so the roster goes straight from before the first to after the last.
+     * If another change is published while the batch is being made, the whole batch is made again on top of it.
+     */
+    public List<String> applyBatch(List<RosterCommand> commands) {
+        RosterEvents.Operation event = startOperation();
+        String[] statuses = new String[commands.size()];
+        while (true) {
+            RosterSnapshot current = _snapshot.get();
+            if (current == RETIRED) {
+                return _successor.get().applyBatch(commands);
+            }
+            RosterSnapshot next = current.withCommands(commands, statuses);
+            byte[] record = (_log == null) ? null : RosterLog.encodeBatch(_logId, next.getVersion(), commands);
+            if (publish(current, next, record)) {
+                return endQuery(event, "applyBatch", null, new ArrayList<>(Arrays.asList(statuses)));
+            }
         }
-        return registered;
     }
 
-    public List<String> listUnassignedStaff() {
-
-        // Get a list of all the staff members that are working
-        List<StaffMember> assigned = new ArrayList<>();
-        for (Day d: _weekdays) {
-            assigned.addAll(d.listAllStaffWorkingToday());
-        }
+    /**
+     * Fills every understaffed or unmanaged shift from the registered staff, keeping the assignments already made,
+     * with a plan made by an AutoFiller on the common fork/join pool and made as a single batch.
+     * @param timeBudgetMillis How long the AutoFiller may spend evening out the staff's loads.
+     * @return The status of each assignment in the plan.
+     */
+    public List<String> autoFill(long timeBudgetMillis) {
+        AutoFiller.Plan plan = new AutoFiller(ForkJoinPool.commonPool(), timeBudgetMillis).plan(snapshot());
+        return applyBatch(plan.getCommands());
+    }
 
-        // Make a copy of our registered staff list
-        // and remove everyone who is working from it
-        // Then sort the list to be in order of family name
-        List<StaffMember> unassigned = new ArrayList<>(_staffList);
-        unassigned.removeAll(assigned);
-        Collections.sort(unassigned);
-
-        // Convert the list of StaffMember objects into a list of their string representations
-        List<String> unassignedStrings = new ArrayList<>();
-        for (StaffMember s : unassigned) {
-            unassignedStrings.add(s.toString());
-        }
+    public List<String> listRegisteredStaff() {
+        RosterEvents.Operation event = startOperation();
+        return endQuery(event, "getRegisteredStaff", null, snapshot().listRegisteredStaff());
+    }
 
-        return unassignedStrings;
+    public List<String> listUnassignedStaff() {
+        RosterEvents.Operation event = startOperation();
+        return endQuery(event, "getUnassignedStaff", null, snapshot().listUnassignedStaff());
     }
 
     public List<String> listUnmanagedShifts() {
-        List<String> unmanaged = new ArrayList<>();
-
-        for (Day d : _weekdays) {
-            unmanaged.addAll(d.listShiftsWithoutManagers());
-        }
-
-        return unmanaged;
+        RosterEvents.Operation event = startOperation();
+        return endQuery(event, "shiftsWithoutManagers", null, snapshot().listUnmanagedShifts());
     }
 
     public List<String> listOverOrUnderstaffedShifts(int status) {
-        List<String> xStaffed = new ArrayList<>();
-
-        // List all the shifts that are over/understaffed, depending on the given status
-        // -1 = understaffed, 1 = overstaffed
-        for (Day d : _weekdays) {
-            xStaffed.addAll(d.listOverOrUnderstaffedShifts(status));
-        }
-
-        return xStaffed;
+        RosterEvents.Operation event = startOperation();
+        return endQuery(event, (status < 0) ? "understaffedShifts" : "overstaffedShifts", null,
+                snapshot().listOverOrUnderstaffedShifts(status));
     }
 
     public List<String> getRosterForDay(String dayOfWeek) {
-        List<String> dayRoster = new ArrayList<>();
-        Day day;
-
-        try {
-            day = findDayInWeek(dayOfWeek);
-        } catch (ShiftManUserException e) {
-            dayRoster.add(e.getMessage());
-            return dayRoster;
-        }
-
-        dayRoster.addAll(day.getDayRoster());
-
-        // If there are no shifts registered in the day, return an empty list as specified
-        // Otherwise, add the day and shop details at the top of the list
-        if (dayRoster.size() == 0) {
-            dayRoster.clear();
-        } else {
-            dayRoster.add(0, _shopName);
-            dayRoster.add(1, day.toString() + " " + day.getWorkingHours());
+        RosterEvents.Operation event = startOperation();
+        RosterSnapshot snapshot = snapshot();
+        DaysOfWeek d = DaysOfWeek.named(dayOfWeek);
+        if (d == null) {
+            // Errors are not worth keeping
+            return endQuery(event, "getRosterForDay", dayOfWeek, snapshot.getRosterForDay(dayOfWeek));
         }
-
-        return dayRoster;
+        return endQuery(event, "getRosterForDay", dayOfWeek, _renderCache.get(RenderCache.Kind.DAY, d.ordinal(),
+                snapshot.getDay(d).getVersion(), () -> snapshot.getRosterForDay(dayOfWeek)));
     }
 
     public List<String> getRosterForWorker(String givenName, String familyName) {
-        List<String> workerRoster = new ArrayList<>();
-        StaffMember staff;
-
-        try {
-            staff = findRegisteredStaffMember(givenName, familyName);
-        } catch (ShiftManUserException e) {
-            workerRoster.add(e.getMessage());
-            return workerRoster;
-        }
-
-        for (Day d : _weekdays) {
-            workerRoster.addAll(d.listShiftsWithStaffMember(staff));
+        RosterEvents.Operation event = startOperation();
+        RosterSnapshot snapshot = snapshot();
+        StaffMember staff = snapshot.findStaff(givenName, familyName);
+        if (staff == null) {
+            return endQuery(event, "getRosterForWorker", null, snapshot.getRosterForWorker(givenName, familyName));
         }
+        return endQuery(event, "getRosterForWorker", null, _renderCache.get(RenderCache.Kind.WORKER, staff.getKey(),
+                snapshot.getStaffVersion(staff), () -> snapshot.getRosterForWorker(givenName, familyName)));
+    }
 
-        // If there are no shifts worked by the staff member, return an empty list as specified
-        // Otherwise, add the staff member's name at the top of the list
-        if (workerRoster.size() == 0) {
-            workerRoster.clear();
-        } else {
-            workerRoster.add(0, staff.getReversedName());
+    public List<String> getRosterForManager(String givenName, String familyName) {
+        RosterEvents.Operation event = startOperation();
+        RosterSnapshot snapshot = snapshot();
+        StaffMember staff = snapshot.findStaff(givenName, familyName);
+        if (staff == null) {
+            return endQuery(event, "getShiftsManagedBy", null, snapshot.getRosterForManager(givenName, familyName));
         }
-
-        return workerRoster;
+        return endQuery(event, "getShiftsManagedBy", null, _renderCache.get(RenderCache.Kind.MANAGER, staff.getKey(),
+                snapshot.getStaffVersion(staff), () -> snapshot.getRosterForManager(givenName, familyName)));
     }
 
-    public List<String> getRosterForManager(String givenName, String familyName) {
-        List<String> managerRoster = new ArrayList<>();
+    /**
+     * The cache of this roster's rendered lists, with its counts of hits and misses.
+     */
+    public RenderCache getRenderCache() {
+        return _renderCache;
+    }
 
-        StaffMember manager;
+    /**
+     * The number that this roster's changes are recorded against in its log, or 0 if it has no log.
+     */
+    long getLogId() {
+        return _logId;
+    }
 
-        try {
-            manager = findRegisteredStaffMember(givenName, familyName);
-        } catch (ShiftManUserException e) {
-            managerRoster.add(e.getMessage());
-            return managerRoster;
-        }
+    /**
+     * The roster as it is right now. The snapshot never changes, so it can be read for as long as needed.
+     */
+    public RosterSnapshot snapshot() {
+        RosterSnapshot current = _snapshot.get();
+        return (current == RETIRED) ? _retiredSnapshot : current;
+    }
 
-        for (Day d : _weekdays) {
-            managerRoster.addAll(d.listShiftsWithManager(manager));
-        }
+    /**
+     * Makes a copy of the roster as it is right now, to try changes on without touching this one. The copy starts
+     * from the current snapshot, which is never changed, so it is made in constant time however large the roster is,
+     * and each roster's changes only ever share what they did not touch. The copy has no log.
+     */
+    public Roster fork() {
+        return new Roster(snapshot(), null, 0);
+    }
 
-        // If there are no shifts managed by the staff member, return an empty list as specified
-        // Otherwise, add the staff member's name at the top of the list
-        if (managerRoster.size() == 0) {
-            managerRoster.clear();
-        } else {
-            managerRoster.add(0, manager.getReversedName());
+    /**
+     * Used by RosterRegistry, to evict the roster. Once this returns the roster never changes again, and any change
+     * made through it is made on the roster given by the successor instead.
+     * @return A new roster with the last snapshot, log and log number of this one, for the registry to save.
+     */
+    synchronized Roster retire(Supplier<Roster> successor) {
+        _successor = successor;
+        while (true) {
+            RosterSnapshot last = _snapshot.get();
+            if (last == RETIRED) {
+                throw new IllegalStateException("Roster for " + _retiredSnapshot.getShopName() + " is already retired");
+            }
+            // Set before the marker is published, so any thread that sees the marker also sees the last snapshot
+            _retiredSnapshot = last;
+            if (_snapshot.compareAndSet(last, RETIRED)) {
+                return new Roster(last, _log, _logId);
+            }
         }
+    }
 
-        return managerRoster;
+    /**
+     * Whether the roster has been retired by its registry.
+     */
+    boolean isRetired() {
+        return _snapshot.get() == RETIRED;
     }
 
 
 
     /**
-     * Helper method for setWorkingHours(), addShift(), assignStaff(), and getRosterForDay().
-     * Finds a specified Day object by comparing their string representations.
+     * Helper method for every method that changes the roster.
+     * Makes the change on the current snapshot and publishes the result, trying again on the newer snapshot if
+     * another change, to any day, was published in the meantime. A change that fails is reported against the snapshot it was
+     * tried on, which was the current roster at that moment.
      */
-    private Day findDayInWeek(String dayName) throws ShiftManUserException {
-        for (Day d : _weekdays) {
-            String dayString = d.toString();
-            if (dayString.equals(dayName)) {
-                return d;
+    private String update(RosterCommand command) {
+        RosterEvents.Operation event = startOperation();
+        String status;
+        while (true) {
+            RosterSnapshot current = _snapshot.get();
+            if (current == RETIRED) {
+                return _successor.get().update(command);
+            }
+            RosterSnapshot next;
+            try {
+                next = command.applyTo(current);
+            } catch (ShiftManUserException e) {
+                status = e.getMessage();
+                break;
+            }
+            byte[] record = (_log == null) ? null : RosterLog.encode(_logId, next.getVersion(), command);
+            if (publish(current, next, record)) {
+                status = "";
+                break;
             }
         }
-        throw new ShiftManUserException("ERROR: Day does not exist in week");
+
+        if (event.shouldCommit()) {
+            event.shop = snapshot().getShopName();
+            event.operation = command.getType().getMethodName();
+            event.day = (command.getType() == RosterCommand.Type.REGISTER_STAFF) ? null : command.getArgument(0);
+            event.status = status;
+            event.commit();
+        }
+        return status;
+    }
+
+    /**
+     * Helper method for every method that emits an Operation event. The event is timed from here.
+     */
+    private static RosterEvents.Operation startOperation() {
+        RosterEvents.Operation event = new RosterEvents.Operation();
+        event.begin();
+        return event;
     }
 
     /**
-     * Helper method for assignStaff(), getRosterForWorker(), and getRosterForManager().
-     * Finds a specified StaffMember object by comparing their string representations.
+     * Helper method for applyBatch() and every query.
+     * Emits the Operation event if it is being recorded, and passes the result back.
      */
-    private StaffMember findRegisteredStaffMember(String givenName, String familyName) throws ShiftManUserException {
-        String staffName = givenName + " " + familyName;
+    private List<String> endQuery(RosterEvents.Operation event, String operation, String day, List<String> result) {
+        if (event.shouldCommit()) {
+            event.shop = snapshot().getShopName();
+            event.operation = operation;
+            event.day = day;
+            event.status = (result.size() == 1 && result.get(0).startsWith("ERROR")) ? result.get(0) : "";
+            event.resultSize = result.size();
+            event.commit();
+        }
+        return result;
+    }
 
-        for (StaffMember s : _staffList) {
-            String staffString = s.toString();
-            if (staffString.equals(staffName)) {
-                return s;
+    /**
+     * Helper method for update() and applyBatch().
+     * Replaces the current snapshot with the next one, as long as the current one has not already been replaced,
+     * and records the change in the log if there is one. Under the lock, retire() cannot replace the snapshot
+     * between the compare and the set.
+     */
+    private boolean publish(RosterSnapshot current, RosterSnapshot next, byte[] record) {
+        if (_log == null) {
+            return _snapshot.compareAndSet(current, next);
+        }
+        synchronized (this) {
+            if (_snapshot.get() != current) {
+                return false;
             }
+            _snapshot.set(next);
+            _log.append(record);
+            return true;
         }
-        throw new ShiftManUserException("ERROR: Staff member is not registered");
     }
 
     /**
@@ -271,7 +370,6 @@ public class Roster {
      */
     @Override
     public String toString() {
-        return _shopName;
+        return snapshot().getShopName();
     }
-
 }
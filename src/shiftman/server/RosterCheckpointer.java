@@ -0,0 +1,107 @@
+package shiftman.server;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves every roster in a RosterRegistry to its SnapshotRosterStore at a fixed interval, on a thread of its own,
+ * and then deletes the log segments the saved snapshots have made unnecessary. A restart then loads the snapshots
+ * and replays only the records written since the last checkpoint, rather than the whole history of every roster.
+ *
+ * <p>The registry must evict its shops to the store, so that a shop that is not in memory is already saved there.
+ * A roster that has not changed since it was last saved is not written again.
+ */
+public class RosterCheckpointer implements AutoCloseable {
+
+    private final RosterRegistry _registry;
+
+    private final SnapshotRosterStore _store;
+
+    private final RosterLog _log;
+
+    private final ScheduledExecutorService _executor;
+
+    private volatile Exception _failure;
+
+    /**
+     * @param intervalMillis The time between the end of one checkpoint and the start of the next.
+     */
+    public RosterCheckpointer(RosterRegistry registry, long intervalMillis) {
+        if (!(registry.getStore() instanceof SnapshotRosterStore) || registry.getLog() == null) {
+            throw new IllegalArgumentException("Only a registry with a log and a SnapshotRosterStore can be checkpointed");
+        }
+        _registry = registry;
+        _store = (SnapshotRosterStore) registry.getStore();
+        _log = registry.getLog();
+        _executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "shiftman-checkpointer");
+            t.setDaemon(true);
+            return t;
+        });
+        _executor.scheduleWithFixedDelay(this::checkpointQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+
+
+    /**
+     * Saves every roster in memory that has changed since it was last saved, then deletes the log segments
+     * holding only changes from before the checkpoint.
+     * @return The number of rosters saved.
+     * @throws IOException If a roster could not be saved, in which case no segments are deleted.
+     */
+    public synchronized int checkpoint() throws IOException, InterruptedException {
+        long firstNeeded = _log.startNewSegment();
+        int saved = 0;
+        for (Roster r : _registry.residentRosters()) {
+            if (_store.checkpoint(r)) {
+                saved++;
+            }
+        }
+        _log.deleteSegmentsBefore(firstNeeded);
+        _failure = null;
+        return saved;
+    }
+
+    /**
+     * Why the last checkpoint made in the background failed, or null if it succeeded.
+     * A failed checkpoint is simply tried again at the next interval.
+     */
+    public Exception getFailure() {
+        return _failure;
+    }
+
+    /**
+     * Stops checkpointing in the background, and makes one last checkpoint.
+     * The log should be closed after this, as the last checkpoint starts a new segment.
+     * If the caller is interrupted, the last checkpoint is skipped, which only leaves more of the log to replay
+     * on the next start, and its interrupt status is set again.
+     */
+    public void close() throws IOException {
+        _executor.shutdown();
+        try {
+            _executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            checkpoint();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+
+    /**
+     * Helper method for the constructor, to run checkpoint() on the executor, which would otherwise stop
+     * scheduling it after the first failure.
+     */
+    private void checkpointQuietly() {
+        try {
+            checkpoint();
+        } catch (IOException | UncheckedIOException e) {
+            _failure = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
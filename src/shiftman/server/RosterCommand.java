@@ -0,0 +1,135 @@
+package shiftman.server;
+
+/**
+ * A single request to change a roster, held as an object so that it can be queued, batched or recorded
+ * rather than made straight away. There is one kind of command for each ShiftMan method that changes a roster,
+ * and a command made from the same arguments as a ShiftMan call has exactly the same effect as that call.
+ */
+public final class RosterCommand {
+
+    /**
+     * The ShiftMan method that a command stands for.
+     */
+    public enum Type {
+        SET_WORKING_HOURS("setWorkingHours"), ADD_SHIFT("addShift"), REGISTER_STAFF("registerStaff"),
+        ASSIGN_STAFF("assignStaff");
+
+        private final String _methodName;
+
+        Type(String methodName) {
+            _methodName = methodName;
+        }
+
+        /**
+         * The name of the ShiftMan method, as it is reported in events and over the network.
+         */
+        public String getMethodName() {
+            return _methodName;
+        }
+    }
+
+    private final Type _type;
+
+    private final String[] _arguments;
+
+    private final boolean _isManager;
+
+    private RosterCommand(Type type, boolean isManager, String... arguments) {
+        _type = type;
+        _arguments = arguments;
+        _isManager = isManager;
+    }
+
+    public static RosterCommand setWorkingHours(String dayOfWeek, String startTime, String endTime) {
+        return new RosterCommand(Type.SET_WORKING_HOURS, false, dayOfWeek, startTime, endTime);
+    }
+
+    public static RosterCommand addShift(String dayOfWeek, String startTime, String endTime, String minimumWorkers) {
+        return new RosterCommand(Type.ADD_SHIFT, false, dayOfWeek, startTime, endTime, minimumWorkers);
+    }
+
+    public static RosterCommand registerStaff(String givenName, String familyName) {
+        return new RosterCommand(Type.REGISTER_STAFF, false, givenName, familyName);
+    }
+
+    public static RosterCommand assignStaff(String dayOfWeek, String startTime, String endTime, String givenName,
+                                            String familyName, boolean isManager) {
+        return new RosterCommand(Type.ASSIGN_STAFF, isManager, dayOfWeek, startTime, endTime, givenName, familyName);
+    }
+
+
+
+    /**
+     * Makes the change by calling the matching method of the given ShiftMan.
+     * @return The status of the request, as returned by that method.
+     */
+    public String applyTo(ShiftMan scheduler) {
+        switch (_type) {
+            case SET_WORKING_HOURS:
+                return scheduler.setWorkingHours(_arguments[0], _arguments[1], _arguments[2]);
+            case ADD_SHIFT:
+                return scheduler.addShift(_arguments[0], _arguments[1], _arguments[2], _arguments[3]);
+            case REGISTER_STAFF:
+                return scheduler.registerStaff(_arguments[0], _arguments[1]);
+            default:
+                return scheduler.assignStaff(_arguments[0], _arguments[1], _arguments[2], _arguments[3],
+                        _arguments[4], _isManager);
+        }
+    }
+
+    /**
+     * Makes the change on the given snapshot.
+     * @return The snapshot that results, which shares everything the change did not touch with the given one.
+     * @throws ShiftManUserException If the change cannot be made, with the same message the ShiftMan method returns.
+     */
+    public RosterSnapshot applyTo(RosterSnapshot snapshot) throws ShiftManUserException {
+        switch (_type) {
+            case SET_WORKING_HOURS:
+                return snapshot.withWorkingHours(_arguments[0], _arguments[1], _arguments[2]);
+            case ADD_SHIFT:
+                return snapshot.withShift(_arguments[0], _arguments[1], _arguments[2], _arguments[3]);
+            case REGISTER_STAFF:
+                return snapshot.withStaff(_arguments[0], _arguments[1]);
+            default:
+                return snapshot.withAssignment(_arguments[0], _arguments[1], _arguments[2], _arguments[3],
+                        _arguments[4], _isManager);
+        }
+    }
+
+    public Type getType() {
+        return _type;
+    }
+
+    /**
+     * The strings the command was made from, in the same order as the parameters of its ShiftMan method.
+     */
+    public String getArgument(int index) {
+        return _arguments[index];
+    }
+
+    public int getArgumentCount() {
+        return _arguments.length;
+    }
+
+    public boolean isManager() {
+        return _isManager;
+    }
+
+    /**
+     * The most useful string representation of this object is the call it stands for.
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(_type.name()).append('(');
+        for (int i = 0; i < _arguments.length; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(_arguments[i]);
+        }
+        if (_type == Type.ASSIGN_STAFF) {
+            builder.append(", ").append(_isManager);
+        }
+        return builder.append(')').toString();
+    }
+}
@@ -0,0 +1,148 @@
+package shiftman.server;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The Java Flight Recorder events the server emits. An Operation event covers each call made to a Roster, and the
+ * other events cover the phases within it: finding the day and the staff member, checking a new shift against the
+ * others, sorting and rendering. Together they show where the time of a slow addShift() or assignStaff() went.
+ *
+ * <p>When no recording is running, or an event is switched off, creating, timing and committing an event costs
+ * nothing: the JIT removes it. Fields that take work to fill in are only filled in once shouldCommit() says the event
+ * will be kept. The Created event, which lists every Roster, Day, Shift and StaffMember as it is made, is off unless a
+ * recording switches it on, as there are a great many of them.
+ */
+final class RosterEvents {
+
+    private static final String CATEGORY = "ShiftMan";
+
+    private RosterEvents() {
+    }
+
+    @Name("shiftman.Operation")
+    @Label("Roster Operation")
+    @Description("A call made to a roster, from the ShiftMan API")
+    @Category(CATEGORY)
+    static final class Operation extends Event {
+
+        @Label("Shop")
+        String shop;
+
+        @Label("Operation")
+        String operation;
+
+        @Label("Day")
+        String day;
+
+        @Label("Status")
+        @Description("The error the call gave, or empty if it succeeded")
+        String status;
+
+        @Label("Result Size")
+        @Description("The number of lines a query gave")
+        int resultSize;
+    }
+
+    @Name("shiftman.DayLookup")
+    @Label("Day Lookup")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class DayLookup extends Event {
+
+        @Label("Day")
+        String day;
+
+        @Label("Shift Count")
+        int shiftCount;
+    }
+
+    @Name("shiftman.StaffLookup")
+    @Label("Staff Lookup")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class StaffLookup extends Event {
+
+        @Label("Staff Name")
+        String name;
+
+        @Label("Found")
+        boolean found;
+
+        @Label("Staff Count")
+        int staffCount;
+    }
+
+    @Name("shiftman.ClashCheck")
+    @Label("Shift Clash Check")
+    @Description("Checking a new shift against the working hours and the other shifts of its day")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class ClashCheck extends Event {
+
+        @Label("Day")
+        String day;
+
+        @Label("Shift Count")
+        int shiftCount;
+
+        @Label("Clashed")
+        boolean clashed;
+    }
+
+    @Name("shiftman.Sort")
+    @Label("Sort")
+    @Description("Sorting the staff registered by a batch, before they are merged into the roster")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class Sort extends Event {
+
+        @Label("Element Count")
+        int elementCount;
+    }
+
+    @Name("shiftman.Render")
+    @Label("Render")
+    @Description("Formatting part of a roster as text")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class Render extends Event {
+
+        @Label("What")
+        String what;
+
+        @Label("Line Count")
+        int lineCount;
+    }
+
+    @Name("shiftman.Created")
+    @Label("Roster Object Created")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    static final class Created extends Event {
+
+        @Label("Kind")
+        String kind;
+
+        @Label("Name")
+        String name;
+    }
+
+    /**
+     * Records that a roster object has been made. The name is only turned into a string if the event is on.
+     */
+    static void created(String kind, Object name) {
+        Created event = new Created();
+        if (event.shouldCommit()) {
+            event.kind = kind;
+            event.name = name.toString();
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,675 @@
+package shiftman.server;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32C;
+
+/**
+ * An append-only log of every change made to the rosters of a RosterRegistry, kept in a directory of segment files,
+ * so that the rosters can be rebuilt after the server restarts. Opening a log replays it, and the rosters it held are
+ * given to the registry it is used with. From then on, each roster created by the registry writes every successful
+ * change to the log, in the order the changes were made.
+ *
+ * <p>A change is recorded in memory and handed to a writer thread, so making a change never waits for the disk.
+ * The writer thread writes whatever records have built up since its last write, then forces them to disk with a
+ * single fsync, so a burst of changes costs one fsync rather than one each. sync() waits until every change recorded
+ * so far is on disk. When a segment reaches its size limit, the writer starts the next one.
+ *
+ * <p>Each record is written as its length, a CRC32C checksum and the encoded change. If the server stops part way
+ * through writing a record, replay finds the record cut short or failing its checksum, and the log is truncated to
+ * the end of the last whole record, losing only changes that were never forced to disk.
+ *
+ * <p>A log opened with a SnapshotRosterStore replays its records on top of the snapshots checkpointed there. Every
+ * record carries the version of the snapshot the change produced, so records a checkpoint already holds are skipped,
+ * and once a RosterCheckpointer has saved every roster, the segments before the checkpoint can be deleted.
+ */
+public class RosterLog implements AutoCloseable {
+
+    public static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+
+    private static final int MAGIC = 0x53484D4C;
+
+    private static final int VERSION = 3;
+
+    private static final int SEGMENT_HEADER_BYTES = 8;
+
+    private static final int RECORD_HEADER_BYTES = 8;
+
+    /**
+     * The most the writer thread writes before forcing it to disk, so that a long backlog is not held up by one fsync.
+     */
+    private static final int MAX_GROUP_BYTES = 1024 * 1024;
+
+    /**
+     * No change is anywhere near this large, so a record claiming to be larger was not completely written.
+     */
+    private static final int MAX_RECORD_BYTES = 256 * 1024 * 1024;
+
+    private static final int QUEUE_CAPACITY = 64 * 1024;
+
+    private static final byte NEW_ROSTER = 0;
+
+    private static final byte COMMAND = 1;
+
+    private static final byte BATCH = 2;
+
+    private static final byte[] CLOSE = new byte[0];
+
+    private static final byte[] ROLL = new byte[0];
+
+    private final Path _directory;
+
+    private final long _segmentBytes;
+
+    private final List<Roster> _recoveredRosters = new ArrayList<>();
+
+    private final AtomicLong _nextRosterId = new AtomicLong(1);
+
+    private final RingBuffer<byte[]> _records = new RingBuffer<>(QUEUE_CAPACITY);
+
+    /**
+     * Every record whose position in _records is below this is on disk, or has failed to be written.
+     */
+    private final AtomicLong _durable = new AtomicLong();
+
+    private final Object _syncMonitor = new Object();
+
+    /**
+     * Those waiting in startNewSegment(), in the order their markers were queued, to be told the new segment's number.
+     */
+    private final Queue<CompletableFuture<Long>> _rollRequests = new ConcurrentLinkedQueue<>();
+
+    private final Thread _writer;
+
+    private FileChannel _segment;
+
+    private long _segmentNumber;
+
+    private long _segmentSize;
+
+    private volatile IOException _failure;
+
+    private volatile boolean _closed;
+
+    private RosterLog(Path directory, long segmentBytes) {
+        _directory = directory;
+        _segmentBytes = segmentBytes;
+        _writer = new Thread(this::writeRecords, "shiftman-roster-log");
+        _writer.setDaemon(true);
+    }
+
+    /**
+     * Opens the log in the given directory, creating it if necessary, and replays it.
+     */
+    public static RosterLog open(Path directory) throws IOException {
+        return open(directory, DEFAULT_SEGMENT_BYTES);
+    }
+
+    /**
+     * Opens the log in the given directory, creating it if necessary, and replays it.
+     * @param segmentBytes The size at which a segment is closed and the next one started.
+     */
+    public static RosterLog open(Path directory, long segmentBytes) throws IOException {
+        return open(directory, segmentBytes, null);
+    }
+
+    /**
+     * Opens the log in the given directory, creating it if necessary, and replays it on top of the rosters
+     * checkpointed in the given store. The store loads its rosters into this log from then on.
+     * @param segmentBytes The size at which a segment is closed and the next one started.
+     * @param checkpoints The store a RosterCheckpointer saves the rosters to, or null if they are never checkpointed.
+     */
+    public static RosterLog open(Path directory, long segmentBytes, SnapshotRosterStore checkpoints)
+            throws IOException {
+        Files.createDirectories(directory);
+        RosterLog log = new RosterLog(directory, segmentBytes);
+        log.replay((checkpoints == null) ? Collections.emptyList() : checkpoints.loadAll());
+        if (checkpoints != null) {
+            checkpoints.setLog(log);
+        }
+        log._writer.start();
+        return log;
+    }
+
+
+
+    /**
+     * The rosters rebuilt when the log was opened, which is the latest roster for each shop it holds.
+     * They go on recording their changes in this log.
+     */
+    public List<Roster> getRecoveredRosters() {
+        return Collections.unmodifiableList(_recoveredRosters);
+    }
+
+    public Path getDirectory() {
+        return _directory;
+    }
+
+    /**
+     * Waits until every change recorded before this call is on disk.
+     * @throws IOException If the log could not be written.
+     */
+    public void sync() throws IOException, InterruptedException {
+        // Every record appended before now, the caller's own included, has been given a position below this as it was
+        // put, even if it is not yet in the ring, and the writer forces records to disk in order of position
+        long target = _records.getPutCount();
+        synchronized (_syncMonitor) {
+            while (_durable.get() < target && _failure == null) {
+                _syncMonitor.wait();
+            }
+        }
+        if (_failure != null) {
+            throw _failure;
+        }
+    }
+
+    /**
+     * Closes the current segment once every change recorded before this call has been written to it, and starts
+     * the next. Used by RosterCheckpointer before it saves the rosters, so that once they are saved, every segment
+     * before the new one holds only changes the checkpoint already has.
+     * @return The number of the new segment.
+     * @throws IOException If the log could not be written.
+     */
+    public synchronized long startNewSegment() throws IOException, InterruptedException {
+        if (_closed) {
+            throw new IllegalStateException("The roster log has been closed");
+        }
+        CompletableFuture<Long> request = new CompletableFuture<>();
+        _rollRequests.add(request);
+        _records.put(ROLL);
+        try {
+            return request.get();
+        } catch (ExecutionException e) {
+            throw (IOException) e.getCause();
+        }
+    }
+
+    /**
+     * Deletes every segment numbered below the given one.
+     */
+    public void deleteSegmentsBefore(long segmentNumber) throws IOException {
+        for (Path segment : listSegments()) {
+            if (segmentNumber(segment) < segmentNumber) {
+                Files.deleteIfExists(segment);
+            }
+        }
+    }
+
+    /**
+     * Writes every change already recorded to disk and closes the log.
+     * No more changes may be made to rosters using the log once it is closed.
+     * If the caller is interrupted, it still waits for the writer, since the segment can only be closed once the
+     * writer is done with it, and its interrupt status is set again before this returns.
+     */
+    public void close() throws IOException {
+        if (_closed) {
+            return;
+        }
+        _closed = true;
+        _records.put(CLOSE);
+        boolean interrupted = false;
+        while (true) {
+            try {
+                _writer.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        _segment.close();
+        if (_failure != null) {
+            throw _failure;
+        }
+    }
+
+
+
+    /**
+     * Used by Roster when a new roster is created, to give it the number that its changes are recorded against.
+     */
+    long recordNewRoster(String shopName) {
+        long rosterId = _nextRosterId.getAndIncrement();
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeLong(rosterId);
+            out.writeLong(0);
+            out.writeByte(NEW_ROSTER);
+            writeString(out, shopName);
+            append(frame(bytes.toByteArray()));
+        } catch (IOException e) {
+            throw new IllegalStateException("Writing to memory cannot fail", e);
+        }
+        return rosterId;
+    }
+
+    /**
+     * Used by Roster to encode a change as a record before publishing it, so that as little as possible is done
+     * while the change is being published and appended.
+     * @param version The version of the snapshot the change produces.
+     */
+    static byte[] encode(long rosterId, long version, RosterCommand command) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeLong(rosterId);
+            out.writeLong(version);
+            out.writeByte(COMMAND);
+            writeCommand(out, command);
+            return frame(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new IllegalStateException("Writing to memory cannot fail", e);
+        }
+    }
+
+    static byte[] encodeBatch(long rosterId, long version, List<RosterCommand> commands) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeLong(rosterId);
+            out.writeLong(version);
+            out.writeByte(BATCH);
+            out.writeInt(commands.size());
+            for (RosterCommand c : commands) {
+                writeCommand(out, c);
+            }
+            return frame(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new IllegalStateException("Writing to memory cannot fail", e);
+        }
+    }
+
+    /**
+     * Used by Roster to record a change it has just published. Roster appends the changes to each roster in
+     * the order it publishes them. This waits only if the writer thread has fallen a long way behind.
+     * @return The record's position in the log, which the writer reaches in order of position.
+     */
+    long append(byte[] record) {
+        if (_closed) {
+            throw new IllegalStateException("The roster log has been closed");
+        }
+        return _records.put(record);
+    }
+
+
+
+    /**
+     * Helper method for recordNewRoster(), encode() and encodeBatch().
+     * Puts the length and checksum of the payload in front of it, giving the record as it is written to the log.
+     */
+    private static byte[] frame(byte[] payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        byte[] record = new byte[RECORD_HEADER_BYTES + payload.length];
+        ByteBuffer.wrap(record).putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+        return record;
+    }
+
+    /**
+     * Helper method for encode() and encodeBatch().
+     */
+    private static void writeCommand(DataOutputStream out, RosterCommand command) throws IOException {
+        out.writeByte(command.getType().ordinal());
+        out.writeBoolean(command.isManager());
+        out.writeByte(command.getArgumentCount());
+        for (int i = 0; i < command.getArgumentCount(); i++) {
+            writeString(out, command.getArgument(i));
+        }
+    }
+
+    /**
+     * Helper method for replay().
+     */
+    private static RosterCommand readCommand(DataInputStream in) throws IOException {
+        RosterCommand.Type type = RosterCommand.Type.values()[in.readByte()];
+        boolean isManager = in.readBoolean();
+        String[] arguments = new String[in.readByte()];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = readString(in);
+        }
+        switch (type) {
+            case SET_WORKING_HOURS:
+                return RosterCommand.setWorkingHours(arguments[0], arguments[1], arguments[2]);
+            case ADD_SHIFT:
+                return RosterCommand.addShift(arguments[0], arguments[1], arguments[2], arguments[3]);
+            case REGISTER_STAFF:
+                return RosterCommand.registerStaff(arguments[0], arguments[1]);
+            default:
+                return RosterCommand.assignStaff(arguments[0], arguments[1], arguments[2], arguments[3], arguments[4],
+                        isManager);
+        }
+    }
+
+    /**
+     * Strings are written as their length in bytes, then their UTF-8 encoding, as RosterSnapshotFile writes them, so
+     * that they can be any length.
+     */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] encoded = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(encoded.length);
+        out.write(encoded);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new IOException("Bad string length " + length);
+        }
+        byte[] encoded = new byte[length];
+        in.readFully(encoded);
+        return new String(encoded, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Helper method for open().
+     * Replays every segment in order, rebuilding the snapshot of each roster, and stops at the first record that was
+     * not completely written. That segment is truncated after its last whole record, and any later segments, which
+     * can only have been started after it was damaged, are deleted. The last segment is then opened for appending.
+     * @param checkpoints The rosters the records are replayed on top of.
+     */
+    private void replay(List<Roster> checkpoints) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        Map<Long, RosterSnapshot> snapshots = new HashMap<>();
+        Map<String, Long> latestRosters = new HashMap<>();
+        long maxRosterId = 0;
+        boolean damaged = false;
+
+        for (Roster r : checkpoints) {
+            snapshots.put(r.getLogId(), r.snapshot());
+            latestRosters.merge(r.toString(), r.getLogId(), Math::max);
+            maxRosterId = Math.max(maxRosterId, r.getLogId());
+        }
+
+        for (Path segment : listSegments()) {
+            if (damaged) {
+                Files.delete(segment);
+                continue;
+            }
+            segments.add(segment);
+            long validBytes = 0;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment)))) {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    throw new IOException("Not a roster log segment: " + segment);
+                }
+                validBytes = SEGMENT_HEADER_BYTES;
+                while (true) {
+                    byte[] payload = readRecord(in);
+                    if (payload == null) {
+                        break;
+                    }
+                    maxRosterId = Math.max(maxRosterId, applyRecord(payload, snapshots, latestRosters));
+                    validBytes += RECORD_HEADER_BYTES + payload.length;
+                }
+            } catch (EOFException e) {
+                // The segment header itself was cut short, so the segment holds nothing
+            }
+            if (validBytes < Files.size(segment)) {
+                damaged = true;
+                try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                    channel.truncate(validBytes);
+                    channel.force(true);
+                }
+            }
+        }
+
+        _nextRosterId.set(maxRosterId + 1);
+        for (Map.Entry<String, Long> e : latestRosters.entrySet()) {
+            _recoveredRosters.add(new Roster(snapshots.get(e.getValue()), this, e.getValue()));
+        }
+
+        if (segments.isEmpty()) {
+            openSegment(1);
+        } else {
+            Path last = segments.get(segments.size() - 1);
+            _segmentNumber = segmentNumber(last);
+            _segment = FileChannel.open(last, StandardOpenOption.WRITE);
+            _segmentSize = _segment.size();
+            if (_segmentSize < SEGMENT_HEADER_BYTES) {
+                _segment.truncate(0);
+                writeSegmentHeader();
+            }
+            _segment.position(_segmentSize);
+        }
+    }
+
+    /**
+     * Helper method for replay().
+     * @return The payload of the next record, or null if there are no more whole records with a correct checksum.
+     */
+    private static byte[] readRecord(DataInputStream in) throws IOException {
+        int length;
+        int checksum;
+        byte[] payload;
+        try {
+            length = in.readInt();
+            checksum = in.readInt();
+            if (length < 0 || length > MAX_RECORD_BYTES) {
+                return null;
+            }
+            payload = new byte[length];
+            in.readFully(payload);
+        } catch (EOFException e) {
+            return null;
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        return ((int) crc.getValue() == checksum) ? payload : null;
+    }
+
+    /**
+     * Helper method for replay().
+     * Makes the change in a record on the snapshot of the roster it belongs to, unless the snapshot already has it.
+     * @return The number of the roster the record belongs to.
+     */
+    private static long applyRecord(byte[] payload, Map<Long, RosterSnapshot> snapshots,
+                                    Map<String, Long> latestRosters) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        long rosterId = in.readLong();
+        long version = in.readLong();
+        byte kind = in.readByte();
+        if (kind == NEW_ROSTER) {
+            String shopName = readString(in);
+            if (!snapshots.containsKey(rosterId)) {
+                snapshots.put(rosterId, new RosterSnapshot(shopName));
+                latestRosters.merge(shopName, rosterId, Math::max);
+            }
+            return rosterId;
+        }
+
+        // A roster replaced before the last checkpoint was not saved, and the segment creating it may be gone
+        RosterSnapshot snapshot = snapshots.get(rosterId);
+        if (snapshot == null || version <= snapshot.getVersion()) {
+            return rosterId;
+        }
+        if (kind == COMMAND) {
+            try {
+                snapshots.put(rosterId, readCommand(in).applyTo(snapshot));
+            } catch (ShiftManUserException e) {
+                // Only changes that succeeded are recorded, and they succeed again on the same roster
+            }
+        } else {
+            List<RosterCommand> commands = new ArrayList<>();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                commands.add(readCommand(in));
+            }
+            snapshots.put(rosterId, snapshot.withCommands(commands, new String[count]));
+        }
+        return rosterId;
+    }
+
+    /**
+     * Helper method for replay() and deleteSegmentsBefore().
+     * The segments in the directory, in the order they were written.
+     */
+    private List<Path> listSegments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(_directory, "segment-*.log")) {
+            for (Path p : files) {
+                segments.add(p);
+            }
+        }
+        segments.sort((a, b) -> Long.compare(segmentNumber(a), segmentNumber(b)));
+        return segments;
+    }
+
+    private static long segmentNumber(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring("segment-".length(), name.length() - ".log".length()));
+    }
+
+    /**
+     * Helper method for replay(), writeGroup() and rollSegment().
+     */
+    private void openSegment(long number) throws IOException {
+        _segmentNumber = number;
+        Path path = _directory.resolve(String.format("segment-%016d.log", number));
+        _segment = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        writeSegmentHeader();
+    }
+
+    /**
+     * Helper method for replay() and openSegment().
+     */
+    private void writeSegmentHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_BYTES).putInt(MAGIC).putInt(VERSION);
+        header.flip();
+        while (header.hasRemaining()) {
+            _segment.write(header);
+        }
+        _segment.force(true);
+        _segmentSize = SEGMENT_HEADER_BYTES;
+    }
+
+    /**
+     * The body of the writer thread. Takes every record waiting, up to a limit, and writes them as one group.
+     */
+    private void writeRecords() {
+        List<ByteBuffer> group = new ArrayList<>();
+        boolean closing = false;
+        while (!closing) {
+            byte[] record = _records.take();
+            int groupBytes = 0;
+            boolean rolling = false;
+            group.clear();
+            while (record != null) {
+                if (record == CLOSE) {
+                    closing = true;
+                    break;
+                }
+                if (record == ROLL) {
+                    rolling = true;
+                    break;
+                }
+                group.add(ByteBuffer.wrap(record));
+                groupBytes += record.length;
+                if (groupBytes >= MAX_GROUP_BYTES) {
+                    break;
+                }
+                record = _records.poll();
+            }
+            if (record == null && group.isEmpty()) {
+                // Only happens if the writer thread is interrupted
+                closing = true;
+            }
+            if (!group.isEmpty()) {
+                writeGroup(group);
+            }
+            if (rolling) {
+                rollSegment();
+            }
+            // Everything taken so far has been forced to disk, including a marker that was not itself written
+            _durable.set(_records.getTakenCount());
+            synchronized (_syncMonitor) {
+                _syncMonitor.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Helper method for writeRecords().
+     * Starts the next segment for startNewSegment(), even if the current one is empty, and tells it the new number.
+     */
+    private void rollSegment() {
+        CompletableFuture<Long> request = _rollRequests.remove();
+        if (_failure == null) {
+            try {
+                _segment.force(true);
+                _segment.close();
+                openSegment(_segmentNumber + 1);
+            } catch (IOException e) {
+                _failure = e;
+            }
+        }
+        if (_failure == null) {
+            request.complete(_segmentNumber);
+        } else {
+            request.completeExceptionally(_failure);
+        }
+    }
+
+    /**
+     * Helper method for writeRecords().
+     * Writes the records and forces them to disk, starting a new segment whenever the next record would take this one
+     * past its size limit. A record larger than the limit gets a segment to itself.
+     * If the log cannot be written, the failure is kept for sync() and close() to report, and later records
+     * are dropped rather than left waiting.
+     */
+    private void writeGroup(List<ByteBuffer> group) {
+        if (_failure == null) {
+            try {
+                ByteBuffer[] buffers = group.toArray(new ByteBuffer[0]);
+                int start = 0;
+                while (start < buffers.length) {
+                    if (_segmentSize > SEGMENT_HEADER_BYTES && _segmentSize + buffers[start].remaining() > _segmentBytes) {
+                        _segment.force(true);
+                        _segment.close();
+                        openSegment(_segmentNumber + 1);
+                    }
+                    // Take as many records as fit in this segment, and always at least one
+                    int end = start;
+                    long chunkBytes = 0;
+                    do {
+                        chunkBytes += buffers[end].remaining();
+                        end++;
+                    } while (end < buffers.length && _segmentSize + chunkBytes + buffers[end].remaining() <= _segmentBytes);
+
+                    long remaining = chunkBytes;
+                    while (remaining > 0) {
+                        remaining -= _segment.write(buffers, start, end - start);
+                    }
+                    _segmentSize += chunkBytes;
+                    start = end;
+                }
+                _segment.force(false);
+            } catch (IOException e) {
+                _failure = e;
+            }
+        }
+    }
+}
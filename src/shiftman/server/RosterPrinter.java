@@ -0,0 +1,114 @@
+package shiftman.server;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writes a whole roster, or a report of its issues, as text. The text is written a line at a time to any Appendable,
+ * such as a Writer or a StringBuilder, or to a channel through a ChannelWriter, rather than being built up as one
+ * string first. Each line is put together in a buffer the printer keeps, so printing a roster of any size needs no
+ * more memory than its longest line, and one printer can print any number of rosters one after another.
+ *
+ * <p>A printer keeps its buffer between calls, so it must not be used by more than one thread at a time.
+ */
+public final class RosterPrinter {
+
+    private final StringBuilder _line = new StringBuilder(256);
+
+
+
+    /**
+     * Writes the shop's name and then each day in order: its working hours, and each of its shifts in the format
+     * getRosterForDay() gives.
+     */
+    public void displayRoster(RosterSnapshot roster, Appendable out) throws IOException {
+        RosterEvents.Render event = new RosterEvents.Render();
+        event.begin();
+        int lines = 1;
+        out.append("Roster for ").append(roster.getShopName()).append('\n');
+        for (Roster.DaysOfWeek d : Roster.DaysOfWeek.values()) {
+            Day day = roster.getDay(d);
+            lines++;
+            if (day.getStartOfDay() == null) {
+                out.append(day.toString()).append(": no working hours set\n");
+                continue;
+            }
+            out.append(day.toString()).append(' ').append(day.getWorkingHours()).append('\n');
+            for (Shift s : day.getShifts()) {
+                _line.setLength(0);
+                _line.append(d);
+                s.appendShiftInfo(_line);
+                out.append(_line).append('\n');
+                lines++;
+            }
+        }
+        if (event.shouldCommit()) {
+            event.what = "whole roster";
+            event.lineCount = lines;
+            event.commit();
+        }
+    }
+
+    public void displayRoster(RosterSnapshot roster, WritableByteChannel channel) throws IOException {
+        try (ChannelWriter out = new ChannelWriter(channel)) {
+            displayRoster(roster, out);
+        }
+    }
+
+    /**
+     * Writes the shifts without a manager, the understaffed and overstaffed shifts, with how many workers each has
+     * and needs, and the staff not assigned to any shift. Each kind of issue is left out if there are none of it.
+     */
+    public void reportRosterIssues(RosterSnapshot roster, Appendable out) throws IOException {
+        if (roster.getUnmanagedShifts().isEmpty() && roster.getUnderstaffedShifts().isEmpty()
+                && roster.getOverstaffedShifts().isEmpty() && roster.getUnassignedStaff().isEmpty()) {
+            out.append("No issues with the roster for ").append(roster.getShopName()).append('\n');
+            return;
+        }
+
+        out.append("Issues with the roster for ").append(roster.getShopName()).append('\n');
+        if (!roster.getUnmanagedShifts().isEmpty()) {
+            out.append("Shifts without a manager: ").append(Integer.toString(roster.getUnmanagedShifts().size()))
+                    .append('\n');
+            for (ShiftSlot slot : roster.getUnmanagedShifts()) {
+                out.append("  ").append(slot.getDescription()).append('\n');
+            }
+        }
+        reportStaffing(roster, roster.getUnderstaffedShifts(), "Understaffed shifts: ", out);
+        reportStaffing(roster, roster.getOverstaffedShifts(), "Overstaffed shifts: ", out);
+        if (!roster.getUnassignedStaff().isEmpty()) {
+            out.append("Staff not assigned to any shift: ").append(Integer.toString(roster.getUnassignedStaff().size()))
+                    .append('\n');
+            for (StaffMember s : roster.getUnassignedStaff()) {
+                out.append("  ").append(s.getReversedName()).append('\n');
+            }
+        }
+    }
+
+    public void reportRosterIssues(RosterSnapshot roster, WritableByteChannel channel) throws IOException {
+        try (ChannelWriter out = new ChannelWriter(channel)) {
+            reportRosterIssues(roster, out);
+        }
+    }
+
+
+
+    /**
+     * Helper method for reportRosterIssues().
+     * Lists the given understaffed or overstaffed shifts, under a heading with how many there are.
+     */
+    private void reportStaffing(RosterSnapshot roster, PersistentSortedSet<ShiftSlot> slots, String heading,
+                                Appendable out) throws IOException {
+        if (slots.isEmpty()) {
+            return;
+        }
+        out.append(heading).append(Integer.toString(slots.size())).append('\n');
+        for (ShiftSlot slot : slots) {
+            Shift shift = roster.getShift(slot);
+            _line.setLength(0);
+            _line.append("  ").append(slot.getDescription()).append(" has ").append(shift.getAssignedStaff().size())
+                    .append(" of ").append(shift.getMinimumWorkers()).append(" workers\n");
+            out.append(_line);
+        }
+    }
+}
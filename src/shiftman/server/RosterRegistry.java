@@ -0,0 +1,247 @@
+package shiftman.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Holds the rosters for many shops, keyed by shop name. Rosters are created the first time their shop is used,
+ * and shops that have not been used for a while can be evicted to a RosterStore, from which they are loaded
+ * again on their next use. The registry can be shared between threads.
+ * An evicted roster is retired before it is saved, so the store always gets its final state, and a change made
+ * through a reference to it obtained before its eviction is made on the shop's next roster instead.
+ * A registry given a RosterLog starts with the rosters replayed from it, and every roster it creates records
+ * its changes there.
+ */
+public class RosterRegistry {
+
+    private Map<String, Entry> _rosters;
+
+    private RosterStore _store;
+
+    private int _maxResidentShops;
+
+    private RosterLog _log;
+
+    /**
+     * The number of entries being evicted, which are still in _rosters until their roster has been saved but no
+     * longer count towards the maximum.
+     */
+    private final AtomicInteger _evicting = new AtomicInteger();
+
+    /**
+     * A roster held in memory, along with when it was last used so that idle shops can be found.
+     */
+    private static class Entry {
+
+        private final Roster _roster;
+
+        private volatile long _lastUsed;
+
+        /**
+         * Set by the one thread that evicts the entry, before the roster is retired.
+         */
+        private final AtomicBoolean _evicted = new AtomicBoolean();
+
+        /**
+         * Completed once an evicted entry is out of _rosters, or has been put back after the store failed, so that
+         * getRoster() can wait for it rather than load the shop while it is still being saved.
+         */
+        private final CompletableFuture<Void> _gone = new CompletableFuture<>();
+
+        Entry(Roster roster) {
+            _roster = roster;
+            _lastUsed = System.nanoTime();
+        }
+
+        Roster use() {
+            _lastUsed = System.nanoTime();
+            return _roster;
+        }
+    }
+
+    /**
+     * Creates a registry that keeps evicted shops on the heap, and never evicts them on its own.
+     */
+    public RosterRegistry() {
+        this(new InMemoryRosterStore(), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a registry that evicts shops to the given store.
+     * @param maxResidentShops When more shops than this are in memory, the least recently used is evicted.
+     */
+    public RosterRegistry(RosterStore store, int maxResidentShops) {
+        this(store, maxResidentShops, null);
+    }
+
+    /**
+     * Creates a registry that evicts shops to the given store and records every change in the given log.
+     * The rosters recovered from the log are put in the store, and loaded from there as their shops are used.
+     */
+    public RosterRegistry(RosterStore store, int maxResidentShops, RosterLog log) {
+        _rosters = new ConcurrentHashMap<>();
+        _store = store;
+        _maxResidentShops = maxResidentShops;
+        _log = log;
+        if (log != null) {
+            for (Roster r : log.getRecoveredRosters()) {
+                store.save(r);
+            }
+        }
+    }
+
+
+
+    /**
+     * Finds the roster for the given shop, loading it from the store or creating an empty one if necessary.
+     * If the shop is being evicted, waits until its roster has been saved and then loads it again.
+     */
+    public Roster getRoster(String shopName) {
+        while (true) {
+            Entry entry = _rosters.get(shopName);
+            if (entry == null) {
+                entry = _rosters.computeIfAbsent(shopName, this::loadOrCreate);
+                evictOverflow();
+            }
+            if (!entry._evicted.get()) {
+                return entry.use();
+            }
+            entry._gone.join();
+        }
+    }
+
+    /**
+     * Starts a new, empty roster for the given shop, replacing any roster it already had.
+     */
+    public Roster newRoster(String shopName) {
+        _store.remove(shopName);
+        Entry entry = new Entry(new Roster(shopName, _log));
+        _rosters.put(shopName, entry);
+        evictOverflow();
+        return entry.use();
+    }
+
+    /**
+     * Adds an existing roster to the registry, replacing any roster its shop already had.
+     */
+    public void putRoster(Roster roster) {
+        _store.remove(roster.toString());
+        _rosters.put(roster.toString(), new Entry(roster));
+        evictOverflow();
+    }
+
+    /**
+     * Moves every shop that has not been used for at least the given time out to the store.
+     * @return The number of shops evicted.
+     */
+    public int evictIdle(long idleMillis) {
+        long cutoff = System.nanoTime() - idleMillis * 1_000_000L;
+        int evicted = 0;
+        for (Map.Entry<String, Entry> e : _rosters.entrySet()) {
+            if (e.getValue()._lastUsed - cutoff <= 0 && evict(e.getKey(), e.getValue())) {
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * The names of the shops currently held in memory, in alphabetical order.
+     */
+    public List<String> residentShops() {
+        List<String> shops = new ArrayList<>(_rosters.keySet());
+        Collections.sort(shops);
+        return shops;
+    }
+
+    /**
+     * The rosters currently held in memory, in no particular order.
+     */
+    public List<Roster> residentRosters() {
+        List<Roster> rosters = new ArrayList<>();
+        for (Entry e : _rosters.values()) {
+            rosters.add(e._roster);
+        }
+        return rosters;
+    }
+
+    public RosterStore getStore() {
+        return _store;
+    }
+
+    /**
+     * The log the registry's rosters record their changes in, or null if they are not recorded.
+     */
+    public RosterLog getLog() {
+        return _log;
+    }
+
+
+
+    /**
+     * Helper method for getRoster().
+     */
+    private Entry loadOrCreate(String shopName) {
+        Roster roster = _store.load(shopName);
+        if (roster == null) {
+            roster = new Roster(shopName, _log);
+        }
+        return new Entry(roster);
+    }
+
+    /**
+     * Helper method for getRoster(), newRoster() and putRoster().
+     * Evicts the least recently used shops until no more than the maximum number are in memory.
+     */
+    private void evictOverflow() {
+        while (_rosters.size() - _evicting.get() > _maxResidentShops) {
+            String oldestShop = null;
+            Entry oldest = null;
+            for (Map.Entry<String, Entry> e : _rosters.entrySet()) {
+                if (e.getValue()._evicted.get()) {
+                    continue;
+                }
+                if (oldest == null || e.getValue()._lastUsed - oldest._lastUsed < 0) {
+                    oldestShop = e.getKey();
+                    oldest = e.getValue();
+                }
+            }
+            if (oldest == null) {
+                return;
+            }
+            evict(oldestShop, oldest);
+        }
+    }
+
+    /**
+     * Helper method for evictIdle() and evictOverflow().
+     * The roster is retired first, so it cannot change after the store is given its final state, and is saved
+     * before the entry is removed, so a concurrent getRoster() never finds the shop in neither place. Until then,
+     * getRoster() waits for the entry to go rather than hand out the retired roster. If the store fails, the roster
+     * is put back with its final state, so no change is lost. Nothing is evicted if another thread is already
+     * evicting the entry, or if a roster has just replaced it.
+     */
+    private boolean evict(String shopName, Entry entry) {
+        if (_rosters.get(shopName) != entry || !entry._evicted.compareAndSet(false, true)) {
+            return false;
+        }
+        _evicting.incrementAndGet();
+        Roster saved = entry._roster.retire(() -> getRoster(shopName));
+        try {
+            _store.save(saved);
+            return _rosters.remove(shopName, entry);
+        } catch (RuntimeException e) {
+            _rosters.replace(shopName, entry, new Entry(saved));
+            throw e;
+        } finally {
+            _evicting.decrementAndGet();
+            entry._gone.complete(null);
+        }
+    }
+}
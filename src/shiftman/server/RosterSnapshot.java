@@ -0,0 +1,710 @@
+package shiftman.server;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The state of a Roster at one moment. A snapshot has the shop's name, its seven days (and through them
+ * all of the shifts), and a directory of staff members found by their case-insensitive name key. It also keeps:
+ * <ul>
+ * <li>the staff sorted by family name, and those not assigned to any shift yet;</li>
+ * <li>the shifts each staff member works and manages, in day and start time order;</li>
+ * <li>the shifts that are understaffed, overstaffed or without a manager.</li>
+ * </ul>
+ * These are all kept up to date as the roster changes, rather than being searched for on every request.
+ *
+ * <p>A snapshot never changes. Each change gives a new snapshot, built from persistent collections that share
+ * everything that did not change with this one, so a change costs O(log n) and this snapshot stays valid.
+ * The fields are only assigned while a new snapshot is being built, before Roster publishes it.
+ *
+ * <p>Everything a ShiftMan query lists can also be read from a snapshot directly, as the Day, Shift, ShiftSlot and
+ * StaffMember objects it is made of. Reading these costs nothing beyond the read itself: nothing is formatted, and
+ * the sets returned are the snapshot's own immutable sets. The string lists the ShiftMan API gives are formatted
+ * from the same objects, only when they are asked for.
+ *
+ * <p>Each snapshot has a version, one more than the snapshot it was built from, which tells a RosterLog replay
+ * which of its records a saved snapshot already includes. Each day, and each staff member's shifts, carry the version
+ * of the snapshot they last changed in, so that a roster's RenderCache can tell which of its lists are out of date.
+ * A snapshot loaded from a RosterSnapshotFile decodes each of its days from the file the first time the day is
+ * needed.
+ */
+public final class RosterSnapshot {
+
+    private String _shopName;
+
+    private long _version;
+
+    /**
+     * The days of the week, by position. A day that has not been decoded yet is null, and comes from _dayDecoder.
+     */
+    private Day[] _weekdays;
+
+    private DayDecoder _dayDecoder;
+
+    /**
+     * The staff by their key. Being a persistent tree, so that a change can share it, a lookup costs O(log n) rather
+     * than the O(1) of a hash map.
+     */
+    private PersistentSortedMap<String, StaffMember> _staffDirectory;
+
+    private PersistentSortedSet<StaffMember> _staffList;
+
+    private PersistentSortedSet<StaffMember> _unassignedStaff;
+
+    private PersistentSortedMap<StaffMember, PersistentSortedSet<ShiftSlot>> _workerShifts;
+
+    private PersistentSortedMap<StaffMember, PersistentSortedSet<ShiftSlot>> _managedShifts;
+
+    /**
+     * The version of the snapshot in which each staff member was last assigned to a shift. Staff who have not been
+     * assigned since the roster was created or loaded are left out.
+     */
+    private PersistentSortedMap<StaffMember, Long> _staffVersions;
+
+    private PersistentSortedSet<ShiftSlot> _understaffedShifts;
+
+    private PersistentSortedSet<ShiftSlot> _overstaffedShifts;
+
+    private PersistentSortedSet<ShiftSlot> _unmanagedShifts;
+
+    /**
+     * Something that can give the days of a snapshot when they are first needed, such as a snapshot file.
+     */
+    interface DayDecoder {
+        Day decodeDay(int position);
+    }
+
+    /**
+     * Creates the snapshot of a new roster, which has no working hours, shifts or staff.
+     */
+    RosterSnapshot(String shopName) {
+        _shopName = shopName;
+        _weekdays = new Day[Roster.DaysOfWeek.values().length];
+        for (Roster.DaysOfWeek d : Roster.DaysOfWeek.values()) {
+            _weekdays[d.ordinal()] = new Day(d);
+        }
+        _staffDirectory = PersistentSortedMap.empty();
+        _staffList = PersistentSortedSet.empty();
+        _unassignedStaff = PersistentSortedSet.empty();
+        _workerShifts = PersistentSortedMap.empty();
+        _managedShifts = PersistentSortedMap.empty();
+        _staffVersions = PersistentSortedMap.empty();
+        _understaffedShifts = PersistentSortedSet.empty();
+        _overstaffedShifts = PersistentSortedSet.empty();
+        _unmanagedShifts = PersistentSortedSet.empty();
+    }
+
+    /**
+     * Used by Roster, to make the marker it publishes once it is retired. The marker is only compared by identity and
+     * never read, so it has no days or staff, and unlike the snapshot of a new roster it creates no Days.
+     */
+    static RosterSnapshot marker() {
+        return new RosterSnapshot();
+    }
+
+    private RosterSnapshot() {
+    }
+
+    /**
+     * Used by the withX() methods. The copy shares every part of this snapshot, and then replaces the parts that
+     * change. Only the array of seven days is copied, so that the days in it can be replaced.
+     */
+    private RosterSnapshot(RosterSnapshot other) {
+        _shopName = other._shopName;
+        _version = other._version + 1;
+        _weekdays = other._weekdays.clone();
+        _dayDecoder = other._dayDecoder;
+        _staffDirectory = other._staffDirectory;
+        _staffList = other._staffList;
+        _unassignedStaff = other._unassignedStaff;
+        _workerShifts = other._workerShifts;
+        _managedShifts = other._managedShifts;
+        _staffVersions = other._staffVersions;
+        _understaffedShifts = other._understaffedShifts;
+        _overstaffedShifts = other._overstaffedShifts;
+        _unmanagedShifts = other._unmanagedShifts;
+    }
+
+    /**
+     * Used by RosterSnapshotFile, to give back a saved snapshot. The days are decoded when they are first needed.
+     */
+    RosterSnapshot(String shopName, long version, DayDecoder dayDecoder,
+                   PersistentSortedMap<String, StaffMember> staffDirectory, PersistentSortedSet<StaffMember> staffList,
+                   PersistentSortedSet<StaffMember> unassignedStaff,
+                   PersistentSortedMap<StaffMember, PersistentSortedSet<ShiftSlot>> workerShifts,
+                   PersistentSortedMap<StaffMember, PersistentSortedSet<ShiftSlot>> managedShifts,
+                   PersistentSortedSet<ShiftSlot> understaffedShifts, PersistentSortedSet<ShiftSlot> overstaffedShifts,
+                   PersistentSortedSet<ShiftSlot> unmanagedShifts) {
+        _shopName = shopName;
+        _version = version;
+        _weekdays = new Day[Roster.DaysOfWeek.values().length];
+        _dayDecoder = dayDecoder;
+        _staffDirectory = staffDirectory;
+        _staffList = staffList;
+        _unassignedStaff = unassignedStaff;
+        _workerShifts = workerShifts;
+        _managedShifts = managedShifts;
+        _staffVersions = PersistentSortedMap.empty();
+        _understaffedShifts = understaffedShifts;
+        _overstaffedShifts = overstaffedShifts;
+        _unmanagedShifts = unmanagedShifts;
+    }
+
+
+
+    public RosterSnapshot withWorkingHours(String dayOfWeek, String startTime, String endTime) throws ShiftManUserException {
+        RosterSnapshot next = new RosterSnapshot(this);
+        next.setWorkingHours(dayOfWeek, startTime, endTime);
+        return next;
+    }
+
+    public RosterSnapshot withShift(String dayOfWeek, String startTime, String endTime, String minimumWorkers)
+            throws ShiftManUserException {
+        RosterSnapshot next = new RosterSnapshot(this);
+        next.addShift(dayOfWeek, startTime, endTime, minimumWorkers);
+        return next;
+    }
+
+    public RosterSnapshot withStaff(String givenName, String familyName) throws ShiftManUserException {
+        checkStaffName(givenName, familyName);
+        String key = StaffMember.nameKey(givenName, familyName);
+
+        if (_staffDirectory.containsKey(key)) {
+            throw new ShiftManUserException("ERROR: Employee has already been registered");
+        } else {
+            StaffMember newStaff = new StaffMember(givenName, familyName);
+            RosterSnapshot next = new RosterSnapshot(this);
+            next._staffDirectory = _staffDirectory.plus(key, newStaff);
+            // This is so that upon recalling the registered staff, they are already sorted by last name
+            next._staffList = _staffList.plus(newStaff);
+            next._unassignedStaff = _unassignedStaff.plus(newStaff);
+            return next;
+        }
+    }
+
+    public RosterSnapshot withAssignment(String dayOfWeek, String startTime, String endTime, String givenName,
+                                         String familyName, boolean isManager) throws ShiftManUserException {
+        Day day = findDayInWeek(dayOfWeek);
+        StaffMember staff = findRegisteredStaffMember(givenName, familyName);
+        RosterSnapshot next = new RosterSnapshot(this);
+        next.assignStaff(day, startTime, endTime, staff, isManager);
+        // Once assigned, a staff member can never become unassigned again
+        next._unassignedStaff = _unassignedStaff.minus(staff);
+        return next;
+    }
+
+    /**
+     * Gives the snapshot that results from making each of the commands in order, as a single change.
+     * Each command sees the changes made by the commands before it, just as if they had been separate calls, and its
+     * status is put in the same position of statuses. A command that fails changes nothing, and the rest still go
+     * ahead.
+     *
+     * <p>Staff names are looked up once per batch rather than once per command. Newly registered staff are collected
+     * as the batch goes, and merged into the sorted staff sets in one pass at the end, rather than added one at a
+     * time.
+     */
+    public RosterSnapshot withCommands(List<RosterCommand> commands, String[] statuses) {
+        RosterSnapshot next = new RosterSnapshot(this);
+        Batch batch = new Batch();
+        for (int i = 0; i < commands.size(); i++) {
+            try {
+                next.apply(commands.get(i), batch);
+                statuses[i] = "";
+            } catch (ShiftManUserException e) {
+                statuses[i] = e.getMessage();
+            }
+        }
+        next.finish(batch);
+        return next;
+    }
+
+    public List<String> listRegisteredStaff() {
+        return describeStaff(_staffList);
+    }
+
+    public List<String> listUnassignedStaff() {
+        return describeStaff(_unassignedStaff);
+    }
+
+    public List<String> listUnmanagedShifts() {
+        return describeShifts(_unmanagedShifts);
+    }
+
+    public List<String> listOverOrUnderstaffedShifts(int status) {
+        // List all the shifts that are over/understaffed, depending on the given status
+        // -1 = understaffed, 1 = overstaffed
+        if (status < 0) {
+            return describeShifts(_understaffedShifts);
+        } else {
+            return describeShifts(_overstaffedShifts);
+        }
+    }
+
+    public List<String> getRosterForDay(String dayOfWeek) {
+        List<String> dayRoster = new ArrayList<>();
+        Day day;
+
+        try {
+            day = findDayInWeek(dayOfWeek);
+        } catch (ShiftManUserException e) {
+            dayRoster.add(e.getMessage());
+            return dayRoster;
+        }
+
+        dayRoster.addAll(day.getDayRoster());
+
+        // If there are no shifts registered in the day, return an empty list as specified
+        // Otherwise, add the day and shop details at the top of the list
+        if (dayRoster.size() == 0) {
+            dayRoster.clear();
+        } else {
+            dayRoster.add(0, _shopName);
+            dayRoster.add(1, day.toString() + " " + day.getWorkingHours());
+        }
+
+        return dayRoster;
+    }
+
+    public List<String> getRosterForWorker(String givenName, String familyName) {
+        return getRosterFromIndex(_workerShifts, givenName, familyName);
+    }
+
+    public List<String> getRosterForManager(String givenName, String familyName) {
+        return getRosterFromIndex(_managedShifts, givenName, familyName);
+    }
+
+    /**
+     * The number of shifts the staff member has been assigned to, either as a worker or as the manager.
+     */
+    public int getAssignmentCount(StaffMember staff) {
+        return indexedShifts(_workerShifts, staff).size() + indexedShifts(_managedShifts, staff).size();
+    }
+
+    public String getShopName() {
+        return _shopName;
+    }
+
+    /**
+     * The number of changes that were made to the roster to reach this snapshot.
+     */
+    public long getVersion() {
+        return _version;
+    }
+
+    /**
+     * The day's working hours and shifts, exactly as they stand in this snapshot.
+     */
+    public Day getDay(Roster.DaysOfWeek dayOfWeek) {
+        return getDay(dayOfWeek.ordinal());
+    }
+
+    /**
+     * The shift in the given slot, or null if the roster has no such shift.
+     */
+    public Shift getShift(ShiftSlot slot) {
+        Shift shift = getDay(slot.getDay()).getShift(slot.getStartTime());
+        return (shift != null && shift.getEndTime() == slot.getEndTime()) ? shift : null;
+    }
+
+    /**
+     * Finds a registered staff member by name, ignoring case.
+     * @return The staff member, or null if no one of that name is registered.
+     */
+    public StaffMember findStaff(String givenName, String familyName) {
+        return _staffDirectory.get(StaffMember.nameKey(givenName, familyName));
+    }
+
+    /**
+     * The shifts the staff member works, not counting those they manage, in order of day and start time.
+     */
+    public PersistentSortedSet<ShiftSlot> getShiftsWorkedBy(StaffMember staff) {
+        return indexedShifts(_workerShifts, staff);
+    }
+
+    public PersistentSortedSet<ShiftSlot> getShiftsManagedBy(StaffMember staff) {
+        return indexedShifts(_managedShifts, staff);
+    }
+
+    /**
+     * The version of the snapshot in which the staff member's shifts, worked or managed, last changed. Within a
+     * roster, their shifts are the same in any two snapshots that give the same version.
+     */
+    public long getStaffVersion(StaffMember staff) {
+        Long version = _staffVersions.get(staff);
+        return (version == null) ? 0 : version;
+    }
+
+    /**
+     * Every registered staff member, sorted by family name and then given name.
+     */
+    public PersistentSortedSet<StaffMember> getStaffList() {
+        return _staffList;
+    }
+
+    public PersistentSortedSet<StaffMember> getUnassignedStaff() {
+        return _unassignedStaff;
+    }
+
+    public PersistentSortedSet<ShiftSlot> getUnderstaffedShifts() {
+        return _understaffedShifts;
+    }
+
+    public PersistentSortedSet<ShiftSlot> getOverstaffedShifts() {
+        return _overstaffedShifts;
+    }
+
+    public PersistentSortedSet<ShiftSlot> getUnmanagedShifts() {
+        return _unmanagedShifts;
+    }
+
+    /**
+     * Used by RosterSnapshotFile, which saves the whole snapshot.
+     */
+    Day getDay(int position) {
+        Day day = _weekdays[position];
+        if (day == null) {
+            // Days never change, so two threads decoding the same day at once get the same result
+            day = _dayDecoder.decodeDay(position);
+            _weekdays[position] = day;
+        }
+        return day;
+    }
+
+    PersistentSortedMap<String, StaffMember> getStaffDirectory() {
+        return _staffDirectory;
+    }
+
+    PersistentSortedMap<StaffMember, PersistentSortedSet<ShiftSlot>> getWorkerShifts() {
+        return _workerShifts;
+    }
+
+    PersistentSortedMap<StaffMember, PersistentSortedSet<ShiftSlot>> getManagedShifts() {
+        return _managedShifts;
+    }
+
+
+
+    /**
+     * The staff looked up and registered during a call to withCommands().
+     */
+    private static final class Batch {
+
+        /**
+         * Every staff member the batch has used or registered, by name key.
+         */
+        private final Map<String, StaffMember> _staff = new HashMap<>();
+
+        private final List<StaffMember> _registered = new ArrayList<>();
+
+        private final Set<StaffMember> _assigned = new HashSet<>();
+    }
+
+    /**
+     * Helper method for withCommands().
+     * Makes a single command on this snapshot, which is still being built.
+     */
+    private void apply(RosterCommand command, Batch batch) throws ShiftManUserException {
+        switch (command.getType()) {
+            case SET_WORKING_HOURS:
+                setWorkingHours(command.getArgument(0), command.getArgument(1), command.getArgument(2));
+                break;
+            case ADD_SHIFT:
+                addShift(command.getArgument(0), command.getArgument(1), command.getArgument(2), command.getArgument(3));
+                break;
+            case REGISTER_STAFF:
+                registerInBatch(command.getArgument(0), command.getArgument(1), batch);
+                break;
+            default:
+                Day day = findDayInWeek(command.getArgument(0));
+                StaffMember staff = findInBatch(command.getArgument(3), command.getArgument(4), batch);
+                assignStaff(day, command.getArgument(1), command.getArgument(2), staff, command.isManager());
+                batch._assigned.add(staff);
+        }
+    }
+
+    /**
+     * Helper method for apply().
+     * Registers a staff member without adding them to the sorted staff sets yet, which finish() does for the whole
+     * batch.
+     */
+    private void registerInBatch(String givenName, String familyName, Batch batch) throws ShiftManUserException {
+        checkStaffName(givenName, familyName);
+        String key = StaffMember.nameKey(givenName, familyName);
+
+        if (batch._staff.containsKey(key) || _staffDirectory.containsKey(key)) {
+            throw new ShiftManUserException("ERROR: Employee has already been registered");
+        }
+        StaffMember newStaff = new StaffMember(givenName, familyName);
+        batch._staff.put(key, newStaff);
+        batch._registered.add(newStaff);
+    }
+
+    /**
+     * Helper method for apply().
+     * Finds a staff member registered either before or during the batch, remembering them for later commands.
+     */
+    private StaffMember findInBatch(String givenName, String familyName, Batch batch) throws ShiftManUserException {
+        String key = StaffMember.nameKey(givenName, familyName);
+        StaffMember staff = batch._staff.get(key);
+        if (staff == null) {
+            staff = findRegisteredStaffMember(givenName, familyName);
+            batch._staff.put(key, staff);
+        }
+        return staff;
+    }
+
+    /**
+     * Helper method for withCommands().
+     * Adds the staff registered by the batch to the directory and the sorted staff sets, sorting them once and then
+     * merging them in, and takes every staff member the batch assigned out of the unassigned set.
+     */
+    private void finish(Batch batch) {
+        for (StaffMember s : batch._assigned) {
+            _unassignedStaff = _unassignedStaff.minus(s);
+        }
+        if (batch._registered.isEmpty()) {
+            return;
+        }
+
+        RosterEvents.Sort event = new RosterEvents.Sort();
+        event.begin();
+        List<StaffMember> registered = batch._registered;
+        registered.sort(null);
+        List<StaffMember> stillUnassigned = new ArrayList<>();
+        for (StaffMember s : registered) {
+            if (!batch._assigned.contains(s)) {
+                stillUnassigned.add(s);
+            }
+        }
+        List<Map.Entry<String, StaffMember>> directoryEntries = new ArrayList<>(registered.size());
+        for (StaffMember s : registered) {
+            directoryEntries.add(new AbstractMap.SimpleImmutableEntry<>(s.getKey(), s));
+        }
+        directoryEntries.sort(Map.Entry.comparingByKey());
+        if (event.shouldCommit()) {
+            event.elementCount = registered.size();
+            event.commit();
+        }
+
+        _staffDirectory = _staffDirectory.plusAll(directoryEntries);
+        _staffList = _staffList.plusAll(registered);
+        _unassignedStaff = _unassignedStaff.plusAll(stillUnassigned);
+    }
+
+    /**
+     * Helper method for withWorkingHours() and apply().
+     * Changes this snapshot, so it is only ever called on a snapshot that is still being built.
+     */
+    private void setWorkingHours(String dayOfWeek, String startTime, String endTime) throws ShiftManUserException {
+        Day day = findDayInWeek(dayOfWeek);
+        putDay(day.withWorkingHours(startTime, endTime, _version));
+    }
+
+    /**
+     * Helper method for withShift() and apply().
+     */
+    private void addShift(String dayOfWeek, String startTime, String endTime, String minimumWorkers)
+            throws ShiftManUserException {
+        Day day = findDayInWeek(dayOfWeek);
+        Shift shift = day.createShift(startTime, endTime, minimumWorkers);
+        putDay(day.withShift(shift, _version));
+        updateShiftIssues(shift);
+    }
+
+    /**
+     * Helper method for withAssignment() and apply().
+     * Every check is made before anything is changed, so a failed assignment leaves the snapshot as it was.
+     * The caller takes the staff member out of the unassigned set.
+     */
+    private void assignStaff(Day day, String startTime, String endTime, StaffMember staff, boolean isManager)
+            throws ShiftManUserException {
+        Shift shift = day.findShift(startTime, endTime);
+
+        Shift assigned = isManager ? shift.withManager(staff) : shift.withWorker(staff);
+        putDay(day.withShift(assigned, _version));
+        if (isManager) {
+            _managedShifts = addToIndex(_managedShifts, staff, assigned.getSlot());
+        } else {
+            _workerShifts = addToIndex(_workerShifts, staff, assigned.getSlot());
+        }
+        _staffVersions = _staffVersions.plus(staff, _version);
+        updateShiftIssues(assigned);
+    }
+
+    /**
+     * Helper method for setWorkingHours(), addShift() and assignStaff().
+     * Puts the given version of a day into this snapshot, which has its own copy of the array of seven days.
+     */
+    private void putDay(Day day) {
+        _weekdays[day.getPosition()] = day;
+    }
+
+    /**
+     * Helper method for withStaff() and registerInBatch().
+     */
+    private static void checkStaffName(String givenName, String familyName) throws ShiftManUserException {
+        if (givenName == null || familyName == null || givenName.trim().isEmpty() || familyName.trim().isEmpty()) {
+            throw new ShiftManUserException("ERROR: Employee name given is empty");
+        }
+    }
+
+    /**
+     * Helper method for assignStaff().
+     * Adds a shift to a staff member's set of shifts in the given index.
+     */
+    private static PersistentSortedMap<StaffMember, PersistentSortedSet<ShiftSlot>> addToIndex(
+            PersistentSortedMap<StaffMember, PersistentSortedSet<ShiftSlot>> index, StaffMember staff, ShiftSlot slot) {
+        return index.plus(staff, indexedShifts(index, staff).plus(slot));
+    }
+
+    /**
+     * Helper method for addToIndex(), getAssignmentCount(), getRosterFromIndex(), getShiftsWorkedBy() and
+     * getShiftsManagedBy().
+     */
+    private static PersistentSortedSet<ShiftSlot> indexedShifts(
+            PersistentSortedMap<StaffMember, PersistentSortedSet<ShiftSlot>> index, StaffMember staff) {
+        PersistentSortedSet<ShiftSlot> shifts = index.get(staff);
+        return (shifts == null) ? PersistentSortedSet.empty() : shifts;
+    }
+
+    /**
+     * Helper method for addShift() and assignStaff(), which are only ever called on a snapshot being built.
+     * Moves the shift into or out of the understaffed, overstaffed and unmanaged sets to match its current staff.
+     * The sets are ordered by day and then start time, so each update is O(log n).
+     */
+    private void updateShiftIssues(Shift shift) {
+        int staffing = shift.overOrUnderstaffed();
+        ShiftSlot slot = shift.getSlot();
+        _understaffedShifts = updateMembership(_understaffedShifts, slot, staffing < 0);
+        _overstaffedShifts = updateMembership(_overstaffedShifts, slot, staffing > 0);
+        _unmanagedShifts = updateMembership(_unmanagedShifts, slot, !shift.isManagerAssigned());
+    }
+
+    /**
+     * Helper method for updateShiftIssues().
+     */
+    private static PersistentSortedSet<ShiftSlot> updateMembership(PersistentSortedSet<ShiftSlot> shifts, ShiftSlot slot,
+                                                                   boolean belongs) {
+        return belongs ? shifts.plus(slot) : shifts.minus(slot);
+    }
+
+    /**
+     * Helper method for getRosterForWorker() and getRosterForManager().
+     */
+    private List<String> getRosterFromIndex(PersistentSortedMap<StaffMember, PersistentSortedSet<ShiftSlot>> index,
+                                            String givenName, String familyName) {
+        List<String> roster = new ArrayList<>();
+        StaffMember staff;
+
+        try {
+            staff = findRegisteredStaffMember(givenName, familyName);
+        } catch (ShiftManUserException e) {
+            roster.add(e.getMessage());
+            return roster;
+        }
+
+        // The index already has the staff member's shifts, in order of day and then start time
+        // If there are none, return an empty list as specified
+        // Otherwise, add the staff member's name at the top of the list
+        PersistentSortedSet<ShiftSlot> shifts = indexedShifts(index, staff);
+        if (!shifts.isEmpty()) {
+            roster.add(staff.getReversedName());
+            roster.addAll(describeShifts(shifts));
+        }
+
+        return roster;
+    }
+
+    /**
+     * Helper method for listRegisteredStaff() and listUnassignedStaff().
+     * Converts a set of StaffMember objects into a list of their string representations, keeping their order.
+     */
+    private List<String> describeStaff(PersistentSortedSet<StaffMember> staff) {
+        RosterEvents.Render event = new RosterEvents.Render();
+        event.begin();
+        List<String> names = new ArrayList<>(staff.size());
+        for (StaffMember s : staff) {
+            names.add(s.toString());
+        }
+        if (event.shouldCommit()) {
+            event.what = "staff list";
+            event.lineCount = names.size();
+            event.commit();
+        }
+        return names;
+    }
+
+    /**
+     * Helper method for listUnmanagedShifts(), listOverOrUnderstaffedShifts() and getRosterFromIndex().
+     * Lists the shifts in the given set in the format day[hh:mm-hh:mm], as specified.
+     */
+    private List<String> describeShifts(PersistentSortedSet<ShiftSlot> shifts) {
+        RosterEvents.Render event = new RosterEvents.Render();
+        event.begin();
+        List<String> descriptions = new ArrayList<>(shifts.size());
+        for (ShiftSlot s : shifts) {
+            descriptions.add(s.getDescription());
+        }
+        if (event.shouldCommit()) {
+            event.what = "shift list";
+            event.lineCount = descriptions.size();
+            event.commit();
+        }
+        return descriptions;
+    }
+
+    /**
+     * Helper method for every method given a day of the week.
+     * Finds a specified Day object by comparing the names of the days of the week.
+     */
+    private Day findDayInWeek(String dayName) throws ShiftManUserException {
+        RosterEvents.DayLookup event = new RosterEvents.DayLookup();
+        event.begin();
+        Roster.DaysOfWeek d = Roster.DaysOfWeek.named(dayName);
+        Day day = (d == null) ? null : getDay(d.ordinal());
+        if (event.shouldCommit()) {
+            event.day = dayName;
+            event.shiftCount = (day == null) ? 0 : day.getShiftCount();
+            event.commit();
+        }
+
+        if (day == null) {
+            throw new ShiftManUserException("ERROR: Day does not exist in week");
+        }
+        return day;
+    }
+
+    /**
+     * Helper method for withAssignment(), findInBatch(), getRosterForWorker(), and getRosterForManager().
+     * Finds a specified StaffMember object by its name key, ignoring case.
+     */
+    private StaffMember findRegisteredStaffMember(String givenName, String familyName) throws ShiftManUserException {
+        RosterEvents.StaffLookup event = new RosterEvents.StaffLookup();
+        event.begin();
+        StaffMember staff = _staffDirectory.get(StaffMember.nameKey(givenName, familyName));
+        if (event.shouldCommit()) {
+            event.name = givenName + " " + familyName;
+            event.found = staff != null;
+            event.staffCount = _staffList.size();
+            event.commit();
+        }
+
+        if (staff == null) {
+            throw new ShiftManUserException("ERROR: Staff member is not registered");
+        }
+        return staff;
+    }
+
+    /**
+     * The most useful string representation of this object is the name of the shop the roster is for.
+     */
+    @Override
+    public String toString() {
+        return _shopName;
+    }
+}
@@ -0,0 +1,291 @@
+package shiftman.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Saves a roster snapshot in a compact binary file, and loads it back by mapping the file into memory.
+ *
+ * <p>The file starts with a format version, the roster's log number and the snapshot's version, so that a RosterLog
+ * replay knows which of its records the file already includes. Then come the staff, the roster's indexes and a table
+ * of where each day starts. Loading decodes the staff and the indexes, which every query uses, but leaves each day in
+ * the mapped file until it is first needed, so a roster that is loaded and only partly used costs very little.
+ * Staff members are saved once, and referred to by their position in the sorted staff list everywhere else.
+ */
+final class RosterSnapshotFile {
+
+    private static final int MAGIC = 0x53484D53;
+
+    private static final int VERSION = 1;
+
+    private static final int DAYS_IN_WEEK = Roster.DaysOfWeek.values().length;
+
+    private static final byte UNASSIGNED = 1;
+
+    private RosterSnapshotFile() {
+    }
+
+    /**
+     * Writes the roster's current snapshot to the file, replacing it in a single step, so that a reader or a crash
+     * never finds a file that is only partly written.
+     * @return The snapshot that was saved.
+     */
+    static RosterSnapshot write(Roster roster, Path file) throws IOException {
+        RosterSnapshot snapshot = roster.snapshot();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(roster.getLogId());
+        out.writeLong(snapshot.getVersion());
+        writeString(out, snapshot.getShopName());
+
+        // Staff, in sorted order, which gives each their number
+        Map<StaffMember, Integer> staffIds = new HashMap<>();
+        out.writeInt(snapshot.getStaffList().size());
+        for (StaffMember s : snapshot.getStaffList()) {
+            staffIds.put(s, staffIds.size());
+            writeString(out, s.getGivenName());
+            writeString(out, s.getFamilyName());
+            out.writeByte(snapshot.getUnassignedStaff().contains(s) ? UNASSIGNED : 0);
+        }
+        // The staff numbers in the order of the directory, so that it can be rebuilt without sorting
+        for (Map.Entry<String, StaffMember> e : snapshot.getStaffDirectory()) {
+            out.writeInt(staffIds.get(e.getValue()));
+        }
+        for (StaffMember s : snapshot.getStaffList()) {
+            writeSlots(out, indexedShifts(snapshot.getWorkerShifts(), s));
+            writeSlots(out, indexedShifts(snapshot.getManagedShifts(), s));
+        }
+        writeSlots(out, snapshot.getUnderstaffedShifts());
+        writeSlots(out, snapshot.getOverstaffedShifts());
+        writeSlots(out, snapshot.getUnmanagedShifts());
+
+        // Leave room for the table of where each day starts, and fill it in once the days are written
+        int dayTable = out.size();
+        for (int i = 0; i < DAYS_IN_WEEK; i++) {
+            out.writeInt(0);
+        }
+        int[] dayOffsets = new int[DAYS_IN_WEEK];
+        for (int i = 0; i < DAYS_IN_WEEK; i++) {
+            dayOffsets[i] = out.size();
+            writeDay(out, snapshot.getDay(i), staffIds);
+        }
+        out.flush();
+        byte[] contents = bytes.toByteArray();
+        ByteBuffer table = ByteBuffer.wrap(contents, dayTable, DAYS_IN_WEEK * 4);
+        for (int offset : dayOffsets) {
+            table.putInt(offset);
+        }
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(contents);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return snapshot;
+    }
+
+    /**
+     * Maps the file into memory and gives back the roster saved in it, which records its changes in the given log.
+     * @throws IOException If the file cannot be read, or is not a roster snapshot in a format this version knows.
+     */
+    static Roster read(Path file, RosterLog log) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a roster snapshot: " + file);
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Roster snapshot " + file + " has unknown format version " + version);
+            }
+            long logId = buffer.getLong();
+            long snapshotVersion = buffer.getLong();
+            String shopName = readString(buffer);
+
+            StaffMember[] staff = new StaffMember[buffer.getInt()];
+            List<StaffMember> unassigned = new ArrayList<>();
+            for (int i = 0; i < staff.length; i++) {
+                String givenName = readString(buffer);
+                String familyName = readString(buffer);
+                staff[i] = new StaffMember(givenName, familyName, StaffMember.nameKey(givenName, familyName));
+                if (buffer.get() == UNASSIGNED) {
+                    unassigned.add(staff[i]);
+                }
+            }
+            List<Map.Entry<String, StaffMember>> directory = new ArrayList<>(staff.length);
+            for (int i = 0; i < staff.length; i++) {
+                StaffMember s = staff[buffer.getInt()];
+                directory.add(new AbstractMap.SimpleImmutableEntry<>(s.getKey(), s));
+            }
+            List<Map.Entry<StaffMember, PersistentSortedSet<ShiftSlot>>> workerShifts = new ArrayList<>();
+            List<Map.Entry<StaffMember, PersistentSortedSet<ShiftSlot>>> managedShifts = new ArrayList<>();
+            for (StaffMember s : staff) {
+                addToIndex(workerShifts, s, readSlots(buffer));
+                addToIndex(managedShifts, s, readSlots(buffer));
+            }
+            PersistentSortedSet<ShiftSlot> understaffed = readSlots(buffer);
+            PersistentSortedSet<ShiftSlot> overstaffed = readSlots(buffer);
+            PersistentSortedSet<ShiftSlot> unmanaged = readSlots(buffer);
+            int[] dayOffsets = new int[DAYS_IN_WEEK];
+            for (int i = 0; i < DAYS_IN_WEEK; i++) {
+                dayOffsets[i] = buffer.getInt();
+            }
+
+            RosterSnapshot snapshot = new RosterSnapshot(shopName, snapshotVersion,
+                    position -> readDay(buffer, dayOffsets[position], position, staff),
+                    PersistentSortedMap.fromSorted(directory), PersistentSortedSet.fromSorted(Arrays.asList(staff)),
+                    PersistentSortedSet.fromSorted(unassigned), PersistentSortedMap.fromSorted(workerShifts),
+                    PersistentSortedMap.fromSorted(managedShifts), understaffed, overstaffed, unmanaged);
+            return new Roster(snapshot, log, logId);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Roster snapshot " + file + " is damaged", e);
+        }
+    }
+
+
+
+    /**
+     * Helper method for write().
+     */
+    private static void writeDay(DataOutputStream out, Day day, Map<StaffMember, Integer> staffIds) throws IOException {
+        out.writeShort(minutesOrNone(day.getStartOfDay()));
+        out.writeShort(minutesOrNone(day.getEndOfDay()));
+        int shiftCount = 0;
+        for (Shift s : day.getShifts()) {
+            shiftCount++;
+        }
+        out.writeInt(shiftCount);
+        for (Shift s : day.getShifts()) {
+            out.writeShort(s.getStartTime().getMinutes());
+            out.writeShort(s.getEndTime().getMinutes());
+            out.writeInt(s.getMinimumWorkers());
+            out.writeInt(s.getManager() == null ? -1 : staffIds.get(s.getManager()));
+            out.writeInt(s.getAssignedStaff().size());
+            for (StaffMember worker : s.getAssignedStaff()) {
+                out.writeInt(staffIds.get(worker));
+            }
+        }
+    }
+
+    /**
+     * Helper method for read(), called the first time each day of a loaded snapshot is needed.
+     * Reads from its own view of the mapped file, as any number of threads may be decoding days at once.
+     */
+    private static Day readDay(ByteBuffer file, int offset, int position, StaffMember[] staff) {
+        ByteBuffer buffer = file.duplicate();
+        buffer.position(offset);
+        Roster.DaysOfWeek dayOfWeek = Roster.DaysOfWeek.values()[position];
+        TimeOfDay startOfDay = timeOrNone(buffer.getShort());
+        TimeOfDay endOfDay = timeOrNone(buffer.getShort());
+
+        List<Map.Entry<TimeOfDay, Shift>> shifts = new ArrayList<>();
+        int shiftCount = buffer.getInt();
+        for (int i = 0; i < shiftCount; i++) {
+            TimeOfDay startTime = TimeOfDay.ofMinutes(buffer.getShort());
+            TimeOfDay endTime = TimeOfDay.ofMinutes(buffer.getShort());
+            int minimumWorkers = buffer.getInt();
+            int managerId = buffer.getInt();
+            List<StaffMember> workers = new ArrayList<>();
+            int workerCount = buffer.getInt();
+            for (int w = 0; w < workerCount; w++) {
+                workers.add(staff[buffer.getInt()]);
+            }
+            Shift shift = new Shift(new ShiftSlot(dayOfWeek, startTime, endTime), minimumWorkers,
+                    (managerId < 0) ? null : staff[managerId], PersistentSortedSet.fromSorted(workers));
+            shifts.add(new AbstractMap.SimpleImmutableEntry<>(startTime, shift));
+        }
+        // Every change made after loading gives the day a later version, so a loaded day can start from 0
+        return new Day(dayOfWeek, startOfDay, endOfDay, PersistentSortedMap.fromSorted(shifts), 0);
+    }
+
+    /**
+     * Helper method for write().
+     */
+    private static PersistentSortedSet<ShiftSlot> indexedShifts(
+            PersistentSortedMap<StaffMember, PersistentSortedSet<ShiftSlot>> index, StaffMember staff) {
+        PersistentSortedSet<ShiftSlot> shifts = index.get(staff);
+        return (shifts == null) ? PersistentSortedSet.empty() : shifts;
+    }
+
+    /**
+     * Helper method for read(). Staff members with no shifts are left out of the index, as they are by RosterSnapshot.
+     */
+    private static void addToIndex(List<Map.Entry<StaffMember, PersistentSortedSet<ShiftSlot>>> index, StaffMember staff,
+                                   PersistentSortedSet<ShiftSlot> shifts) {
+        if (!shifts.isEmpty()) {
+            index.add(new AbstractMap.SimpleImmutableEntry<>(staff, shifts));
+        }
+    }
+
+    private static void writeSlots(DataOutputStream out, PersistentSortedSet<ShiftSlot> slots) throws IOException {
+        out.writeInt(slots.size());
+        for (ShiftSlot s : slots) {
+            out.writeByte(s.getDay().ordinal());
+            out.writeShort(s.getStartTime().getMinutes());
+            out.writeShort(s.getEndTime().getMinutes());
+        }
+    }
+
+    private static PersistentSortedSet<ShiftSlot> readSlots(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        List<ShiftSlot> slots = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Roster.DaysOfWeek day = Roster.DaysOfWeek.values()[buffer.get()];
+            slots.add(new ShiftSlot(day, TimeOfDay.ofMinutes(buffer.getShort()), TimeOfDay.ofMinutes(buffer.getShort())));
+        }
+        return PersistentSortedSet.fromSorted(slots);
+    }
+
+    /**
+     * Strings are written as their length in bytes, then their UTF-8 encoding, so that they can be any length.
+     */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] encoded = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(encoded.length);
+        out.write(encoded);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] encoded = new byte[buffer.getInt()];
+        buffer.get(encoded);
+        return new String(encoded, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Working hours that have not been set are saved as -1.
+     */
+    private static int minutesOrNone(TimeOfDay time) {
+        return (time == null) ? -1 : time.getMinutes();
+    }
+
+    private static TimeOfDay timeOrNone(short minutes) {
+        return (minutes < 0) ? null : TimeOfDay.ofMinutes(minutes);
+    }
+}
@@ -0,0 +1,24 @@
+package shiftman.server;
+
+/**
+ * Somewhere to keep rosters that have been evicted from a RosterRegistry because their shop has been idle.
+ * The registry loads a roster back from the store the next time its shop is used.
+ */
+public interface RosterStore {
+
+    /**
+     * Keeps the given roster, replacing any roster already stored for the same shop.
+     */
+    void save(Roster roster);
+
+    /**
+     * Takes the roster for the given shop out of the store.
+     * @return The stored roster, or null if there is no roster stored for the shop.
+     */
+    Roster load(String shopName);
+
+    /**
+     * Forgets any roster stored for the given shop, used when a new roster replaces it.
+     */
+    void remove(String shopName);
+}
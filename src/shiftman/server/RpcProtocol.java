@@ -0,0 +1,299 @@
+package shiftman.server;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The binary protocol spoken between RemoteShiftMan and ShiftManRpcServer. Every message is a frame made of its
+ * length, a correlation id chosen by the client, and its body. A client may send many requests without waiting for
+ * their responses, and each response carries the id of the request it answers.
+ *
+ * <p>A request body is an opcode naming the ShiftMan method, a flag byte, the number of string arguments and the
+ * arguments themselves. A batch is a count followed by one request body for each change in it. A response body is
+ * a kind, followed by a string, or a count and that many strings. Strings are their length in UTF-8 bytes followed
+ * by the bytes, and a null string is a length of -1 with no bytes, so a null argument reaches the server as it would
+ * reach a ShiftManServer in-process.
+ */
+final class RpcProtocol {
+
+    static final byte NEW_ROSTER = 0;
+    static final byte SELECT_ROSTER = 1;
+    static final byte SET_WORKING_HOURS = 2;
+    static final byte ADD_SHIFT = 3;
+    static final byte REGISTER_STAFF = 4;
+    static final byte ASSIGN_STAFF = 5;
+    static final byte APPLY_BATCH = 6;
+    static final byte GET_REGISTERED_STAFF = 7;
+    static final byte GET_UNASSIGNED_STAFF = 8;
+    static final byte SHIFTS_WITHOUT_MANAGERS = 9;
+    static final byte UNDERSTAFFED_SHIFTS = 10;
+    static final byte OVERSTAFFED_SHIFTS = 11;
+    static final byte GET_ROSTER_FOR_DAY = 12;
+    static final byte GET_ROSTER_FOR_WORKER = 13;
+    static final byte GET_SHIFTS_MANAGED_BY = 14;
+    static final byte REPORT_ROSTER_ISSUES = 15;
+    static final byte DISPLAY_ROSTER = 16;
+
+    static final byte STRING_RESPONSE = 0;
+    static final byte LIST_RESPONSE = 1;
+
+    /**
+     * The request could not be understood, and the string says why.
+     */
+    static final byte FAILURE_RESPONSE = 2;
+
+    static final byte IS_MANAGER = 1;
+
+    /**
+     * The length and correlation id in front of every frame body.
+     */
+    static final int FRAME_HEADER_BYTES = 12;
+
+    /**
+     * No honest frame is anywhere near this large, so a connection sending one is closed.
+     */
+    static final int MAX_FRAME_BYTES = 64 * 1024 * 1024;
+
+    private static final int NULL_STRING = -1;
+
+    private RpcProtocol() {
+    }
+
+
+
+    /**
+     * Builds frames one after another in a buffer that grows as needed.
+     */
+    static final class FrameWriter {
+
+        private ByteBuffer _buffer;
+
+        private int _frameStart;
+
+        FrameWriter(int initialCapacity) {
+            _buffer = ByteBuffer.allocate(initialCapacity);
+        }
+
+        /**
+         * Starts a frame, leaving room for its length until end() fills it in.
+         */
+        FrameWriter begin(long correlationId) {
+            ensure(FRAME_HEADER_BYTES);
+            _frameStart = _buffer.position();
+            _buffer.putInt(0).putLong(correlationId);
+            return this;
+        }
+
+        FrameWriter end() {
+            _buffer.putInt(_frameStart, _buffer.position() - _frameStart - 4);
+            return this;
+        }
+
+        /**
+         * Drops the frame started by the last begin(), keeping every frame before it.
+         */
+        void abandon() {
+            _buffer.position(_frameStart);
+        }
+
+        FrameWriter putByte(int b) {
+            ensure(1);
+            _buffer.put((byte) b);
+            return this;
+        }
+
+        FrameWriter putInt(int i) {
+            ensure(4);
+            _buffer.putInt(i);
+            return this;
+        }
+
+        FrameWriter putString(String s) {
+            if (s == null) {
+                return putInt(NULL_STRING);
+            }
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            ensure(4 + bytes.length);
+            _buffer.putInt(bytes.length).put(bytes);
+            return this;
+        }
+
+        FrameWriter putStrings(List<String> strings) {
+            putInt(strings.size());
+            for (String s : strings) {
+                putString(s);
+            }
+            return this;
+        }
+
+        /**
+         * Writes a request body for the given method and arguments.
+         */
+        FrameWriter putRequest(byte opcode, boolean isManager, String... arguments) {
+            putByte(opcode).putByte(isManager ? IS_MANAGER : 0).putByte(arguments.length);
+            for (String a : arguments) {
+                putString(a);
+            }
+            return this;
+        }
+
+        FrameWriter putCommand(RosterCommand command) {
+            String[] arguments = new String[command.getArgumentCount()];
+            for (int i = 0; i < arguments.length; i++) {
+                arguments[i] = command.getArgument(i);
+            }
+            return putRequest(opcodeFor(command.getType()), command.isManager(), arguments);
+        }
+
+        /**
+         * The frames written so far, ready to be drained. Whatever is left of them after draining should be
+         * kept with compact().
+         */
+        ByteBuffer flip() {
+            _buffer.flip();
+            return _buffer;
+        }
+
+        void compact() {
+            _buffer.compact();
+        }
+
+        void clear() {
+            _buffer.clear();
+        }
+
+        boolean isEmpty() {
+            return _buffer.position() == 0;
+        }
+
+        int size() {
+            return _buffer.position();
+        }
+
+        private void ensure(int bytes) {
+            if (_buffer.remaining() < bytes) {
+                int capacity = _buffer.capacity();
+                while (capacity - _buffer.position() < bytes) {
+                    capacity *= 2;
+                }
+                ByteBuffer bigger = ByteBuffer.allocate(capacity);
+                _buffer.flip();
+                bigger.put(_buffer);
+                _buffer = bigger;
+            }
+        }
+    }
+
+    /**
+     * Finds the next whole frame in the buffer, which must be ready for reading.
+     * @return The body of the frame, positioned after the correlation id, or null if the whole frame has not arrived
+     * yet, in which case the buffer is left as it was.
+     * @throws IllegalArgumentException If the frame claims to be larger than any real frame.
+     */
+    static ByteBuffer nextFrame(ByteBuffer buffer) {
+        if (buffer.remaining() < 4) {
+            return null;
+        }
+        int length = buffer.getInt(buffer.position());
+        if (length < FRAME_HEADER_BYTES - 4 || length > MAX_FRAME_BYTES) {
+            throw new IllegalArgumentException("Bad frame length " + length);
+        }
+        if (buffer.remaining() < 4 + length) {
+            return null;
+        }
+        ByteBuffer frame = buffer.slice();
+        frame.limit(4 + length);
+        frame.position(4);
+        buffer.position(buffer.position() + 4 + length);
+        return frame;
+    }
+
+    static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == NULL_STRING) {
+            return null;
+        }
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Bad string length " + length);
+        }
+        String s = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return s;
+    }
+
+    static List<String> getStrings(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining() / 4) {
+            throw new IllegalArgumentException("Bad list length " + count);
+        }
+        List<String> strings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            strings.add(getString(buffer));
+        }
+        return strings;
+    }
+
+    /**
+     * Reads a request body's arguments, after its opcode and flag.
+     */
+    static String[] getArguments(ByteBuffer buffer) {
+        String[] arguments = new String[buffer.get()];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = getString(buffer);
+        }
+        return arguments;
+    }
+
+    static byte opcodeFor(RosterCommand.Type type) {
+        switch (type) {
+            case SET_WORKING_HOURS:
+                return SET_WORKING_HOURS;
+            case ADD_SHIFT:
+                return ADD_SHIFT;
+            case REGISTER_STAFF:
+                return REGISTER_STAFF;
+            default:
+                return ASSIGN_STAFF;
+        }
+    }
+
+    /**
+     * Makes the command for a change from its opcode and arguments.
+     * @throws IllegalArgumentException If the opcode is not a change, or has the wrong number of arguments.
+     */
+    static RosterCommand commandFor(byte opcode, boolean isManager, String[] arguments) {
+        int expected;
+        switch (opcode) {
+            case SET_WORKING_HOURS:
+                expected = 3;
+                break;
+            case ADD_SHIFT:
+                expected = 4;
+                break;
+            case REGISTER_STAFF:
+                expected = 2;
+                break;
+            case ASSIGN_STAFF:
+                expected = 5;
+                break;
+            default:
+                throw new IllegalArgumentException("Opcode " + opcode + " is not a change to a roster");
+        }
+        if (arguments.length != expected) {
+            throw new IllegalArgumentException("Opcode " + opcode + " takes " + expected + " arguments");
+        }
+        switch (opcode) {
+            case SET_WORKING_HOURS:
+                return RosterCommand.setWorkingHours(arguments[0], arguments[1], arguments[2]);
+            case ADD_SHIFT:
+                return RosterCommand.addShift(arguments[0], arguments[1], arguments[2], arguments[3]);
+            case REGISTER_STAFF:
+                return RosterCommand.registerStaff(arguments[0], arguments[1]);
+            default:
+                return RosterCommand.assignStaff(arguments[0], arguments[1], arguments[2], arguments[3], arguments[4],
+                        isManager);
+        }
+    }
+}
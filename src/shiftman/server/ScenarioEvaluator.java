@@ -0,0 +1,190 @@
+package shiftman.server;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Scores candidate rosters, usually forks of one roster with different changes tried on each, and picks the best.
+ * A roster is better the fewer understaffed shifts it has, then the fewer shifts without a manager, and then the
+ * more evenly its hours are spread across the staff.
+ *
+ * <p>Each roster is scored on the snapshot it has when scoring starts, so the rosters can go on being changed while
+ * they are scored. The rosters are scored in parallel on a fork/join pool, the list being split in half until each
+ * task has only a few rosters to score.
+ */
+public final class ScenarioEvaluator {
+
+    /**
+     * The number of rosters a task scores itself rather than splitting them between two tasks.
+     */
+    private static final int ROSTERS_PER_TASK = 4;
+
+    private final ForkJoinPool _pool;
+
+    /**
+     * How a roster scored. Scores compare with the best first.
+     */
+    public static final class Score implements Comparable<Score> {
+
+        private final int _understaffed;
+
+        private final int _unmanaged;
+
+        private final double _hoursVariance;
+
+        private Score(int understaffed, int unmanaged, double hoursVariance) {
+            _understaffed = understaffed;
+            _unmanaged = unmanaged;
+            _hoursVariance = hoursVariance;
+        }
+
+        public int getUnderstaffedShifts() {
+            return _understaffed;
+        }
+
+        public int getUnmanagedShifts() {
+            return _unmanaged;
+        }
+
+        /**
+         * The variance of the hours each registered staff member works or manages in the week, counting a shift
+         * they both work and manage once.
+         */
+        public double getHoursVariance() {
+            return _hoursVariance;
+        }
+
+        @Override
+        public int compareTo(Score other) {
+            if (_understaffed != other._understaffed) {
+                return Integer.compare(_understaffed, other._understaffed);
+            } else if (_unmanaged != other._unmanaged) {
+                return Integer.compare(_unmanaged, other._unmanaged);
+            }
+            return Double.compare(_hoursVariance, other._hoursVariance);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d understaffed, %d without a manager, hours variance %.2f", _understaffed,
+                    _unmanaged, _hoursVariance);
+        }
+    }
+
+    /**
+     * @param pool The pool that the rosters are scored on.
+     */
+    public ScenarioEvaluator(ForkJoinPool pool) {
+        _pool = pool;
+    }
+
+    /**
+     * Scores the roster as it stands in the given snapshot.
+     */
+    public static Score score(RosterSnapshot snapshot) {
+        Map<StaffMember, Integer> minutes = new HashMap<>();
+        for (Roster.DaysOfWeek d : Roster.DaysOfWeek.values()) {
+            for (Shift shift : snapshot.getDay(d).getShifts()) {
+                ShiftSlot slot = shift.getSlot();
+                int length = slot.getEndMinutes() - slot.getStartMinutes();
+                for (StaffMember s : shift.getAssignedStaff()) {
+                    minutes.merge(s, length, Integer::sum);
+                }
+                StaffMember manager = shift.getManager();
+                if (manager != null && !shift.getAssignedStaff().contains(manager)) {
+                    minutes.merge(manager, length, Integer::sum);
+                }
+            }
+        }
+
+        // Staff on no shift at all work no hours, and count towards the spread like everyone else
+        int staff = snapshot.getStaffList().size();
+        double variance = 0;
+        if (staff > 0) {
+            double sum = 0;
+            double sumOfSquares = 0;
+            for (int m : minutes.values()) {
+                double hours = m / 60.0;
+                sum += hours;
+                sumOfSquares += hours * hours;
+            }
+            double mean = sum / staff;
+            variance = Math.max(0, sumOfSquares / staff - mean * mean);
+        }
+        return new Score(snapshot.getUnderstaffedShifts().size(), snapshot.getUnmanagedShifts().size(), variance);
+    }
+
+    /**
+     * Scores every roster in parallel.
+     * @return The score of each roster, in the same order as the rosters.
+     */
+    public List<Score> scoreAll(List<Roster> scenarios) {
+        List<RosterSnapshot> snapshots = new ArrayList<>(scenarios.size());
+        for (Roster r : scenarios) {
+            snapshots.add(r.snapshot());
+        }
+        Score[] scores = new Score[snapshots.size()];
+        _pool.invoke(new ScoreTask(snapshots, scores, 0, scores.length));
+
+        List<Score> result = new ArrayList<>(scores.length);
+        for (Score s : scores) {
+            result.add(s);
+        }
+        return result;
+    }
+
+    /**
+     * Scores every roster in parallel and picks the best, the first of them if several score the same.
+     * @return The position of the best roster in the list, or -1 if the list is empty.
+     */
+    public int best(List<Roster> scenarios) {
+        List<Score> scores = scoreAll(scenarios);
+        int best = -1;
+        for (int i = 0; i < scores.size(); i++) {
+            if (best < 0 || scores.get(i).compareTo(scores.get(best)) < 0) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Scores a run of the snapshots into the matching places in the array of scores.
+     */
+    private static final class ScoreTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<RosterSnapshot> _snapshots;
+
+        private final Score[] _scores;
+
+        private final int _from;
+
+        private final int _to;
+
+        ScoreTask(List<RosterSnapshot> snapshots, Score[] scores, int from, int to) {
+            _snapshots = snapshots;
+            _scores = scores;
+            _from = from;
+            _to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (_to - _from <= ROSTERS_PER_TASK) {
+                for (int i = _from; i < _to; i++) {
+                    _scores[i] = score(_snapshots.get(i));
+                }
+                return;
+            }
+            int middle = (_from + _to) >>> 1;
+            invokeAll(new ScoreTask(_snapshots, _scores, _from, middle),
+                    new ScoreTask(_snapshots, _scores, middle, _to));
+        }
+    }
+}
@@ -1,65 +1,58 @@
 package shiftman.server;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-
 /**
  * Represents a Shift. A shift is a single period of work, with a start and end time, a single manager
  * overseeing this period, a minimum number of workers required (not including the manager),
- * and a list of staff members who have been assigned to work during it.
+ * and the staff members who have been assigned to work during it.
+ * A Shift never changes once created: assigning staff gives a new version of the shift, which shares
+ * its slot and most of its worker set with the old one.
  */
-public class Shift implements Comparable<Shift> {
+public final class Shift {
 
-    private List<StaffMember> _assignedStaff;
+    private final ShiftSlot _slot;
 
-    private StaffMember _manager;
+    private final int _minWorkers;
 
-    private String _startTime;
+    private final StaffMember _manager;
 
-    private String _endTime;
+    private final PersistentSortedSet<StaffMember> _assignedStaff;
 
-    private int _minWorkers;
+    public Shift(ShiftSlot slot, int minimumWorkers) {
+        this(slot, minimumWorkers, null, PersistentSortedSet.empty());
 
-    public Shift(String startTime, String endTime, String minimumWorkers) {
-        _startTime = startTime;
-        _endTime = endTime;
-        _minWorkers = Integer.parseInt(minimumWorkers);
-        _assignedStaff = new ArrayList<>();
+        RosterEvents.created("Shift", slot);
+    }
 
-        System.out.println("@Shift object created at time " + _startTime + " to " + _endTime);
+    /**
+     * Used by withManager() and withWorker(), to create the next version of a shift,
+     * and by RosterSnapshotFile to give back a saved shift.
+     */
+    Shift(ShiftSlot slot, int minimumWorkers, StaffMember manager, PersistentSortedSet<StaffMember> assignedStaff) {
+        _slot = slot;
+        _minWorkers = minimumWorkers;
+        _manager = manager;
+        _assignedStaff = assignedStaff;
     }
 
 
 
-    public void assignManager(StaffMember staff) throws ShiftManUserException {
+    public Shift withManager(StaffMember staff) throws ShiftManUserException {
         if (_manager == null) {
-            _manager = staff;
+            return new Shift(_slot, _minWorkers, staff, _assignedStaff);
         } else {
             throw new ShiftManUserException("ERROR: Manager has already been assigned to this shift");
         }
     }
 
-    public void assignStaff(StaffMember staff) throws ShiftManUserException {
+    public Shift withWorker(StaffMember staff) throws ShiftManUserException {
         if (_assignedStaff.contains(staff)) {
             throw new ShiftManUserException("ERROR: Staff member has already been assigned to this shift");
         } else {
-            _assignedStaff.add(staff);
-            // This is so that upon recalling the registered staff, they are already sorted by last name
-            Collections.sort(_assignedStaff);
+            // The set keeps the workers sorted by last name
+            return new Shift(_slot, _minWorkers, _manager, _assignedStaff.plus(staff));
         }
     }
 
-    /**
-     * Gets a list of all staff assigned to this shift, including the manager.
-     */
-    public List<StaffMember> getAssignedStaff() {
-        // Create a duplicate of the existing list, to avoid destructive modification and maintain encapsulation.
-        List<StaffMember> allStaff = new ArrayList<>(_assignedStaff);
-        allStaff.add(_manager);
-        return allStaff;
-    }
-
     public int overOrUnderstaffed() {
         int count = _assignedStaff.size();
 
@@ -68,29 +61,47 @@ public class Shift implements Comparable<Shift> {
     }
 
     /**
-     * Creates the single string representing the shift in the roster,
-     * first by concatenating the worker names, then the manager name, then the shift times.
+     * Creates the single string representing the shift in the roster: the shift times, then the manager name,
+     * then the worker names.
      */
     public String shiftInfoForRoster() {
-        String workerNames = "";
-        if (_assignedStaff.size() == 0) {
-            workerNames = "No workers assigned";
-        } else {
-            for (StaffMember s : _assignedStaff) {
-                workerNames = workerNames + s.toString() + ", ";
-            }
-            // Removes the final trailing ", " from the end of the string
-            workerNames = workerNames.substring(0, workerNames.length() - 2);
+        RosterEvents.Render event = new RosterEvents.Render();
+        event.begin();
+        StringBuilder info = new StringBuilder();
+        appendShiftInfo(info);
+        if (event.shouldCommit()) {
+            event.what = "shift " + _slot.getDescription();
+            event.lineCount = 1;
+            event.commit();
         }
+        return info.toString();
+    }
 
-        String managerName;
+    /**
+     * Used by shiftInfoForRoster(), and by Day to build each line of its roster in a single builder.
+     */
+    void appendShiftInfo(StringBuilder out) {
+        out.append('[').append(_slot.getStartTime()).append('-').append(_slot.getEndTime()).append("] ");
         if (_manager == null) {
-            managerName = "[No manager assigned]";
+            out.append("[No manager assigned]");
         } else {
-            managerName = "Manager:" + _manager.getReversedName();
+            out.append("Manager:").append(_manager.getFamilyName()).append(", ").append(_manager.getGivenName());
         }
 
-        return this.toString() + " " + managerName + " [" + workerNames + "]";
+        out.append(" [");
+        if (_assignedStaff.isEmpty()) {
+            out.append("No workers assigned");
+        } else {
+            boolean first = true;
+            for (StaffMember s : _assignedStaff) {
+                if (!first) {
+                    out.append(", ");
+                }
+                out.append(s.getGivenName()).append(' ').append(s.getFamilyName());
+                first = false;
+            }
+        }
+        out.append(']');
     }
 
     public boolean isManagerAssigned() {
@@ -102,7 +113,7 @@ public class Shift implements Comparable<Shift> {
      * a given manager to the manager of this shift.
      */
     public boolean isSpecificManagerAssigned(StaffMember manager) {
-        return _manager.compareTo(manager) == 0;
+        return _manager != null && _manager.equals(manager);
     }
 
     public boolean isStaffMemberAssigned(StaffMember staff) {
@@ -111,17 +122,40 @@ public class Shift implements Comparable<Shift> {
 
     /**
      * Compares given start and end times with the start and end times of this shift.
-     * This differs from the Comparable, which is only used for sorting.
      */
-    public boolean compareShiftTimes(String startTime, String endTime) {
-        return _startTime.equals(startTime) && _endTime.equals(endTime);
+    public boolean compareShiftTimes(TimeOfDay startTime, TimeOfDay endTime) {
+        // Every time of day is a single shared object, so identity is enough here
+        return _slot.getStartTime() == startTime && _slot.getEndTime() == endTime;
+    }
+
+    public int getMinimumWorkers() {
+        return _minWorkers;
     }
 
     /**
-     * Used by Comparable for sorting lists of Shifts, which are to be ordered by starting time, earliest to latest.
+     * The manager of the shift, or null if none has been assigned.
      */
-    public int compareTo (Shift other) {
-        return _startTime.compareTo(other._startTime);
+    public StaffMember getManager() {
+        return _manager;
+    }
+
+    /**
+     * The workers assigned to the shift, not including the manager, in the order they are listed in the roster.
+     */
+    public PersistentSortedSet<StaffMember> getAssignedStaff() {
+        return _assignedStaff;
+    }
+
+    public ShiftSlot getSlot() {
+        return _slot;
+    }
+
+    public TimeOfDay getStartTime() {
+        return _slot.getStartTime();
+    }
+
+    public TimeOfDay getEndTime() {
+        return _slot.getEndTime();
     }
 
     /**
@@ -130,6 +164,6 @@ public class Shift implements Comparable<Shift> {
      */
     @Override
     public String toString() {
-        return "[" + _startTime + "-" + _endTime + "]";
+        return _slot.toString();
     }
 }
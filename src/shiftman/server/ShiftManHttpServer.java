@@ -0,0 +1,467 @@
+package shiftman.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves every ShiftMan method over HTTP, with JSON requests and responses, for the rosters in a RosterRegistry.
+ * Each method of each shop has its own path, /shops/{shop}/{method}, where the shop name is URL-encoded.
+ *
+ * <ul>
+ * <li>Methods that change a roster take a POST, with their arguments as the fields of a JSON object named as in
+ * ShiftMan, for example {"dayOfWeek": "Monday", "startTime": "09:00", "endTime": "17:00"}. newRoster takes no
+ * body. applyBatch takes an array of such objects, each naming its change in a "method" field.</li>
+ * <li>Methods that query a roster take a GET, with their arguments in the query string.</li>
+ * <li>A method giving a string gives {"result": string}, and one giving a list gives a JSON array of strings.
+ * Errors reported by ShiftMan are results like any other, so the response is still 200 OK. A request that
+ * cannot be understood gets 400, 404 or 405, with {"error": message}. A request body larger than the
+ * server takes gets 413, and a request the server fails to handle gets 500.</li>
+ * </ul>
+ *
+ * <p>Each request is handled on a thread of its own: a virtual thread where the JVM has them, and otherwise a thread
+ * from a pool. Connections are kept alive between requests. A small response is sent with its length, while a large
+ * one, such as the roster of a big shop, is streamed in chunks as it is written rather than built up in memory first.
+ *
+ * <p>The JDK server writes a response's headers and body separately, so unless the JVM is started with
+ * -Dsun.net.httpserver.nodelay=true, Nagle's algorithm holds the body back until the client acknowledges the headers,
+ * which a client delaying its ACKs takes 40ms to do. The setting is for the whole JVM and is read when its first
+ * HttpServer is created, so it is left to whoever starts the JVM.
+ */
+public class ShiftManHttpServer implements AutoCloseable {
+
+    /**
+     * Responses longer than this are streamed in chunks rather than sent with their length.
+     */
+    private static final int STREAM_THRESHOLD = 16 * 1024;
+
+    /**
+     * The largest request body taken by default, which is room for a batch of some hundred thousand changes.
+     */
+    public static final int DEFAULT_MAX_REQUEST_BYTES = 16 * 1024 * 1024;
+
+    private static final String PREFIX = "/shops/";
+
+    private static final List<String> QUERY_METHODS = Arrays.asList("getRegisteredStaff", "getUnassignedStaff",
+            "shiftsWithoutManagers", "understaffedShifts", "overstaffedShifts", "getRosterForDay", "getRosterForWorker",
+            "getShiftsManagedBy", "reportRosterIssues", "displayRoster");
+
+    private final ShiftManServer _server;
+
+    private final HttpServer _httpServer;
+
+    private final ExecutorService _executor;
+
+    private final int _maxRequestBytes;
+
+    /**
+     * Starts serving the rosters in the given registry, taking request bodies of up to DEFAULT_MAX_REQUEST_BYTES.
+     * @param port The port to listen on, or 0 for any free port.
+     */
+    public ShiftManHttpServer(RosterRegistry registry, int port) throws IOException {
+        this(registry, port, DEFAULT_MAX_REQUEST_BYTES);
+    }
+
+    /**
+     * Starts serving the rosters in the given registry.
+     * @param port The port to listen on, or 0 for any free port.
+     * @param maxRequestBytes The largest request body to take. A larger one gets 413, without being read.
+     */
+    public ShiftManHttpServer(RosterRegistry registry, int port, int maxRequestBytes) throws IOException {
+        _maxRequestBytes = maxRequestBytes;
+        _server = new ShiftManServer(registry);
+        _executor = newRequestExecutor();
+        _httpServer = HttpServer.create(new InetSocketAddress(port), 1024);
+        _httpServer.createContext(PREFIX, this::handle);
+        _httpServer.setExecutor(_executor);
+        _httpServer.start();
+    }
+
+
+
+    /**
+     * The port the server is listening on.
+     */
+    public int getPort() {
+        return _httpServer.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting requests, waiting briefly for those already being handled.
+     */
+    public void close() {
+        _httpServer.stop(1);
+        _executor.shutdown();
+    }
+
+
+
+    /**
+     * Helper method for the constructor.
+     * Virtual threads only exist from Java 21, so they are looked up rather than named, which keeps the server
+     * running on older JVMs too.
+     */
+    private static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "shiftman-http");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    /**
+     * Handles a single request, finding the shop and method from its path.
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String[] path = exchange.getRequestURI().getRawPath().substring(PREFIX.length()).split("/", -1);
+            if (path.length != 2 || path[0].isEmpty()) {
+                sendError(exchange, 404, "Paths are " + PREFIX + "{shop}/{method}");
+                return;
+            }
+            String shopName = decode(path[0]);
+            String method = path[1];
+            ShiftManServer scheduler = _server.forShop(shopName);
+            if (exchange.getRequestMethod().equals("GET")) {
+                query(exchange, scheduler, method);
+            } else if (exchange.getRequestMethod().equals("POST")) {
+                change(exchange, scheduler, shopName, method);
+            } else {
+                sendError(exchange, 405, "Only GET and POST are supported");
+            }
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+        } catch (RuntimeException e) {
+            // Once a response has been started its status cannot be changed, and closing the exchange cuts it short
+            if (exchange.getResponseCode() < 0) {
+                sendError(exchange, 500, "The server failed to handle the request: " + e);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Helper method for handle().
+     * Answers a GET with the result of the ShiftMan method that queries the roster.
+     */
+    private void query(HttpExchange exchange, ShiftManServer scheduler, String method) throws IOException {
+        Map<String, String> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+        switch (method) {
+            case "getRegisteredStaff":
+                sendList(exchange, scheduler.getRegisteredStaff());
+                break;
+            case "getUnassignedStaff":
+                sendList(exchange, scheduler.getUnassignedStaff());
+                break;
+            case "shiftsWithoutManagers":
+                sendList(exchange, scheduler.shiftsWithoutManagers());
+                break;
+            case "understaffedShifts":
+                sendList(exchange, scheduler.understaffedShifts());
+                break;
+            case "overstaffedShifts":
+                sendList(exchange, scheduler.overstaffedShifts());
+                break;
+            case "getRosterForDay":
+                sendList(exchange, scheduler.getRosterForDay(parameter(parameters, "dayOfWeek")));
+                break;
+            case "getRosterForWorker":
+                sendList(exchange, scheduler.getRosterForWorker(wholeName(parameters, "workerName")));
+                break;
+            case "getShiftsManagedBy":
+                sendList(exchange, scheduler.getShiftsManagedBy(wholeName(parameters, "managerName")));
+                break;
+            case "reportRosterIssues":
+                sendResult(exchange, scheduler::reportRosterIssues);
+                break;
+            case "displayRoster":
+                sendResult(exchange, scheduler::displayRoster);
+                break;
+            default:
+                sendError(exchange, isChange(method) ? 405 : 404, "No method called " + method + " queries the roster");
+        }
+    }
+
+    /**
+     * Helper method for handle().
+     * Answers a POST by making the change on the roster.
+     */
+    private void change(HttpExchange exchange, BatchShiftMan scheduler, String shopName, String method)
+            throws IOException {
+        if (!isChange(method)) {
+            sendError(exchange, QUERY_METHODS.contains(method) ? 405 : 404,
+                    "No method called " + method + " changes the roster");
+            return;
+        }
+        if (method.equals("newRoster")) {
+            sendResult(exchange, scheduler.newRoster(shopName));
+            return;
+        }
+
+        String text = readBody(exchange);
+        if (text == null) {
+            sendError(exchange, 413, "Request bodies can be at most " + _maxRequestBytes + " bytes");
+            return;
+        }
+        Object body = Json.parse(text);
+        if (method.equals("applyBatch")) {
+            if (!(body instanceof List)) {
+                throw new IllegalArgumentException("applyBatch takes an array of changes");
+            }
+            List<RosterCommand> commands = new ArrayList<>();
+            for (Object change : (List<?>) body) {
+                Map<?, ?> arguments = asObject(change);
+                Object changeMethod = arguments.get("method");
+                if (!(changeMethod instanceof String) || !isChange((String) changeMethod)
+                        || changeMethod.equals("newRoster") || changeMethod.equals("applyBatch")) {
+                    throw new IllegalArgumentException("Each change in a batch needs the method that makes it");
+                }
+                commands.add(commandFor((String) changeMethod, arguments));
+            }
+            sendList(exchange, scheduler.applyBatch(commands));
+        } else {
+            sendResult(exchange, commandFor(method, asObject(body)).applyTo(scheduler));
+        }
+    }
+
+    /**
+     * Helper method for query() and change().
+     */
+    private static boolean isChange(String method) {
+        switch (method) {
+            case "newRoster":
+            case "setWorkingHours":
+            case "addShift":
+            case "registerStaff":
+            case "assignStaff":
+            case "applyBatch":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Helper method for change().
+     * Makes the command for a change from the fields of its request.
+     */
+    private static RosterCommand commandFor(String method, Map<?, ?> arguments) {
+        switch (method) {
+            case "setWorkingHours":
+                return RosterCommand.setWorkingHours(field(arguments, "dayOfWeek"), field(arguments, "startTime"),
+                        field(arguments, "endTime"));
+            case "addShift":
+                return RosterCommand.addShift(field(arguments, "dayOfWeek"), field(arguments, "startTime"),
+                        field(arguments, "endTime"), field(arguments, "minimumWorkers"));
+            case "registerStaff":
+                return RosterCommand.registerStaff(field(arguments, "givenName"), field(arguments, "familyName"));
+            default:
+                return RosterCommand.assignStaff(field(arguments, "dayOfWeek"), field(arguments, "startTime"),
+                        field(arguments, "endTime"), field(arguments, "givenName"), field(arguments, "familyName"),
+                        Boolean.TRUE.equals(arguments.get("isManager")));
+        }
+    }
+
+    private static Map<?, ?> asObject(Object value) {
+        if (!(value instanceof Map)) {
+            throw new IllegalArgumentException("Expected a JSON object of arguments");
+        }
+        return (Map<?, ?>) value;
+    }
+
+    private static String field(Map<?, ?> arguments, String name) {
+        Object value = arguments.get(name);
+        if (!(value instanceof String)) {
+            throw new IllegalArgumentException("Expected a string or number called \"" + name + "\"");
+        }
+        return (String) value;
+    }
+
+    private static String parameter(Map<String, String> parameters, String name) {
+        String value = parameters.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Expected a query parameter called \"" + name + "\"");
+        }
+        return value;
+    }
+
+    /**
+     * Gets a staff member's whole name, which ShiftMan splits into their given name and family name at the first
+     * space, so it must have both.
+     */
+    private static String wholeName(Map<String, String> parameters, String name) {
+        String value = parameter(parameters, name);
+        if (value.trim().split("\\s+").length < 2) {
+            throw new IllegalArgumentException("Expected a given name and a family name in \"" + name + "\"");
+        }
+        return value;
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> parameters = new HashMap<>();
+        if (rawQuery != null) {
+            for (String pair : rawQuery.split("&")) {
+                int equals = pair.indexOf('=');
+                if (equals > 0) {
+                    parameters.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                            URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+                }
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * Decodes a part of the path, where, unlike in a query string, a '+' is just a '+'.
+     */
+    private static String decode(String pathPart) {
+        return URLDecoder.decode(pathPart.replace("+", "%2B"), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Helper method for change().
+     * Reads no more than the largest body allowed, so that a huge request cannot fill the heap.
+     * @return The body, or null if it is too large.
+     */
+    private String readBody(HttpExchange exchange) throws IOException {
+        String length = exchange.getRequestHeaders().getFirst("Content-Length");
+        try {
+            if (length != null && Long.parseLong(length.trim()) > _maxRequestBytes) {
+                return null;
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad Content-Length " + length);
+        }
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] body = in.readNBytes(_maxRequestBytes + 1);
+            if (body.length > _maxRequestBytes) {
+                return null;
+            }
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void sendResult(HttpExchange exchange, String result) throws IOException {
+        try (Writer out = openResponse(exchange, 200)) {
+            out.write("{\"result\":");
+            Json.writeString(out, result);
+            out.write('}');
+        }
+    }
+
+    /**
+     * Something that writes a result as text, a piece at a time.
+     */
+    private interface ResultText {
+        void writeTo(Appendable out) throws IOException;
+    }
+
+    /**
+     * Writes the result straight into the JSON string as it is produced, so a whole roster is streamed rather than
+     * built up as a String first.
+     */
+    private static void sendResult(HttpExchange exchange, ResultText result) throws IOException {
+        try (Writer out = openResponse(exchange, 200)) {
+            out.write("{\"result\":\"");
+            result.writeTo(Json.escaping(out));
+            out.write("\"}");
+        }
+    }
+
+    /**
+     * Writes the list one string at a time, so a long list is streamed rather than held as one JSON string.
+     */
+    private static void sendList(HttpExchange exchange, List<String> list) throws IOException {
+        try (Writer out = openResponse(exchange, 200)) {
+            out.write('[');
+            for (int i = 0; i < list.size(); i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                Json.writeString(out, list.get(i));
+            }
+            out.write(']');
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        try (Writer out = openResponse(exchange, status)) {
+            out.write("{\"error\":");
+            Json.writeString(out, message);
+            out.write('}');
+        }
+    }
+
+    private static Writer openResponse(HttpExchange exchange, int status) {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        return new OutputStreamWriter(new ResponseBody(exchange, status), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The body of a response, which holds on to what is written until it is closed, and then sends it with its
+     * length. If too much is written to hold, the response is started without a length and the rest is streamed.
+     */
+    private static final class ResponseBody extends OutputStream {
+
+        private final HttpExchange _exchange;
+
+        private final int _status;
+
+        private final ByteArrayOutputStream _held = new ByteArrayOutputStream();
+
+        private OutputStream _streaming;
+
+        ResponseBody(HttpExchange exchange, int status) {
+            _exchange = exchange;
+            _status = status;
+        }
+
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (_streaming == null && _held.size() + len > STREAM_THRESHOLD) {
+                // A length of 0 tells the server to send the body in chunks
+                _exchange.sendResponseHeaders(_status, 0);
+                _streaming = _exchange.getResponseBody();
+                _held.writeTo(_streaming);
+            }
+            if (_streaming != null) {
+                _streaming.write(b, off, len);
+            } else {
+                _held.write(b, off, len);
+            }
+        }
+
+        public void close() throws IOException {
+            if (_streaming == null) {
+                _exchange.sendResponseHeaders(_status, (_held.size() == 0) ? -1 : _held.size());
+                _streaming = _exchange.getResponseBody();
+                _held.writeTo(_streaming);
+            }
+            _streaming.close();
+        }
+    }
+}
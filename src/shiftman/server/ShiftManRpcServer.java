@@ -0,0 +1,325 @@
+package shiftman.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Serves the ShiftMan API to RemoteShiftMan clients over the binary RpcProtocol, for the rosters in a RosterRegistry.
+ * Each connection is a session of its own, like a ShiftManServer, working on whichever roster it last created or
+ * selected.
+ *
+ * <p>A single thread runs a non-blocking selector loop over every connection. It reads whatever requests have arrived,
+ * makes each call in the order it was sent, and writes the responses back as the connection can take them. A client
+ * can therefore pipeline many requests on one connection, and each call costs a few microseconds rather than a thread
+ * switch. Calls are made on the loop thread itself, so a call that takes a long time, such as displaying a very large
+ * roster, holds up the other connections while it runs.
+ */
+public class ShiftManRpcServer implements AutoCloseable {
+
+    private static final int INITIAL_BUFFER_BYTES = 8 * 1024;
+
+    /**
+     * When this many bytes of responses are waiting for a slow client, no more of its requests are read
+     * until it catches up.
+     */
+    private static final int MAX_PENDING_RESPONSE_BYTES = 1024 * 1024;
+
+    private final RosterRegistry _registry;
+
+    private final ServerSocketChannel _serverChannel;
+
+    private final Selector _selector;
+
+    private final Thread _loop;
+
+    private volatile boolean _closed;
+
+    /**
+     * A client connection, with the requests read from it but not yet whole, and the responses not yet written.
+     */
+    private static final class Connection {
+
+        private final SocketChannel _channel;
+
+        private final ShiftManServer _session;
+
+        private ByteBuffer _requests = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+
+        private final RpcProtocol.FrameWriter _responses = new RpcProtocol.FrameWriter(INITIAL_BUFFER_BYTES);
+
+        Connection(SocketChannel channel, ShiftManServer session) {
+            _channel = channel;
+            _session = session;
+        }
+    }
+
+    /**
+     * Starts serving the rosters in the given registry.
+     * @param port The port to listen on, or 0 for any free port.
+     */
+    public ShiftManRpcServer(RosterRegistry registry, int port) throws IOException {
+        _registry = registry;
+        _selector = Selector.open();
+        _serverChannel = ServerSocketChannel.open();
+        _serverChannel.bind(new InetSocketAddress(port), 1024);
+        _serverChannel.configureBlocking(false);
+        _serverChannel.register(_selector, SelectionKey.OP_ACCEPT);
+        _loop = new Thread(this::runLoop, "shiftman-rpc");
+        _loop.setDaemon(true);
+        _loop.start();
+    }
+
+
+
+    /**
+     * The port the server is listening on.
+     */
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) _serverChannel.getLocalAddress()).getPort();
+    }
+
+    /**
+     * Stops the server and closes every connection. Requests still being sent are not answered.
+     * If the caller is interrupted, it still waits for the server to stop, and its interrupt status is set again
+     * before this returns.
+     */
+    public void close() {
+        _closed = true;
+        _selector.wakeup();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                _loop.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+
+    /**
+     * The body of the loop thread.
+     */
+    private void runLoop() {
+        try {
+            while (!_closed) {
+                _selector.select();
+                Iterator<SelectionKey> keys = _selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            readRequests(connection, key);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            writeResponses(connection, key);
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        // The client has gone, or is not speaking the protocol, so there is no one to tell
+                        // Only this connection is closed, so the loop goes on serving the others
+                        closeQuietly(key);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // The selector itself has failed, so the server cannot go on
+        } finally {
+            for (SelectionKey key : _selector.keys()) {
+                closeQuietly(key);
+            }
+            try {
+                _selector.close();
+            } catch (IOException e) {
+                // Closing anyway
+            }
+        }
+    }
+
+    /**
+     * Helper method for runLoop().
+     */
+    private void accept() throws IOException {
+        SocketChannel channel = _serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        channel.register(_selector, SelectionKey.OP_READ, new Connection(channel, new ShiftManServer(_registry)));
+    }
+
+    /**
+     * Helper method for runLoop().
+     * Reads what the client has sent and answers every whole request in it, keeping any part of a request
+     * that has not all arrived for the next read.
+     */
+    private void readRequests(Connection connection, SelectionKey key) throws IOException {
+        if (connection._channel.read(connection._requests) < 0) {
+            closeQuietly(key);
+            return;
+        }
+        ByteBuffer requests = connection._requests;
+        requests.flip();
+        ByteBuffer frame;
+        while ((frame = RpcProtocol.nextFrame(requests)) != null) {
+            answer(connection, frame);
+        }
+        requests.compact();
+        if (!requests.hasRemaining()) {
+            // A request larger than the buffer, which nextFrame() has already checked is not absurdly large
+            ByteBuffer bigger = ByteBuffer.allocate(requests.capacity() * 2);
+            requests.flip();
+            bigger.put(requests);
+            connection._requests = bigger;
+        }
+        writeResponses(connection, key);
+    }
+
+    /**
+     * Helper method for runLoop() and readRequests().
+     * Writes as many responses as the connection will take, and only asks to hear that it can take more
+     * while some are left.
+     */
+    private void writeResponses(Connection connection, SelectionKey key) throws IOException {
+        if (!connection._responses.isEmpty()) {
+            connection._channel.write(connection._responses.flip());
+            connection._responses.compact();
+        }
+        int interest = 0;
+        if (connection._responses.size() < MAX_PENDING_RESPONSE_BYTES) {
+            interest |= SelectionKey.OP_READ;
+        }
+        if (!connection._responses.isEmpty()) {
+            interest |= SelectionKey.OP_WRITE;
+        }
+        key.interestOps(interest);
+    }
+
+    /**
+     * Helper method for readRequests().
+     * Makes the call in the request on the connection's session, and adds the response to those to be written.
+     */
+    private void answer(Connection connection, ByteBuffer frame) {
+        long correlationId = frame.getLong();
+        Object result;
+        byte kind;
+        try {
+            result = call(connection._session, frame);
+            kind = (result instanceof String) ? RpcProtocol.STRING_RESPONSE : RpcProtocol.LIST_RESPONSE;
+        } catch (IllegalArgumentException | BufferUnderflowException | NegativeArraySizeException e) {
+            result = "Bad request: " + e.getMessage();
+            kind = RpcProtocol.FAILURE_RESPONSE;
+        } catch (RuntimeException e) {
+            // A call that fails unexpectedly only fails its own request, so the loop thread goes on serving
+            result = "Server error: " + e;
+            kind = RpcProtocol.FAILURE_RESPONSE;
+        }
+
+        RpcProtocol.FrameWriter out = connection._responses.begin(correlationId).putByte(kind);
+        if (kind == RpcProtocol.LIST_RESPONSE) {
+            @SuppressWarnings("unchecked")
+            List<String> list = (List<String>) result;
+            out.putStrings(list);
+        } else {
+            out.putString((String) result);
+        }
+        out.end();
+    }
+
+    /**
+     * Helper method for answer().
+     * @return The String or List of Strings returned by the ShiftMan method the request is for.
+     * @throws IllegalArgumentException If the request does not make sense.
+     */
+    private static Object call(ShiftManServer session, ByteBuffer request) {
+        byte opcode = request.get();
+        boolean isManager = request.get() == RpcProtocol.IS_MANAGER;
+        if (opcode == RpcProtocol.APPLY_BATCH) {
+            int count = request.getInt();
+            if (count < 0 || count > request.remaining()) {
+                throw new IllegalArgumentException("Bad batch size " + count);
+            }
+            List<RosterCommand> commands = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                byte changeOpcode = request.get();
+                boolean changeIsManager = request.get() == RpcProtocol.IS_MANAGER;
+                commands.add(RpcProtocol.commandFor(changeOpcode, changeIsManager, RpcProtocol.getArguments(request)));
+            }
+            return session.applyBatch(commands);
+        }
+
+        String[] arguments = RpcProtocol.getArguments(request);
+        switch (opcode) {
+            case RpcProtocol.NEW_ROSTER:
+                return session.newRoster(argument(arguments, 0));
+            case RpcProtocol.SELECT_ROSTER:
+                return session.selectRoster(argument(arguments, 0));
+            case RpcProtocol.SET_WORKING_HOURS:
+            case RpcProtocol.ADD_SHIFT:
+            case RpcProtocol.REGISTER_STAFF:
+            case RpcProtocol.ASSIGN_STAFF:
+                return RpcProtocol.commandFor(opcode, isManager, arguments).applyTo(session);
+            case RpcProtocol.GET_REGISTERED_STAFF:
+                return session.getRegisteredStaff();
+            case RpcProtocol.GET_UNASSIGNED_STAFF:
+                return session.getUnassignedStaff();
+            case RpcProtocol.SHIFTS_WITHOUT_MANAGERS:
+                return session.shiftsWithoutManagers();
+            case RpcProtocol.UNDERSTAFFED_SHIFTS:
+                return session.understaffedShifts();
+            case RpcProtocol.OVERSTAFFED_SHIFTS:
+                return session.overstaffedShifts();
+            case RpcProtocol.GET_ROSTER_FOR_DAY:
+                return session.getRosterForDay(argument(arguments, 0));
+            case RpcProtocol.GET_ROSTER_FOR_WORKER:
+                return session.getRosterForWorker(argument(arguments, 0));
+            case RpcProtocol.GET_SHIFTS_MANAGED_BY:
+                return session.getShiftsManagedBy(argument(arguments, 0));
+            case RpcProtocol.REPORT_ROSTER_ISSUES:
+                return session.reportRosterIssues();
+            case RpcProtocol.DISPLAY_ROSTER:
+                return session.displayRoster();
+            default:
+                throw new IllegalArgumentException("Unknown opcode " + opcode);
+        }
+    }
+
+    private static String argument(String[] arguments, int index) {
+        if (index >= arguments.length) {
+            throw new IllegalArgumentException("Missing argument " + index);
+        }
+        return arguments[index];
+    }
+
+    private static void closeQuietly(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            // Closing anyway
+        }
+    }
+}
@@ -1,133 +1,228 @@
 package shiftman.server;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
- * The implementation of the ShiftMan API. This server manages a single roster at a time,
- * which has the shifts for a fixed seven days (single week), as well as all of the employed
- * staff.
+ * The implementation of the ShiftMan API. Each roster has the shifts for a fixed seven days (single week),
+ * as well as all of the employed staff.
+ * The rosters for every shop are kept in a RosterRegistry, which can be shared between servers. A server
+ * works on a single roster at a time, as the ShiftMan API expects, and newRoster() or selectRoster()
+ * change which one that is. forShop() gives a ShiftMan that always works on one particular shop.
+ *
+ * <p>displayRoster() and reportRosterIssues() can also write their text straight to an Appendable, such as a Writer,
+ * a line at a time, which is how a large roster should be exported. A RosterPrinter does the same for any snapshot,
+ * and can write to a channel.
  */
-public class ShiftManServer implements ShiftMan {
+public class ShiftManServer implements BatchShiftMan {
 
-    private Roster _roster;
+    /**
+     * The printer each thread writes rosters with, so that its line buffer is reused from one call to the next.
+     * A server can be called from many threads at once, and a printer must only be used by one at a time.
+     */
+    private static final ThreadLocal<RosterPrinter> PRINTERS = ThreadLocal.withInitial(RosterPrinter::new);
+
+    private RosterRegistry _registry;
+
+    private volatile String _currentShop;
 
     private final String NULL_ROSTER_ERROR = "ERROR: no roster has been created";
 
-    // No custom constructor is necessary for this class as its only field is not set during object creation.
+    public ShiftManServer() {
+        this(new RosterRegistry());
+    }
+
+    public ShiftManServer(RosterRegistry registry) {
+        _registry = registry;
+    }
+
+    /**
+     * Used by forShop(), to create a server that starts out working on the given shop.
+     */
+    private ShiftManServer(RosterRegistry registry, String shopName) {
+        _registry = registry;
+        _currentShop = shopName;
+    }
 
 
 
     public String newRoster(String shopName) {
-        if (shopName == null) {
+        if (shopName == null || shopName.isEmpty()) {
             return "ERROR: shop name given is empty";
         }
 
-        _roster = new Roster(shopName);
+        _registry.newRoster(shopName);
+        _currentShop = shopName;
         return "";
     }
 
+    /**
+     * Switches this server to the roster for the given shop, keeping the roster it was working on.
+     * Unlike newRoster(), an existing roster for the shop is kept, and only created if the shop has none.
+     */
+    public String selectRoster(String shopName) {
+        if (shopName == null || shopName.isEmpty()) {
+            return "ERROR: shop name given is empty";
+        }
+
+        _registry.getRoster(shopName);
+        _currentShop = shopName;
+        return "";
+    }
+
+    /**
+     * Gives a ShiftMan that works on the roster for the given shop, sharing this server's registry.
+     * The roster is created the first time it is used, if the shop does not already have one.
+     */
+    public ShiftManServer forShop(String shopName) {
+        return new ShiftManServer(_registry, shopName);
+    }
+
+    public RosterRegistry getRegistry() {
+        return _registry;
+    }
+
     public String setWorkingHours(String dayOfWeek, String startTime, String endTime) {
-        if (_roster == null) {
+        Roster roster = currentRoster();
+        if (roster == null) {
             return NULL_ROSTER_ERROR;
         }
 
-        return _roster.setWorkingHours(dayOfWeek, startTime, endTime);
+        return roster.setWorkingHours(dayOfWeek, startTime, endTime);
     }
 
     public String addShift(String dayOfWeek, String startTime, String endTime, String minimumWorkers) {
-        if (_roster == null) {
+        Roster roster = currentRoster();
+        if (roster == null) {
             return NULL_ROSTER_ERROR;
         }
 
-        return _roster.addShift(dayOfWeek, startTime, endTime, minimumWorkers);
+        return roster.addShift(dayOfWeek, startTime, endTime, minimumWorkers);
     }
 
     public String registerStaff(String givenname, String familyName) {
-        if (_roster == null) {
+        Roster roster = currentRoster();
+        if (roster == null) {
             return NULL_ROSTER_ERROR;
         }
 
-        return _roster.registerStaff(givenname, familyName);
+        return roster.registerStaff(givenname, familyName);
     }
 
     public String assignStaff(String dayOfWeek, String startTime, String endTime, String givenName,
                               String familyName, boolean isManager) {
-        if (_roster == null) {
+        Roster roster = currentRoster();
+        if (roster == null) {
             return NULL_ROSTER_ERROR;
         }
 
-        return _roster.assignStaff(dayOfWeek, startTime, endTime, givenName, familyName, isManager);
+        return roster.assignStaff(dayOfWeek, startTime, endTime, givenName, familyName, isManager);
+    }
+
+    /**
+     * Applies the whole batch to the current roster as a single change, which no query sees half made.
+     */
+    @Override
+    public List<String> applyBatch(List<RosterCommand> commands) {
+        Roster roster = currentRoster();
+        if (roster == null) {
+            return new ArrayList<>(Collections.nCopies(commands.size(), NULL_ROSTER_ERROR));
+        }
+
+        return roster.applyBatch(commands);
     }
 
     public List<String> getRegisteredStaff() {
-        if (_roster == null) {
+        Roster roster = currentRoster();
+        if (roster == null) {
             return errorMessageList();
         }
 
-        return _roster.listRegisteredStaff();
+        return roster.listRegisteredStaff();
     }
 
     public List<String> getUnassignedStaff() {
-        if (_roster == null) {
+        Roster roster = currentRoster();
+        if (roster == null) {
             return errorMessageList();
         }
 
-        return _roster.listUnassignedStaff();
+        return roster.listUnassignedStaff();
     }
 
     public List<String> shiftsWithoutManagers() {
-        if (_roster == null) {
+        Roster roster = currentRoster();
+        if (roster == null) {
             return errorMessageList();
         }
 
-        return _roster.listUnmanagedShifts();
+        return roster.listUnmanagedShifts();
     }
 
     public List<String> understaffedShifts() {
-        if (_roster == null) {
+        Roster roster = currentRoster();
+        if (roster == null) {
             return errorMessageList();
         }
 
-        return _roster.listOverOrUnderstaffedShifts(-1);
+        return roster.listOverOrUnderstaffedShifts(-1);
     }
 
     public List<String> overstaffedShifts() {
-        if (_roster == null) {
+        Roster roster = currentRoster();
+        if (roster == null) {
             return errorMessageList();
         }
 
-        return _roster.listOverOrUnderstaffedShifts(1);
+        return roster.listOverOrUnderstaffedShifts(1);
     }
 
     public List<String> getRosterForDay(String dayOfWeek) {
-        if (_roster == null) {
+        Roster roster = currentRoster();
+        if (roster == null) {
             return errorMessageList();
         }
 
-        return _roster.getRosterForDay(dayOfWeek);
+        return roster.getRosterForDay(dayOfWeek);
     }
 
     public List<String> getRosterForWorker(String workerName) {
-        if (_roster == null) {
+        Roster roster = currentRoster();
+        if (roster == null) {
             return errorMessageList();
         }
 
         String[] splitName = splitWholeName(workerName);
-        return _roster.getRosterForWorker(splitName[0], splitName[1]);
+        return roster.getRosterForWorker(splitName[0], splitName[1]);
     }
 
     public List<String> getShiftsManagedBy(String managerName) {
-        if (_roster == null) {
+        Roster roster = currentRoster();
+        if (roster == null) {
             return errorMessageList();
         }
 
         String[] splitName = splitWholeName(managerName);
-        return _roster.getRosterForManager(splitName[0], splitName[1]);
+        return roster.getRosterForManager(splitName[0], splitName[1]);
     }
 
 
 
+    /**
+     * Helper method for every method that uses the current roster.
+     * Looks the roster up in the registry on each call, so that a shop evicted while idle is loaded again.
+     */
+    private Roster currentRoster() {
+        String shopName = _currentShop;
+        if (shopName == null) {
+            return null;
+        }
+        return _registry.getRoster(shopName);
+    }
+
     /**
      * Helper method for every method that returns a List<String>.
      * Generates a list with only one item - the error message.
@@ -150,17 +245,50 @@ public class ShiftManServer implements ShiftMan {
 
 
 
+    public String reportRosterIssues() {
+        StringBuilder out = new StringBuilder();
+        try {
+            reportRosterIssues(out);
+        } catch (IOException e) {
+            // A StringBuilder never fails
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    public String displayRoster() {
+        StringBuilder out = new StringBuilder();
+        try {
+            displayRoster(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
     /**
-     * The following method is not marked, and thus its implementation has been removed.
+     * Writes the issues with the current roster to the given Appendable, or the error if there is no roster.
      */
-    public String reportRosterIssues() {
-        return "";
+    public void reportRosterIssues(Appendable out) throws IOException {
+        Roster roster = currentRoster();
+        if (roster == null) {
+            out.append(NULL_ROSTER_ERROR);
+            return;
+        }
+
+        PRINTERS.get().reportRosterIssues(roster.snapshot(), out);
     }
 
     /**
-     * The following method is not marked, and thus its implementation has been removed.
+     * Writes the whole current roster to the given Appendable, or the error if there is no roster.
      */
-    public String displayRoster() {
-        return "";
+    public void displayRoster(Appendable out) throws IOException {
+        Roster roster = currentRoster();
+        if (roster == null) {
+            out.append(NULL_ROSTER_ERROR);
+            return;
+        }
+
+        PRINTERS.get().displayRoster(roster.snapshot(), out);
     }
 }
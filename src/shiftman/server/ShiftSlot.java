@@ -0,0 +1,79 @@
+package shiftman.server;
+
+/**
+ * Identifies a shift by its day and its start and end times, which never change once the shift has been added.
+ * A Shift is replaced by a new version each time staff are assigned to it, but every version shares the same
+ * ShiftSlot, so the roster's indexes of shifts hold slots rather than a particular version of a shift.
+ */
+public final class ShiftSlot implements Comparable<ShiftSlot> {
+
+    private final Roster.DaysOfWeek _day;
+
+    private final TimeOfDay _startTime;
+
+    private final TimeOfDay _endTime;
+
+    public ShiftSlot(Roster.DaysOfWeek day, TimeOfDay startTime, TimeOfDay endTime) {
+        _day = day;
+        _startTime = startTime;
+        _endTime = endTime;
+    }
+
+    public Roster.DaysOfWeek getDay() {
+        return _day;
+    }
+
+    public TimeOfDay getStartTime() {
+        return _startTime;
+    }
+
+    public TimeOfDay getEndTime() {
+        return _endTime;
+    }
+
+    /**
+     * A number identifying the shift within its roster, made from its day and start time. Shifts on the same day
+     * never overlap, so no two shifts in a roster have the same id, and ids are in the same order as the shifts.
+     */
+    public int getId() {
+        return _day.ordinal() * TimeOfDay.MINUTES_PER_DAY + _startTime.getMinutes();
+    }
+
+    /**
+     * The start time as minutes since midnight.
+     */
+    public int getStartMinutes() {
+        return _startTime.getMinutes();
+    }
+
+    public int getEndMinutes() {
+        return _endTime.getMinutes();
+    }
+
+    /**
+     * Gives the format day[hh:mm-hh:mm], which is how shifts are listed to the client.
+     */
+    public String getDescription() {
+        return _day.toString() + toString();
+    }
+
+    /**
+     * Used by Comparable for sorting shifts, which are to be ordered by day of the week,
+     * then by starting time, earliest to latest.
+     */
+    public int compareTo(ShiftSlot other) {
+        int dayComparison = _day.compareTo(other._day);
+        if (dayComparison != 0) {
+            return dayComparison;
+        }
+        return _startTime.compareTo(other._startTime);
+    }
+
+    /**
+     * The most useful string representation of this object is simply its start and end times.
+     */
+    @Override
+    public String toString() {
+        return "[" + _startTime + "-" + _endTime + "]";
+    }
+}
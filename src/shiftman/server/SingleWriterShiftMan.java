@@ -0,0 +1,265 @@
+package shiftman.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A ShiftMan that makes every change to its rosters on one writer thread. Each call that changes a roster is
+ * turned into a command and put on a bounded RingBuffer, and the writer thread takes the commands off in order
+ * and applies them to the ShiftMan it wraps, which no other thread changes. Queries go straight to the wrapped
+ * ShiftMan, which answers them from its latest snapshot without waiting for the writer.
+ *
+ * <p>The ShiftMan methods wait for the writer to apply their command and return its status, so callers see
+ * the same results as they would from the wrapped ShiftMan. The submit methods return as soon as the command
+ * is queued, with a future for the status. Either way, a caller that submits commands faster than the writer
+ * can apply them waits for space in the ring.
+ */
+public class SingleWriterShiftMan implements BatchShiftMan, AutoCloseable {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final String CLOSED_ERROR = "ERROR: the roster is no longer accepting changes";
+
+    private final ShiftMan _delegate;
+
+    private final RingBuffer<PendingCommand> _commands;
+
+    private final Thread _writer;
+
+    private volatile boolean _closed;
+
+    /**
+     * The number of callers part way through queuing a command, which close() waits for.
+     */
+    private final AtomicInteger _submitting = new AtomicInteger();
+
+    /**
+     * A change waiting on the ring, with the future its caller is waiting on.
+     * A change with no action tells the writer to stop.
+     */
+    private static final class PendingCommand {
+
+        private final Action _action;
+
+        private final CompletableFuture<String> _status = new CompletableFuture<>();
+
+        PendingCommand(Action action) {
+            _action = action;
+        }
+    }
+
+    private interface Action {
+        String applyTo(ShiftMan scheduler);
+    }
+
+    public SingleWriterShiftMan(ShiftMan delegate) {
+        this(delegate, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity The most changes that can be waiting for the writer before callers have to wait too.
+     */
+    public SingleWriterShiftMan(ShiftMan delegate, int capacity) {
+        _delegate = delegate;
+        _commands = new RingBuffer<>(capacity);
+        _writer = new Thread(this::applyCommands, "shiftman-writer");
+        _writer.setDaemon(true);
+        _writer.start();
+    }
+
+
+
+    /**
+     * Queues the command for the writer thread.
+     * @return A future that completes with the status of the command once the writer has applied it.
+     */
+    public CompletableFuture<String> submit(RosterCommand command) {
+        return enqueue(command::applyTo);
+    }
+
+    /**
+     * Queues the whole batch for the writer thread, which applies it as a single command.
+     * @return A future that completes with the status of each change, in order.
+     */
+    public CompletableFuture<List<String>> submitBatch(List<RosterCommand> commands) {
+        List<String> statuses = new ArrayList<>(commands.size());
+        return enqueue(s -> {
+            statuses.addAll(BatchShiftMan.applyBatchTo(s, commands));
+            return "";
+        }).thenApply(status -> status.isEmpty()
+                ? statuses : new ArrayList<>(Collections.nCopies(commands.size(), status)));
+    }
+
+    public CompletableFuture<String> submitNewRoster(String shopName) {
+        return enqueue(s -> s.newRoster(shopName));
+    }
+
+    public String newRoster(String shopName) {
+        return await(submitNewRoster(shopName));
+    }
+
+    public String setWorkingHours(String dayOfWeek, String startTime, String endTime) {
+        return await(submit(RosterCommand.setWorkingHours(dayOfWeek, startTime, endTime)));
+    }
+
+    public String addShift(String dayOfWeek, String startTime, String endTime, String minimumWorkers) {
+        return await(submit(RosterCommand.addShift(dayOfWeek, startTime, endTime, minimumWorkers)));
+    }
+
+    public String registerStaff(String givenname, String familyName) {
+        return await(submit(RosterCommand.registerStaff(givenname, familyName)));
+    }
+
+    public String assignStaff(String dayOfWeek, String startTime, String endTime, String givenName,
+                              String familyName, boolean isManager) {
+        return await(submit(RosterCommand.assignStaff(dayOfWeek, startTime, endTime, givenName, familyName,
+                isManager)));
+    }
+
+    @Override
+    public List<String> applyBatch(List<RosterCommand> commands) {
+        return await(submitBatch(commands));
+    }
+
+    public List<String> getRegisteredStaff() {
+        return _delegate.getRegisteredStaff();
+    }
+
+    public List<String> getUnassignedStaff() {
+        return _delegate.getUnassignedStaff();
+    }
+
+    public List<String> shiftsWithoutManagers() {
+        return _delegate.shiftsWithoutManagers();
+    }
+
+    public List<String> understaffedShifts() {
+        return _delegate.understaffedShifts();
+    }
+
+    public List<String> overstaffedShifts() {
+        return _delegate.overstaffedShifts();
+    }
+
+    public List<String> getRosterForDay(String dayOfWeek) {
+        return _delegate.getRosterForDay(dayOfWeek);
+    }
+
+    public List<String> getRosterForWorker(String workerName) {
+        return _delegate.getRosterForWorker(workerName);
+    }
+
+    public List<String> getShiftsManagedBy(String managerName) {
+        return _delegate.getShiftsManagedBy(managerName);
+    }
+
+    public String reportRosterIssues() {
+        return _delegate.reportRosterIssues();
+    }
+
+    public String displayRoster() {
+        return _delegate.displayRoster();
+    }
+
+    /**
+     * Stops accepting changes, and waits for the writer to apply every change already accepted.
+     * If the caller is interrupted, it still waits, and its interrupt status is set again before this returns.
+     */
+    public void close() {
+        if (_closed) {
+            return;
+        }
+        _closed = true;
+        _commands.put(new PendingCommand(null));
+        boolean interrupted = false;
+        while (true) {
+            try {
+                _writer.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+
+    /**
+     * Helper method for every method that changes a roster.
+     */
+    private CompletableFuture<String> enqueue(Action action) {
+        PendingCommand pending = new PendingCommand(action);
+        _submitting.incrementAndGet();
+        try {
+            if (_closed) {
+                pending._status.complete(CLOSED_ERROR);
+            } else {
+                _commands.put(pending);
+            }
+        } finally {
+            _submitting.decrementAndGet();
+        }
+        return pending._status;
+    }
+
+    /**
+     * Helper method for the ShiftMan methods that change a roster, and applyBatch().
+     * Waits for the status, passing on anything the wrapped ShiftMan threw as if it had been called directly.
+     */
+    private <T> T await(CompletableFuture<T> status) {
+        try {
+            return status.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * The body of the writer thread, which applies the changes in the order they were queued until close().
+     */
+    private void applyCommands() {
+        while (true) {
+            PendingCommand pending = _commands.take();
+            if (pending == null || pending._action == null) {
+                break;
+            }
+            apply(pending);
+        }
+        // Callers that started queuing just before close() must not be left waiting
+        while (true) {
+            // Read first, as anyone still queuing after this will see that the roster is closed
+            boolean finished = _submitting.get() == 0;
+            PendingCommand pending;
+            while ((pending = _commands.poll()) != null) {
+                if (pending._action != null) {
+                    apply(pending);
+                }
+            }
+            if (finished) {
+                break;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Helper method for applyCommands().
+     */
+    private void apply(PendingCommand pending) {
+        try {
+            pending._status.complete(pending._action.applyTo(_delegate));
+        } catch (RuntimeException e) {
+            pending._status.completeExceptionally(e);
+        }
+    }
+}
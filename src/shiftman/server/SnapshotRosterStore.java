@@ -0,0 +1,135 @@
+package shiftman.server;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A RosterStore that keeps each shop's roster in a RosterSnapshotFile of its own, in a single directory.
+ * Evicted shops are written to disk rather than kept on the heap, and loading a shop maps its file back in,
+ * decoding each day only when it is first used.
+ *
+ * <p>The files also serve as the checkpoints of a RosterLog: a RosterCheckpointer saves every resident roster here,
+ * after which the log only needs the records written since. A shop's file is kept when the shop is loaded,
+ * so it is still there if the server stops before the next checkpoint.
+ */
+public class SnapshotRosterStore implements RosterStore {
+
+    private static final String SUFFIX = ".snapshot";
+
+    private final Path _directory;
+
+    private volatile RosterLog _log;
+
+    /**
+     * The log number and version of the snapshot in each shop's file, so that a roster that has not changed
+     * is not written again, and an older version of a roster never replaces a newer one.
+     */
+    private final Map<String, long[]> _savedVersions = new HashMap<>();
+
+    public SnapshotRosterStore(Path directory) throws IOException {
+        _directory = directory;
+        Files.createDirectories(directory);
+    }
+
+
+
+    public void save(Roster roster) {
+        try {
+            checkpoint(roster);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public Roster load(String shopName) {
+        Path file = fileFor(shopName);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            Roster roster = RosterSnapshotFile.read(file, _log);
+            noteSaved(roster.toString(), roster.getLogId(), roster.snapshot().getVersion());
+            return roster;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public synchronized void remove(String shopName) {
+        try {
+            Files.deleteIfExists(fileFor(shopName));
+            _savedVersions.remove(shopName);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Saves the roster's current snapshot, unless its file already has that version or a newer one.
+     * @return Whether the file was written.
+     */
+    public synchronized boolean checkpoint(Roster roster) throws IOException {
+        String shopName = roster.toString();
+        RosterSnapshot snapshot = roster.snapshot();
+        long[] saved = _savedVersions.get(shopName);
+        if (saved != null && (roster.getLogId() < saved[0]
+                || (roster.getLogId() == saved[0] && snapshot.getVersion() <= saved[1]))) {
+            return false;
+        }
+        RosterSnapshot written = RosterSnapshotFile.write(roster, fileFor(shopName));
+        _savedVersions.put(shopName, new long[] { roster.getLogId(), written.getVersion() });
+        return true;
+    }
+
+    /**
+     * Loads every roster in the store, which is what a RosterLog replays its records onto.
+     */
+    public List<Roster> loadAll() throws IOException {
+        List<Roster> rosters = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(_directory, "*" + SUFFIX)) {
+            for (Path p : files) {
+                Roster roster = RosterSnapshotFile.read(p, _log);
+                noteSaved(roster.toString(), roster.getLogId(), roster.snapshot().getVersion());
+                rosters.add(roster);
+            }
+        }
+        return rosters;
+    }
+
+    public Path getDirectory() {
+        return _directory;
+    }
+
+
+
+    /**
+     * Used by RosterLog once it has been opened, so that rosters loaded from now on record their changes in it.
+     */
+    void setLog(RosterLog log) {
+        _log = log;
+    }
+
+    /**
+     * Helper method for load() and loadAll().
+     */
+    private synchronized void noteSaved(String shopName, long logId, long version) {
+        _savedVersions.putIfAbsent(shopName, new long[] { logId, version });
+    }
+
+    /**
+     * Helper method for every method given a shop name.
+     * Shop names can hold any character, so they are encoded to give a safe file name.
+     */
+    private Path fileFor(String shopName) {
+        return _directory.resolve(URLEncoder.encode(shopName, StandardCharsets.UTF_8) + SUFFIX);
+    }
+}
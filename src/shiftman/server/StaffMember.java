@@ -1,18 +1,32 @@
 package shiftman.server;
 
+import java.util.Locale;
+
 /**
  * Represents a staff member. A staff member has a name.
+ * Names are unique ignoring case, so two StaffMember objects are equal when their names only differ in case.
+ * A staff member never changes once created. The shifts they work and manage are kept by the roster.
  */
-public class StaffMember implements Comparable<StaffMember> {
+public final class StaffMember implements Comparable<StaffMember> {
+
+    private final String _givenName;
 
-    private String _givenName;
+    private final String _familyName;
 
-    private String _familyName;
+    private final String _key;
 
     public StaffMember(String firstName, String lastName) {
+        this(firstName, lastName, nameKey(firstName, lastName));
+        RosterEvents.created("StaffMember", this);
+    }
+
+    /**
+     * Used by RosterSnapshotFile, to give back a saved staff member along with the key saved with them.
+     */
+    StaffMember(String firstName, String lastName, String key) {
         _givenName = firstName;
         _familyName = lastName;
-        System.out.println("@StaffMember object created with name " + _givenName + " " + _familyName);
+        _key = key;
     }
 
     /**
@@ -20,9 +34,32 @@ public class StaffMember implements Comparable<StaffMember> {
      * then given name if necessary.
      */
     public int compareTo(StaffMember other) {
-        String thisName = this._familyName + this._givenName;
-        String thatName = other._familyName + other._givenName;
-        return thisName.compareTo(thatName);
+        int familyComparison = this._familyName.compareTo(other._familyName);
+        if (familyComparison != 0) {
+            return familyComparison;
+        }
+        return this._givenName.compareTo(other._givenName);
+    }
+
+    /**
+     * Builds the key that identifies a staff member, which ignores case as specified by ShiftMan.registerStaff().
+     * The names are separated by a tab, as a name given to the server cannot contain whitespace when it is
+     * looked up again, so "Mary Ann" "Smith" and "Mary" "Ann Smith" never share a key.
+     */
+    public static String nameKey(String givenName, String familyName) {
+        return givenName.toLowerCase(Locale.ROOT) + "\t" + familyName.toLowerCase(Locale.ROOT);
+    }
+
+    public String getGivenName() {
+        return _givenName;
+    }
+
+    public String getFamilyName() {
+        return _familyName;
+    }
+
+    public String getKey() {
+        return _key;
     }
 
     /**
@@ -32,6 +69,22 @@ public class StaffMember implements Comparable<StaffMember> {
         return _familyName + ", " + _givenName;
     }
 
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof StaffMember)) {
+            return false;
+        }
+        return _key.equals(((StaffMember) other)._key);
+    }
+
+    @Override
+    public int hashCode() {
+        return _key.hashCode();
+    }
+
     /**
      * The most useful string representation of this object is the conventional ordering of names,
      * which are used when listing staff and finding them.
@@ -0,0 +1,108 @@
+package shiftman.server;
+
+/**
+ * Represents a time of day, stored as the number of minutes since midnight.
+ * Every possible time is created once up front, so parsing a time never allocates and two
+ * TimeOfDay objects for the same time are always the same object.
+ * Times are only turned back into the "hh:mm" format when they are displayed to the client.
+ */
+public final class TimeOfDay implements Comparable<TimeOfDay> {
+
+    public static final int MINUTES_PER_DAY = 24 * 60;
+
+    private static final TimeOfDay[] ALL_TIMES = new TimeOfDay[MINUTES_PER_DAY];
+
+    static {
+        for (int i = 0; i < MINUTES_PER_DAY; i++) {
+            ALL_TIMES[i] = new TimeOfDay((short) i);
+        }
+    }
+
+    /**
+     * As specified, working hours and shifts cannot include midnight.
+     */
+    public static final TimeOfDay EARLIEST = ALL_TIMES[1];
+
+    public static final TimeOfDay LATEST = ALL_TIMES[MINUTES_PER_DAY - 1];
+
+    private final short _minutes;
+
+    private final String _stringRep;
+
+    private TimeOfDay(short minutes) {
+        _minutes = minutes;
+        _stringRep = new String(new char[] {
+                (char) ('0' + minutes / 600), (char) ('0' + minutes / 60 % 10), ':',
+                (char) ('0' + minutes % 60 / 10), (char) ('0' + minutes % 10)
+        });
+    }
+
+    /**
+     * Converts a time in the format hh:mm into a TimeOfDay, without using a regex or substrings.
+     * A time that is not in the format dd:dd is reported differently to a time such as 24:01,
+     * which is in the right format but does not exist.
+     */
+    public static TimeOfDay parse(String time) throws ShiftManUserException {
+        if (time == null || time.length() != 5 || time.charAt(2) != ':') {
+            throw new ShiftManUserException("ERROR: Time does not match format hh:mm");
+        }
+
+        int h1 = digit(time.charAt(0));
+        int h2 = digit(time.charAt(1));
+        int m1 = digit(time.charAt(3));
+        int m2 = digit(time.charAt(4));
+        if ((h1 | h2 | m1 | m2) < 0) {
+            throw new ShiftManUserException("ERROR: Time does not match format hh:mm");
+        }
+
+        int hours = h1 * 10 + h2;
+        int minutes = m1 * 10 + m2;
+        if (hours > 23 || minutes > 59) {
+            throw new ShiftManUserException("ERROR: Start and/or end time invalid");
+        }
+        return ALL_TIMES[hours * 60 + minutes];
+    }
+
+    /**
+     * Returns the TimeOfDay for a number of minutes since midnight.
+     */
+    public static TimeOfDay ofMinutes(int minutes) {
+        return ALL_TIMES[minutes];
+    }
+
+    /**
+     * Helper method for parse().
+     * Returns the value of an ASCII digit, or -1 if the character is not one.
+     */
+    private static int digit(char c) {
+        return (c >= '0' && c <= '9') ? c - '0' : -1;
+    }
+
+    public int getMinutes() {
+        return _minutes;
+    }
+
+    public boolean isBefore(TimeOfDay other) {
+        return _minutes < other._minutes;
+    }
+
+    public boolean isAfter(TimeOfDay other) {
+        return _minutes > other._minutes;
+    }
+
+    /**
+     * Used by Comparable for ordering times, earliest to latest.
+     */
+    public int compareTo(TimeOfDay other) {
+        return _minutes - other._minutes;
+    }
+
+    /**
+     * The most useful string representation of this object is the hh:mm format used by the client.
+     * This is built once when the object is created, so displaying a time does not allocate.
+     */
+    @Override
+    public String toString() {
+        return _stringRep;
+    }
+}